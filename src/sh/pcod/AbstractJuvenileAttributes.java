@@ -4,6 +4,7 @@
  * Updated:
  * 20210206: 1. Created new abstract class for juvenile life stages.
  * 20210208: 1. Added TL, WW, grTL, and grWW  attributes.
+ * 20261019: 1. Error dialogs are shown via ErrorMessages (logged only when headless).
  */
 
 package sh.pcod;
@@ -231,11 +232,7 @@ public abstract class AbstractJuvenileAttributes extends AbstractLarvalAttribute
                 String str = "Missing attribute value for "+aKeys[j]+".\n"+
                              "Prior values are ";
                 for (int i=0;i<(j);i++) str = str+strv[i]+" ";
-                javax.swing.JOptionPane.showMessageDialog(
-                        null,
-                        str,
-                        "Error setting attribute values:",
-                        javax.swing.JOptionPane.ERROR_MESSAGE);
+                ErrorMessages.showError("Error setting attribute values:",str);
                 throw ex;
         } catch (java.lang.NumberFormatException ex) {
             String[] aKeys = new String[keys.size()];
@@ -259,11 +256,7 @@ public abstract class AbstractJuvenileAttributes extends AbstractLarvalAttribute
             }  catch (java.lang.IndexOutOfBoundsException ex1) {
                 //do nothing
             }
-            javax.swing.JOptionPane.showMessageDialog(
-                    null,
-                    str,
-                    "Error setting attribute values:",
-                    javax.swing.JOptionPane.ERROR_MESSAGE);
+            ErrorMessages.showError("Error setting attribute values:",str);
             throw ex;
         }
     }
@@ -10,6 +10,7 @@
  * 20210206: 1. Renamed class to AbstractLarvalAttributes from AbstractNonEggStageAttributes
  *                in conjunction with creation of AbstractJuvenileAttributes.
  * 20210206: 1. Added growth rates in SL and DW as attributes. 
+ * 20261019: 1. Error dialogs are shown via ErrorMessages (logged only when headless).
  */
 
 package sh.pcod;
@@ -252,11 +253,7 @@ public abstract class AbstractLarvalAttributes extends AbstractLHSAttributes {
                 String str = "Missing attribute value for "+aKeys[j]+".\n"+
                              "Prior values are ";
                 for (int i=0;i<(j);i++) str = str+strv[i]+" ";
-                javax.swing.JOptionPane.showMessageDialog(
-                        null,
-                        str,
-                        "Error setting attribute values:",
-                        javax.swing.JOptionPane.ERROR_MESSAGE);
+                ErrorMessages.showError("Error setting attribute values:",str);
                 throw ex;
         } catch (java.lang.NumberFormatException ex) {
             String[] aKeys = new String[keys.size()];
@@ -280,11 +277,7 @@ public abstract class AbstractLarvalAttributes extends AbstractLHSAttributes {
             }  catch (java.lang.IndexOutOfBoundsException ex1) {
                 //do nothing
             }
-            javax.swing.JOptionPane.showMessageDialog(
-                    null,
-                    str,
-                    "Error setting attribute values:",
-                    javax.swing.JOptionPane.ERROR_MESSAGE);
+            ErrorMessages.showError("Error setting attribute values:",str);
             throw ex;
         }
     }
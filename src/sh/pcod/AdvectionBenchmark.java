@@ -0,0 +1,136 @@
+/*
+ * AdvectionBenchmark.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod;
+
+import java.util.Locale;
+
+/**
+ * Reports accuracy vs. cost of the advection schemes on synthetic flow fields
+ * with known (or highly-resolved reference) trajectories.
+ *
+ * Schemes compared:
+ *   PC    - 2-stage predictor/corrector (trapezoidal), as a stand-in for the
+ *           LagrangianParticle scheme (which requires a ROMS environment)
+ *   RK4   - fixed-step 4th-order Runge-Kutta
+ *   RK45  - adaptive Dormand-Prince 5(4) with the given tolerance
+ *
+ * Flows (uniform 1 km grid cells, velocities up to ~0.3 m/s):
+ *   rotation - solid-body rotation (exact solution is a circle)
+ *   cellular - steady cellular (gyre) flow; reference from RK4 with dt = 10 s
+ *
+ * Usage: java sh.pcod.AdvectionBenchmark [days] [tolerance (m)]
+ *
+ * @author William Stockhausen
+ */
+public class AdvectionBenchmark {
+
+    /** cell size (m) */
+    private static final double DX = 1000.0;
+
+    /**
+     * Solid-body rotation about (50,50) with a period of 2 days.
+     */
+    static class RotationFlow implements VelocityField {
+        final double omega = 2.0*Math.PI/(2*86400.0);
+        @Override
+        public void evaluate(double[] pos, double[] dpdt) {
+            dpdt[0] = -omega*(pos[1]-50.0);
+            dpdt[1] =  omega*(pos[0]-50.0);
+            dpdt[2] = 0.0;
+        }
+        @Override
+        public double getMetric(int dim) {return DX;}
+        @Override
+        public double getMaxK() {return 50;}
+        void exact(double[] p0, double t, double[] p){
+            double c = Math.cos(omega*t), s = Math.sin(omega*t);
+            double x = p0[0]-50.0, y = p0[1]-50.0;
+            p[0] = 50.0+c*x-s*y;
+            p[1] = 50.0+s*x+c*y;
+            p[2] = p0[2];
+        }
+    }
+
+    /**
+     * Steady cellular flow with 40 km cells and 0.3 m/s maximum speed.
+     */
+    static class CellularFlow implements VelocityField {
+        final double U = 0.3;  //m/s
+        final double L = 40.0; //cells
+        @Override
+        public void evaluate(double[] pos, double[] dpdt) {
+            double x = Math.PI*pos[0]/L, y = Math.PI*pos[1]/L;
+            dpdt[0] = -U*Math.sin(x)*Math.cos(y)/DX;
+            dpdt[1] =  U*Math.cos(x)*Math.sin(y)/DX;
+            dpdt[2] = 0.0;
+        }
+        @Override
+        public double getMetric(int dim) {return DX;}
+        @Override
+        public double getMaxK() {return 50;}
+    }
+
+    /**
+     * Trapezoidal predictor/corrector step (2 evaluations).
+     */
+    private static long stepPC(VelocityField f, double[] pos, double dt){
+        double[] k1 = new double[3], k2 = new double[3], pp = new double[3];
+        f.evaluate(pos,k1);
+        for (int d=0;d<3;d++) pp[d] = pos[d]+dt*k1[d];
+        f.evaluate(pp,k2);
+        for (int d=0;d<3;d++) pos[d] += 0.5*dt*(k1[d]+k2[d]);
+        return 2;
+    }
+
+    /**
+     * Integrates over the given number of days and returns {error (m), evaluations}.
+     */
+    private static double[] run(String scheme, VelocityField f, double[] p0, double[] pRef,
+                                double days, double dt, double tol){
+        AdvectionIntegrator ai = new AdvectionIntegrator();
+        double[] pos = p0.clone();
+        long nSteps = Math.round(days*86400/dt);
+        long evals = 0;
+        for (long n=0;n<nSteps;n++){
+            if (scheme.equals("PC")) evals += stepPC(f,pos,dt); else
+            if (scheme.equals("RK4")) ai.integrateRK4(f,pos,dt,1); else
+            ai.integrateRK45(f,pos,dt,tol);
+        }
+        evals += ai.getEvaluationCount();
+        double ex = (pos[0]-pRef[0])*DX, ey = (pos[1]-pRef[1])*DX;
+        return new double[]{Math.sqrt(ex*ex+ey*ey),evals};
+    }
+
+    public static void main(String[] args){
+        double days = (args.length>0) ? Double.parseDouble(args[0]) : 4.0;
+        double tol  = (args.length>1) ? Double.parseDouble(args[1]) : 1.0;
+        double[] dts = new double[]{300,600,1200,3600,7200,10800};
+        double[] p0  = new double[]{70.0,50.0,10.0};
+
+        RotationFlow rot = new RotationFlow();
+        double[] refRot = new double[3];
+        rot.exact(p0,days*86400,refRot);
+
+        CellularFlow cel = new CellularFlow();
+        double[] p0c = new double[]{13.0,7.0,10.0};
+        double[] refCel = p0c.clone();
+        new AdvectionIntegrator().integrateRK4(cel,refCel,days*86400,(int)Math.round(days*86400/10.0));
+
+        System.out.println("flow,scheme,dt (s),position error (m),velocity evaluations/day");
+        for (String flow: new String[]{"rotation","cellular"}){
+            VelocityField f = flow.equals("rotation") ? rot : cel;
+            double[] s0  = flow.equals("rotation") ? p0 : p0c;
+            double[] ref = flow.equals("rotation") ? refRot : refCel;
+            for (String scheme: new String[]{"PC","RK4","RK45"}){
+                for (double dt: dts){
+                    double[] res = run(scheme,f,s0,ref,days,dt,tol);
+                    System.out.println(String.format(Locale.US,"%s,%s,%.0f,%.3g,%.1f",
+                                                     flow,scheme,dt,res[0],res[1]/days));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * AdvectionIntegrator.java
+ *
+ * 20261019: created class.
+ *           2. integrateRK45 finishes the time step with RK4 (and logs a warning)
+ *                when the sub-step limit is reached.
+ *           3. RK45 starts each time step from the full step; the last sub-step size is no longer
+ *                kept per thread (trajectories did not depend only on the individual).
+ */
+package sh.pcod;
+
+import java.util.logging.Logger;
+import wts.roms.model.Interpolator3D;
+import wts.roms.model.LagrangianParticle;
+
+/**
+ * Higher-order integrators for the advective part of individual movement:
+ * classical fixed-step 4th-order Runge-Kutta (RK4) and adaptive-step
+ * Dormand-Prince 5(4) Runge-Kutta (RK45) with error control.
+ *
+ * These are alternatives to the LagrangianParticle predictor/corrector scheme
+ * that allow larger biological time steps for the same trajectory accuracy.
+ * The velocity field is held fixed at the current physical environment over
+ * the time step, and individual (behavioral) velocities are constant over the step.
+ *
+ * Instances hold scratch arrays and are not thread-safe; stage classes should
+ * use advect(...), which uses one instance per thread. No integration state
+ * is kept between calls (each RK45 time step starts with a trial sub-step of
+ * the full time step), so a trajectory does not depend on which individuals
+ * the thread advected before.
+ *
+ * @author William Stockhausen
+ */
+public class AdvectionIntegrator {
+
+    /** maximum number of (accepted + rejected) RK45 sub-steps per time step */
+    public static int maxSubSteps = 1000;
+
+    /* Dormand-Prince 5(4) coefficients */
+    private static final double A21 = 1.0/5.0;
+    private static final double A31 = 3.0/40.0,       A32 = 9.0/40.0;
+    private static final double A41 = 44.0/45.0,      A42 = -56.0/15.0,      A43 = 32.0/9.0;
+    private static final double A51 = 19372.0/6561.0, A52 = -25360.0/2187.0, A53 = 64448.0/6561.0, A54 = -212.0/729.0;
+    private static final double A61 = 9017.0/3168.0,  A62 = -355.0/33.0,     A63 = 46732.0/5247.0, A64 = 49.0/176.0, A65 = -5103.0/18656.0;
+    private static final double B1  = 35.0/384.0,     B3  = 500.0/1113.0,    B4  = 125.0/192.0,    B5  = -2187.0/6784.0, B6 = 11.0/84.0;
+    private static final double E1  = 71.0/57600.0,   E3  = -71.0/16695.0,   E4  = 71.0/1920.0,    E5  = -17253.0/339200.0, E6 = 22.0/525.0, E7 = -1.0/40.0;
+
+    /** per-thread instances for use by stage classes */
+    private static final ThreadLocal<AdvectionIntegrator> instances = new ThreadLocal<AdvectionIntegrator>(){
+        @Override
+        protected AdvectionIntegrator initialValue(){
+            return new AdvectionIntegrator();
+        }
+    };
+
+    /* scratch arrays */
+    private final double[] k1 = new double[3];
+    private final double[] k2 = new double[3];
+    private final double[] k3 = new double[3];
+    private final double[] k4 = new double[3];
+    private final double[] k5 = new double[3];
+    private final double[] k6 = new double[3];
+    private final double[] k7 = new double[3];
+    private final double[] tmp = new double[3];
+    private final double[] p   = new double[3];
+
+    /** ROMS velocity field used by advect(...) */
+    private ROMSVelocityField romsField = null;
+
+    /** number of velocity field evaluations */
+    private long nEvals = 0;
+    /** number of rejected RK45 sub-steps */
+    private long nRejected = 0;
+    /** number of RK45 time steps finished with RK4 (sub-step limit reached) */
+    private long nIncomplete = 0;
+    /** flag to log the sub-step limit warning only once */
+    private static volatile boolean warnedIncomplete = false;
+
+    private static final Logger logger = Logger.getLogger(AdvectionIntegrator.class.getName());
+
+    /**
+     * Advects an individual over one time step with RK4 (if tol<=0) or RK45
+     * (if tol>0) through the ROMS velocity field plus the individual velocities
+     * and sets the new position on the LagrangianParticle.
+     *
+     * @param i3d - the interpolator
+     * @param lp  - the LagrangianParticle with the current position
+     * @param u   - individual velocity in the xi direction (m/s)
+     * @param v   - individual velocity in the eta direction (m/s)
+     * @param w   - individual vertical velocity (m/s)
+     * @param dt  - time step (s)
+     * @param tol - RK45 error tolerance (m); use RK4 if <= 0
+     *
+     * @return - the new position {I,J,K}
+     */
+    public static double[] advect(Interpolator3D i3d, LagrangianParticle lp,
+                                  double u, double v, double w, double dt, double tol){
+        AdvectionIntegrator ai = instances.get();
+        if (ai.romsField==null) ai.romsField = new ROMSVelocityField(i3d);
+        else ai.romsField.setInterpolator(i3d);
+        ai.romsField.setIndividualVelocity(u,v,w);
+        double[] pos = lp.getIJK();
+        ai.romsField.setOrigin(pos);
+        if (tol>0) ai.integrateRK45(ai.romsField,pos,dt,tol);
+        else       ai.integrateRK4(ai.romsField,pos,dt,1);
+        lp.setIJK(pos[0],pos[1],pos[2]);
+        return lp.getIJK();
+    }
+
+    /**
+     * Gets the integrator instance for the calling thread.
+     * @return - the instance
+     */
+    public static AdvectionIntegrator getInstance(){
+        return instances.get();
+    }
+
+    /**
+     * Integrates a position over dt using nSub fixed RK4 sub-steps.
+     *
+     * @param f    - velocity field
+     * @param pos  - position {I,J,K}; updated in place
+     * @param dt   - time step (s)
+     * @param nSub - number of sub-steps
+     */
+    public void integrateRK4(VelocityField f, double[] pos, double dt, int nSub){
+        double h = dt/nSub;
+        for (int s=0;s<nSub;s++){
+            f.evaluate(pos,k1);
+            for (int d=0;d<3;d++) tmp[d] = pos[d]+0.5*h*k1[d];
+            clampK(f,tmp);
+            f.evaluate(tmp,k2);
+            for (int d=0;d<3;d++) tmp[d] = pos[d]+0.5*h*k2[d];
+            clampK(f,tmp);
+            f.evaluate(tmp,k3);
+            for (int d=0;d<3;d++) tmp[d] = pos[d]+h*k3[d];
+            clampK(f,tmp);
+            f.evaluate(tmp,k4);
+            for (int d=0;d<3;d++) pos[d] += h*(k1[d]+2.0*k2[d]+2.0*k3[d]+k4[d])/6.0;
+            clampK(f,pos);
+            nEvals += 4;
+        }
+    }
+
+    /**
+     * Integrates a position over dt using adaptive Dormand-Prince 5(4) sub-steps,
+     * keeping the estimated local error (in m) in each grid direction below tol.
+     * The first trial sub-step is the full time step.
+     *
+     * @param f   - velocity field
+     * @param pos - position {I,J,K}; updated in place
+     * @param dt  - time step (s; may be negative)
+     * @param tol - error tolerance (m)
+     */
+    public void integrateRK45(VelocityField f, double[] pos, double dt, double tol){
+        double sgn = Math.signum(dt);
+        double T = Math.abs(dt);
+        if (T==0) return;
+        double h = T;
+        double t = 0.0;
+        int n = 0;
+        f.evaluate(pos,k1);
+        nEvals++;
+        while ((t<T)&&(n<maxSubSteps)){
+            n++;
+            if (t+h>T) h = T-t;
+            double hs = sgn*h;
+            for (int d=0;d<3;d++) tmp[d] = pos[d]+hs*(A21*k1[d]);
+            clampK(f,tmp);
+            f.evaluate(tmp,k2);
+            for (int d=0;d<3;d++) tmp[d] = pos[d]+hs*(A31*k1[d]+A32*k2[d]);
+            clampK(f,tmp);
+            f.evaluate(tmp,k3);
+            for (int d=0;d<3;d++) tmp[d] = pos[d]+hs*(A41*k1[d]+A42*k2[d]+A43*k3[d]);
+            clampK(f,tmp);
+            f.evaluate(tmp,k4);
+            for (int d=0;d<3;d++) tmp[d] = pos[d]+hs*(A51*k1[d]+A52*k2[d]+A53*k3[d]+A54*k4[d]);
+            clampK(f,tmp);
+            f.evaluate(tmp,k5);
+            for (int d=0;d<3;d++) tmp[d] = pos[d]+hs*(A61*k1[d]+A62*k2[d]+A63*k3[d]+A64*k4[d]+A65*k5[d]);
+            clampK(f,tmp);
+            f.evaluate(tmp,k6);
+            for (int d=0;d<3;d++) p[d] = pos[d]+hs*(B1*k1[d]+B3*k3[d]+B4*k4[d]+B5*k5[d]+B6*k6[d]);
+            clampK(f,p);
+            f.evaluate(p,k7);//first-same-as-last: k7 is k1 of the next sub-step
+            nEvals += 6;
+            double err = 0.0;
+            for (int d=0;d<3;d++){
+                double e = hs*(E1*k1[d]+E3*k3[d]+E4*k4[d]+E5*k5[d]+E6*k6[d]+E7*k7[d]);
+                err = Math.max(err,Math.abs(e*f.getMetric(d))/tol);
+            }
+            if ((err<=1.0)||(n==maxSubSteps)) {
+                t += h;
+                for (int d=0;d<3;d++) {pos[d] = p[d]; k1[d] = k7[d];}
+            } else {
+                nRejected++;
+            }
+            double fac = (err>0) ? 0.9*Math.pow(err,-0.2) : 5.0;
+            h = h*Math.min(5.0,Math.max(0.2,fac));
+        }
+        if (t<T) {
+            //sub-step limit reached: finish the time step with fixed RK4 sub-steps
+            nIncomplete++;
+            if (!warnedIncomplete) {
+                warnedIncomplete = true;
+                logger.warning("RK45 reached "+maxSubSteps+" sub-steps with "+(T-t)+" s of "+T+
+                               " s left; finishing with RK4 (further occurrences are counted, see getIncompleteCount).");
+            }
+            //sub-steps of the size proposed by the error control (at most 100*maxSubSteps)
+            int nSub = (int) Math.min(100.0*maxSubSteps,Math.max(1.0,Math.ceil((T-t)/h)));
+            integrateRK4(f,pos,sgn*(T-t),nSub);
+        }
+    }
+
+    /**
+     * Gets the number of velocity field evaluations made by this instance.
+     * @return - the number of evaluations
+     */
+    public long getEvaluationCount(){
+        return nEvals;
+    }
+
+    /**
+     * Gets the number of rejected RK45 sub-steps made by this instance.
+     * @return - the number of rejected sub-steps
+     */
+    public long getRejectedCount(){
+        return nRejected;
+    }
+
+    /**
+     * Gets the number of RK45 time steps that reached maxSubSteps and were
+     * finished with RK4.
+     * @return - the number of incomplete RK45 time steps
+     */
+    public long getIncompleteCount(){
+        return nIncomplete;
+    }
+
+    /**
+     * Resets the evaluation and rejection counters.
+     */
+    public void reset(){
+        nEvals = 0;
+        nRejected = 0;
+        nIncomplete = 0;
+    }
+
+    private static void clampK(VelocityField f, double[] pos){
+        if (pos[2]<0) pos[2] = 0; else
+        if (pos[2]>f.getMaxK()) pos[2] = f.getMaxK();
+    }
+}
@@ -12,6 +12,26 @@
  * 20190722: 1. Removed fields associated with egg stage attributes "devStage" and "density"
  * 20210211: 1. Added DW, TL, and WW as attributes, with corresponding growth rates.
  *           2. Revised logic slightly for setAttributes, setInfo methods, updateAttributes, updateVariables
+ * 20261019: 1. Added HSMFunction_NetCDF_Tiled as potential HSI function (primitive lon/lat lookup).
+ *           2. HSI is now evaluated once at settlement/initialization and cached, unless
+ *                PARAM_hsiIsTimeVarying is true (benthic juveniles do not move).
+ *           3. Added optional coarser (multi-rate) biological time step (PARAM_bioTimeStep).
+ *                See deferStep(dt).
+ *           4. updateNum now uses the closed-form AbundanceIntegrator, integrating over all
+ *                deferred steps in one evaluation.
+ *           5. Super-individuals with negligible abundance are culled per CullingPolicy
+ *                (checked at the end of updateNum).
+ *           6. Added sampled diagnostic tracing (StageTracer) for stage transitions.
+ *           7. Added hot-path timings and counters (StageProfiler).
+ *           8. Implements ObservableLHS; the state of live individuals is recorded at the end of each
+ *                step for the in-run output accumulators (OutputRegistry).
+ *           9. Added transition events for in-run connectivity output (OutputRegistry).
+ *           10. Added report events for the in-run lineage index (OutputRegistry).
+ *           11. Growth, mortality and HSI functions are bound to update strategies
+ *                (RateStrategies) in setParameters, replacing the type codes.
+ *           12. User-defined (compiled expression) functions (IBMFunction_UserDefined) are bound
+ *                like the built-in functions of the same category.
+ *           13. Culling tests and records only number (numTrans is not culled).
  *
  */
 
@@ -27,9 +47,20 @@ import wts.models.DisMELS.IBMFunctions.Mortality.InversePowerLawMortalityRate;
 import wts.models.DisMELS.framework.*;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.roms.model.LagrangianParticle;
+import sh.pcod.AbundanceIntegrator;
 import sh.pcod.EpijuvStage.EpijuvStageAttributes;
+import sh.pcod.CullingPolicy;
+import sh.pcod.HSMFunction_NetCDF_Tiled;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateDW;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateSL;
+import sh.pcod.IBMFunction_UserDefined;
+import sh.pcod.IBMKernelFunction;
+import sh.pcod.RateStrategies;
+import sh.pcod.StageTracer;
+import sh.pcod.StageProfiler;
+import sh.pcod.output.LHSObservation;
+import sh.pcod.output.ObservableLHS;
+import sh.pcod.output.OutputRegistry;
 import wts.models.DisMELS.IBMFunctions.HSMs.HSMFunction_Constant;
 import wts.models.DisMELS.IBMFunctions.HSMs.HSMFunction_NetCDF;
 import wts.models.DisMELS.IBMFunctions.HSMs.HSMFunction_NetCDF_InMemory;
@@ -43,12 +74,14 @@ import wts.roms.model.Interpolator3D;
  * 
  */
 @ServiceProvider(service=LifeStageInterface.class)
-public class BenthicJuvStage extends AbstractLHS {
+public class BenthicJuvStage extends AbstractLHS implements ObservableLHS {
     
         //Static fields    
             //  Static fields new to this class
     /* flag to do debug operations */
     public static boolean debug = false;
+    /* maximum relative change in weight per biological time step when using an adaptive biological time step */
+    public static double maxAdaptiveChange = 0.02;
     /* Class for attributes SH_NEW */
     public static final String attributesClass = 
             sh.pcod.BenthicJuvStage.BenthicJuvStageAttributes.class.getName();
@@ -86,6 +119,8 @@ public class BenthicJuvStage extends AbstractLHS {
     protected double  maxStageDuration;
     protected double  stageTransRate;
     protected boolean useRandomTransitions;
+    protected boolean hsiIsTimeVarying;
+    protected double  bioTimeStep;
     
         //fields that reflect (new) attribute values
     protected boolean attached = false;
@@ -123,6 +158,8 @@ public class BenthicJuvStage extends AbstractLHS {
             //other fields
     /** number of individuals transitioning to next stage */
     private double numTrans;  
+    /** number when the individual entered the stage (for culling relative to entry) */
+    private double numberAtEntry = Double.NaN;
     
     /** IBM function selected for mortality */
     private IBMFunctionInterface fcnMortality = null; 
@@ -141,16 +178,30 @@ public class BenthicJuvStage extends AbstractLHS {
     /** IBM function selected for HSM */
     private IBMFunctionInterface fcnHSI = null; 
     
-    private int typeMort = 0;//integer indicating mortality function
-    private int typeGrSL = 0;//integer indicating SL growth function
-    private int typeGrDW = 0;//integer indicating DW growth function
-    private int typeVM   = 0;//integer indicating vertical movement function
-    private int typeVV   = 0;//integer indicating vertical velocity function
-    private int typeGrTL = 0;//integer indicating TL growth function
-    private int typeGrWW = 0;//integer indicating WW growth function
-    private int typeHSI  = 0;//integer indicating HSI function
+    /** strategy bound to the selected mortality function (std_len) */
+    private IBMKernelFunction stratMort = null;
+    /** strategy bound to the selected SL growth function (T, std_len) */
+    private IBMKernelFunction stratGrSL = null;
+    /** strategy bound to the selected DW growth function (T, dry_wgt) */
+    private IBMKernelFunction stratGrDW = null;
+    /** strategy bound to the selected TL growth function (T, tot_len) */
+    private IBMKernelFunction stratGrTL = null;
+    /** strategy bound to the selected WW growth function (T, wet_wgt) */
+    private IBMKernelFunction stratGrWW = null;
+    /** strategy bound to the selected HSI function (lon, lat) */
+    private IBMKernelFunction stratHSI = null;
+    /** flag indicating hsi has been evaluated at the current (fixed) location */
+    private boolean hsiIsCached = false;
+    /** time (s) accumulated over deferred steps, not yet integrated (see deferStep) */
+    private double pendingDt = 0.0;
+    /** number of deferred steps */
+    private int pendingSteps = 0;
+    /** maximum relative growth rate in weight (1/d) at the last biological update */
+    private double bioRate = Double.NaN;
 
     private static final Logger logger = Logger.getLogger(BenthicJuvStage.class.getName());
+    /** profiler for hot-path timings and counters */
+    private static final StageProfiler prof = StageProfiler.forStage("BenthicJuvStage");
     
     /**
      * Creates a new instance of BenthicJuvStage.  
@@ -367,6 +418,7 @@ public class BenthicJuvStage extends AbstractLHS {
 
         //update local variables to capture changes made here
         updateVariables();
+        hsiIsCached = false;//evaluate HSI at the settlement location on the next step
     }
     
     /**
@@ -417,6 +469,7 @@ public class BenthicJuvStage extends AbstractLHS {
             
         //update local variables to capture changes made here
         updateVariables();
+        hsiIsCached = false;//evaluate HSI at the settlement location on the next step
     }
 
     /**
@@ -444,29 +497,38 @@ public class BenthicJuvStage extends AbstractLHS {
             fcnGrWW = params.getSelectedIBMFunctionForCategory(BenthicJuvStageParameters.FCAT_GrowthWW);
             fcnHSI  = params.getSelectedIBMFunctionForCategory(BenthicJuvStageParameters.FCAT_HSM);
             
+            //bind the update strategies once, so step(), updateNum() and 
+            //interpolateEnvVars() don't test the function types
+            stratMort = null; stratGrSL = null; stratGrDW = null; 
+            stratGrTL = null; stratGrWW = null; stratHSI = null;
             if (fcnMortality instanceof ConstantMortalityRate)
-                typeMort = BenthicJuvStageParameters.FCN_Mortality_ConstantMortalityRate;
+                stratMort = RateStrategies.ofNoInputs(fcnMortality);
             else if (fcnMortality instanceof InversePowerLawMortalityRate)
-                typeMort = BenthicJuvStageParameters.FCN_Mortality_InversePowerLawMortalityRate;
+                stratMort = RateStrategies.of(fcnMortality);//using std_len as covariate
             
-            if (fcnGrSL instanceof IBMFunction_NonEggStageSTDGrowthRateSL) 
-                typeGrSL = BenthicJuvStageParameters.FCN_GrSL_NonEggStageSTDGrowthRate;
+            if ((fcnGrSL instanceof IBMFunction_NonEggStageSTDGrowthRateSL)||
+                (fcnGrSL instanceof IBMFunction_UserDefined))
+                stratGrSL = RateStrategies.of(fcnGrSL);
             
-            if (fcnGrDW instanceof IBMFunction_NonEggStageSTDGrowthRateDW) 
-                typeGrDW = BenthicJuvStageParameters.FCN_GrDW_NonEggStageSTDGrowthRate;
+            if ((fcnGrDW instanceof IBMFunction_NonEggStageSTDGrowthRateDW)||
+                (fcnGrDW instanceof IBMFunction_UserDefined))
+                stratGrDW = RateStrategies.of(fcnGrDW);
             
-            if (fcnGrTL instanceof IBMFunction_BenthicJuv_GrowthRateTL)    
-                typeGrTL = BenthicJuvStageParameters.FCN_GrTL_BenthicJuv_GrowthRate;
+            if ((fcnGrTL instanceof IBMFunction_BenthicJuv_GrowthRateTL)||
+                (fcnGrTL instanceof IBMFunction_UserDefined))
+                stratGrTL = RateStrategies.of(fcnGrTL);
             
-            if (fcnGrWW instanceof IBMFunction_BenthicJuv_GrowthRateWW)    
-                typeGrWW = BenthicJuvStageParameters.FCN_GrWW_BenthicJuv_GrowthRate;
+            if ((fcnGrWW instanceof IBMFunction_BenthicJuv_GrowthRateWW)||
+                (fcnGrWW instanceof IBMFunction_UserDefined))
+                stratGrWW = RateStrategies.of(fcnGrWW);
             
             if (fcnHSI instanceof HSMFunction_Constant)        
-                typeHSI = BenthicJuvStageParameters.FCN_HSM_Constant;
-            else if (fcnHSI instanceof HSMFunction_NetCDF)          
-                typeHSI = BenthicJuvStageParameters.FCN_HSM_NetCDF;
-            else if (fcnHSI instanceof HSMFunction_NetCDF_InMemory) 
-                typeHSI = BenthicJuvStageParameters.FCN_HSM_NetCDF_InMemory;
+                stratHSI = RateStrategies.ofNoInputs(fcnHSI);//constant value
+            else if ((fcnHSI instanceof HSMFunction_NetCDF)||
+                     (fcnHSI instanceof HSMFunction_NetCDF_InMemory)||
+                     (fcnHSI instanceof HSMFunction_NetCDF_Tiled)) 
+                stratHSI = RateStrategies.ofPosition(fcnHSI);
+            hsiIsCached = false;//HSI function may have changed
         } else {
             //TODO: throw some error
         }
@@ -486,6 +548,10 @@ public class BenthicJuvStage extends AbstractLHS {
                 params.getValue(BenthicJuvStageParameters.PARAM_maxStageDuration,maxStageDuration);
         useRandomTransitions = 
                 params.getValue(BenthicJuvStageParameters.PARAM_useRandomTransitions,true);
+        hsiIsTimeVarying = 
+                params.getValue(BenthicJuvStageParameters.PARAM_hsiIsTimeVarying,hsiIsTimeVarying);
+        bioTimeStep = 
+                params.getValue(BenthicJuvStageParameters.PARAM_bioTimeStep,bioTimeStep);
     }
     
     /**
@@ -533,6 +599,8 @@ public class BenthicJuvStage extends AbstractLHS {
      */
     private List<LifeStageInterface> createNextLHS() {
         List<LifeStageInterface> nLHSs = null;
+        if (StageTracer.isTraced(id)) 
+            StageTracer.trace(typeName,id,time,"transition","numTrans = "+numTrans);
         try {
             //create LHS with "next" stage
             if (isSuperIndividual) {
@@ -567,14 +635,23 @@ public class BenthicJuvStage extends AbstractLHS {
         } catch (IllegalAccessException | InstantiationException ex) {
             ex.printStackTrace();
         }
+        if (nLHSs!=null) {
+            prof.count(StageProfiler.COUNT_TRANSITIONS,nLHSs.size());
+            if (isSuperIndividual) prof.count(StageProfiler.COUNT_SPLITS);
+            if (OutputRegistry.isActive()) OutputRegistry.recordTransition(this,nLHSs);
+        }
         return nLHSs;
     }
     
     @Override
     public String getReport() {
+        long tProf = prof.mark();
         updateAttributes();//make sure attributes are up to date
         atts.setValue(atts.PROP_track, getTrackAsString(COORDINATE_TYPE_GEOGRAPHIC));//
-        return atts.getCSV();
+        String csv = atts.getCSV();
+        if (OutputRegistry.isActive()) OutputRegistry.recordReport(this,csv);
+        prof.lap(StageProfiler.PHASE_REPORT,tProf);
+        return csv;
     }
 
     @Override
@@ -591,6 +668,9 @@ public class BenthicJuvStage extends AbstractLHS {
      */
     public void initialize() {
         updateVariables();//set instance variables to attribute values
+        pendingDt = 0.0;
+        pendingSteps = 0;
+        bioRate   = Double.NaN;
         int hType,vType;
         hType=vType=-1;
         double xPos, yPos, zPos;
@@ -602,6 +682,7 @@ public class BenthicJuvStage extends AbstractLHS {
         zPos       = atts.getValue(BenthicJuvStageAttributes.PROP_vertPos,zPos);
         time       = startTime;
         numTrans   = 0.0; //set numTrans to zero
+        hsiIsCached = false;
         if (debug) logger.info(hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
         if (i3d!=null) {
             double[] IJ = new double[] {xPos,yPos};
@@ -652,31 +733,45 @@ public class BenthicJuvStage extends AbstractLHS {
     
     @Override
     public void step(double dt) throws ArrayIndexOutOfBoundsException {
+        prof.count(StageProfiler.COUNT_STEPS);
+        long tProf = prof.mark();
+        //defer the biological update if stepping at a coarser biological time step
+        if (deferStep(dt)) {
+            if (OutputRegistry.isActive()) OutputRegistry.record(this);
+            return;
+        }
+        double dtb = dt+pendingDt;//biological time step (s), including deferred steps
+        int nSteps = pendingSteps+1;
         //BenthicJuveniles do not move
         double[] pos = lp.getIJK();
-        double T = i3d.interpolateTemperature(pos);
+        //use temperature at the start of the biological time step
+        double T = (pendingDt>0) ? temperature : i3d.interpolateTemperature(pos);
+        tProf = prof.lap(StageProfiler.PHASE_INTERPOLATION,tProf);
+        pendingDt = 0.0;
+        pendingSteps = 0;
         
         time += dt;
-        double dtday = dt/86400;//time step in days
+        double dtday = dtb/86400;//biological time step in days
         //calculate growth in length, weight
         if(T<=0.0) T=0.01; 
-        if (typeGrSL==BenthicJuvStageParameters.FCN_GrSL_NonEggStageSTDGrowthRate)
-            grSL = (Double) fcnGrSL.calculate(new Double[]{T,std_len});
-        if (typeGrDW==BenthicJuvStageParameters.FCN_GrDW_NonEggStageSTDGrowthRate)
-            grDW = (Double) fcnGrDW.calculate(new Double[]{T,dry_wgt});
-        if (typeGrTL==BenthicJuvStageParameters.FCN_GrTL_BenthicJuv_GrowthRate)
-            grTL = (Double) fcnGrTL.calculate(T);
-        if (typeGrWW==BenthicJuvStageParameters.FCN_GrWW_BenthicJuv_GrowthRate)
-            grWW = (Double) fcnGrWW.calculate(T);
+        if (stratGrSL!=null) grSL = stratGrSL.calculate(T,std_len);
+        if (stratGrDW!=null) grDW = stratGrDW.calculate(T,dry_wgt);
+        if (stratGrTL!=null) grTL = stratGrTL.calculate(T,tot_len);
+        if (stratGrWW!=null) grWW = stratGrWW.calculate(T,wet_wgt);
         std_len += grSL*dtday;
         dry_wgt *= Math.exp(grDW * dtday);
         tot_len += grTL*dtday;
         wet_wgt *= Math.exp(grWW * dtday);
+        bioRate  = Math.max(Math.abs(grDW),Math.abs(grWW));
         
+        tProf = prof.lap(StageProfiler.PHASE_FUNCTIONS,tProf);
         updatePosition(pos);
+        tProf = prof.lap(StageProfiler.PHASE_TRACKING,tProf);
         updateEnvVars(pos);
-        updateNum(dt);
+        tProf = prof.lap(StageProfiler.PHASE_INTERPOLATION,tProf);
+        updateNum(dtb/nSteps,nSteps);
         updateAge(dt);
+        tProf = prof.lap(StageProfiler.PHASE_FUNCTIONS,tProf);
         
         //check for exiting grid (no real need for this until BenthicJuvs move)
         if (i3d.isAtGridEdge(pos,tolGridEdge)){
@@ -687,8 +782,44 @@ public class BenthicJuvStage extends AbstractLHS {
             logger.info(toString());
         }
         updateAttributes(); //update the attributes object w/ nmodified values
+        prof.lap(StageProfiler.PHASE_ATTRIBUTES,tProf);
+        if (OutputRegistry.isActive()) OutputRegistry.record(this);
     }
 
+    /**
+     * Determines whether the biological update for a (model) time step can be
+     * deferred and integrated later over a coarser biological time step 
+     * (PARAM_bioTimeStep). If so, only time and age are advanced.
+     * 
+     * Environmental conditions (and the HSI) are fixed over the biological 
+     * time step. Steps are not deferred if the minimum stage duration would
+     * be reached or the maximum stage duration exceeded by the end of the step, 
+     * so death occurs on the same model time step as without deferral. The 
+     * adaptive biological time step limits the relative change in weight per 
+     * biological step to maxAdaptiveChange.
+     * 
+     * @param dt - model time step in seconds
+     * 
+     * @return - true if the biological update was deferred
+     */
+    private boolean deferStep(double dt){
+        if ((bioTimeStep==0)||(dt<=0)||Double.isNaN(bioRate)) return false;
+        double dtb = pendingDt+dt;
+        double interval = (bioTimeStep>0) ? bioTimeStep : -bioTimeStep;
+        if ((bioTimeStep<0)&&(bioRate>0)) interval = Math.min(interval,maxAdaptiveChange/bioRate*86400);
+        if (dtb>=interval) return false;
+        double dtday = dt/86400;
+        if (AbundanceIntegrator.reachesMinStageDuration(ageInStage,dtday,minStageDuration,1)) return false;
+        if (ageInStage+dtday>maxStageDuration) return false;
+        pendingDt   = dtb;
+        pendingSteps++;
+        time       += dt;
+        age        += dtday;
+        ageInStage += dtday;
+        super.updateAttributes();
+        return true;
+    }
+    
     /**
      *
      * @param dt - time step in seconds
@@ -703,27 +834,31 @@ public class BenthicJuvStage extends AbstractLHS {
     }
 
     /**
-     *
-     * @param dt - time step in seconds
+     * Updates number and numTrans over nSteps identical time steps in a single
+     * (closed-form) evaluation, assuming rates are constant over the steps.
+     * 
+     * @param dt     - time step in seconds
+     * @param nSteps - number of time steps
      */
-    private void updateNum(double dt) {
+    private void updateNum(double dt, int nSteps) {
+        if (Double.isNaN(numberAtEntry)) numberAtEntry = number;
         //{WTS_NEW 2012-07-26:
         double mortalityRate = 0.0D;//in unis of [days]^-1
-        if (typeMort == BenthicJuvStageParameters.FCN_Mortality_ConstantMortalityRate){
-            mortalityRate = (Double)fcnMortality.calculate(null);
-        } else 
-        if (typeMort == BenthicJuvStageParameters.FCN_Mortality_InversePowerLawMortalityRate){
-          mortalityRate = (Double)fcnMortality.calculate(std_len);//using standard length as covariate for mortality
-        }
+        if (stratMort!=null) mortalityRate = stratMort.calculate(std_len,0.0);//using standard length as covariate for mortality
         double totRate = mortalityRate;
         if ((ageInStage>=minStageDuration)) {
             totRate += stageTransRate;
             //apply mortality rate to previous number transitioning and
             //add in new transitioners
-            numTrans = numTrans*Math.exp(-dt*mortalityRate/86400)+
-                    (stageTransRate/totRate)*number*(1-Math.exp(-dt*totRate/86400));
+            numTrans = AbundanceIntegrator.advanceTransitioning(number,numTrans,mortalityRate,stageTransRate,dt,nSteps);
+        }
+        number = AbundanceIntegrator.advanceNumber(number,totRate,dt,nSteps);
+        if (isSuperIndividual&&CullingPolicy.cull(typeName,gridCellID,number,numberAtEntry)){
+            //negligible abundance: retire the individual (number is recorded as culled)
+            number = 0.0;
+            alive  = false;
+            active = false;
         }
-        number = number*Math.exp(-dt*totRate/86400);
     }
     
     /**
@@ -740,6 +875,7 @@ public class BenthicJuvStage extends AbstractLHS {
      * @param pos - double[] giving position in ROMS {xi, eta, K} grid coordinates
      */
     private void updatePosition(double[] pos) {
+        prof.count(StageProfiler.COUNT_INTERPOLATIONS);
         bathym     =  i3d.interpolateBathymetricDepth(pos);
         depth      = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
         lat        =  i3d.interpolateLat(pos);
@@ -758,11 +894,13 @@ public class BenthicJuvStage extends AbstractLHS {
      *   4. copepod density (if included in the physical environment)
      *   5. euphausiid density (if included in the physical environment)
      *   6. neocalanus density (if included in the physical environment)
-     *   7. hsi
+     *   7. hsi (only if not yet evaluated at the current location or the
+     *        HSI source is time-varying, since benthic juveniles do not move)
      * </pre>
      * @param pos - double[] giving position in ROMS {xi, eta, K} grid coordinates
      */
     private void updateEnvVars(double[] pos) {
+        prof.count(StageProfiler.COUNT_INTERPOLATIONS);
         temperature = i3d.interpolateTemperature(pos);
         salinity    = i3d.interpolateSalinity(pos);
         
@@ -779,25 +917,9 @@ public class BenthicJuvStage extends AbstractLHS {
         if (i3d.getPhysicalEnvironment().getField(FIELD_NCa)!=null) 
             neocalanus = i3d.interpolateValue(pos,FIELD_NCa,Interpolator3D.INTERP_VAL);
         
-        switch (typeHSI) {
-            case BenthicJuvStageParameters.FCN_HSM_Constant:
-                hsi = (Double)fcnHSI.calculate(null);//constant value
-                break;
-            case BenthicJuvStageParameters.FCN_HSM_NetCDF:
-                {
-                    double[] posLL = new double[]{lon,lat};
-                    hsi = (Double)fcnHSI.calculate(posLL);
-                    break;
-                }
-            case BenthicJuvStageParameters.FCN_HSM_NetCDF_InMemory:
-                {
-                    double[] posLL = new double[]{lon,lat};
-                    hsi = (Double)fcnHSI.calculate(posLL);
-                    break;
-                }
-            default:
-                break;
-        }
+        if (hsiIsCached && !hsiIsTimeVarying) return;
+        if (stratHSI!=null) hsi = stratHSI.calculate(lon,lat);
+        hsiIsCached = true;
     }
 
     @Override
@@ -871,6 +993,38 @@ public class BenthicJuvStage extends AbstractLHS {
         return isSuperIndividual;
     }
     
+    /**
+     * Fills in an observation with the current state of the individual
+     * (see ObservableLHS).
+     * 
+     * @param obs - the observation
+     */
+    @Override
+    public void observe(LHSObservation obs) {
+        obs.typeName    = typeName;
+        obs.id          = id;
+        obs.parentID    = atts.getValue(BenthicJuvStageAttributes.PROP_parentID,id);
+        obs.origID      = atts.getValue(BenthicJuvStageAttributes.PROP_origID,id);
+        obs.time        = time;
+        obs.lon         = lon;
+        obs.lat         = lat;
+        obs.depth       = depth;
+        obs.bathym      = bathym;
+        obs.gridCellID  = gridCellID;
+        obs.number      = number;
+        obs.age         = age;
+        obs.ageInStage  = ageInStage;
+        obs.attached    = attached;
+        obs.std_len     = std_len;
+        obs.dry_wgt     = dry_wgt;
+        obs.grSL        = grSL;
+        obs.grDW        = grDW;
+        obs.temperature = temperature;
+        obs.tot_len     = tot_len;
+        obs.wet_wgt     = wet_wgt;
+        obs.hsi         = hsi;
+    }
+    
     /**
      * Updates attribute values defined for this class. 
      */
@@ -8,6 +8,11 @@
  * 20190722: 1. Added FCAT_HSM IBMFunction category to incorporate habitat suitabiltiy map-type IBMFunctions.
  * 20210205: 1. Added IBMFunction categories FCAT_GrowthSL, FCAT_GrowthDW, FCAT_GrowthTL, FCAT_GrowthWW.
  * 20210208: 1. Added integer flags for IBMFunctions.
+ * 20261019: 1. Added HSMFunction_NetCDF_Tiled as potential FCAT_HSM IBMFunction.
+ *           2. Added PARAM_hsiIsTimeVarying to re-evaluate HSI every time step.
+ *           3. Added PARAM_bioTimeStep for coarser (multi-rate) biological time stepping.
+ *           4. Added the user-defined (compiled expression) function IBMFunction_UserDefined
+ *                to the GrowthSL, GrowthDW, GrowthTL, GrowthWW categories.
  *
  */
 
@@ -19,8 +24,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
+import sh.pcod.HSMFunction_NetCDF_Tiled;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateDW;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateSL;
+import sh.pcod.IBMFunction_UserDefined;
 import wts.models.DisMELS.IBMFunctions.HSMs.HSMFunction_Constant;
 import wts.models.DisMELS.IBMFunctions.HSMs.HSMFunction_NetCDF;
 import wts.models.DisMELS.IBMFunctions.HSMs.HSMFunction_NetCDF_InMemory;
@@ -45,12 +52,14 @@ public class BenthicJuvStageParameters extends AbstractLHSParameters {
     public static final long serialVersionUID = 1L;
     
     /** the number of IBMParameter objects defined in the class */
-    public static final int numParams = 5;
+    public static final int numParams = 7;
     public static final String PARAM_isSuperIndividual      = "is a super-individual?";
     public static final String PARAM_horizRWP               = "horizontal random walk parameter [m^2]/[s]";
     public static final String PARAM_minStageDuration       = "min stage duration [d]";
     public static final String PARAM_maxStageDuration       = "max stage duration [d]";
     public static final String PARAM_useRandomTransitions   = "use random transitions";
+    public static final String PARAM_hsiIsTimeVarying       = "re-evaluate HSI each time step (time-varying HSM)?";
+    public static final String PARAM_bioTimeStep            = "biological time step [s] (0: model time step; <0: adaptive, up to |value|)";
     
     /** the number of IBMFunction categories defined in the class */
     public static final int numFunctionCats = 6;
@@ -75,6 +84,7 @@ public class BenthicJuvStageParameters extends AbstractLHSParameters {
     public static final int FCN_HSM_Constant        = 1;
     public static final int FCN_HSM_NetCDF          = 2;
     public static final int FCN_HSM_NetCDF_InMemory = 3;
+    public static final int FCN_HSM_NetCDF_Tiled    = 4;
     
     private static final Logger logger = Logger.getLogger(BenthicJuvStageParameters.class.getName());
     
@@ -109,6 +119,8 @@ public class BenthicJuvStageParameters extends AbstractLHSParameters {
         key = PARAM_minStageDuration;     mapParams.put(key,new IBMParameterDouble(key,key,new Double(0)));
         key = PARAM_maxStageDuration;     mapParams.put(key,new IBMParameterDouble(key,key,new Double(365)));
         key = PARAM_useRandomTransitions; mapParams.put(key,new IBMParameterBoolean(key,key,false));
+        key = PARAM_hsiIsTimeVarying;     mapParams.put(key,new IBMParameterBoolean(key,key,false));
+        key = PARAM_bioTimeStep;          mapParams.put(key,new IBMParameterDouble(key,key,new Double(0)));
     }
 
     @Override
@@ -128,21 +140,25 @@ public class BenthicJuvStageParameters extends AbstractLHSParameters {
         mapOfPotentialFunctions = new LinkedHashMap<>(2); 
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new IBMFunction_NonEggStageSTDGrowthRateSL(); mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         
         cat = FCAT_GrowthDW; 
         mapOfPotentialFunctions = new LinkedHashMap<>(2); 
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new IBMFunction_NonEggStageSTDGrowthRateDW(); mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         
         cat = FCAT_GrowthTL; 
         mapOfPotentialFunctions = new LinkedHashMap<>(2); 
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new IBMFunction_BenthicJuv_GrowthRateTL();           mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                       mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         
         cat = FCAT_GrowthWW; 
         mapOfPotentialFunctions = new LinkedHashMap<>(2); 
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new IBMFunction_BenthicJuv_GrowthRateWW();           mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                       mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         
         cat = FCAT_HSM;  
         mapOfPotentialFunctions = new LinkedHashMap<>(6); 
@@ -150,6 +166,7 @@ public class BenthicJuvStageParameters extends AbstractLHSParameters {
         ifi = new HSMFunction_Constant();          mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         ifi = new HSMFunction_NetCDF();            mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         ifi = new HSMFunction_NetCDF_InMemory();   mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new HSMFunction_NetCDF_Tiled();      mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
     }
     
     /**
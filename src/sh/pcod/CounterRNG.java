@@ -0,0 +1,306 @@
+/*
+ * CounterRNG.java
+ *
+ * 20261019: created class.
+ *           2. Draws use a per-thread stream (no allocation); normal deviates come from
+ *                the NormalDeviates ziggurat instead of Box-Muller.
+ *           3. Added run seeds and run-local ids (setRunSeed, addIndividual) so ensemble members
+ *                draw the same numbers when run alone.
+ *           4. Draws take the individual's key, resolved once (addIndividual, kept on the individual via
+ *                RandomKeyedLHS, or getKey); no lookup or lock per draw. Unregistered individuals in a run fail.
+ */
+package sh.pcod;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Counter-based random number generator (Philox4x32-10, Salmon et al. 2011)
+ * for reproducible stochastic individual behavior.
+ *
+ * Every draw is a pure function of (seed, individual id, counter, purpose),
+ * so there is no shared generator state: draws are lock-free and the results
+ * of a model run do not depend on the order in which individuals are stepped
+ * or on the number of threads used to step them. Stage classes use the
+ * model time at the start of a time step as the counter for per-step draws,
+ * and 0 for per-individual (lifetime) draws.
+ *
+ * Draws are made with a key for the individual (see getKey). Individual ids
+ * come from the framework's (process-wide) counter, so they depend on
+ * everything else created in the process. A batch run (ModelRun) therefore
+ * sets a run seed and registers its individuals in its run scope (see
+ * RunScope): addIndividual returns a key from the run seed and the
+ * individual's run-local id (the order in which the run added it), which is
+ * kept on the individual (RandomKeyedLHS), so an ensemble member draws the
+ * same numbers when run alone. Without a run (GUI), the key is made from the
+ * seed and the framework id.
+ *
+ * @author William Stockhausen
+ */
+public class CounterRNG {
+
+    /** purpose code for horizontal random walk deviates */
+    public static final int PURPOSE_RANDOM_WALK   = 1;
+    /** purpose code for the first-feeding threshold */
+    public static final int PURPOSE_FIRST_FEEDING = 2;
+
+    /** default seed */
+    public static final long DEFAULT_SEED = 20261019L;
+
+    /** flag to use counter-based draws for horizontal random walks (otherwise NormalDeviates is used) */
+    public static boolean useForRandomWalks = true;
+
+    /* Philox4x32 constants */
+    private static final long M0 = 0xD2511F53L;
+    private static final long M1 = 0xCD9E8D57L;
+    private static final int  W0 = 0x9E3779B9;
+    private static final int  W1 = 0xBB67AE85;
+    private static final long MASK = 0xFFFFFFFFL;
+    /** 2^-53 */
+    private static final double TWO_M53 = 1.0/(1L<<53);
+
+    /** per-thread streams (re-used for every draw) */
+    private static final ThreadLocal<Stream> streams = new ThreadLocal<Stream>(){
+        @Override
+        protected Stream initialValue(){
+            return new Stream();
+        }
+    };
+
+    /** (mixed) seed */
+    private static volatile long seedKey = mix(DEFAULT_SEED);
+
+    /**
+     * Key and run-local ids of a run scope.
+     */
+    private static final class Run {
+        /** (mixed) run seed */
+        final long key;
+        /** run-local id and number of registered individuals with the id, by framework id */
+        final Map<Long,long[]> ids = new HashMap<>();
+        /** next run-local id */
+        long nextID = 0;
+
+        Run(long key){
+            this.key = key;
+        }
+    }
+
+    /** runs by run scope */
+    private static final ConcurrentMap<String,Run> runs = new ConcurrentHashMap<>();
+
+    /**
+     * Sets the seed. Call before a model run starts.
+     *
+     * @param seed - the seed
+     */
+    public static void setSeed(long seed){
+        seedKey = mix(seed);
+    }
+
+    /**
+     * Sets the seed of the current run scope and starts its run-local ids at
+     * 0. Call before the run's individuals are created.
+     *
+     * @param seed - the run seed
+     */
+    public static void setRunSeed(long seed){
+        runs.put(RunScope.get(),new Run(mix(seed)));
+    }
+
+    /**
+     * Registers an individual added to the run of the current run scope,
+     * giving it the next run-local id. An individual with the id of one
+     * already registered (the next stage of a single individual) gets the
+     * same run-local id. Individuals must be added in the same order whenever
+     * the run is repeated.
+     *
+     * @param id - the individual's (framework) id
+     *
+     * @return - the key for the individual's draws (run seed and run-local id)
+     *
+     * @throws IllegalStateException if no run seed is set in the scope
+     */
+    public static long addIndividual(long id){
+        Run r = runs.get(RunScope.get());
+        if (r==null) throw new IllegalStateException("No run seed set in run scope '"+RunScope.get()+"'.");
+        synchronized(r){
+            long[] v = r.ids.get(id);
+            if (v==null) {
+                v = new long[]{r.nextID++,1};
+                r.ids.put(id,v);
+            } else {
+                v[1]++;
+            }
+            return r.key^v[0];
+        }
+    }
+
+    /**
+     * Removes an individual (that died) from the run of the current run scope.
+     *
+     * @param id - the individual's (framework) id
+     */
+    public static void removeIndividual(long id){
+        Run r = runs.get(RunScope.get());
+        if (r==null) return;
+        synchronized(r){
+            long[] v = r.ids.get(id);
+            if ((v!=null)&&(--v[1]<=0)) r.ids.remove(id);
+        }
+    }
+
+    /**
+     * Removes the seed and run-local ids of the current run scope (at the
+     * end of a run).
+     */
+    public static void clearRun(){
+        runs.remove(RunScope.get());
+    }
+
+    /**
+     * Computes the Philox4x32-10 block for the given key and counter.
+     *
+     * @param k0,k1       - key words
+     * @param c0,c1,c2,c3 - counter words
+     * @param out         - (output) int[4] with the random block
+     */
+    static void philox(int k0, int k1, int c0, int c1, int c2, int c3, int[] out){
+        for (int r=0;r<10;r++){
+            long p0 = M0*(c0&MASK);
+            long p1 = M1*(c2&MASK);
+            int n0 = (int)(p1>>>32)^c1^k0;
+            int n1 = (int)p1;
+            int n2 = (int)(p0>>>32)^c3^k1;
+            int n3 = (int)p0;
+            c0 = n0; c1 = n1; c2 = n2; c3 = n3;
+            k0 += W0; k1 += W1;
+        }
+        out[0] = c0; out[1] = c1; out[2] = c2; out[3] = c3;
+    }
+
+    /**
+     * Gets the key for the draws of an individual that has no key from a
+     * run (addIndividual): the seed and the framework id.
+     *
+     * @param id - the individual's (framework) id
+     *
+     * @return - the key
+     *
+     * @throws IllegalStateException if a run seed is set in the current run
+     * scope (the individual should have been registered with the run)
+     */
+    public static long getKey(long id){
+        if (!runs.isEmpty()&&runs.containsKey(RunScope.get()))
+            throw new IllegalStateException("Individual "+id+" was not registered with the run in scope '"+
+                                            RunScope.get()+"' (CounterRNG.addIndividual).");
+        return seedKey^id;
+    }
+
+    /**
+     * Gets the calling thread's stream, positioned at the start of the draws
+     * for a key, counter and purpose.
+     */
+    private static Stream stream(long key, long counter, int purpose){
+        Stream s = streams.get();
+        s.reset(key,counter,purpose);
+        return s;
+    }
+
+    /**
+     * Gets a uniform deviate on (0,1).
+     *
+     * @param key     - the individual's key (addIndividual or getKey)
+     * @param counter - counter (e.g., step time or 0 for a lifetime draw)
+     * @param purpose - purpose code
+     *
+     * @return - the deviate
+     */
+    public static double uniform(long key, long counter, int purpose){
+        return toUniform(stream(key,counter,purpose).nextLong());
+    }
+
+    /**
+     * Gets a uniform deviate on (0,1) for a step starting at the given model time.
+     *
+     * @param key     - the individual's key (addIndividual or getKey)
+     * @param time    - model time (s) at the start of the step
+     * @param purpose - purpose code
+     *
+     * @return - the deviate
+     */
+    public static double uniform(long key, double time, int purpose){
+        return uniform(key,Double.doubleToLongBits(time),purpose);
+    }
+
+    /**
+     * Gets a pair of independent standard normal deviates (ziggurat, see
+     * NormalDeviates, fed with the counter-based uniforms) for a step
+     * starting at the given model time.
+     *
+     * @param key     - the individual's key (addIndividual or getKey)
+     * @param time    - model time (s) at the start of the step
+     * @param purpose - purpose code
+     * @param out     - (output) array with the deviates in out[0] and out[1]
+     */
+    public static void normalPair(long key, double time, int purpose, double[] out){
+        Stream s = stream(key,Double.doubleToLongBits(time),purpose);
+        out[0] = s.ziggurat();
+        out[1] = s.ziggurat();
+    }
+
+    private static double toUniform(long w){
+        return ((w>>>11)+0.5)*TWO_M53;
+    }
+
+    private static long mix(long z){
+        z += 0x9E3779B97F4A7C15L;
+        z = (z^(z>>>30))*0xBF58476D1CE4E5B9L;
+        z = (z^(z>>>27))*0x94D049BB133111EBL;
+        return z^(z>>>31);
+    }
+
+    /**
+     * Per-thread stream of 64-bit words for one (individual, counter,
+     * purpose): the words of the Philox blocks with the fourth counter word
+     * 0, 1, 2, ... (two words per block). The ziggurat of NormalDeviates
+     * draws from it, so normal deviates need no Box-Muller transform and
+     * nothing is allocated per draw.
+     */
+    private static final class Stream extends NormalDeviates {
+        private final int[] b = new int[4];
+        private int k0, k1, c0, c1, purpose, block;
+        /** second word of the current block */
+        private long w1;
+        /** true if w1 has not been used */
+        private boolean hasW1;
+
+        Stream(){
+            super(0L);
+        }
+
+        void reset(long key, long counter, int purpose){
+            k0 = (int)key;
+            k1 = (int)(key>>>32);
+            c0 = (int)counter;
+            c1 = (int)(counter>>>32);
+            this.purpose = purpose;
+            block = 0;
+            hasW1 = false;
+        }
+
+        @Override
+        long nextLong(){
+            if (hasW1) {
+                hasW1 = false;
+                return w1;
+            }
+            philox(k0,k1,c0,c1,purpose,block++,b);
+            w1 = ((b[2]&MASK)<<32)|(b[3]&MASK);
+            hasW1 = true;
+            return ((b[0]&MASK)<<32)|(b[1]&MASK);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * CullingPolicy.java
+ *
+ * 20261019: created class.
+ *           2. Only number is tested and culled; numTrans is left to make the transition.
+ *           3. Policies and accounting are kept per run scope (RunScope).
+ */
+package sh.pcod;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Policy for culling super-individuals whose abundance has become negligible.
+ *
+ * A policy is set per life stage (by type name) with an absolute threshold
+ * (number) and/or a threshold relative to the number when the individual
+ * entered the stage (for eggs, the released number). Stage classes check
+ * the policy at the end of updateNum(...). The number of a culled
+ * super-individual is set to zero and added to the culled-abundance
+ * accounting by stage and grid cell, so that it can be treated as mortality.
+ * The number transitioning to the next stage (numTrans) is not culled: the
+ * individual is retired after it has made the transition (or at once if
+ * there is nothing to transition).
+ *
+ * By default no policies are set and nothing is culled.
+ *
+ * Policies and accounting are kept per run scope (see RunScope): the static
+ * methods act on those of the calling thread's scope, so the members of an
+ * ensemble can have their own thresholds and are accounted for separately.
+ *
+ * @author William Stockhausen
+ */
+public class CullingPolicy {
+
+    /**
+     * Policies and culled-abundance accounting of a run scope.
+     */
+    private static final class Scope {
+        /** policies by stage type name */
+        final Map<String,CullingPolicy> policies = new ConcurrentHashMap<>();
+        /** culled abundance and number of culled individuals, by stage type name and grid cell (guarded by this) */
+        final Map<String,Map<String,double[]>> culled = new LinkedHashMap<>();
+    }
+
+    /** policies and accounting by run scope */
+    private static final ConcurrentMap<String,Scope> scopes = new ConcurrentHashMap<>();
+
+    private static final Logger logger = Logger.getLogger(CullingPolicy.class.getName());
+
+    /** absolute threshold: cull if number < minNumber */
+    private final double minNumber;
+    /** relative threshold: cull if number < minFraction*(number at stage entry) */
+    private final double minFraction;
+
+    private CullingPolicy(double minNumber, double minFraction){
+        this.minNumber   = minNumber;
+        this.minFraction = minFraction;
+    }
+
+    /**
+     * Gets the policies and accounting of the current run scope, creating them
+     * if necessary.
+     */
+    private static Scope getScope(){
+        String id = RunScope.get();
+        Scope sc = scopes.get(id);
+        if (sc==null) {
+            sc = new Scope();
+            Scope o = scopes.putIfAbsent(id,sc);
+            if (o!=null) sc = o;
+        }
+        return sc;
+    }
+
+    /**
+     * Sets the culling policy for a life stage. Use 0 to disable either threshold.
+     *
+     * @param typeName    - the stage type name
+     * @param minNumber   - absolute threshold on number
+     * @param minFraction - threshold on number relative to the number at stage entry
+     */
+    public static void setPolicy(String typeName, double minNumber, double minFraction){
+        Scope sc = getScope();
+        if ((minNumber<=0)&&(minFraction<=0)) {
+            sc.policies.remove(typeName);
+        } else {
+            sc.policies.put(typeName,new CullingPolicy(minNumber,minFraction));
+            logger.info("Culling policy for "+typeName+": number < "+minNumber+
+                        " or number < "+minFraction+" x number at stage entry");
+        }
+    }
+
+    /**
+     * Removes all culling policies.
+     */
+    public static void clearPolicies(){
+        getScope().policies.clear();
+    }
+
+    /**
+     * Tests whether a super-individual should be culled and, if so, records
+     * its number as culled.
+     *
+     * @param typeName      - the stage type name
+     * @param gridCellID    - the grid cell id
+     * @param number        - current number
+     * @param numberAtEntry - number when the individual entered the stage
+     *
+     * @return - true if the individual should be culled
+     */
+    public static boolean cull(String typeName, String gridCellID,
+                               double number, double numberAtEntry){
+        if (scopes.isEmpty()) return false;
+        Scope sc = scopes.get(RunScope.get());
+        if ((sc==null)||sc.policies.isEmpty()) return false;
+        CullingPolicy p = sc.policies.get(typeName);
+        if (p==null) return false;
+        boolean doCull = (number<p.minNumber)||
+                         ((p.minFraction>0)&&(numberAtEntry>0)&&(number<p.minFraction*numberAtEntry));
+        if (doCull) record(sc,typeName,gridCellID,number);
+        return doCull;
+    }
+
+    private static void record(Scope sc, String typeName, String gridCellID, double abundance){
+        synchronized(sc){
+            Map<String,double[]> byCell = sc.culled.get(typeName);
+            if (byCell==null) {
+                byCell = new LinkedHashMap<>();
+                sc.culled.put(typeName,byCell);
+            }
+            double[] v = byCell.get(gridCellID);
+            if (v==null) {
+                v = new double[2];
+                byCell.put(gridCellID,v);
+            }
+            v[0] += abundance;
+            v[1] += 1;
+        }
+    }
+
+    /**
+     * Gets the total culled abundance for a life stage.
+     *
+     * @param typeName - the stage type name
+     *
+     * @return - the culled abundance
+     */
+    public static double getCulledAbundance(String typeName){
+        Scope sc = getScope();
+        double tot = 0.0;
+        synchronized(sc){
+            Map<String,double[]> byCell = sc.culled.get(typeName);
+            if (byCell!=null) for (double[] v: byCell.values()) tot += v[0];
+        }
+        return tot;
+    }
+
+    /**
+     * Writes the culled abundance accounting as csv with columns
+     * stage, grid cell id, culled abundance, number of culled individuals.
+     *
+     * @param w - the writer
+     *
+     * @throws IOException
+     */
+    public static void writeCSV(Writer w) throws IOException {
+        Scope sc = getScope();
+        synchronized(sc){
+            w.write("typeName,gridCellID,culledAbundance,nCulled\n");
+            for (String typeName: sc.culled.keySet()){
+                Map<String,double[]> byCell = sc.culled.get(typeName);
+                for (String cell: byCell.keySet()){
+                    double[] v = byCell.get(cell);
+                    w.write(typeName+","+cell+","+v[0]+","+((long)v[1])+"\n");
+                }
+            }
+        }
+        w.flush();
+    }
+
+    /**
+     * Clears the culled abundance accounting.
+     */
+    public static void resetAccounting(){
+        Scope sc = getScope();
+        synchronized(sc){
+            sc.culled.clear();
+        }
+    }
+
+    /**
+     * Removes the policies and the accounting of the current run scope (at
+     * the end of a run).
+     */
+    public static void clear(){
+        scopes.remove(RunScope.get());
+    }
+}
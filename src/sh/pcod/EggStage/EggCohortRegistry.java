@@ -0,0 +1,105 @@
+/*
+ * EggCohortRegistry.java
+ *
+ * 20261019: created class.
+ *           2. Cohort keys include the run scope (ensemble members).
+ *           3. Cohorts are kept per run scope; leaders are removed when they die or start to hatch,
+ *                and clear removes the current scope's cohorts (called by ModelRun.close).
+ */
+package sh.pcod.EggStage;
+
+import java.util.HashMap;
+import java.util.Map;
+import sh.pcod.RunScope;
+
+/**
+ * Registry of egg cohorts for the grid-cell cohort mode of EggStage
+ * (PARAM_useCohorts).
+ *
+ * Demersal eggs do not move, so all super-individual eggs released in the same
+ * grid cell on the same (model) day form one cohort. The first egg of a cohort
+ * to be stepped becomes the cohort's record (its "leader"); every later egg of
+ * the cohort is merged into the leader (abundance-weighted, see
+ * EggStage.mergeWith) as soon as both are at the same model time, and is then
+ * retired. From then on, temperature is sampled and growth, development and
+ * mortality are updated once per cohort, and YSL individuals are created only
+ * at hatch (as super-individuals, from the leader's numTrans).
+ *
+ * Cohorts are kept per run scope (see RunScope), so ensemble members don't
+ * share cohorts. A leader is removed when it dies or starts to hatch (later
+ * eggs of its key then start a new cohort), and a batch run removes the
+ * cohorts of its scope at its end (clear).
+ *
+ * @author William Stockhausen
+ */
+public class EggCohortRegistry {
+
+    /** cohort leaders by key (grid cell id and release day), by run scope */
+    private static final Map<String,Map<String,EggStage>> cohorts = new HashMap<>();
+
+    /**
+     * Creates the cohort key for a grid cell and release time.
+     *
+     * @param gridCellID - the grid cell id
+     * @param startTime  - the release time (s)
+     *
+     * @return - the key
+     */
+    static String getKey(String gridCellID, double startTime){
+        return gridCellID+"_"+((long)Math.floor(startTime/86400));
+    }
+
+    /**
+     * Gets the leader of a cohort in the current run scope, registering the
+     * given egg as the leader if the cohort has no live leader.
+     *
+     * @param key - the cohort key
+     * @param egg - the egg looking for its cohort
+     *
+     * @return - the leader (the egg itself if it became the leader)
+     */
+    static synchronized EggStage getLeader(String key, EggStage egg){
+        Map<String,EggStage> scope = cohorts.get(RunScope.get());
+        if (scope==null) {
+            scope = new HashMap<>();
+            cohorts.put(RunScope.get(),scope);
+        }
+        EggStage leader = scope.get(key);
+        if ((leader==null)||!leader.isAlive()){
+            scope.put(key,egg);
+            leader = egg;
+        }
+        return leader;
+    }
+
+    /**
+     * Removes a cohort of the current run scope if the given egg is its leader.
+     *
+     * @param key    - the cohort key
+     * @param leader - the leader
+     */
+    static synchronized void remove(String key, EggStage leader){
+        Map<String,EggStage> scope = cohorts.get(RunScope.get());
+        if ((scope!=null)&&(scope.get(key)==leader)) {
+            scope.remove(key);
+            if (scope.isEmpty()) cohorts.remove(RunScope.get());
+        }
+    }
+
+    /**
+     * Gets the number of cohorts registered in the current run scope.
+     *
+     * @return - the number of cohorts
+     */
+    public static synchronized int getNumberOfCohorts(){
+        Map<String,EggStage> scope = cohorts.get(RunScope.get());
+        return (scope==null) ? 0 : scope.size();
+    }
+
+    /**
+     * Removes the cohorts of the current run scope (at the end of a run).
+     */
+    public static synchronized void clear(){
+        cohorts.remove(RunScope.get());
+    }
+}
@@ -14,6 +14,32 @@
  * 2021-10-20: 1. Corrected error identifying grDW function correctly if 
  *                  typeGrDW was not EggStageParameters.FCN_GrDW_EggStage_GrowthRate
  * 2021-10-22: 1. Removed testing variables Su, Sv.
+ * 2026-10-19: 1. Added optional coarser (multi-rate) biological time step (PARAM_bioTimeStep).
+ *                See deferStep(dt).
+ *             2. updateNum now uses the closed-form AbundanceIntegrator, integrating over all
+ *                deferred steps in one evaluation.
+ *             3. Implements MergeableLHS so super-individuals can be merged by SuperIndividualMerger.
+ *             4. Super-individuals with negligible abundance are culled per CullingPolicy
+ *                (checked at the end of updateNum).
+ *             5. Added grid-cell egg cohort mode (PARAM_useCohorts): super-individual eggs released
+ *                in the same grid cell on the same day are merged into one cohort record (see joinCohort).
+ *             6. Added sampled diagnostic tracing (StageTracer) for stage transitions and exceptions.
+ *             7. Added hot-path timings and counters (StageProfiler).
+ *             8. Implements ObservableLHS; the state of live individuals is recorded at the end of each
+ *                step for the in-run output accumulators (OutputRegistry).
+ *             9. Added release and transition events for in-run connectivity output (OutputRegistry).
+ *             10. Added report events for the in-run lineage index (OutputRegistry).
+ *             11. Growth, stage duration and mortality/hatch success functions are bound to
+ *                update strategies (RateStrategies) in setParameters, replacing the type codes.
+ *             12. User-defined (compiled expression) functions (IBMFunction_UserDefined) are bound
+ *                like the built-in functions of the same category.
+ *             13. Deferred steps are integrated before the step reaching the minimum stage duration
+ *                (the transition rate was applied to deferred time before it).
+ *             14. Culling tests and records only number: numTrans is left to make the transition,
+ *                after which the individual is retired.
+ *             15. mergeWith sums the numbers at stage entry (for relative culling).
+ *             16. Cohort leaders leave the registry when they die, are merged or start to hatch; joinCohort
+ *                no longer locks the leader.
  */
 
 package sh.pcod.EggStage;
@@ -23,6 +49,17 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
+import sh.pcod.AbundanceIntegrator;
+import sh.pcod.CullingPolicy;
+import sh.pcod.IBMFunction_UserDefined;
+import sh.pcod.IBMKernelFunction;
+import sh.pcod.MergeableLHS;
+import sh.pcod.RateStrategies;
+import sh.pcod.StageTracer;
+import sh.pcod.StageProfiler;
+import sh.pcod.output.LHSObservation;
+import sh.pcod.output.ObservableLHS;
+import sh.pcod.output.OutputRegistry;
 import wts.models.DisMELS.IBMFunctions.Mortality.ConstantMortalityRate;
 import wts.models.DisMELS.IBMFunctions.Mortality.InversePowerLawMortalityRate;
 import wts.models.DisMELS.framework.*;
@@ -35,12 +72,14 @@ import wts.roms.model.LagrangianParticle;
  * @author Sarah Hinckley
  */
 @ServiceProvider(service=LifeStageInterface.class)
-public class EggStage extends AbstractLHS {
+public class EggStage extends AbstractLHS implements MergeableLHS, ObservableLHS {
     
         //Static fields    
             //  Static fields new to this class
     /* flag to do debug operations */
     public static boolean debug = false;
+    /* maximum development progress per biological time step when using an adaptive biological time step */
+    public static double maxAdaptiveProgress = 0.02;
     /* Class for attributes SH_NEW*/
     public static final String attributesClass = 
             sh.pcod.EggStage.EggStageAttributes.class.getName();
@@ -73,6 +112,8 @@ public class EggStage extends AbstractLHS {
     protected double  minStageSize;
     protected double  stageTransRate;
     protected boolean useRandomTransitions;
+    protected double  bioTimeStep;
+    protected boolean useCohorts;
     
         //fields that reflect (new) attribute values
     /** flag indicating individual is attached to bottom */
@@ -96,9 +137,22 @@ public class EggStage extends AbstractLHS {
     /**egg stage progression */
     protected double stgProg = 0;
     
+    /** time (s) accumulated over deferred steps, not yet integrated (see deferStep) */
+    private double pendingDt = 0.0;
+    /** number of deferred steps */
+    private int pendingSteps = 0;
+    /** stage duration (d) at the last biological update */
+    private double stgDur = Double.NaN;
+    /** flag indicating this instance is the record for its grid-cell cohort (see joinCohort) */
+    private boolean isCohortLeader = false;
+    
             //other fields
     /** number of individuals transitioning to next stage */
     private double numTrans;  
+    /** number when the individual entered the stage (for culling relative to entry) */
+    private double numberAtEntry = Double.NaN;
+    /** true once number has been culled (the individual is retired after numTrans makes the transition) */
+    private boolean culled = false;
     
     //IBM Functions
     /** IBM function selected for mortality */
@@ -110,12 +164,20 @@ public class EggStage extends AbstractLHS {
     /** IBM function selected for stage duration */
     private IBMFunctionInterface fcnStageDur = null; 
     
-    private int typeMort = 0;//integer indicating mortality function
-    private int typeGrSL = 0;//integer indicating SL growth function
-    private int typeGrDW = 0;//integer indicating DW growth function
-    private int typeStgD = 0;//integer indicating stage duration function
+    /** strategy bound to the selected hatch success function (T; null if mortality is rate-based) */
+    private IBMKernelFunction stratHatch = null;
+    /** strategy bound to the selected mortality rate function (std_len) */
+    private IBMKernelFunction stratMort = null;
+    /** strategy bound to the selected SL growth function (T) */
+    private IBMKernelFunction stratGrSL = null;
+    /** strategy bound to the selected DW growth function (T, dry_wgt) */
+    private IBMKernelFunction stratGrDW = null;
+    /** strategy bound to the selected stage duration function (T) */
+    private IBMKernelFunction stratStgD = null;
     
     private static final Logger logger = Logger.getLogger(EggStage.class.getName());
+    /** profiler for hot-path timings and counters */
+    private static final StageProfiler prof = StageProfiler.forStage("EggStage");
     
     /**
      * Creates a new instance of EggStage.  
@@ -387,17 +449,23 @@ public class EggStage extends AbstractLHS {
             fcnGrDW  = params.getSelectedIBMFunctionForCategory(EggStageParameters.FCAT_GrowthDW);
             fcnStageDur  = params.getSelectedIBMFunctionForCategory(EggStageParameters.FCAT_StageDuration);
             
-            if (fcnMortality instanceof IBMFunction_HatchSuccess)       typeMort = EggStageParameters.FCN_Mortality_HatchSuccess; else
-            if (fcnMortality instanceof ConstantMortalityRate)          typeMort = EggStageParameters.FCN_Mortality_ConstantMortalityRate; else
-            if (fcnMortality instanceof InversePowerLawMortalityRate)   typeMort = EggStageParameters.FCN_Mortality_InversePowerLawMortalityRate;
+            //bind the update strategies once, so step() and updateNum() 
+            //don't test the function types
+            stratHatch = null; stratMort = null; stratGrSL = null; stratGrDW = null;
+            if (fcnMortality instanceof IBMFunction_HatchSuccess)       stratHatch = RateStrategies.of(fcnMortality); else
+            if (fcnMortality instanceof ConstantMortalityRate)          stratMort  = RateStrategies.ofNoInputs(fcnMortality); else
+            if (fcnMortality instanceof InversePowerLawMortalityRate)   stratMort  = RateStrategies.of(fcnMortality);//using embryo SL as covariate
             
-            if (fcnGrSL instanceof IBMFunction_EggStageGrowthRateSL)    typeGrSL = EggStageParameters.FCN_GrSL_EggStage_GrowthRate; else
-            if (fcnGrSL instanceof IBMFunction_EggStageSTDGrowthRateSL) typeGrSL = EggStageParameters.FCN_GrSL_EggStageSTDGrowthRate;
+            if ((fcnGrSL instanceof IBMFunction_EggStageGrowthRateSL)||
+                (fcnGrSL instanceof IBMFunction_EggStageSTDGrowthRateSL)||
+                (fcnGrSL instanceof IBMFunction_UserDefined)) stratGrSL = RateStrategies.of(fcnGrSL);
             
-            if (fcnGrDW instanceof IBMFunction_EggStageGrowthRateDW)    typeGrDW = EggStageParameters.FCN_GrDW_EggStage_GrowthRate; else
-            if (fcnGrDW instanceof IBMFunction_EggStageSTDGrowthRateDW) typeGrDW = EggStageParameters.FCN_GrDW_EggStageSTDGrowthRate;
+            if ((fcnGrDW instanceof IBMFunction_EggStageGrowthRateDW)||
+                (fcnGrDW instanceof IBMFunction_EggStageSTDGrowthRateDW)||
+                (fcnGrDW instanceof IBMFunction_UserDefined)) stratGrDW = RateStrategies.of(fcnGrDW);
             
-            if (fcnStageDur instanceof IBMFunction_EggStageDuration)    typeStgD = EggStageParameters.FCN_StageDur_EggStageDur;
+            //only one possible stage duration function currently
+            stratStgD = RateStrategies.of(fcnStageDur);
         } else {
             //TODO: throw some error
         }
@@ -417,6 +485,10 @@ public class EggStage extends AbstractLHS {
                 params.getValue(EggStageParameters.PARAM_maxStageDuration,maxStageDuration);
         useRandomTransitions = 
                 params.getValue(EggStageParameters.PARAM_useRandomTransitions,true);
+        bioTimeStep = 
+                params.getValue(EggStageParameters.PARAM_bioTimeStep,bioTimeStep);
+        useCohorts = 
+                params.getValue(EggStageParameters.PARAM_useCohorts,useCohorts);
     }
     
     /**
@@ -434,6 +506,7 @@ public class EggStage extends AbstractLHS {
             clone.lp      = (LagrangianParticle) lp.clone();
             clone.track   = (ArrayList<Coordinate>) track.clone();
             clone.trackLL = (ArrayList<Coordinate>) trackLL.clone();
+            clone.isCohortLeader = false;
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -464,6 +537,8 @@ public class EggStage extends AbstractLHS {
 
     private List<LifeStageInterface> createNextLHS() {
         List<LifeStageInterface> nLHSs = null;
+        if (StageTracer.isTraced(id)) 
+            StageTracer.trace(typeName,id,time,"transition","numTrans = "+numTrans);
         try {
             //create LHS with "next" stage
             if (isSuperIndividual) {
@@ -479,6 +554,12 @@ public class EggStage extends AbstractLHS {
                  */
                 nLHSs = LHS_Factory.createNextLHSsFromSuperIndividual(typeName,this,numTrans);
                 numTrans = 0.0;//reset numTrans to zero
+                leaveCohort();//hatching has started: later eggs start a new cohort
+                if (culled) {
+                    //number was culled (see updateNum): nothing is left in this stage
+                    alive  = false;
+                    active = false;
+                }
             } else {
                 /** 
                  * Since this is a single individual making a transition, we should
@@ -498,14 +579,23 @@ public class EggStage extends AbstractLHS {
         } catch (IllegalAccessException | InstantiationException ex) {
             ex.printStackTrace();
         }
+        if (nLHSs!=null) {
+            prof.count(StageProfiler.COUNT_TRANSITIONS,nLHSs.size());
+            if (isSuperIndividual) prof.count(StageProfiler.COUNT_SPLITS);
+            if (OutputRegistry.isActive()) OutputRegistry.recordTransition(this,nLHSs);
+        }
         return nLHSs;
     }
     
     @Override
     public String getReport() {
+        long tProf = prof.mark();
         updateAttributes();//make sure attributes are up to date
         atts.setValue(atts.PROP_track, getTrackAsString(COORDINATE_TYPE_GEOGRAPHIC));//
-        return atts.getCSV();
+        String csv = atts.getCSV();
+        if (OutputRegistry.isActive()) OutputRegistry.recordReport(this,csv);
+        prof.lap(StageProfiler.PHASE_REPORT,tProf);
+        return csv;
     }
 
     @Override
@@ -522,6 +612,10 @@ public class EggStage extends AbstractLHS {
      */
     public void initialize() {
         updateVariables();//set instance variables to attribute values
+        pendingDt = 0.0;
+        pendingSteps = 0;
+        stgDur    = Double.NaN;
+        isCohortLeader = false;
         int hType,vType;
         hType=vType=-1;
         double xPos, yPos, zPos;
@@ -545,10 +639,12 @@ public class EggStage extends AbstractLHS {
             } catch(java.lang.ArrayIndexOutOfBoundsException ex) {
                 logger.info("ArrayIndexOutOfBoundsException in EggStage.initialize() for id "+id);
                 logger.info("--IJ info : "+hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
+                StageTracer.onException(typeName,id,time,ex);
                 throw(ex);
             } catch(java.lang.NullPointerException ex) {
                 logger.info("NullPointerException in EggStage.initialize() for id "+id);
                 logger.info("--IJ info : "+hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
+                StageTracer.onException(typeName,id,time,ex);
                 throw(ex);
             }
             double z = i3d.interpolateBathymetricDepth(IJ);
@@ -585,6 +681,7 @@ public class EggStage extends AbstractLHS {
             updatePosition(pos);
             interpolateEnvVars(pos);
             updateAttributes(); 
+            if (OutputRegistry.isActive()) OutputRegistry.recordRelease(this);
         }
     }
     
@@ -595,47 +692,138 @@ public class EggStage extends AbstractLHS {
      */
     @Override
     public void step(double dt) throws ArrayIndexOutOfBoundsException {
+        prof.count(StageProfiler.COUNT_STEPS);
+        long tProf = prof.mark();
+        //in cohort mode, merge into the cohort record if it is at the same time
+        if (useCohorts&&joinCohort()) return;
+        //defer the biological update if stepping at a coarser biological time step
+        if (deferStep(dt)) {
+            if (OutputRegistry.isActive()) OutputRegistry.record(this);
+            return;
+        }
+        double dtb = dt+pendingDt;//biological time step (s), including deferred steps
+        int nSteps = pendingSteps+1;
+        pendingDt = 0.0;
+        pendingSteps = 0;
         //Pacific cod eggs are demersal, and assumed to be fixed in place
         //so location does not change
         double[] pos = lp.getIJK();
 //        double T = i3d.interpolateTemperature(pos);//Hinckley version, shouldn't need to recalc
-        Double T = temperature;
+        double T = temperature;
         if(T<=0.0) T=0.01; 
         
         time += dt;
-        double dtday = dt/86400;//time step in days
+        double dtday = dtb/86400;//biological time step in days
         
         //growth rate (mm/d) and integration for embryo SL
-        if (typeGrSL==EggStageParameters.FCN_GrSL_EggStage_GrowthRate) //T-dep rate for SL
-            grSL = (Double)fcnGrSL.calculate(T); else 
-        if (typeGrSL==EggStageParameters.FCN_GrSL_EggStageSTDGrowthRate) //STDG rate for SL (T only)
-            grSL = (Double)fcnGrSL.calculate(T); 
+        if (stratGrSL!=null) grSL = stratGrSL.calculate(T,std_len);//T-dep or STDG rate for SL (T only)
         std_len += (grSL * dtday);
         
         //growth rate (g/g/d) and integration for embryo SL
-        if (typeGrDW==EggStageParameters.FCN_GrDW_EggStage_GrowthRate) //T-dep rate for DW
-            grDW = (Double)fcnGrDW.calculate(T); else 
-        if (typeGrDW==EggStageParameters.FCN_GrDW_EggStageSTDGrowthRate) //STDG rate for DW
-            grDW = (Double)fcnGrDW.calculate((new Double[]{T,dry_wgt})); 
+        if (stratGrDW!=null) grDW = stratGrDW.calculate(T,dry_wgt);//T-dep or STDG rate for DW
         dry_wgt *= Math.exp(grDW * dtday);//mg
         
         //stage duration (only one possible function currently)
-        double stgD = (Double) fcnStageDur.calculate(T);
+        double stgD = stratStgD.calculate(T,0.0);
         stgProg += dtday/stgD;
+        stgDur   = stgD;
         
         updateAge(dt);
-        updateNum(dt);
+        updateNum(dtb/nSteps,nSteps);
+        tProf = prof.lap(StageProfiler.PHASE_FUNCTIONS,tProf);
         updatePosition(pos);
+        tProf = prof.lap(StageProfiler.PHASE_TRACKING,tProf);
         interpolateEnvVars(pos);//
+        tProf = prof.lap(StageProfiler.PHASE_INTERPOLATION,tProf);
         //check for exiting grid
         if (i3d.isAtGridEdge(pos,tolGridEdge)){
             alive=false;
             active=false;
         }
+        //in cohort mode, merge into the cohort record if it has already been stepped
+        if (useCohorts) joinCohort();
+        if (!alive) leaveCohort();
         if (debug) {
             logger.info(toString());
         }
         updateAttributes(); //update the attributes object w/ nmodified values
+        prof.lap(StageProfiler.PHASE_ATTRIBUTES,tProf);
+        if (OutputRegistry.isActive()) OutputRegistry.record(this);
+    }
+    
+    /**
+     * Grid-cell cohort mode (PARAM_useCohorts): merges this super-individual 
+     * into the record (leader) for the cohort of eggs released in the same grid 
+     * cell on the same day (see EggCohortRegistry), if both are at the same 
+     * model time and can be merged. The first egg of a cohort to get here 
+     * becomes the leader. This is called at the start and at the end of step(dt), 
+     * so eggs are merged within one model time step regardless of the order in 
+     * which individuals are stepped.
+     * 
+     * @return - true if this instance was merged into the cohort (and retired)
+     */
+    private boolean joinCohort(){
+        if (isCohortLeader||!(isSuperIndividual&&alive&&active)) return false;
+        String key = EggCohortRegistry.getKey(gridCellID,startTime);
+        EggStage leader = EggCohortRegistry.getLeader(key,this);
+        if (leader==this) {
+            isCohortLeader = true;
+            return false;
+        }
+        //cohorts are per run scope, and a run's individuals are stepped serially
+        if ((leader.time!=time)||!leader.canMergeWith(this)) return false;
+        leader.mergeWith(this);
+        return true;
+    }
+    
+    /**
+     * Removes the cohort led by this instance (if any) from the registry, when
+     * the instance dies, is merged into another or starts to hatch.
+     */
+    private void leaveCohort(){
+        if (isCohortLeader) {
+            EggCohortRegistry.remove(EggCohortRegistry.getKey(gridCellID,startTime),this);
+            isCohortLeader = false;
+        }
+    }
+    
+    /**
+     * Determines whether the biological update for a (model) time step can be
+     * deferred and integrated later over a coarser biological time step 
+     * (PARAM_bioTimeStep). If so, only time and age are advanced.
+     * 
+     * With temperature fixed over the biological time step, growth, development
+     * and constant-rate mortality are integrated exactly over the accumulated
+     * interval. Steps are not deferred if development would be complete, the 
+     * minimum stage duration reached or the maximum stage duration exceeded by 
+     * the end of the step, so hatching and death occur on the same model time 
+     * step as without deferral; deferred steps are also integrated on the step 
+     * before the one reaching the minimum stage duration, so the stage transition 
+     * rate only applies to time after it (as without deferral). The adaptive biological time step limits the 
+     * development progress per biological step to maxAdaptiveProgress.
+     * 
+     * @param dt - model time step in seconds
+     * 
+     * @return - true if the biological update was deferred
+     */
+    private boolean deferStep(double dt){
+        if ((bioTimeStep==0)||(dt<=0)||Double.isNaN(stgDur)) return false;
+        double dtb = pendingDt+dt;
+        double interval = (bioTimeStep>0) ? bioTimeStep : Math.min(-bioTimeStep,maxAdaptiveProgress*stgDur*86400);
+        if (dtb>=interval) return false;
+        double dtday = dt/86400;
+        if (stgProg+(dtb/86400)/stgDur>=1.0) return false;
+        //age is updated before number in step(dt), so the transition rate applies
+        //from the step reaching minStageDuration: integrate the deferred steps before it
+        if (AbundanceIntegrator.reachesMinStageDuration(ageInStage,dtday,minStageDuration,2)) return false;
+        if (ageInStage+dtday>maxStageDuration) return false;
+        pendingDt   = dtb;
+        pendingSteps++;
+        time       += dt;
+        age        += dtday;
+        ageInStage += dtday;
+        super.updateAttributes();
+        return true;
     }
     
     /**
@@ -652,39 +840,46 @@ public class EggStage extends AbstractLHS {
     }
 
     /**
-     *
-     * @param dt - time step in seconds
+     * Updates number and numTrans over nSteps identical time steps in a single
+     * (closed-form) evaluation, assuming rates are constant over the steps.
+     * 
+     * @param dt     - time step in seconds
+     * @param nSteps - number of time steps
      */
-    private void updateNum(double dt) {
-        if (typeMort==EggStageParameters.FCN_Mortality_HatchSuccess){ 
+    private void updateNum(double dt, int nSteps) {
+        if (Double.isNaN(numberAtEntry)) numberAtEntry = number;
+        if (stratHatch!=null){ 
             //fcnMortality instanceof IBMFunction_HatchSuccess
             if ((stgProg>=1.0)||(maxStageDuration<=ageInStage)){
-                double h = (Double)fcnMortality.calculate(temperature);//hatch success
+                double h = stratHatch.calculate(temperature,0.0);//hatch success
                 number *= h;
             }
         } else {
             double mortalityRate = 0.0D;//in units of [days]^-1
-            if (typeMort==EggStageParameters.FCN_Mortality_ConstantMortalityRate){  
-                //fcnMortality instanceof ConstantMortalityRate
-                mortalityRate = (Double)fcnMortality.calculate(null);
-            } else 
-            if (typeMort==EggStageParameters.FCN_Mortality_InversePowerLawMortalityRate){  
-                //fcnMortality instanceof InversePowerLawMortalityRate
-                mortalityRate = (Double)fcnMortality.calculate(std_len);//using embryo SL as covariate for mortality
-            } 
+            if (stratMort!=null) mortalityRate = stratMort.calculate(std_len,0.0);//using embryo SL as covariate for mortality
             double totRate = mortalityRate;
             if ((ageInStage>=minStageDuration)) {
                 totRate += stageTransRate;
                 //apply mortality rate to previous number transitioning and
                 //add in new transitioners
-                numTrans = numTrans*Math.exp(-dt*mortalityRate/86400)+
-                        (stageTransRate/totRate)*number*(1-Math.exp(-dt*totRate/86400));
+                numTrans = AbundanceIntegrator.advanceTransitioning(number,numTrans,mortalityRate,stageTransRate,dt,nSteps);
+            }
+            number = AbundanceIntegrator.advanceNumber(number,totRate,dt,nSteps);
+        }
+        if (isSuperIndividual&&!culled&&CullingPolicy.cull(typeName,gridCellID,number,numberAtEntry)){
+            //negligible abundance: number is recorded as culled; numTrans is left
+            //to make the transition, after which the individual is retired
+            number = 0.0;
+            culled = true;
+            if (!(numTrans>0)) {
+                alive  = false;
+                active = false;
             }
-            number = number*Math.exp(-dt*totRate/86400);
         }
     }
     
     private void updatePosition(double[] pos) {
+        prof.count(StageProfiler.COUNT_INTERPOLATIONS);
         bathym     =  i3d.interpolateBathymetricDepth(pos);
         depth      = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
         lat        =  i3d.interpolateLat(pos);
@@ -694,6 +889,7 @@ public class EggStage extends AbstractLHS {
     }
     
     private void interpolateEnvVars(double[] pos) {
+        prof.count(StageProfiler.COUNT_INTERPOLATIONS);
         temperature = i3d.interpolateTemperature(pos);
         salinity    = i3d.interpolateSalinity(pos);
         //interpolate in situ density field
@@ -772,6 +968,114 @@ public class EggStage extends AbstractLHS {
     public boolean isSuperIndividual() {
         return isSuperIndividual;
     }
+
+    @Override
+    public double getNumber() {
+        return number;
+    }
+
+    @Override
+    public String getGridCellID() {
+        return gridCellID;
+    }
+
+    @Override
+    public double getAgeInStage() {
+        return ageInStage;
+    }
+
+    @Override
+    public double getSize() {
+        return std_len;
+    }
+
+    @Override
+    public double getDevelopment() {
+        return stgProg;
+    }
+
+    @Override
+    public long getOrigID() {
+        return atts.getValue(EggStageAttributes.PROP_origID,id);
+    }
+
+    @Override
+    public boolean canMergeWith(MergeableLHS other) {
+        if ((other==this)||!(other instanceof EggStage)) return false;
+        EggStage o = (EggStage) other;
+        return typeName.equals(o.typeName)&&isSuperIndividual&&o.isSuperIndividual
+                &&alive&&active&&o.alive&&o.active&&!culled&&!o.culled
+                &&(pendingSteps==o.pendingSteps);
+    }
+
+    /**
+     * Gets the number when the individual entered the stage (the current
+     * number if it has not been updated in the stage yet).
+     */
+    private double getNumberAtEntry() {
+        return Double.isNaN(numberAtEntry) ? number : numberAtEntry;
+    }
+    
+    /**
+     * Merges another super-individual into this one (see MergeableLHS).
+     * State variables are averaged, weighted by number.
+     * 
+     * @param other - the instance to merge into this one
+     */
+    @Override
+    public void mergeWith(MergeableLHS other) {
+        EggStage o = (EggStage) other;
+        //entry numbers are summed so relative culling refers to the merged total
+        numberAtEntry = getNumberAtEntry()+o.getNumberAtEntry();
+        double n = number+o.number;
+        if (n>0) {
+            double f = o.number/n;//weight for other
+            age        += f*(o.age-age);
+            ageInStage += f*(o.ageInStage-ageInStage);
+            std_len    += f*(o.std_len-std_len);
+            dry_wgt    += f*(o.dry_wgt-dry_wgt);
+            stgProg    += f*(o.stgProg-stgProg);
+        }
+        number    = n;
+        numTrans += o.numTrans;
+        updateAttributes();
+        //retire the other instance
+        o.number   = 0.0;
+        o.numTrans = 0.0;
+        o.alive    = false;
+        o.active   = false;
+        o.leaveCohort();
+        o.updateAttributes();
+    }
+    
+    /**
+     * Fills in an observation with the current state of the individual
+     * (see ObservableLHS).
+     * 
+     * @param obs - the observation
+     */
+    @Override
+    public void observe(LHSObservation obs) {
+        obs.typeName    = typeName;
+        obs.id          = id;
+        obs.parentID    = atts.getValue(EggStageAttributes.PROP_parentID,id);
+        obs.origID      = atts.getValue(EggStageAttributes.PROP_origID,id);
+        obs.time        = time;
+        obs.lon         = lon;
+        obs.lat         = lat;
+        obs.depth       = depth;
+        obs.bathym      = bathym;
+        obs.gridCellID  = gridCellID;
+        obs.number      = number;
+        obs.age         = age;
+        obs.ageInStage  = ageInStage;
+        obs.attached    = attached;
+        obs.std_len     = std_len;
+        obs.dry_wgt     = dry_wgt;
+        obs.grSL        = grSL;
+        obs.grDW        = grDW;
+        obs.temperature = temperature;
+    }
     
     /**
      * Updates attribute values defined for this abstract class. 
@@ -7,6 +7,7 @@
  *             2. Changed "diameter" to "SL" and "egg diameter" to "embryo SL".
  * 2021-02-08: 1. Added attributes embryo dry weight and growth rates for SL and DW.
  * 2021-02-11: 1. Added egg stage progression attribute.
+ * 2026-10-19: 1. Error dialogs are shown via ErrorMessages (logged only when headless).
  *
  */
 
@@ -15,6 +16,7 @@ package sh.pcod.EggStage;
 import java.util.*;
 import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
+import sh.pcod.ErrorMessages;
 import wts.models.DisMELS.framework.AbstractLHSAttributes;
 import wts.models.DisMELS.framework.IBMAttributes.IBMAttribute;
 import wts.models.DisMELS.framework.IBMAttributes.IBMAttributeBoolean;
@@ -264,11 +266,7 @@ public class EggStageAttributes extends AbstractLHSAttributes   {
                 String str = "Missing attribute value for "+aKeys[j-1]+".\n"+
                              "Prior values are ";
                 for (int i=0;i<(j);i++) str = str+strv[i]+" ";
-                javax.swing.JOptionPane.showMessageDialog(
-                        null,
-                        str,
-                        "Error setting attribute values:",
-                        javax.swing.JOptionPane.ERROR_MESSAGE);
+                ErrorMessages.showError("Error setting attribute values:",str);
                 throw ex;
         } catch (java.lang.NumberFormatException ex) {
             String[] aKeys = new String[EggStageAttributes.allKeys.size()];
@@ -292,11 +290,7 @@ public class EggStageAttributes extends AbstractLHSAttributes   {
             }  catch (java.lang.IndexOutOfBoundsException ex1) {
                 //do nothing
             }
-            javax.swing.JOptionPane.showMessageDialog(
-                    null,
-                    str,
-                    "Error setting attribute values:",
-                    javax.swing.JOptionPane.ERROR_MESSAGE);
+            ErrorMessages.showError("Error setting attribute values:",str);
             throw ex;
         }
     }
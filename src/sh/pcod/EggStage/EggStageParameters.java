@@ -7,10 +7,15 @@
  *
  * 20210204: 1. Added IBMFunction categories for stage duration and growth in SL and DW.
  * 20210208: 1. Added integer flags for IBMFunctions.
+ * 20261019: 1. Added PARAM_bioTimeStep for coarser (multi-rate) biological time stepping.
+ *           2. Added PARAM_useCohorts for the grid-cell egg cohort mode (see EggCohortRegistry).
+ *           3. Added the user-defined (compiled expression) function IBMFunction_UserDefined
+ *                to the GrowthSL, GrowthDW, StageDuration categories.
  */
 
 package sh.pcod.EggStage;
 
+import sh.pcod.IBMFunction_UserDefined;
 import java.beans.PropertyChangeSupport;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -40,12 +45,14 @@ public class EggStageParameters extends AbstractLHSParameters {
     public static final long serialVersionUID = 1L;
     
     /** the number of IBMParameter objects defined in the class */
-    public static final int numParams = 5;
+    public static final int numParams = 7;
     public static final String PARAM_isSuperIndividual      = "is a super-individual?";
     public static final String PARAM_horizRWP               = "horizontal random walk parameter [m^2]/[s]";
     public static final String PARAM_minStageDuration       = "min stage duration [d]";
     public static final String PARAM_maxStageDuration       = "max stage duration [d]";
     public static final String PARAM_useRandomTransitions   = "use random transitions";
+    public static final String PARAM_bioTimeStep            = "biological time step [s] (0: model time step; <0: adaptive, up to |value|)";
+    public static final String PARAM_useCohorts             = "use grid-cell cohorts (super-individuals only)";
     
     /** the number of IBMFunction categories defined in the class */
     public static final int numFunctionCats = 4;
@@ -102,6 +109,8 @@ public class EggStageParameters extends AbstractLHSParameters {
         key = PARAM_minStageDuration;     mapParams.put(key,new IBMParameterDouble(key,key,new Double(0)));
         key = PARAM_maxStageDuration;     mapParams.put(key,new IBMParameterDouble(key,key,new Double(365)));
         key = PARAM_useRandomTransitions; mapParams.put(key,new IBMParameterBoolean(key,key,false));
+        key = PARAM_bioTimeStep;          mapParams.put(key,new IBMParameterDouble(key,key,new Double(0)));
+        key = PARAM_useCohorts;           mapParams.put(key,new IBMParameterBoolean(key,key,false));
     }
 
     @Override
@@ -123,17 +132,20 @@ public class EggStageParameters extends AbstractLHSParameters {
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new sh.pcod.EggStage.IBMFunction_EggStageGrowthRateSL();    mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         ifi = new sh.pcod.EggStage.IBMFunction_EggStageSTDGrowthRateSL(); mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                              mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         
         cat = FCAT_GrowthDW; //functions for growth of embryo in dry weight (micrograms) 
         mapOfPotentialFunctions = new LinkedHashMap<>(4); 
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new sh.pcod.EggStage.IBMFunction_EggStageGrowthRateDW();    mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         ifi = new sh.pcod.EggStage.IBMFunction_EggStageSTDGrowthRateDW(); mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                              mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         
         cat = FCAT_StageDuration; //functions for egg stage duration
         mapOfPotentialFunctions = new LinkedHashMap<>(4); 
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new sh.pcod.EggStage.IBMFunction_EggStageDuration(); mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                       mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
     }
         
     /**
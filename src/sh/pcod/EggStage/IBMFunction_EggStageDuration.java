@@ -2,6 +2,7 @@
  * IBMFunction_EggStageDuration.java
  * 
  * 2021-02-04: created function.
+ * 2026-10-19: calculate(Object) evaluates the function with calculate(double,double) (IBMKernelFunction).
  */
 package sh.pcod.EggStage;
 
@@ -10,6 +11,7 @@ import org.openide.util.lookup.ServiceProviders;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
+import sh.pcod.IBMKernelFunction;
 
 /**
  * IBM function to calculate temperature-dependent egg stage duration using
@@ -25,7 +27,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_EggStageDuration extends AbstractIBMFunction implements IBMGrowthFunctionInterface {
+public class IBMFunction_EggStageDuration extends AbstractIBMFunction implements IBMGrowthFunctionInterface, IBMKernelFunction {
     public static final String DEFAULT_type = "Growth";
     /** user-friendly function name */
     public static final String DEFAULT_name = "Temperature-dependent stage duration for Pacific cod eggs-embryos";
@@ -84,9 +86,14 @@ public class IBMFunction_EggStageDuration extends AbstractIBMFunction implements
      */
     @Override
     public Object calculate(Object o) {
-        double t = (Double) o;
+        return (Double) calculate((Double) o,0.0);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double t = x;
         double D = 46.597 - 4.079 * t;
-        return (Double) D;
+        return D;
     }
     
 }
@@ -2,6 +2,7 @@
  * IBMFunction_EggStageSTDGrowthRateDW.java
  * 
  * 2021-02-04: created function.
+ * 2026-10-19: calculate(Object) evaluates the function with calculate(double,double) (IBMKernelFunction).
  */
 package sh.pcod.EggStage;
 
@@ -10,6 +11,7 @@ import org.openide.util.lookup.ServiceProviders;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
+import sh.pcod.IBMKernelFunction;
 
 /**
  * IBM function to calculate  size/temperature-dependent growth (STDG) rate in
@@ -26,7 +28,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_EggStageSTDGrowthRateDW extends AbstractIBMFunction implements IBMGrowthFunctionInterface {
+public class IBMFunction_EggStageSTDGrowthRateDW extends AbstractIBMFunction implements IBMGrowthFunctionInterface, IBMKernelFunction {
     public static final String DEFAULT_type = "Growth";
     /** user-friendly function name */
     public static final String DEFAULT_name = "Intrinsic growth rate (g/g/d) in dry weight of embryos in Pacific cod egg stages";
@@ -89,10 +91,15 @@ public class IBMFunction_EggStageSTDGrowthRateDW extends AbstractIBMFunction imp
     @Override
     public Object calculate(Object o) {
         Double[] vals = (Double[]) o;
-        double t = vals[0];
-        double m = vals[1];
+        return (Double) calculate(vals[0],vals[1]);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double t = x;
+        double m = y;
         double r = ((0.454 + 1.610*t - 0.069*t*t)*Math.exp(-6.725*m)+3.705)/100;// original in %/d
-        return (Double) r;
+        return r;
     }
     
 }
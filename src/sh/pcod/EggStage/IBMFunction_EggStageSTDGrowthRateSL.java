@@ -2,6 +2,7 @@
  * IBMFunction_EggStageSTDGrowthRateSL.java
  * 
  * 2021-02-04: created function.
+ * 2026-10-19: calculate(Object) evaluates the function with calculate(double,double) (IBMKernelFunction).
  */
 package sh.pcod.EggStage;
 
@@ -10,6 +11,7 @@ import org.openide.util.lookup.ServiceProviders;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
+import sh.pcod.IBMKernelFunction;
 
 /**
  * IBM function to calculate size/temperature-dependent growth (STDG) rate in 
@@ -28,7 +30,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_EggStageSTDGrowthRateSL extends AbstractIBMFunction implements IBMGrowthFunctionInterface {
+public class IBMFunction_EggStageSTDGrowthRateSL extends AbstractIBMFunction implements IBMGrowthFunctionInterface, IBMKernelFunction {
     public static final String DEFAULT_type = "Growth";
     /** user-friendly function name */
     public static final String DEFAULT_name = "STDG rate (mm/d) for standard length of embryos in Pacific cod egg stages";
@@ -89,9 +91,14 @@ public class IBMFunction_EggStageSTDGrowthRateSL extends AbstractIBMFunction imp
      */
     @Override
     public Object calculate(Object o) {
-        double t = (Double) o;
+        return (Double) calculate((Double) o,0.0);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double t = x;
         double r = 0.076 + 0.029*t - 0.00002*t*t;
-        return (Double) r;
+        return r;
     }
     
 }
@@ -8,6 +8,7 @@ import org.openide.util.lookup.ServiceProviders;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.models.DisMELS.framework.IBMFunctions.IBMMortalityFunctionInterface;
+import sh.pcod.IBMKernelFunction;
 
 /**
  *
@@ -18,7 +19,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMMortalityFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_HatchSuccess extends AbstractIBMFunction implements IBMMortalityFunctionInterface {
+public class IBMFunction_HatchSuccess extends AbstractIBMFunction implements IBMMortalityFunctionInterface, IBMKernelFunction {
     public static final String DEFAULT_type = "Mortality";
     /** user-friendly function name */
     public static final String DEFAULT_name = "Pacific cod egg hatch sucess rate";
@@ -79,10 +80,15 @@ public class IBMFunction_HatchSuccess extends AbstractIBMFunction implements IBM
      */
     @Override
     public Object calculate(Object o) {
-        double t = (Double) o;
+        return (Double) calculate((Double) o,0.0);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double t = x;
         double h = 0.453/(1.0+(Math.pow((t-4.192)/2.125, 2.0)));
         if (t>11.0) h = 0.0;
-        return (Double) h;
+        return h;
     }
     
 }
@@ -12,6 +12,29 @@
  * 20190725: 1. Added HSMFunction_NetCdF_InMemory as potential IBMFunction
  * 20210211: 1. Added DW, TL, and WW as attributes, with corresponding growth rates.
  *           2. Revised logic slightly for setAttributes, setInfo methods, updateAttributes, updateVariables
+ * 20261019: 1. Added HSMFunction_NetCDF_Tiled as potential HSI function (primitive lon/lat lookup).
+ *           2. Added optional higher-order (RK4/RK45) advection via AdvectionIntegrator.
+ *           3. Horizontal random walk now draws from the per-thread NormalDeviates
+ *                block generator and re-uses the result array instead of allocating one.
+ *           4. Random walk deviates now come from the counter-based CounterRNG keyed on id,
+ *                step time and purpose (NormalDeviates if CounterRNG.useForRandomWalks=false).
+ *           5. Super-individuals with negligible abundance are culled per CullingPolicy
+ *                (checked at the end of updateNum).
+ *           6. Position and bathymetric depth in initialize() are now only logged in debug mode;
+ *                added sampled diagnostic tracing (StageTracer) for initialization, stage transitions
+ *                and exceptions.
+ *           7. Added hot-path timings and counters (StageProfiler).
+ *           8. Implements ObservableLHS; the state of live individuals is recorded at the end of each
+ *                step for the in-run output accumulators (OutputRegistry).
+ *           9. Added transition events for in-run connectivity output (OutputRegistry).
+ *           10. Added report events for the in-run lineage index (OutputRegistry).
+ *           11. Growth, mortality, vertical velocity and HSI functions are bound to update
+ *                strategies (RateStrategies) in setParameters, replacing the type codes.
+ *           12. User-defined (compiled expression) functions (IBMFunction_UserDefined) are bound
+ *                like the built-in functions of the same category.
+ *           13. Culling tests and records only number: numTrans is left to make the transition,
+ *                after which the individual is retired.
+ *           14. Random draws use the key set by the batch run (RandomKeyedLHS) instead of the id.
  */
 
 package sh.pcod.EpijuvStage;
@@ -28,8 +51,22 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.models.utilities.DateTimeFunctions;
 import wts.roms.model.LagrangianParticle;
 import sh.pcod.FDLpfStage.FDLpfStageAttributes;
+import sh.pcod.HSMFunction_NetCDF_Tiled;
+import sh.pcod.AdvectionIntegrator;
+import sh.pcod.CounterRNG;
+import sh.pcod.CullingPolicy;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateDW;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateSL;
+import sh.pcod.IBMFunction_UserDefined;
+import sh.pcod.IBMKernelFunction;
+import sh.pcod.NormalDeviates;
+import sh.pcod.RandomKeyedLHS;
+import sh.pcod.RateStrategies;
+import sh.pcod.StageTracer;
+import sh.pcod.StageProfiler;
+import sh.pcod.output.LHSObservation;
+import sh.pcod.output.ObservableLHS;
+import sh.pcod.output.OutputRegistry;
 import wts.models.DisMELS.IBMFunctions.HSMs.HSMFunction_Constant;
 import wts.models.DisMELS.IBMFunctions.HSMs.HSMFunction_NetCDF;
 import wts.models.DisMELS.IBMFunctions.HSMs.HSMFunction_NetCDF_InMemory;
@@ -43,7 +80,7 @@ import wts.roms.model.Interpolator3D;
  * @author William Stockhausen
  */
 @ServiceProvider(service=LifeStageInterface.class)
-public class EpijuvStage extends AbstractLHS {
+public class EpijuvStage extends AbstractLHS implements ObservableLHS, RandomKeyedLHS {
     
         //Static fields    
             //  Static fields new to this class
@@ -90,6 +127,8 @@ public class EpijuvStage extends AbstractLHS {
     protected double  minSettlementHSI;
     protected double  stageTransRate;
     protected boolean useRandomTransitions;
+    protected boolean useRKAdvection;
+    protected double  rkTolerance;
     
         //fields that reflect (new) attribute values
     /** flag indicating individual is attached to bottom */
@@ -128,7 +167,18 @@ public class EpijuvStage extends AbstractLHS {
             //other fields
     /** number of individuals transitioning to next stage */
     private double numTrans;  
+    /** number when the individual entered the stage (for culling relative to entry) */
+    private double numberAtEntry = Double.NaN;
+    /** true once number has been culled (the individual is retired after numTrans makes the transition) */
+    private boolean culled = false;
+    /** key for the counter-based random draws (CounterRNG; see getRandomKey) */
+    private long rngKey = 0L;
+    /** true if rngKey was set by a batch run (setRandomKey) */
+    private boolean hasRngKey = false;
     
+    /** movement components returned by calcUVW (re-used to avoid allocation) */
+    private double[] uvw = new double[3];
+
     /** IBM function selected for mortality */
     private IBMFunctionInterface fcnMortality = null; 
     /** IBM function selected for growth in SL */
@@ -149,16 +199,25 @@ public class EpijuvStage extends AbstractLHS {
     private static final IBMFunctionInterface fcnSLtoTL = new IBMFunction_Epijuv_ConvertSLtoTL();
     private static final IBMFunctionInterface fcnSLtoWW = new IBMFunction_Epijuv_ConvertSLtoWW();
     
-    private int typeMort = 0;//integer indicating mortality function
-    private int typeGrSL = 0;//integer indicating SL growth function
-    private int typeGrDW = 0;//integer indicating DW growth function
+    /** strategy bound to the selected mortality function (std_len) */
+    private IBMKernelFunction stratMort = null;
+    /** strategy bound to the selected SL growth function (T, std_len) */
+    private IBMKernelFunction stratGrSL = null;
+    /** strategy bound to the selected DW growth function (T, dry_wgt) */
+    private IBMKernelFunction stratGrDW = null;
+    /** strategy bound to the selected TL growth function (T, tot_len) */
+    private IBMKernelFunction stratGrTL = null;
+    /** strategy bound to the selected WW growth function (T, wet_wgt) */
+    private IBMKernelFunction stratGrWW = null;
+    /** strategy bound to the selected vertical velocity function (T, tot_len) */
+    private IBMKernelFunction stratVV = null;
+    /** strategy bound to the selected HSI function (lon, lat) */
+    private IBMKernelFunction stratHSI = null;
     private int typeVM   = 0;//integer indicating vertical movement function
-    private int typeVV   = 0;//integer indicating vertical velocity function
-    private int typeGrTL = 0;//integer indicating TL growth function
-    private int typeGrWW = 0;//integer indicating WW growth function
-    private int typeHSI  = 0;//integer indicating HSI function
 
     private static final Logger logger = Logger.getLogger(EpijuvStage.class.getName());
+    /** profiler for hot-path timings and counters */
+    private static final StageProfiler prof = StageProfiler.forStage("EpijuvStage");
     
     /**
      * Creates a new instance of GenericLHS.  
@@ -464,35 +523,44 @@ public class EpijuvStage extends AbstractLHS {
             fcnVV   = params.getSelectedIBMFunctionForCategory(EpijuvStageParameters.FCAT_VerticalVelocity);
             fcnHSI  = params.getSelectedIBMFunctionForCategory(EpijuvStageParameters.FCAT_HSM);
             
+            //bind the update strategies once, so step(), updateNum() and 
+            //interpolateEnvVars() don't test the function types
+            stratMort = null; stratGrSL = null; stratGrDW = null; stratGrTL = null; 
+            stratGrWW = null; stratVV = null; stratHSI = null; typeVM = 0;
             if (fcnMortality instanceof ConstantMortalityRate)
-                typeMort = EpijuvStageParameters.FCN_Mortality_ConstantMortalityRate;
+                stratMort = RateStrategies.ofNoInputs(fcnMortality);
             else if (fcnMortality instanceof InversePowerLawMortalityRate)
-                typeMort = EpijuvStageParameters.FCN_Mortality_InversePowerLawMortalityRate;
+                stratMort = RateStrategies.of(fcnMortality);//using std_len as covariate
             
-            if (fcnGrSL instanceof IBMFunction_NonEggStageSTDGrowthRateSL) 
-                typeGrSL = EpijuvStageParameters.FCN_GrSL_NonEggStageSTDGrowthRate;
+            if ((fcnGrSL instanceof IBMFunction_NonEggStageSTDGrowthRateSL)||
+                (fcnGrSL instanceof IBMFunction_UserDefined))
+                stratGrSL = RateStrategies.of(fcnGrSL);
             
-            if (fcnGrDW instanceof IBMFunction_NonEggStageSTDGrowthRateDW) 
-                typeGrDW = EpijuvStageParameters.FCN_GrDW_NonEggStageSTDGrowthRate;
+            if ((fcnGrDW instanceof IBMFunction_NonEggStageSTDGrowthRateDW)||
+                (fcnGrDW instanceof IBMFunction_UserDefined))
+                stratGrDW = RateStrategies.of(fcnGrDW);
             
-            if (fcnGrTL instanceof IBMFunction_Epijuv_GrowthRateTL)    
-                typeGrTL = EpijuvStageParameters.FCN_GrTL_Epijuv_GrowthRate;
+            if ((fcnGrTL instanceof IBMFunction_Epijuv_GrowthRateTL)||
+                (fcnGrTL instanceof IBMFunction_UserDefined))
+                stratGrTL = RateStrategies.of(fcnGrTL);
             
-            if (fcnGrWW instanceof IBMFunction_Epijuv_GrowthRateWW)    
-                typeGrWW = EpijuvStageParameters.FCN_GrWW_Epijuv_GrowthRate;
+            if ((fcnGrWW instanceof IBMFunction_Epijuv_GrowthRateWW)||
+                (fcnGrWW instanceof IBMFunction_UserDefined))
+                stratGrWW = RateStrategies.of(fcnGrWW);
             
             if (fcnVM instanceof DielVerticalMigration_FixedDepthRanges)   
                 typeVM = EpijuvStageParameters.FCN_VM_DVM_FixedDepthRanges;
             
-            if (fcnVV instanceof IBMFunction_Epijuv_VerticalSwimmingSpeed) 
-                typeVV = EpijuvStageParameters.FCN_VV_Epijuv_VerticalSwimmingSpeed;
+            if ((fcnVV instanceof IBMFunction_Epijuv_VerticalSwimmingSpeed)||
+                (fcnVV instanceof IBMFunction_UserDefined))
+                stratVV = RateStrategies.of(fcnVV);
             
             if (fcnHSI instanceof HSMFunction_Constant)        
-                typeHSI = EpijuvStageParameters.FCN_HSM_Constant;
-            else if (fcnHSI instanceof HSMFunction_NetCDF)          
-                typeHSI = EpijuvStageParameters.FCN_HSM_NetCDF;
-            else if (fcnHSI instanceof HSMFunction_NetCDF_InMemory) 
-                typeHSI = EpijuvStageParameters.FCN_HSM_NetCDF_InMemory;
+                stratHSI = RateStrategies.ofNoInputs(fcnHSI);//constant value
+            else if ((fcnHSI instanceof HSMFunction_NetCDF)||
+                     (fcnHSI instanceof HSMFunction_NetCDF_InMemory)||
+                     (fcnHSI instanceof HSMFunction_NetCDF_Tiled)) 
+                stratHSI = RateStrategies.ofPosition(fcnHSI);
         } else {
             //TODO: throw some error
         }
@@ -520,6 +588,10 @@ public class EpijuvStage extends AbstractLHS {
         
         useRandomTransitions = 
                 params.getValue(EpijuvStageParameters.PARAM_useRandomTransitions,true);
+        useRKAdvection = 
+                params.getValue(EpijuvStageParameters.PARAM_useRKAdvection,useRKAdvection);
+        rkTolerance = 
+                params.getValue(EpijuvStageParameters.PARAM_rkTolerance,rkTolerance);
     }
     
     /**
@@ -538,6 +610,7 @@ public class EpijuvStage extends AbstractLHS {
             clone.lp      = (LagrangianParticle) lp.clone();
             clone.track   = (ArrayList<Coordinate>) track.clone();
             clone.trackLL = (ArrayList<Coordinate>) trackLL.clone();
+            clone.uvw     = new double[3];
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -572,6 +645,8 @@ public class EpijuvStage extends AbstractLHS {
     
     private List<LifeStageInterface> createNextLHS() {
         List<LifeStageInterface> nLHSs = null;
+        if (StageTracer.isTraced(id)) 
+            StageTracer.trace(typeName,id,time,"transition","numTrans = "+numTrans);
         try {
             //create LHS with "next" stage
             if (isSuperIndividual) {
@@ -587,6 +662,11 @@ public class EpijuvStage extends AbstractLHS {
                  */
                 nLHSs = LHS_Factory.createNextLHSsFromSuperIndividual(typeName,this,numTrans);
                 numTrans = 0.0;//reset numTrans to zero
+                if (culled) {
+                    //number was culled (see updateNum): nothing is left in this stage
+                    alive  = false;
+                    active = false;
+                }
             } else {
                 /** 
                  * Since this is a single individual making a transition, we should
@@ -606,14 +686,23 @@ public class EpijuvStage extends AbstractLHS {
         } catch (IllegalAccessException | InstantiationException ex) {
             ex.printStackTrace();
         }
+        if (nLHSs!=null) {
+            prof.count(StageProfiler.COUNT_TRANSITIONS,nLHSs.size());
+            if (isSuperIndividual) prof.count(StageProfiler.COUNT_SPLITS);
+            if (OutputRegistry.isActive()) OutputRegistry.recordTransition(this,nLHSs);
+        }
         return nLHSs;
     }
     
     @Override
     public String getReport() {
+        long tProf = prof.mark();
         updateAttributes();//make sure attributes are up to date
         atts.setValue(atts.PROP_track, getTrackAsString(COORDINATE_TYPE_GEOGRAPHIC));//
-        return atts.getCSV();
+        String csv = atts.getCSV();
+        if (OutputRegistry.isActive()) OutputRegistry.recordReport(this,csv);
+        prof.lap(StageProfiler.PHASE_REPORT,tProf);
+        return csv;
     }
 
     @Override
@@ -641,7 +730,9 @@ public class EpijuvStage extends AbstractLHS {
         zPos       = atts.getValue(EpijuvStageAttributes.PROP_vertPos,zPos);
         time       = startTime;
         numTrans   = 0.0; //set numTrans to zero
-        logger.info(hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
+        if (debug) logger.info(hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
+        if (StageTracer.isTraced(id)) 
+            StageTracer.trace(typeName,id,time,"initialize","position = "+hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
         if (i3d!=null) {
             double[] IJ = new double[] {xPos,yPos};
             if (hType==Types.HORIZ_XY) {
@@ -651,7 +742,9 @@ public class EpijuvStage extends AbstractLHS {
                 IJ = i3d.getGrid().computeIJfromLL(yPos,xPos);
             }
             double z = i3d.interpolateBathymetricDepth(IJ);
-            logger.info("Bathymetric depth = "+z);
+            if (debug) logger.info("Bathymetric depth = "+z);
+            if (StageTracer.isTraced(id)) 
+                StageTracer.trace(typeName,id,time,"initialize","bathymetric depth = "+z);
             double ssh = i3d.interpolateSSH(IJ);
 
             double K = 0;  //set K = 0 (at bottom) as default
@@ -689,15 +782,22 @@ public class EpijuvStage extends AbstractLHS {
     
     @Override
     public void step(double dt) throws ArrayIndexOutOfBoundsException {
+        prof.count(StageProfiler.COUNT_STEPS);
+        long tProf = prof.mark();
         //WTS_NEW 2012-07-26:{
         double[] pos = lp.getIJK();
         //SH_NEW
         double T = i3d.interpolateTemperature(pos);
+        tProf = prof.lap(StageProfiler.PHASE_INTERPOLATION,tProf);
         if(T<=0.0) T=0.01; 
                 
         double[] uvw = calcUVW(pos,dt,T);//this also sets "attached" and may change pos[2] to 0
+        tProf = prof.lap(StageProfiler.PHASE_FUNCTIONS,tProf);
         if (attached){
             lp.setIJK(pos[0], pos[1], pos[2]);
+        } else if (useRKAdvection) {
+            //do higher-order (RK4, or adaptive RK45 if rkTolerance>0) advection
+            pos = AdvectionIntegrator.advect(i3d,lp,uvw[0],uvw[1],uvw[2],dt,rkTolerance);
         } else {
             //}:WTS_NEW 2012-07-26
             //do lagrangian particle tracking
@@ -719,26 +819,27 @@ public class EpijuvStage extends AbstractLHS {
             pos = lp.getIJK();
             if (debug) logger.info("Depth after corrector step = "+(-i3d.calcZfromK(pos[0],pos[1],pos[2])));
         }
+        tProf = prof.lap(StageProfiler.PHASE_TRACKING,tProf);
         
         time = time+dt;
         double dtday = dt/86400;        //dt=biolmodel time step. At 72/day, dt(sec)= 1200; dtday=0.014
-        if (typeGrSL==EpijuvStageParameters.FCN_GrSL_NonEggStageSTDGrowthRate)
-            grSL = (Double) fcnGrSL.calculate(new Double[]{T,std_len});
-        if (typeGrDW==EpijuvStageParameters.FCN_GrDW_NonEggStageSTDGrowthRate)
-            grDW = (Double) fcnGrDW.calculate(new Double[]{T,dry_wgt});
-        if (typeGrTL==EpijuvStageParameters.FCN_GrTL_Epijuv_GrowthRate)
-            grTL = (Double) fcnGrTL.calculate(T);
-        if (typeGrWW==EpijuvStageParameters.FCN_GrWW_Epijuv_GrowthRate)
-            grWW = (Double) fcnGrWW.calculate(T);
+        if (stratGrSL!=null) grSL = stratGrSL.calculate(T,std_len);
+        if (stratGrDW!=null) grDW = stratGrDW.calculate(T,dry_wgt);
+        if (stratGrTL!=null) grTL = stratGrTL.calculate(T,tot_len);
+        if (stratGrWW!=null) grWW = stratGrWW.calculate(T,wet_wgt);
         std_len += grSL*dtday;
         dry_wgt *= Math.exp(grDW * dtday);
         tot_len += grTL*dtday;
         wet_wgt *= Math.exp(grWW * dtday);
         
+        tProf = prof.lap(StageProfiler.PHASE_FUNCTIONS,tProf);
         updatePosition(pos);
+        tProf = prof.lap(StageProfiler.PHASE_TRACKING,tProf);
         updateEnvVars(pos);
+        tProf = prof.lap(StageProfiler.PHASE_INTERPOLATION,tProf);
         updateNum(dt);
         updateAge(dt);
+        tProf = prof.lap(StageProfiler.PHASE_FUNCTIONS,tProf);
         
         //check for exiting grid
         if (i3d.isAtGridEdge(pos,tolGridEdge)){
@@ -749,6 +850,8 @@ public class EpijuvStage extends AbstractLHS {
             logger.info(toString());
         }
         updateAttributes(); //update the attributes object w/ nmodified values
+        prof.lap(StageProfiler.PHASE_ATTRIBUTES,tProf);
+        if (OutputRegistry.isActive()) OutputRegistry.record(this);
     }
     
     /**
@@ -773,8 +876,8 @@ public class EpijuvStage extends AbstractLHS {
                 //TL = (length + 0.5169)/0.9315;
                 //Calculate swimspeed, ie w (mm/sec.  From T. Hurst
                 if(T<=0.0) T=0.01; 
-                if (typeVV==EpijuvStageParameters.FCN_VV_Epijuv_VerticalSwimmingSpeed){
-                    w = (Double) fcnVV.calculate(new Double[]{T,tot_len});
+                if (stratVV!=null){
+                    w = stratVV.calculate(T,tot_len);
                     w = w/1000.0;//convert to m/s
                 }
             /**
@@ -801,6 +904,7 @@ public class EpijuvStage extends AbstractLHS {
                 logger.info("NullPointerException for EpijuvStage id: "+id);
                 logger.info("lon: "+lon+". lat: "+lat+". yearday: "+cal.getYearDay());
                 logger.info(ex.getMessage());
+                StageTracer.onException(typeName,id,time,ex);
             }
             /**
             * @param vars - the inputs variables as a double[] array with elements
@@ -821,18 +925,31 @@ public class EpijuvStage extends AbstractLHS {
         }
         
         //calculate horizontal movement
-        double[] uv = {0.0,0.0};
+        double[] uv = uvw;//re-used to avoid allocation
+        uv[0] = 0.0; uv[1] = 0.0;
         if (!attached){
             if ((horizRWP>0)&&(Math.abs(dt)>0)) {
                 double r = Math.sqrt(horizRWP/Math.abs(dt));
-                uv[0] += r*rng.computeNormalVariate(); //stochastic swimming rate
-                uv[1] += r*rng.computeNormalVariate(); //stochastic swimming rate
+                if (CounterRNG.useForRandomWalks) {
+                    //reproducible regardless of stepping order/threads
+                    CounterRNG.normalPair(getRandomKey(),time,CounterRNG.PURPOSE_RANDOM_WALK,uv);
+                    uv[0] *= r; //stochastic swimming rate
+                    uv[1] *= r; //stochastic swimming rate
+                } else {
+                    NormalDeviates nd = NormalDeviates.getInstance();
+                    uv[0] += r*nd.next(); //stochastic swimming rate
+                    uv[1] += r*nd.next(); //stochastic swimming rate
+                }
                 if (debug) System.out.print("uv: "+r+"; "+uv[0]+", "+uv[1]+"\n");
             }
         }
         
         //return the result
-        return new double[]{Math.signum(dt)*uv[0],Math.signum(dt)*uv[1],Math.signum(dt)*w};
+        double sgn = Math.signum(dt);
+        uv[0] = sgn*uv[0];
+        uv[1] = sgn*uv[1];
+        uv[2] = sgn*w;
+        return uv;
     }
  
     /**
@@ -862,6 +979,7 @@ public class EpijuvStage extends AbstractLHS {
      * @param pos - double[] giving position in ROMS {xi, eta, K} grid coordinates
      */
     private void updatePosition(double[] pos) {
+        prof.count(StageProfiler.COUNT_INTERPOLATIONS);
         bathym     =  i3d.interpolateBathymetricDepth(pos);
         depth      = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
         lat        =  i3d.interpolateLat(pos);
@@ -885,6 +1003,7 @@ public class EpijuvStage extends AbstractLHS {
      * @param pos - double[] giving position in ROMS {xi, eta, K} grid coordinates
      */
     private void updateEnvVars(double[] pos) {
+        prof.count(StageProfiler.COUNT_INTERPOLATIONS);
         temperature = i3d.interpolateTemperature(pos);
         salinity    = i3d.interpolateSalinity(pos);
         if (i3d.getPhysicalEnvironment().getField("rho")!=null) rho  = i3d.interpolateValue(pos,"rho");
@@ -896,28 +1015,7 @@ public class EpijuvStage extends AbstractLHS {
         if (i3d.getPhysicalEnvironment().getField(FIELD_NCa)!=null) 
             neocalanus = i3d.interpolateValue(pos,FIELD_NCa,Interpolator3D.INTERP_VAL);
         
-        switch (typeHSI) {
-            case EpijuvStageParameters.FCN_HSM_Constant:
-                //fcnHSI instanceof HSMFunction_Constant
-                hsi = (Double)fcnHSI.calculate(null);//constant value
-                break;
-            case EpijuvStageParameters.FCN_HSM_NetCDF:
-                {
-                    //fcnHSI instanceof HSMFunction_NetCDF
-                    double[] posLL = new double[]{lon,lat};
-                    hsi = (Double)fcnHSI.calculate(posLL);
-                    break;
-                }
-            case EpijuvStageParameters.FCN_HSM_NetCDF_InMemory:
-                {
-                    //fcnHSI instanceof HSMFunction_NetCDF_InMemory
-                    double[] posLL = new double[]{lon,lat};
-                    hsi = (Double)fcnHSI.calculate(posLL);
-                    break;
-                }
-            default:
-                break;
-        }
+        if (stratHSI!=null) hsi = stratHSI.calculate(lon,lat);
     }
 
     /**
@@ -927,16 +1025,10 @@ public class EpijuvStage extends AbstractLHS {
      * @param dt - time step in seconds
      */
     private void updateNum(double dt) {
+        if (Double.isNaN(numberAtEntry)) numberAtEntry = number;
         //{WTS_NEW 2012-07-26:
         double mortalityRate = 0.0D;//in unis of [days]^-1
-        if (typeMort==EpijuvStageParameters.FCN_Mortality_ConstantMortalityRate){
-            //fcnMortality instanceof ConstantMortalityRate
-            mortalityRate = (Double)fcnMortality.calculate(null);
-        } else 
-        if (typeMort==EpijuvStageParameters.FCN_Mortality_InversePowerLawMortalityRate){
-            //fcnMortality instanceof InversePowerLawMortalityRate
-            mortalityRate = (Double)fcnMortality.calculate(std_len);//using standard length as covariate for mortality
-        }
+        if (stratMort!=null) mortalityRate = stratMort.calculate(std_len,0.0);//using standard length as covariate for mortality
         double totRate = mortalityRate;
        /* if ((ageInStage>=minStageDuration)) {
             totRate += stageTransRate;
@@ -959,6 +1051,16 @@ public class EpijuvStage extends AbstractLHS {
        
         }
         number = number*Math.exp(-dt*totRate/86400);
+        if (isSuperIndividual&&!culled&&CullingPolicy.cull(typeName,gridCellID,number,numberAtEntry)){
+            //negligible abundance: number is recorded as culled; numTrans is left
+            //to make the transition, after which the individual is retired
+            number = 0.0;
+            culled = true;
+            if (!(numTrans>0)) {
+                alive  = false;
+                active = false;
+            }
+        }
     }
     
     @Override
@@ -1032,6 +1134,57 @@ public class EpijuvStage extends AbstractLHS {
         return isSuperIndividual;
     }
     
+    /**
+     * Sets the key for the individual's random draws (see RandomKeyedLHS).
+     * 
+     * @param key - the key
+     */
+    @Override
+    public void setRandomKey(long key) {
+        rngKey = key;
+        hasRngKey = true;
+    }
+    
+    /**
+     * Gets the key for the individual's random draws: the key set by a batch
+     * run or, without one, the key for its id (CounterRNG.getKey).
+     */
+    private long getRandomKey() {
+        return hasRngKey ? rngKey : CounterRNG.getKey(id);
+    }
+    
+    /**
+     * Fills in an observation with the current state of the individual
+     * (see ObservableLHS).
+     * 
+     * @param obs - the observation
+     */
+    @Override
+    public void observe(LHSObservation obs) {
+        obs.typeName    = typeName;
+        obs.id          = id;
+        obs.parentID    = atts.getValue(EpijuvStageAttributes.PROP_parentID,id);
+        obs.origID      = atts.getValue(EpijuvStageAttributes.PROP_origID,id);
+        obs.time        = time;
+        obs.lon         = lon;
+        obs.lat         = lat;
+        obs.depth       = depth;
+        obs.bathym      = bathym;
+        obs.gridCellID  = gridCellID;
+        obs.number      = number;
+        obs.age         = age;
+        obs.ageInStage  = ageInStage;
+        obs.attached    = attached;
+        obs.std_len     = std_len;
+        obs.dry_wgt     = dry_wgt;
+        obs.grSL        = grSL;
+        obs.grDW        = grDW;
+        obs.temperature = temperature;
+        obs.tot_len     = tot_len;
+        obs.wet_wgt     = wet_wgt;
+        obs.hsi         = hsi;
+    }
+    
     /**
      * Updates attribute values defined for this abstract class. 
      */
@@ -11,6 +11,10 @@
  * 20210205: 1. Added IBMFunction category FCAT_VerticalVelocity back.
  *           2. Added IBMFunction categories FCAT_GrowthSL, FCAT_GrowthDW, FCAT_GrowthTL, FCAT_GrowthWW.
  * 20210208: 1. Added integer flags for IBMFunctions.
+ * 20261019: 1. Added HSMFunction_NetCDF_Tiled as potential FCAT_HSM IBMFunction.
+ *           2. Added PARAM_useRKAdvection, PARAM_rkTolerance for optional RK4/RK45 advection.
+ *           3. Added the user-defined (compiled expression) function IBMFunction_UserDefined
+ *                to the GrowthSL, GrowthDW, GrowthTL, GrowthWW, VerticalVelocity categories.
  */
 
 package sh.pcod.EpijuvStage;
@@ -21,8 +25,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
+import sh.pcod.HSMFunction_NetCDF_Tiled;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateDW;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateSL;
+import sh.pcod.IBMFunction_UserDefined;
 import wts.models.DisMELS.IBMFunctions.HSMs.HSMFunction_Constant;
 import wts.models.DisMELS.IBMFunctions.HSMs.HSMFunction_NetCDF;
 import wts.models.DisMELS.IBMFunctions.HSMs.HSMFunction_NetCDF_InMemory;
@@ -49,7 +55,7 @@ public class EpijuvStageParameters extends AbstractLHSParameters {
     public static final long serialVersionUID = 1L;
     
     /** the number of IBMParameter objects defined in the class */
-    public static final int numParams = 8;
+    public static final int numParams = 10;
     public static final String PARAM_isSuperIndividual      = "is a super-individual?";
     public static final String PARAM_horizRWP               = "horizontal random walk parameter [m^2]/[s]";
     public static final String PARAM_minStageDuration       = "min stage duration [d]";
@@ -58,6 +64,8 @@ public class EpijuvStageParameters extends AbstractLHSParameters {
     public static final String PARAM_minSettlementDepth     = "min settlement depth (m)";
     public static final String PARAM_maxSettlementDepth     = "max settlement depth (m)";
     public static final String PARAM_minSettlementHSI       = "min settlement HSI (0-1)";
+    public static final String PARAM_useRKAdvection         = "use higher-order (RK) advection?";
+    public static final String PARAM_rkTolerance            = "RK45 error tolerance [m] (<=0: fixed-step RK4)";
     
     /** the number of IBMFunction categories defined in the class */
     public static final int numFunctionCats = 8;
@@ -88,6 +96,7 @@ public class EpijuvStageParameters extends AbstractLHSParameters {
     public static final int FCN_HSM_Constant        = 1;
     public static final int FCN_HSM_NetCDF          = 2;
     public static final int FCN_HSM_NetCDF_InMemory = 3;
+    public static final int FCN_HSM_NetCDF_Tiled    = 4;
     
     private static final Logger logger = Logger.getLogger(EpijuvStageParameters.class.getName());
     
@@ -128,6 +137,8 @@ public class EpijuvStageParameters extends AbstractLHSParameters {
         key = PARAM_maxSettlementDepth;   mapParams.put(key,new IBMParameterDouble(key,key,new Double(365)));
         key = PARAM_minSettlementHSI;     mapParams.put(key,new IBMParameterDouble(key,key,new Double(0)));
         key = PARAM_useRandomTransitions; mapParams.put(key,new IBMParameterBoolean(key,key,false));
+        key = PARAM_useRKAdvection;       mapParams.put(key,new IBMParameterBoolean(key,key,false));
+        key = PARAM_rkTolerance;          mapParams.put(key,new IBMParameterDouble(key,key,new Double(0)));
     }
 
     @Override
@@ -147,21 +158,25 @@ public class EpijuvStageParameters extends AbstractLHSParameters {
         mapOfPotentialFunctions = new LinkedHashMap<>(2); 
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new IBMFunction_NonEggStageSTDGrowthRateSL(); mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         
         cat = FCAT_GrowthDW; 
         mapOfPotentialFunctions = new LinkedHashMap<>(2); 
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new IBMFunction_NonEggStageSTDGrowthRateDW(); mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         
         cat = FCAT_GrowthTL; 
         mapOfPotentialFunctions = new LinkedHashMap<>(2); 
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new IBMFunction_Epijuv_GrowthRateTL();           mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                   mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         
         cat = FCAT_GrowthWW; 
         mapOfPotentialFunctions = new LinkedHashMap<>(2); 
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new IBMFunction_Epijuv_GrowthRateWW();           mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                   mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         
         cat = FCAT_VerticalMovement;  
         mapOfPotentialFunctions = new LinkedHashMap<>(4); 
@@ -172,6 +187,7 @@ public class EpijuvStageParameters extends AbstractLHSParameters {
         mapOfPotentialFunctions = new LinkedHashMap<>(2); 
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new IBMFunction_Epijuv_VerticalSwimmingSpeed(); mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                  mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         
         cat = FCAT_HSM;  
         mapOfPotentialFunctions = new LinkedHashMap<>(4); 
@@ -179,6 +195,7 @@ public class EpijuvStageParameters extends AbstractLHSParameters {
         ifi = new HSMFunction_Constant();          mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         ifi = new HSMFunction_NetCDF();            mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         ifi = new HSMFunction_NetCDF_InMemory();   mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new HSMFunction_NetCDF_Tiled();      mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
     }
     
     /**
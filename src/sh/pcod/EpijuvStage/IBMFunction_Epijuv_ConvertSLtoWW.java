@@ -9,6 +9,7 @@ import org.openide.util.lookup.ServiceProvider;
 import org.openide.util.lookup.ServiceProviders;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
+import sh.pcod.IBMKernelFunction;
 
 /**
  * IBM function to convert standard length (mm) to wet weight (mg).
@@ -19,7 +20,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_Epijuv_ConvertSLtoWW extends AbstractIBMFunction {
+public class IBMFunction_Epijuv_ConvertSLtoWW extends AbstractIBMFunction implements IBMKernelFunction {
     public static final String DEFAULT_type = "Conversion";
     /** user-friendly function name */
     public static final String DEFAULT_name = "Convert standard length to wet weight";
@@ -77,9 +78,14 @@ public class IBMFunction_Epijuv_ConvertSLtoWW extends AbstractIBMFunction {
      */
     @Override
     public Object calculate(Object o) {
-        double lnSL = Math.log((Double) o);
+        return (Double) calculate((Double) o,0.0);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double lnSL = Math.log(x);
         double ww = 1000*Math.exp(-17.7329551 + 6.7316061*lnSL - 0.5682575 * lnSL*lnSL + Math.pow(0.09793041,2)/2);
-        return (Double) ww;
+        return ww;
     }
     
 }
@@ -10,6 +10,7 @@ import org.openide.util.lookup.ServiceProviders;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
+import sh.pcod.IBMKernelFunction;
 
 /**
  * IBM function to calculate Epijuv growth rate using
@@ -25,7 +26,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_Epijuv_GrowthRateWW extends AbstractIBMFunction implements IBMGrowthFunctionInterface {
+public class IBMFunction_Epijuv_GrowthRateWW extends AbstractIBMFunction implements IBMGrowthFunctionInterface, IBMKernelFunction {
     public static final String DEFAULT_type = "Growth";
     /** user-friendly function name */
     public static final String DEFAULT_name = "Intrinsic growth rate (g/g/d) in wet weight for Pacific cod Epijuv";
@@ -84,9 +85,14 @@ public class IBMFunction_Epijuv_GrowthRateWW extends AbstractIBMFunction impleme
      */
     @Override
     public Object calculate(Object o) {
-        double t = (Double) o;
+        return (Double) calculate((Double) o,0.0);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double t = x;
         double r = (-0.998 + 0.579*t - 0.022*t*t)/100;//original in %/d
-        return (Double) r;
+        return r;
     }
     
 }
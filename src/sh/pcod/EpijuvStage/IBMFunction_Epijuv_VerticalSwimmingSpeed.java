@@ -9,6 +9,7 @@ import org.openide.util.lookup.ServiceProvider;
 import org.openide.util.lookup.ServiceProviders;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
+import sh.pcod.IBMKernelFunction;
 
 /**
  * IBM function to calculate temperature-dependent Epijuv vertical swimming speed using
@@ -21,7 +22,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_Epijuv_VerticalSwimmingSpeed extends AbstractIBMFunction {
+public class IBMFunction_Epijuv_VerticalSwimmingSpeed extends AbstractIBMFunction implements IBMKernelFunction {
     public static final String DEFAULT_type = "Vertical swimming speed";
     /** user-friendly function name */
     public static final String DEFAULT_name = "Vertical swimming speed (mm/s) for Pacific cod Epijuv as function of temperature and size";
@@ -83,11 +84,16 @@ public class IBMFunction_Epijuv_VerticalSwimmingSpeed extends AbstractIBMFunctio
      */
     @Override
     public Object calculate(Object o) {
-        Double[] vals = (Double[])o;
-        double t  = vals[0];//temperature
-        double tl = vals[1];//total length
+        Double[] vals = (Double[]) o;
+        return (Double) calculate(vals[0],vals[1]);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double t  = x;//temperature
+        double tl = y;//total length
         double s = (0.081221 + 0.043168*Math.log10(t)) * Math.pow(tl,1.49652);
-        return (Double) s;
+        return s;
     }
     
 }
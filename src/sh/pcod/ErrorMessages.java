@@ -0,0 +1,53 @@
+/*
+ * ErrorMessages.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod;
+
+import java.awt.GraphicsEnvironment;
+import java.util.logging.Logger;
+
+/**
+ * Reports errors to the user: as a message dialog when the model runs in the
+ * GUI, or only to the log when it runs headless (java.awt.headless, e.g. on a
+ * compute node, or when the system property "sh.pcod.headless" is true, as
+ * set by the batch runner).
+ *
+ * Swing is only loaded when a dialog is shown.
+ *
+ * @author William Stockhausen
+ */
+public class ErrorMessages {
+
+    /** system property to suppress dialogs */
+    public static final String PROP_HEADLESS = "sh.pcod.headless";
+
+    private static final Logger logger = Logger.getLogger(ErrorMessages.class.getName());
+
+    /**
+     * Tests whether dialogs are suppressed.
+     *
+     * @return - true if running headless
+     */
+    public static boolean isHeadless(){
+        return Boolean.getBoolean(PROP_HEADLESS)||GraphicsEnvironment.isHeadless();
+    }
+
+    /**
+     * Logs an error and, if not running headless, shows it in an error dialog.
+     *
+     * @param title - the title
+     * @param msg   - the message
+     */
+    public static void showError(String title, String msg){
+        logger.severe(title+" "+msg);
+        if (!isHeadless()){
+            javax.swing.JOptionPane.showMessageDialog(
+                    null,
+                    msg,
+                    title,
+                    javax.swing.JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
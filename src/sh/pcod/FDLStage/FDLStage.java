@@ -10,6 +10,29 @@
  * 20190722: 1. Removed fields associated with egg stage attributes "devStage" and "density"
  * 20210209: 1. Converted to using IBMFunctions, added STDG functions, renamed 'length' to std_len.
  *           2. Added dry_wgt, converted a number of other variables to attributes
+ * 20261019: 1. Added optional higher-order (RK4/RK45) advection via AdvectionIntegrator.
+ *           2. Horizontal random walk now draws from the per-thread NormalDeviates
+ *                block generator and re-uses the result array instead of allocating one.
+ *           3. Random walk deviates now come from the counter-based CounterRNG keyed on id,
+ *                step time and purpose (NormalDeviates if CounterRNG.useForRandomWalks=false).
+ *           4. updateNum now uses the closed-form AbundanceIntegrator.
+ *           5. Super-individuals with negligible abundance are culled per CullingPolicy
+ *                (checked at the end of updateNum).
+ *           6. Position and bathymetric depth in initialize() are now only logged in debug mode;
+ *                added sampled diagnostic tracing (StageTracer) for initialization, stage transitions
+ *                and exceptions.
+ *           7. Added hot-path timings and counters (StageProfiler).
+ *           8. Implements ObservableLHS; the state of live individuals is recorded at the end of each
+ *                step for the in-run output accumulators (OutputRegistry).
+ *           9. Added transition events for in-run connectivity output (OutputRegistry).
+ *           10. Added report events for the in-run lineage index (OutputRegistry).
+ *           11. Growth, mortality and vertical velocity functions are bound to update
+ *                strategies (RateStrategies) in setParameters, replacing the type codes.
+ *           12. User-defined (compiled expression) functions (IBMFunction_UserDefined) are bound
+ *                like the built-in functions of the same category.
+ *           13. Culling tests and records only number: numTrans is left to make the transition,
+ *                after which the individual is retired.
+ *           14. Random draws use the key set by the batch run (RandomKeyedLHS) instead of the id.
  *
  */
 
@@ -20,8 +43,22 @@ import java.util.logging.Logger;
 import java.util.ArrayList;
 import java.util.List;
 import org.openide.util.lookup.ServiceProvider;
+import sh.pcod.AbundanceIntegrator;
+import sh.pcod.AdvectionIntegrator;
+import sh.pcod.CounterRNG;
+import sh.pcod.CullingPolicy;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateDW;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateSL;
+import sh.pcod.IBMFunction_UserDefined;
+import sh.pcod.IBMKernelFunction;
+import sh.pcod.NormalDeviates;
+import sh.pcod.RandomKeyedLHS;
+import sh.pcod.RateStrategies;
+import sh.pcod.StageTracer;
+import sh.pcod.StageProfiler;
+import sh.pcod.output.LHSObservation;
+import sh.pcod.output.ObservableLHS;
+import sh.pcod.output.OutputRegistry;
 import wts.models.DisMELS.IBMFunctions.Mortality.ConstantMortalityRate;
 import wts.models.DisMELS.IBMFunctions.Mortality.InversePowerLawMortalityRate;
 import wts.models.DisMELS.framework.*;
@@ -38,7 +75,7 @@ import wts.roms.model.Interpolator3D;
  * @author William Stockhausen
  */
 @ServiceProvider(service=LifeStageInterface.class)
-public class FDLStage extends AbstractLHS {
+public class FDLStage extends AbstractLHS implements ObservableLHS, RandomKeyedLHS {
     
         //Static fields    
             //  Static fields new to this class
@@ -82,6 +119,8 @@ public class FDLStage extends AbstractLHS {
     protected double  minStageSize;
     protected double  stageTransRate;
     protected boolean useRandomTransitions;
+    protected boolean useRKAdvection;
+    protected double  rkTolerance;
     
         //fields that reflect (new) attribute values
     /** flag indicating individual is attached to bottom */
@@ -110,11 +149,22 @@ public class FDLStage extends AbstractLHS {
             //other fields
     /** number of individuals transitioning to next stage */
     private double numTrans;  
+    /** number when the individual entered the stage (for culling relative to entry) */
+    private double numberAtEntry = Double.NaN;
+    /** true once number has been culled (the individual is retired after numTrans makes the transition) */
+    private boolean culled = false;
+    /** key for the counter-based random draws (CounterRNG; see getRandomKey) */
+    private long rngKey = 0L;
+    /** true if rngKey was set by a batch run (setRandomKey) */
+    private boolean hasRngKey = false;
     /** FDL Size at flexion */
     protected double flexion=13.5;
     /** in situ temperature */
     double T;
     
+    /** movement components returned by calcUVW (re-used to avoid allocation) */
+    private double[] uvw = new double[3];
+
     /** IBM function selected for mortality */
     private IBMFunctionInterface fcnMortality = null; 
     /** IBM function selected for growth in SL */
@@ -126,13 +176,19 @@ public class FDLStage extends AbstractLHS {
     /** IBM function selected for vertical velocity */
     private IBMFunctionInterface fcnVV = null; 
     
-    private int typeMort = 0;//integer indicating mortality function
-    private int typeGrSL = 0;//integer indicating SL growth function
-    private int typeGrDW = 0;//integer indicating DW growth function
+    /** strategy bound to the selected mortality function (std_len) */
+    private IBMKernelFunction stratMort = null;
+    /** strategy bound to the selected SL growth function (T, std_len) */
+    private IBMKernelFunction stratGrSL = null;
+    /** strategy bound to the selected DW growth function (T, dry_wgt) */
+    private IBMKernelFunction stratGrDW = null;
+    /** strategy bound to the selected vertical velocity function (T, TL) */
+    private IBMKernelFunction stratVV = null;
     private int typeVM   = 0;//integer indicating vertical movement function
-    private int typeVV   = 0;//integer indicating vertical velocity function
 
     private static final Logger logger = Logger.getLogger(FDLStage.class.getName());
+    /** profiler for hot-path timings and counters */
+    private static final StageProfiler prof = StageProfiler.forStage("FDLStage");
     
     /**
      * Creates a new instance of FDLStage.  
@@ -416,26 +472,30 @@ public class FDLStage extends AbstractLHS {
             fcnVM   = params.getSelectedIBMFunctionForCategory(FDLStageParameters.FCAT_VerticalMovement);
             fcnVV   = params.getSelectedIBMFunctionForCategory(FDLStageParameters.FCAT_VerticalVelocity);
             
+            //bind the update strategies once, so step() and updateNum() 
+            //don't test the function types
+            stratMort = null; stratGrSL = null; stratGrDW = null; stratVV = null; typeVM = 0;
             if (fcnMortality instanceof ConstantMortalityRate)
-                typeMort = FDLStageParameters.FCN_Mortality_ConstantMortalityRate;
+                stratMort = RateStrategies.ofNoInputs(fcnMortality);
             else if (fcnMortality instanceof InversePowerLawMortalityRate)
-                typeMort = FDLStageParameters.FCN_Mortality_InversePowerLawMortalityRate;
+                stratMort = RateStrategies.of(fcnMortality);//using std_len as covariate
             
-            if (fcnGrSL instanceof IBMFunction_NonEggStageSTDGrowthRateSL) 
-                typeGrSL = FDLStageParameters.FCN_GrSL_NonEggStageSTDGrowthRate;
-            else if (fcnGrSL instanceof IBMFunction_FDL_GrowthRateSL)    
-                typeGrSL = FDLStageParameters.FCN_GrSL_FDL_GrowthRate;
+            if ((fcnGrSL instanceof IBMFunction_NonEggStageSTDGrowthRateSL)||
+                (fcnGrSL instanceof IBMFunction_FDL_GrowthRateSL)||
+                (fcnGrSL instanceof IBMFunction_UserDefined))
+                stratGrSL = RateStrategies.of(fcnGrSL);
             
-            if (fcnGrDW instanceof IBMFunction_NonEggStageSTDGrowthRateDW) 
-                typeGrDW = FDLStageParameters.FCN_GrDW_NonEggStageSTDGrowthRate;
-            else if (fcnGrDW instanceof IBMFunction_FDL_GrowthRateDW)    
-                typeGrDW = FDLStageParameters.FCN_GrDW_FDL_GrowthRate;
+            if ((fcnGrDW instanceof IBMFunction_NonEggStageSTDGrowthRateDW)||
+                (fcnGrDW instanceof IBMFunction_FDL_GrowthRateDW)||
+                (fcnGrDW instanceof IBMFunction_UserDefined))
+                stratGrDW = RateStrategies.of(fcnGrDW);
             
             if (fcnVM instanceof DielVerticalMigration_FixedDepthRanges)   
                 typeVM = FDLStageParameters.FCN_VM_DVM_FixedDepthRanges;
             
-            if (fcnVV instanceof IBMFunction_FDL_VerticalSwimmingSpeed) 
-                typeVV = FDLStageParameters.FCN_VV_FDL_VerticalSwimmingSpeed;
+            if ((fcnVV instanceof IBMFunction_FDL_VerticalSwimmingSpeed)||
+                (fcnVV instanceof IBMFunction_UserDefined))
+                stratVV = RateStrategies.of(fcnVV);
         } else {
             //TODO: throw some error
         }
@@ -455,6 +515,10 @@ public class FDLStage extends AbstractLHS {
                 params.getValue(FDLStageParameters.PARAM_maxStageDuration,maxStageDuration);
         useRandomTransitions = 
                 params.getValue(FDLStageParameters.PARAM_useRandomTransitions,true);
+        useRKAdvection = 
+                params.getValue(FDLStageParameters.PARAM_useRKAdvection,useRKAdvection);
+        rkTolerance = 
+                params.getValue(FDLStageParameters.PARAM_rkTolerance,rkTolerance);
     }
     
     /**
@@ -473,6 +537,7 @@ public class FDLStage extends AbstractLHS {
             clone.lp      = (LagrangianParticle) lp.clone();
             clone.track   = (ArrayList<Coordinate>) track.clone();
             clone.trackLL = (ArrayList<Coordinate>) trackLL.clone();
+            clone.uvw     = new double[3];
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -503,6 +568,8 @@ public class FDLStage extends AbstractLHS {
 
     private List<LifeStageInterface> createNextLHS() {
         List<LifeStageInterface> nLHSs = null;
+        if (StageTracer.isTraced(id)) 
+            StageTracer.trace(typeName,id,time,"transition","numTrans = "+numTrans);
         try {
             //create LHS with "next" stage
             if (isSuperIndividual) {
@@ -518,6 +585,11 @@ public class FDLStage extends AbstractLHS {
                  */
                 nLHSs = LHS_Factory.createNextLHSsFromSuperIndividual(typeName,this,numTrans);
                 numTrans = 0.0;//reset numTrans to zero
+                if (culled) {
+                    //number was culled (see updateNum): nothing is left in this stage
+                    alive  = false;
+                    active = false;
+                }
             } else {
                 /** 
                  * Since this is a single individual making a transition, we should
@@ -537,14 +609,23 @@ public class FDLStage extends AbstractLHS {
         } catch (IllegalAccessException | InstantiationException ex) {
             ex.printStackTrace();
         }
+        if (nLHSs!=null) {
+            prof.count(StageProfiler.COUNT_TRANSITIONS,nLHSs.size());
+            if (isSuperIndividual) prof.count(StageProfiler.COUNT_SPLITS);
+            if (OutputRegistry.isActive()) OutputRegistry.recordTransition(this,nLHSs);
+        }
         return nLHSs;
     }
     
     @Override
     public String getReport() {
+        long tProf = prof.mark();
         updateAttributes();//make sure attributes are up to date
         atts.setValue(atts.PROP_track, getTrackAsString(COORDINATE_TYPE_GEOGRAPHIC));//
-        return atts.getCSV();
+        String csv = atts.getCSV();
+        if (OutputRegistry.isActive()) OutputRegistry.recordReport(this,csv);
+        prof.lap(StageProfiler.PHASE_REPORT,tProf);
+        return csv;
     }
 
     @Override
@@ -573,7 +654,9 @@ public class FDLStage extends AbstractLHS {
         zPos       = atts.getValue(FDLStageAttributes.PROP_vertPos,zPos);
         time       = startTime;
         numTrans   = 0.0; //set numTrans to zero
-        logger.info(hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
+        if (debug) logger.info(hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
+        if (StageTracer.isTraced(id)) 
+            StageTracer.trace(typeName,id,time,"initialize","position = "+hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
         if (i3d!=null) {
             double[] IJ = new double[] {xPos,yPos};
             if (hType==Types.HORIZ_XY) {
@@ -583,7 +666,9 @@ public class FDLStage extends AbstractLHS {
                 IJ = i3d.getGrid().computeIJfromLL(yPos,xPos);
             }
             double z = i3d.interpolateBathymetricDepth(IJ);
-            logger.info("Bathymetric depth = "+z);
+            if (debug) logger.info("Bathymetric depth = "+z);
+            if (StageTracer.isTraced(id)) 
+                StageTracer.trace(typeName,id,time,"initialize","bathymetric depth = "+z);
             double ssh = i3d.interpolateSSH(IJ);
 
             double K = 0;  //set K = 0 (at bottom) as default
@@ -621,6 +706,8 @@ public class FDLStage extends AbstractLHS {
     
     @Override
     public void step(double dt) throws ArrayIndexOutOfBoundsException {
+        prof.count(StageProfiler.COUNT_STEPS);
+        long tProf = prof.mark();
         //WTS_NEW 2012-07-26:{
         double[] pos = lp.getIJK();
         //System.out.print("uv: "+r+"; "+uv[0]+", "+uv[1]+"\n");
@@ -630,11 +717,16 @@ public class FDLStage extends AbstractLHS {
         copepod    = i3d.interpolateValue(pos,Cop,Interpolator3D.INTERP_VAL);
         euphausiid = i3d.interpolateValue(pos,Eup,Interpolator3D.INTERP_VAL);
         neocalanus = i3d.interpolateValue(pos,NCa,Interpolator3D.INTERP_VAL);
+        tProf = prof.lap(StageProfiler.PHASE_INTERPOLATION,tProf);
       
         double[] uvw = calcUVW(pos,dt);//this also sets "attached" and may change pos[2] to 0
+        tProf = prof.lap(StageProfiler.PHASE_FUNCTIONS,tProf);
         //PRINT UVW
         if (attached){
             lp.setIJK(pos[0], pos[1], pos[2]);
+        } else if (useRKAdvection) {
+            //do higher-order (RK4, or adaptive RK45 if rkTolerance>0) advection
+            pos = AdvectionIntegrator.advect(i3d,lp,uvw[0],uvw[1],uvw[2],dt,rkTolerance);
         } else {
             //}:WTS_NEW 2012-07-26
             //do lagrangian particle tracking
@@ -657,25 +749,23 @@ public class FDLStage extends AbstractLHS {
             pos = lp.getIJK();
             if (debug) logger.info("Depth after corrector step = "+(-i3d.calcZfromK(pos[0],pos[1],pos[2])));
         }
+        tProf = prof.lap(StageProfiler.PHASE_TRACKING,tProf);
         
         time += dt;
         double dtday = dt/86400; //time setp in days
         
-        if (typeGrSL==FDLStageParameters.FCN_GrSL_NonEggStageSTDGrowthRate)
-            grSL = (Double) fcnGrSL.calculate(new Double[]{T,std_len});
-        else if (typeGrSL==FDLStageParameters.FCN_GrSL_FDL_GrowthRate)
-            grSL = (Double) fcnGrSL.calculate(T);
-        if (typeGrDW==FDLStageParameters.FCN_GrDW_NonEggStageSTDGrowthRate)
-            grDW = (Double) fcnGrDW.calculate(new Double[]{T,dry_wgt});
-        if (typeGrDW==FDLStageParameters.FCN_GrDW_FDL_GrowthRate)
-            grDW = (Double) fcnGrDW.calculate(T);
+        if (stratGrSL!=null) grSL = stratGrSL.calculate(T,std_len);
+        if (stratGrDW!=null) grDW = stratGrDW.calculate(T,dry_wgt);
         std_len += grSL*dtday;            //mm dSL/dt = grSL
         dry_wgt *= Math.exp(grDW * dtday);//mg dDW/dt = grDW*DW
         
         updateNum(dt);
         updateAge(dt);
+        tProf = prof.lap(StageProfiler.PHASE_FUNCTIONS,tProf);
         updatePosition(pos);
+        tProf = prof.lap(StageProfiler.PHASE_TRACKING,tProf);
         interpolateEnvVars(pos);
+        tProf = prof.lap(StageProfiler.PHASE_INTERPOLATION,tProf);
         //check for exiting grid
         if (i3d.isAtGridEdge(pos,tolGridEdge)){
             alive=false;
@@ -685,6 +775,8 @@ public class FDLStage extends AbstractLHS {
             logger.info(toString());
         }
         updateAttributes(); //update the attributes object w/ nmodified values
+        prof.lap(StageProfiler.PHASE_ATTRIBUTES,tProf);
+        if (OutputRegistry.isActive()) OutputRegistry.record(this);
     }
     
     /**
@@ -700,9 +792,9 @@ public class FDLStage extends AbstractLHS {
             //fcnVM instanceof wts.models.DisMELS.IBMFunctions.Movement.DielVerticalMigration_FixedDepthRanges
             //calculate the vertical swimming rate
                 if(T<=0.0) T=0.01; 
-                if (typeVV==FDLStageParameters.FCN_VV_FDL_VerticalSwimmingSpeed){
+                if (stratVV!=null){
                     double TL = (std_len + 0.5169)/0.9315; //transform SL to TL
-                    w = (Double) fcnVV.calculate(new Double[]{T,TL});//in mm/s
+                    w = stratVV.calculate(T,TL);//in mm/s
                     w = w/1000.0;//convert to m/s
                 }
             
@@ -730,6 +822,7 @@ public class FDLStage extends AbstractLHS {
                 logger.info("NullPointerException for EggStage id: "+id);
                 logger.info("lon: "+lon+". lat: "+lat+". yearday: "+cal.getYearDay());
                 logger.info(ex.getMessage());
+                StageTracer.onException(typeName,id,time,ex);
             }
             /**
             * @param vars - the inputs variables as a double[] array with elements
@@ -750,18 +843,31 @@ public class FDLStage extends AbstractLHS {
         }
         
         //calculate horizontal movement
-        double[] uv = {0.0,0.0};
+        double[] uv = uvw;//re-used to avoid allocation
+        uv[0] = 0.0; uv[1] = 0.0;
         if (!attached){
             if ((horizRWP>0)&&(Math.abs(dt)>0)) {
                 double r = Math.sqrt(horizRWP/Math.abs(dt));
-                uv[0] += r*rng.computeNormalVariate(); //stochastic swimming rate
-                uv[1] += r*rng.computeNormalVariate(); //stochastic swimming rate
+                if (CounterRNG.useForRandomWalks) {
+                    //reproducible regardless of stepping order/threads
+                    CounterRNG.normalPair(getRandomKey(),time,CounterRNG.PURPOSE_RANDOM_WALK,uv);
+                    uv[0] *= r; //stochastic swimming rate
+                    uv[1] *= r; //stochastic swimming rate
+                } else {
+                    NormalDeviates nd = NormalDeviates.getInstance();
+                    uv[0] += r*nd.next(); //stochastic swimming rate
+                    uv[1] += r*nd.next(); //stochastic swimming rate
+                }
                 if (debug) System.out.print("uv: "+r+"; "+uv[0]+", "+uv[1]+"\n");
             }
         }
         
         //return the result
-        return new double[]{Math.signum(dt)*uv[0],Math.signum(dt)*uv[1],Math.signum(dt)*w};
+        double sgn = Math.signum(dt);
+        uv[0] = sgn*uv[0];
+        uv[1] = sgn*uv[1];
+        uv[2] = sgn*w;
+        return uv;
     }
     //WTS_NEW 2012-07-26:{
 
@@ -783,29 +889,44 @@ public class FDLStage extends AbstractLHS {
      * @param dt - time step in seconds
      */
     private void updateNum(double dt) {
+        updateNum(dt,1);
+    }
+
+    /**
+     * Updates number and numTrans over nSteps identical time steps in a single
+     * (closed-form) evaluation, assuming rates are constant over the steps.
+     * 
+     * @param dt     - time step in seconds
+     * @param nSteps - number of time steps
+     */
+    private void updateNum(double dt, int nSteps) {
+        if (Double.isNaN(numberAtEntry)) numberAtEntry = number;
         //{WTS_NEW 2012-07-26:
         double mortalityRate = 0.0D;//in unis of [days]^-1
-        if (typeMort==FDLStageParameters.FCN_Mortality_ConstantMortalityRate){
-            //fcnMortality instanceof ConstantMortalityRate
-            mortalityRate = (Double)fcnMortality.calculate(null);
-        } else 
-        if (typeMort==FDLStageParameters.FCN_Mortality_InversePowerLawMortalityRate){
-            //fcnMortality instanceof InversePowerLawMortalityRate
-            mortalityRate = (Double)fcnMortality.calculate(std_len);//using std_len as covariate for mortality
-        }
+        if (stratMort!=null) mortalityRate = stratMort.calculate(std_len,0.0);//using std_len as covariate for mortality
         double totRate = mortalityRate;
         if ((ageInStage>=minStageDuration)) {
             totRate += stageTransRate;
             //apply mortality rate to previous number transitioning and
             //add in new transitioners
-            numTrans = numTrans*Math.exp(-dt*mortalityRate/86400)+
-                    (stageTransRate/totRate)*number*(1-Math.exp(-dt*totRate/86400));
+            numTrans = AbundanceIntegrator.advanceTransitioning(number,numTrans,mortalityRate,stageTransRate,dt,nSteps);
         }
-        number = number*Math.exp(-dt*totRate/86400);
+        number = AbundanceIntegrator.advanceNumber(number,totRate,dt,nSteps);
         //}: WTS_NEW 2012-07-26
+        if (isSuperIndividual&&!culled&&CullingPolicy.cull(typeName,gridCellID,number,numberAtEntry)){
+            //negligible abundance: number is recorded as culled; numTrans is left
+            //to make the transition, after which the individual is retired
+            number = 0.0;
+            culled = true;
+            if (!(numTrans>0)) {
+                alive  = false;
+                active = false;
+            }
+        }
     }
     
     private void updatePosition(double[] pos) {
+        prof.count(StageProfiler.COUNT_INTERPOLATIONS);
         bathym     =  i3d.interpolateBathymetricDepth(pos);
         depth      = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
         lat        =  i3d.interpolateLat(pos);
@@ -815,6 +936,7 @@ public class FDLStage extends AbstractLHS {
     }
     
     private void interpolateEnvVars(double[] pos) {
+        prof.count(StageProfiler.COUNT_INTERPOLATIONS);
         temperature = i3d.interpolateTemperature(pos);
         salinity    = i3d.interpolateSalinity(pos);
         if (i3d.getPhysicalEnvironment().getField("rho")!=null) 
@@ -893,6 +1015,54 @@ public class FDLStage extends AbstractLHS {
         return isSuperIndividual;
     }
     
+    /**
+     * Sets the key for the individual's random draws (see RandomKeyedLHS).
+     * 
+     * @param key - the key
+     */
+    @Override
+    public void setRandomKey(long key) {
+        rngKey = key;
+        hasRngKey = true;
+    }
+    
+    /**
+     * Gets the key for the individual's random draws: the key set by a batch
+     * run or, without one, the key for its id (CounterRNG.getKey).
+     */
+    private long getRandomKey() {
+        return hasRngKey ? rngKey : CounterRNG.getKey(id);
+    }
+    
+    /**
+     * Fills in an observation with the current state of the individual
+     * (see ObservableLHS).
+     * 
+     * @param obs - the observation
+     */
+    @Override
+    public void observe(LHSObservation obs) {
+        obs.typeName    = typeName;
+        obs.id          = id;
+        obs.parentID    = atts.getValue(FDLStageAttributes.PROP_parentID,id);
+        obs.origID      = atts.getValue(FDLStageAttributes.PROP_origID,id);
+        obs.time        = time;
+        obs.lon         = lon;
+        obs.lat         = lat;
+        obs.depth       = depth;
+        obs.bathym      = bathym;
+        obs.gridCellID  = gridCellID;
+        obs.number      = number;
+        obs.age         = age;
+        obs.ageInStage  = ageInStage;
+        obs.attached    = attached;
+        obs.std_len     = std_len;
+        obs.dry_wgt     = dry_wgt;
+        obs.grSL        = grSL;
+        obs.grDW        = grDW;
+        obs.temperature = temperature;
+    }
+    
     /**
      * Updates attribute values defined for this class. 
      */
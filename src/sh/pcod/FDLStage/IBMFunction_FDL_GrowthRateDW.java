@@ -10,6 +10,7 @@ import org.openide.util.lookup.ServiceProviders;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
+import sh.pcod.IBMKernelFunction;
 
 /**
  * IBM function to calculate FDL growth rate using
@@ -23,7 +24,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_FDL_GrowthRateDW extends AbstractIBMFunction implements IBMGrowthFunctionInterface {
+public class IBMFunction_FDL_GrowthRateDW extends AbstractIBMFunction implements IBMGrowthFunctionInterface, IBMKernelFunction {
     public static final String DEFAULT_type = "Growth";
     /** user-friendly function name */
     public static final String DEFAULT_name = "Intrinsic growth rate (g/g/d) in dry weight for Pacific cod FDL";
@@ -82,9 +83,14 @@ public class IBMFunction_FDL_GrowthRateDW extends AbstractIBMFunction implements
      */
     @Override
     public Object calculate(Object o) {
-        double t = (Double) o;
+        return (Double) calculate((Double) o,0.0);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double t = x;
         double r = (2.990 + 0.772*t - 0.077*t*t)/100;
-        return (Double) r;
+        return r;
     }
     
 }
@@ -10,6 +10,7 @@ import org.openide.util.lookup.ServiceProviders;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
+import sh.pcod.IBMKernelFunction;
 
 /**
  * IBM function to calculate temperature-dependent FDL growth rate using
@@ -24,7 +25,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_FDL_GrowthRateSL extends AbstractIBMFunction implements IBMGrowthFunctionInterface {
+public class IBMFunction_FDL_GrowthRateSL extends AbstractIBMFunction implements IBMGrowthFunctionInterface, IBMKernelFunction {
     public static final String DEFAULT_type = "Growth";
     /** user-friendly function name */
     public static final String DEFAULT_name = "Growth rate (mm/d) in standard length for Pacific cod FDL";
@@ -83,9 +84,14 @@ public class IBMFunction_FDL_GrowthRateSL extends AbstractIBMFunction implements
      */
     @Override
     public Object calculate(Object o) {
-        double t = (Double) o;
+        return (Double) calculate((Double) o,0.0);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double t = x;
         double r = (0.0179 + (0.015 * t) - (0.0001 * t * t));
-        return (Double) r;
+        return r;
     }
     
 }
@@ -9,6 +9,31 @@
  * 20190722: 1. Removed fields associated with egg stage attributes "devStage" and "density"
  * 20210209: 1. Converted to using IBMFunctions, added STDG functions, renamed 'length' to std_len.
  *           2. Added dry_wgt, converted a number of other variables to attributes
+ * 20261019: 1. Added optional higher-order (RK4/RK45) advection via AdvectionIntegrator.
+ *           2. Added fast path for bottom-attached individuals that skips the movement
+ *                pipeline until the next sunrise/sunset (when detachment becomes possible).
+ *           3. Horizontal random walk now draws from the per-thread NormalDeviates
+ *                block generator and re-uses the result array instead of allocating one.
+ *           4. Random walk deviates now come from the counter-based CounterRNG keyed on id,
+ *                step time and purpose (NormalDeviates if CounterRNG.useForRandomWalks=false).
+ *           5. updateNum now uses the closed-form AbundanceIntegrator.
+ *           6. Super-individuals with negligible abundance are culled per CullingPolicy
+ *                (checked at the end of updateNum).
+ *           7. Position and bathymetric depth in initialize() are now only logged in debug mode;
+ *                added sampled diagnostic tracing (StageTracer) for initialization, stage transitions
+ *                and exceptions.
+ *           8. Added hot-path timings and counters (StageProfiler).
+ *           9. Implements ObservableLHS; the state of live individuals is recorded at the end of each
+ *                step for the in-run output accumulators (OutputRegistry).
+ *           10. Added transition events for in-run connectivity output (OutputRegistry).
+ *           11. Added report events for the in-run lineage index (OutputRegistry).
+ *           12. Growth, mortality and vertical velocity functions are bound to update
+ *                strategies (RateStrategies) in setParameters, replacing the type codes.
+ *           13. User-defined (compiled expression) functions (IBMFunction_UserDefined) are bound
+ *                like the built-in functions of the same category.
+ *           14. Culling tests and records only number: numTrans is left to make the transition,
+ *                after which the individual is retired.
+ *           15. Random draws use the key set by the batch run (RandomKeyedLHS) instead of the id.
  *
  */
 
@@ -25,9 +50,24 @@ import wts.models.DisMELS.framework.*;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.models.utilities.DateTimeFunctions;
 import wts.roms.model.LagrangianParticle;
+import sh.pcod.AbundanceIntegrator;
 import sh.pcod.FDLStage.FDLStageAttributes;
+import sh.pcod.AdvectionIntegrator;
+import sh.pcod.CounterRNG;
+import sh.pcod.CullingPolicy;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateDW;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateSL;
+import sh.pcod.IBMFunction_UserDefined;
+import sh.pcod.IBMKernelFunction;
+import sh.pcod.LightCycle;
+import sh.pcod.NormalDeviates;
+import sh.pcod.RandomKeyedLHS;
+import sh.pcod.RateStrategies;
+import sh.pcod.StageTracer;
+import sh.pcod.StageProfiler;
+import sh.pcod.output.LHSObservation;
+import sh.pcod.output.ObservableLHS;
+import sh.pcod.output.OutputRegistry;
 import wts.models.DisMELS.IBMFunctions.Movement.DielVerticalMigration_FixedDepthRanges;
 import wts.models.utilities.CalendarIF;
 import wts.roms.model.Interpolator3D;
@@ -38,12 +78,16 @@ import wts.roms.model.Interpolator3D;
  * @author Sarah Hinckley
  */
 @ServiceProvider(service=LifeStageInterface.class)
-public class FDLpfStage extends AbstractLHS {
+public class FDLpfStage extends AbstractLHS implements ObservableLHS, RandomKeyedLHS {
     
         //Static fields    
             //  Static fields new to this class
     /* flag to do debug operations */
     public static boolean debug = false;
+    /* flag to skip the movement pipeline for bottom-attached individuals until detachment is possible */
+    public static boolean useAttachedFastPath = true;
+    /* safety margin (s) before predicted sunrise/sunset at which attachment is re-evaluated */
+    public static double attachedCheckMargin = 1800.0;
     /* Class for attributes SH_NEW */
     public static final String attributesClass = 
             sh.pcod.FDLpfStage.FDLpfStageAttributes.class.getName();
@@ -83,6 +127,8 @@ public class FDLpfStage extends AbstractLHS {
     protected double  minStageSize;
     protected double  stageTransRate;
     protected boolean useRandomTransitions;
+    protected boolean useRKAdvection;
+    protected double  rkTolerance;
     
         //fields that reflect (new) attribute values
     /** flag indicating individual is attached to bottom */
@@ -111,11 +157,24 @@ public class FDLpfStage extends AbstractLHS {
             //other fields
     /** number of individuals transitioning to next stage */
     private double numTrans;  
+    /** number when the individual entered the stage (for culling relative to entry) */
+    private double numberAtEntry = Double.NaN;
+    /** true once number has been culled (the individual is retired after numTrans makes the transition) */
+    private boolean culled = false;
+    /** key for the counter-based random draws (CounterRNG; see getRandomKey) */
+    private long rngKey = 0L;
+    /** true if rngKey was set by a batch run (setRandomKey) */
+    private boolean hasRngKey = false;
     /**FDLpf maximum size = random between 25-35.  Stays the same at each time step*/
     protected double maxlength = 25.0;
     //in situ temperature
     double T;
+    /** time (s) until which a bottom-attached individual stays attached (next possible detachment) */
+    private double timeAttachedUntil = Double.NEGATIVE_INFINITY;
     
+    /** movement components returned by calcUVW (re-used to avoid allocation) */
+    private double[] uvw = new double[3];
+
     /** IBM function selected for mortality */
     private IBMFunctionInterface fcnMortality = null; 
     /** IBM function selected for growth in SL */
@@ -127,13 +186,19 @@ public class FDLpfStage extends AbstractLHS {
     /** IBM function selected for vertical velocity */
     private IBMFunctionInterface fcnVV = null; 
     
-    private int typeMort = 0;//integer indicating mortality function
-    private int typeGrSL = 0;//integer indicating SL growth function
-    private int typeGrDW = 0;//integer indicating DW growth function
+    /** strategy bound to the selected mortality function (std_len) */
+    private IBMKernelFunction stratMort = null;
+    /** strategy bound to the selected SL growth function (T, std_len) */
+    private IBMKernelFunction stratGrSL = null;
+    /** strategy bound to the selected DW growth function (T, dry_wgt) */
+    private IBMKernelFunction stratGrDW = null;
+    /** strategy bound to the selected vertical velocity function (T, TL) */
+    private IBMKernelFunction stratVV = null;
     private int typeVM   = 0;//integer indicating vertical movement function
-    private int typeVV   = 0;//integer indicating vertical velocity function
 
     private static final Logger logger = Logger.getLogger(FDLpfStage.class.getName());
+    /** profiler for hot-path timings and counters */
+    private static final StageProfiler prof = StageProfiler.forStage("FDLpfStage");
     
     /**
      * Creates a new instance of FDLpfStage.  
@@ -413,26 +478,30 @@ public class FDLpfStage extends AbstractLHS {
             fcnVM   = params.getSelectedIBMFunctionForCategory(FDLpfStageParameters.FCAT_VerticalMovement);
             fcnVV   = params.getSelectedIBMFunctionForCategory(FDLpfStageParameters.FCAT_VerticalVelocity);
             
+            //bind the update strategies once, so step() and updateNum() 
+            //don't test the function types
+            stratMort = null; stratGrSL = null; stratGrDW = null; stratVV = null; typeVM = 0;
             if (fcnMortality instanceof ConstantMortalityRate)
-                typeMort = FDLpfStageParameters.FCN_Mortality_ConstantMortalityRate;
+                stratMort = RateStrategies.ofNoInputs(fcnMortality);
             else if (fcnMortality instanceof InversePowerLawMortalityRate)
-                typeMort = FDLpfStageParameters.FCN_Mortality_InversePowerLawMortalityRate;
+                stratMort = RateStrategies.of(fcnMortality);//using std_len as covariate
             
-            if (fcnGrSL instanceof IBMFunction_NonEggStageSTDGrowthRateSL) 
-                typeGrSL = FDLpfStageParameters.FCN_GrSL_NonEggStageSTDGrowthRate;
-            else if (fcnGrSL instanceof IBMFunction_FDLpf_GrowthRateSL)    
-                typeGrSL = FDLpfStageParameters.FCN_GrSL_FDLpf_GrowthRate;
+            if ((fcnGrSL instanceof IBMFunction_NonEggStageSTDGrowthRateSL)||
+                (fcnGrSL instanceof IBMFunction_FDLpf_GrowthRateSL)||
+                (fcnGrSL instanceof IBMFunction_UserDefined))
+                stratGrSL = RateStrategies.of(fcnGrSL);
             
-            if (fcnGrDW instanceof IBMFunction_NonEggStageSTDGrowthRateDW) 
-                typeGrDW = FDLpfStageParameters.FCN_GrDW_NonEggStageSTDGrowthRate;
-            else if (fcnGrDW instanceof IBMFunction_FDLpf_GrowthRateDW)    
-                typeGrDW = FDLpfStageParameters.FCN_GrDW_FDLpf_GrowthRate;
+            if ((fcnGrDW instanceof IBMFunction_NonEggStageSTDGrowthRateDW)||
+                (fcnGrDW instanceof IBMFunction_FDLpf_GrowthRateDW)||
+                (fcnGrDW instanceof IBMFunction_UserDefined))
+                stratGrDW = RateStrategies.of(fcnGrDW);
             
             if (fcnVM instanceof DielVerticalMigration_FixedDepthRanges)   
                 typeVM = FDLpfStageParameters.FCN_VM_DVM_FixedDepthRanges;
             
-            if (fcnVV instanceof IBMFunction_FDLpf_VerticalSwimmingSpeed) 
-                typeVV = FDLpfStageParameters.FCN_VV_FDLpf_VerticalSwimmingSpeed;
+            if ((fcnVV instanceof IBMFunction_FDLpf_VerticalSwimmingSpeed)||
+                (fcnVV instanceof IBMFunction_UserDefined))
+                stratVV = RateStrategies.of(fcnVV);
         } else {
             //TODO: throw some error
         }
@@ -452,6 +521,10 @@ public class FDLpfStage extends AbstractLHS {
                 params.getValue(FDLpfStageParameters.PARAM_maxStageDuration,maxStageDuration);
         useRandomTransitions = 
                 params.getValue(FDLpfStageParameters.PARAM_useRandomTransitions,true);
+        useRKAdvection = 
+                params.getValue(FDLpfStageParameters.PARAM_useRKAdvection,useRKAdvection);
+        rkTolerance = 
+                params.getValue(FDLpfStageParameters.PARAM_rkTolerance,rkTolerance);
     }
     
     /**
@@ -470,6 +543,7 @@ public class FDLpfStage extends AbstractLHS {
             clone.lp      = (LagrangianParticle) lp.clone();
             clone.track   = (ArrayList<Coordinate>) track.clone();
             clone.trackLL = (ArrayList<Coordinate>) trackLL.clone();
+            clone.uvw     = new double[3];
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -500,6 +574,8 @@ public class FDLpfStage extends AbstractLHS {
 
     private List<LifeStageInterface> createNextLHS() {
         List<LifeStageInterface> nLHSs = null;
+        if (StageTracer.isTraced(id)) 
+            StageTracer.trace(typeName,id,time,"transition","numTrans = "+numTrans);
         try {
             //create LHS with "next" stage
             if (isSuperIndividual) {
@@ -515,6 +591,11 @@ public class FDLpfStage extends AbstractLHS {
                  */
                 nLHSs = LHS_Factory.createNextLHSsFromSuperIndividual(typeName,this,numTrans);
                 numTrans = 0.0;//reset numTrans to zero
+                if (culled) {
+                    //number was culled (see updateNum): nothing is left in this stage
+                    alive  = false;
+                    active = false;
+                }
             } else {
                 /** 
                  * Since this is a single individual making a transition, we should
@@ -534,14 +615,23 @@ public class FDLpfStage extends AbstractLHS {
         } catch (IllegalAccessException | InstantiationException ex) {
             ex.printStackTrace();
         }
+        if (nLHSs!=null) {
+            prof.count(StageProfiler.COUNT_TRANSITIONS,nLHSs.size());
+            if (isSuperIndividual) prof.count(StageProfiler.COUNT_SPLITS);
+            if (OutputRegistry.isActive()) OutputRegistry.recordTransition(this,nLHSs);
+        }
         return nLHSs;
     }
     
     @Override
     public String getReport() {
+        long tProf = prof.mark();
         updateAttributes();//make sure attributes are up to date
         atts.setValue(atts.PROP_track, getTrackAsString(COORDINATE_TYPE_GEOGRAPHIC));//
-        return atts.getCSV();
+        String csv = atts.getCSV();
+        if (OutputRegistry.isActive()) OutputRegistry.recordReport(this,csv);
+        prof.lap(StageProfiler.PHASE_REPORT,tProf);
+        return csv;
     }
 
     @Override
@@ -570,7 +660,9 @@ public class FDLpfStage extends AbstractLHS {
         zPos       = atts.getValue(FDLpfStageAttributes.PROP_vertPos,zPos);
         time       = startTime;
         numTrans   = 0.0; //set numTrans to zero
-        logger.info(hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
+        if (debug) logger.info(hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
+        if (StageTracer.isTraced(id)) 
+            StageTracer.trace(typeName,id,time,"initialize","position = "+hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
         if (i3d!=null) {
             double[] IJ = new double[] {xPos,yPos};
             if (hType==Types.HORIZ_XY) {
@@ -580,7 +672,9 @@ public class FDLpfStage extends AbstractLHS {
                 IJ = i3d.getGrid().computeIJfromLL(yPos,xPos);
             }
             double z = i3d.interpolateBathymetricDepth(IJ);
-            logger.info("Bathymetric depth = "+z);
+            if (debug) logger.info("Bathymetric depth = "+z);
+            if (StageTracer.isTraced(id)) 
+                StageTracer.trace(typeName,id,time,"initialize","bathymetric depth = "+z);
             double ssh = i3d.interpolateSSH(IJ);
 
             double K = 0;  //set K = 0 (at bottom) as default
@@ -618,6 +712,8 @@ public class FDLpfStage extends AbstractLHS {
     
     @Override
     public void step(double dt) throws ArrayIndexOutOfBoundsException {
+        prof.count(StageProfiler.COUNT_STEPS);
+        long tProf = prof.mark();
         //WTS_NEW 2012-07-26:{
         double[] pos = lp.getIJK();
         //SH_NEW
@@ -628,52 +724,69 @@ public class FDLpfStage extends AbstractLHS {
         copepod    = i3d.interpolateValue(pos,Cop,Interpolator3D.INTERP_VAL);
         euphausiid = i3d.interpolateValue(pos,Eup,Interpolator3D.INTERP_VAL);
         neocalanus = i3d.interpolateValue(pos,NCa,Interpolator3D.INTERP_VAL);
+        tProf = prof.lap(StageProfiler.PHASE_INTERPOLATION,tProf);
              
-        double[] uvw = calcUVW(pos,dt);//this also sets "attached" and may change pos[2] to 0
-        if (attached){
-            lp.setIJK(pos[0], pos[1], pos[2]);
-        } else {
-            //}:WTS_NEW 2012-07-26
-            //do lagrangian particle tracking
-            lp.setU(uvw[0],lp.getN());
-            lp.setV(uvw[1],lp.getN());
-            lp.setW(uvw[2],lp.getN());
-            //now do predictor step
-            lp.doPredictorStep();
-            //assume same daytime status, but recalc depth and revise W 
-            pos = lp.getPredictedIJK();
-            depth = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
-            if (debug) logger.info("Depth after predictor step = "+depth);
-            //w = calcW(dt,lp.getNP1())+r; //set swimming rate for predicted position
-            lp.setU(uvw[0],lp.getNP1());
-            lp.setV(uvw[1],lp.getNP1());
-            lp.setW(uvw[2],lp.getNP1());
-            //now do corrector step
-            lp.doCorrectorStep();
-            pos = lp.getIJK();
-            if (debug) logger.info("Depth after corrector step = "+(-i3d.calcZfromK(pos[0],pos[1],pos[2])));
+        //bottom-attached individuals stay put until the next sunrise/sunset, so
+        //the movement pipeline (and position-dependent updates) can be skipped
+        boolean fastPath = attached&&useAttachedFastPath&&(dt>0)&&(time<timeAttachedUntil);
+        if (!fastPath) {
+            double[] uvw = calcUVW(pos,dt);//this also sets "attached" and may change pos[2] to 0
+            tProf = prof.lap(StageProfiler.PHASE_FUNCTIONS,tProf);
+            if (attached){
+                lp.setIJK(pos[0], pos[1], pos[2]);
+                timeAttachedUntil = Double.NEGATIVE_INFINITY;
+                if (useAttachedFastPath&&(dt>0)) {
+                    double yd = GlobalInfo.getInstance().getCalendar().getYearDay();
+                    timeAttachedUntil = time+LightCycle.computeTimeToNextLightChange(lon,lat,yd,attachedCheckMargin);
+                }
+            } else if (useRKAdvection) {
+                //do higher-order (RK4, or adaptive RK45 if rkTolerance>0) advection
+                pos = AdvectionIntegrator.advect(i3d,lp,uvw[0],uvw[1],uvw[2],dt,rkTolerance);
+            } else {
+                //}:WTS_NEW 2012-07-26
+                //do lagrangian particle tracking
+                lp.setU(uvw[0],lp.getN());
+                lp.setV(uvw[1],lp.getN());
+                lp.setW(uvw[2],lp.getN());
+                //now do predictor step
+                lp.doPredictorStep();
+                //assume same daytime status, but recalc depth and revise W 
+                pos = lp.getPredictedIJK();
+                depth = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
+                if (debug) logger.info("Depth after predictor step = "+depth);
+                //w = calcW(dt,lp.getNP1())+r; //set swimming rate for predicted position
+                lp.setU(uvw[0],lp.getNP1());
+                lp.setV(uvw[1],lp.getNP1());
+                lp.setW(uvw[2],lp.getNP1());
+                //now do corrector step
+                lp.doCorrectorStep();
+                pos = lp.getIJK();
+                if (debug) logger.info("Depth after corrector step = "+(-i3d.calcZfromK(pos[0],pos[1],pos[2])));
+            }
         }
+        tProf = prof.lap(StageProfiler.PHASE_TRACKING,tProf);
         
         time += dt;
         double dtday = dt/86400; //time setp in days
         
-        if (typeGrSL==FDLpfStageParameters.FCN_GrSL_NonEggStageSTDGrowthRate)
-            grSL = (Double) fcnGrSL.calculate(new Double[]{T,std_len});
-        else if (typeGrSL==FDLpfStageParameters.FCN_GrSL_FDLpf_GrowthRate)
-            grSL = (Double) fcnGrSL.calculate(T);
-        if (typeGrDW==FDLpfStageParameters.FCN_GrDW_NonEggStageSTDGrowthRate)
-            grDW = (Double) fcnGrDW.calculate(new Double[]{T,dry_wgt});
-        if (typeGrDW==FDLpfStageParameters.FCN_GrDW_FDLpf_GrowthRate)
-            grDW = (Double) fcnGrDW.calculate(T);
+        if (stratGrSL!=null) grSL = stratGrSL.calculate(T,std_len);
+        if (stratGrDW!=null) grDW = stratGrDW.calculate(T,dry_wgt);
         std_len += grSL*dtday;
         dry_wgt *= Math.exp(grDW * dtday);
         
         updateNum(dt);
         updateAge(dt);
-        updatePosition(pos);
+        tProf = prof.lap(StageProfiler.PHASE_FUNCTIONS,tProf);
+        if (fastPath) {
+            updateTrack();//position is unchanged
+        } else {
+            updatePosition(pos);
+        }
+        tProf = prof.lap(StageProfiler.PHASE_TRACKING,tProf);
         interpolateEnvVars(pos);
+        tProf = prof.lap(StageProfiler.PHASE_INTERPOLATION,tProf);
         //check for exiting grid
-        if (i3d.isAtGridEdge(pos,tolGridEdge)){
+        if ((!fastPath)&&i3d.isAtGridEdge(pos,tolGridEdge)){
             alive=false;
             active=false;
         }
@@ -681,6 +794,8 @@ public class FDLpfStage extends AbstractLHS {
             logger.info(toString());
         }
         updateAttributes(); //update the attributes object w/ nmodified values
+        prof.lap(StageProfiler.PHASE_ATTRIBUTES,tProf);
+        if (OutputRegistry.isActive()) OutputRegistry.record(this);
     }
     
     /**
@@ -696,9 +811,9 @@ public class FDLpfStage extends AbstractLHS {
             //fcnVM instanceof wts.models.DisMELS.IBMFunctions.Movement.DielVerticalMigration_FixedDepthRanges
             //calculate the vertical swimming rate
                 if(T<=0.0) T=0.01; 
-                if (typeVV==FDLpfStageParameters.FCN_VV_FDLpf_VerticalSwimmingSpeed){
+                if (stratVV!=null){
                     double TL = (std_len + 0.5169)/0.9315; //transform SL to TL
-                    w = (Double) fcnVV.calculate(new Double[]{T,TL});//in mm/s
+                    w = stratVV.calculate(T,TL);//in mm/s
                     w = w/1000.0;//convert to m/s
                 }
             
@@ -726,6 +841,7 @@ public class FDLpfStage extends AbstractLHS {
                 logger.info("NullPointerException for FDLpfStage id: "+id);
                 logger.info("lon: "+lon+". lat: "+lat+". yearday: "+cal.getYearDay());
                 logger.info(ex.getMessage());
+                StageTracer.onException(typeName,id,time,ex);
             }
             /**
             * @param vars - the inputs variables as a double[] array with elements
@@ -746,18 +862,31 @@ public class FDLpfStage extends AbstractLHS {
         }
         
         //calculate horizontal movement
-        double[] uv = {0.0,0.0};
+        double[] uv = uvw;//re-used to avoid allocation
+        uv[0] = 0.0; uv[1] = 0.0;
         if (!attached){
             if ((horizRWP>0)&&(Math.abs(dt)>0)) {
                 double r = Math.sqrt(horizRWP/Math.abs(dt));
-                uv[0] += r*rng.computeNormalVariate(); //stochastic swimming rate
-                uv[1] += r*rng.computeNormalVariate(); //stochastic swimming rate
+                if (CounterRNG.useForRandomWalks) {
+                    //reproducible regardless of stepping order/threads
+                    CounterRNG.normalPair(getRandomKey(),time,CounterRNG.PURPOSE_RANDOM_WALK,uv);
+                    uv[0] *= r; //stochastic swimming rate
+                    uv[1] *= r; //stochastic swimming rate
+                } else {
+                    NormalDeviates nd = NormalDeviates.getInstance();
+                    uv[0] += r*nd.next(); //stochastic swimming rate
+                    uv[1] += r*nd.next(); //stochastic swimming rate
+                }
                 if (debug) System.out.print("uv: "+r+"; "+uv[0]+", "+uv[1]+"\n");
             }
         }
         
         //return the result
-        return new double[]{Math.signum(dt)*uv[0],Math.signum(dt)*uv[1],Math.signum(dt)*w};
+        double sgn = Math.signum(dt);
+        uv[0] = sgn*uv[0];
+        uv[1] = sgn*uv[1];
+        uv[2] = sgn*w;
+        return uv;
     }
 
     /**
@@ -778,27 +907,42 @@ public class FDLpfStage extends AbstractLHS {
      * @param dt - time step in seconds
      */
     private void updateNum(double dt) {
+        updateNum(dt,1);
+    }
+
+    /**
+     * Updates number and numTrans over nSteps identical time steps in a single
+     * (closed-form) evaluation, assuming rates are constant over the steps.
+     * 
+     * @param dt     - time step in seconds
+     * @param nSteps - number of time steps
+     */
+    private void updateNum(double dt, int nSteps) {
+        if (Double.isNaN(numberAtEntry)) numberAtEntry = number;
         double mortalityRate = 0.0D;//in unis of [days]^-1
-        if (typeMort==FDLpfStageParameters.FCN_Mortality_ConstantMortalityRate){
-            //fcnMortality instanceof ConstantMortalityRate
-            mortalityRate = (Double)fcnMortality.calculate(null);
-        } else 
-        if (typeMort==FDLpfStageParameters.FCN_Mortality_InversePowerLawMortalityRate){
-            //fcnMortality instanceof InversePowerLawMortalityRate
-            mortalityRate = (Double)fcnMortality.calculate(std_len);//using std_len as covariate for mortality
-        }
+        if (stratMort!=null) mortalityRate = stratMort.calculate(std_len,0.0);//using std_len as covariate for mortality
         double totRate = mortalityRate;
         if ((ageInStage>=minStageDuration)) {
             totRate += stageTransRate;
             //apply mortality rate to previous number transitioning and
             //add in new transitioners
-            numTrans = numTrans*Math.exp(-dt*mortalityRate/86400)+
-                    (stageTransRate/totRate)*number*(1-Math.exp(-dt*totRate/86400));
+            numTrans = AbundanceIntegrator.advanceTransitioning(number,numTrans,mortalityRate,stageTransRate,dt,nSteps);
+        }
+        number = AbundanceIntegrator.advanceNumber(number,totRate,dt,nSteps);
+        if (isSuperIndividual&&!culled&&CullingPolicy.cull(typeName,gridCellID,number,numberAtEntry)){
+            //negligible abundance: number is recorded as culled; numTrans is left
+            //to make the transition, after which the individual is retired
+            number = 0.0;
+            culled = true;
+            if (!(numTrans>0)) {
+                alive  = false;
+                active = false;
+            }
         }
-        number = number*Math.exp(-dt*totRate/86400);
     }
     
     private void updatePosition(double[] pos) {
+        prof.count(StageProfiler.COUNT_INTERPOLATIONS);
         bathym     =  i3d.interpolateBathymetricDepth(pos);
         depth      = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
         lat        =  i3d.interpolateLat(pos);
@@ -808,6 +952,7 @@ public class FDLpfStage extends AbstractLHS {
     }
     
     private void interpolateEnvVars(double[] pos) {
+        prof.count(StageProfiler.COUNT_INTERPOLATIONS);
         temperature = i3d.interpolateTemperature(pos);
         salinity    = i3d.interpolateSalinity(pos);
         if (i3d.getPhysicalEnvironment().getField("rho")!=null) 
@@ -886,6 +1031,54 @@ public class FDLpfStage extends AbstractLHS {
         return isSuperIndividual;
     }
     
+    /**
+     * Sets the key for the individual's random draws (see RandomKeyedLHS).
+     * 
+     * @param key - the key
+     */
+    @Override
+    public void setRandomKey(long key) {
+        rngKey = key;
+        hasRngKey = true;
+    }
+    
+    /**
+     * Gets the key for the individual's random draws: the key set by a batch
+     * run or, without one, the key for its id (CounterRNG.getKey).
+     */
+    private long getRandomKey() {
+        return hasRngKey ? rngKey : CounterRNG.getKey(id);
+    }
+    
+    /**
+     * Fills in an observation with the current state of the individual
+     * (see ObservableLHS).
+     * 
+     * @param obs - the observation
+     */
+    @Override
+    public void observe(LHSObservation obs) {
+        obs.typeName    = typeName;
+        obs.id          = id;
+        obs.parentID    = atts.getValue(FDLpfStageAttributes.PROP_parentID,id);
+        obs.origID      = atts.getValue(FDLpfStageAttributes.PROP_origID,id);
+        obs.time        = time;
+        obs.lon         = lon;
+        obs.lat         = lat;
+        obs.depth       = depth;
+        obs.bathym      = bathym;
+        obs.gridCellID  = gridCellID;
+        obs.number      = number;
+        obs.age         = age;
+        obs.ageInStage  = ageInStage;
+        obs.attached    = attached;
+        obs.std_len     = std_len;
+        obs.dry_wgt     = dry_wgt;
+        obs.grSL        = grSL;
+        obs.grDW        = grDW;
+        obs.temperature = temperature;
+    }
+    
     /**
      * Updates attribute values defined for this abstract class. 
      */
@@ -912,6 +1105,7 @@ public class FDLpfStage extends AbstractLHS {
     protected void updateVariables() {
         super.updateVariables();
         attached    = atts.getValue(FDLpfStageAttributes.PROP_attached,attached);
+        timeAttachedUntil = Double.NEGATIVE_INFINITY;
         std_len     = atts.getValue(FDLpfStageAttributes.PROP_SL,std_len);
         dry_wgt     = atts.getValue(FDLpfStageAttributes.PROP_DW,dry_wgt);
         grSL        = atts.getValue(FDLpfStageAttributes.PROP_grSL,grSL);
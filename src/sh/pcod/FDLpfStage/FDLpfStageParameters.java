@@ -10,6 +10,9 @@
  * 20210205: 1. Added IBMFunction category FCAT_VerticalVelocity back.
  *           2. Added IBMFunction categories FCAT_GrowthSL, FCAT_GrowthDW.
  * 20210208: 1. Added integer flags for IBMFunctions.
+ * 20261019: 1. Added PARAM_useRKAdvection, PARAM_rkTolerance for optional RK4/RK45 advection.
+ *           2. Added the user-defined (compiled expression) function IBMFunction_UserDefined
+ *                to the GrowthSL, GrowthDW, VerticalVelocity categories.
  *
  */
 
@@ -23,6 +26,7 @@ import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateDW;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateSL;
+import sh.pcod.IBMFunction_UserDefined;
 import wts.models.DisMELS.IBMFunctions.Mortality.ConstantMortalityRate;
 import wts.models.DisMELS.IBMFunctions.Mortality.InversePowerLawMortalityRate;
 import wts.models.DisMELS.IBMFunctions.Movement.DielVerticalMigration_FixedDepthRanges;
@@ -47,12 +51,14 @@ public class FDLpfStageParameters extends AbstractLHSParameters {
     public static final long serialVersionUID = 1L;
     
     /** the number of IBMParameter objects defined in the class */
-    public static final int numParams = 5;
+    public static final int numParams = 7;
     public static final String PARAM_isSuperIndividual      = "is a super-individual?";
     public static final String PARAM_horizRWP               = "horizontal random walk parameter [m^2]/[s]";
     public static final String PARAM_minStageDuration       = "min stage duration [d]";
     public static final String PARAM_maxStageDuration       = "max stage duration [d]";
     public static final String PARAM_useRandomTransitions   = "use random transitions";
+    public static final String PARAM_useRKAdvection         = "use higher-order (RK) advection?";
+    public static final String PARAM_rkTolerance            = "RK45 error tolerance [m] (<=0: fixed-step RK4)";
     
     /** the number of IBMFunction categories defined in the class */
     public static final int numFunctionCats = 5;
@@ -111,6 +117,8 @@ public class FDLpfStageParameters extends AbstractLHSParameters {
         key = PARAM_minStageDuration;     mapParams.put(key,new IBMParameterDouble(key,key,new Double(0)));
         key = PARAM_maxStageDuration;     mapParams.put(key,new IBMParameterDouble(key,key,new Double(365)));
         key = PARAM_useRandomTransitions; mapParams.put(key,new IBMParameterBoolean(key,key,false));
+        key = PARAM_useRKAdvection;       mapParams.put(key,new IBMParameterBoolean(key,key,false));
+        key = PARAM_rkTolerance;          mapParams.put(key,new IBMParameterDouble(key,key,new Double(0)));
     }
 
     @Override
@@ -130,12 +138,14 @@ public class FDLpfStageParameters extends AbstractLHSParameters {
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new IBMFunction_FDLpf_GrowthRateSL();           mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         ifi = new IBMFunction_NonEggStageSTDGrowthRateSL(); mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         
         cat = FCAT_GrowthDW; 
         mapOfPotentialFunctions = new LinkedHashMap<>(2); 
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new IBMFunction_FDLpf_GrowthRateDW();           mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         ifi = new IBMFunction_NonEggStageSTDGrowthRateDW(); mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
         
         cat = FCAT_VerticalMovement;  
         mapOfPotentialFunctions = new LinkedHashMap<>(4); 
@@ -146,6 +156,7 @@ public class FDLpfStageParameters extends AbstractLHSParameters {
         mapOfPotentialFunctions = new LinkedHashMap<>(2); 
         mapOfPotentialFunctionsByCategory.put(cat,mapOfPotentialFunctions);
         ifi = new IBMFunction_FDLpf_VerticalSwimmingSpeed(); mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
+        ifi = new IBMFunction_UserDefined();                 mapOfPotentialFunctions.put(ifi.getFunctionName(),ifi);
     }
     
     /**
@@ -9,6 +9,7 @@ import org.openide.util.lookup.ServiceProvider;
 import org.openide.util.lookup.ServiceProviders;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
+import sh.pcod.IBMKernelFunction;
 
 /**
  * IBM function to convert standard length to total length.
@@ -19,7 +20,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_FDLpf_ConvertSLtoTL extends AbstractIBMFunction {
+public class IBMFunction_FDLpf_ConvertSLtoTL extends AbstractIBMFunction implements IBMKernelFunction {
     public static final String DEFAULT_type = "Conversion";
     /** user-friendly function name */
     public static final String DEFAULT_name = "Convert standard length to total length for Pacific cod FDLpf";
@@ -77,9 +78,14 @@ public class IBMFunction_FDLpf_ConvertSLtoTL extends AbstractIBMFunction {
      */
     @Override
     public Object calculate(Object o) {
-        double sl = (Double) o;
+        return (Double) calculate((Double) o,0.0);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double sl = x;
         double tl = (sl + 0.5169)/0.9315;
-        return (Double) tl;
+        return tl;
     }
     
 }
@@ -0,0 +1,478 @@
+/*
+ * HSMFunction_NetCDF_Tiled.java
+ *
+ * 20261019: created function.
+ * 20261019: implements IBMKernelFunction (bound as the HSI update strategy).
+ * 20261019: lookups of resident tiles are lock-free (clock eviction); tiles that
+ *           can't be read are cached as missing and logged once.
+ * 20261019: removed the array calculate (see RateStrategies.calculate).
+ */
+package sh.pcod;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.util.lookup.ServiceProvider;
+import org.openide.util.lookup.ServiceProviders;
+import ucar.ma2.Array;
+import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
+import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
+
+/**
+ * IBM function to look up habitat suitability (HSI) values from a raster
+ * in a local NetCDF file, holding the raster in memory as fixed-size tiles that
+ * are loaded on demand and evicted (least-recently-used first) when the
+ * number of cached tiles exceeds a memory budget.
+ *
+ * The raster variable must be 2D (lat,lon) or 3D (time,lat,lon; the first time
+ * slice is used) with regularly-spaced 1D coordinate variables for longitude and
+ * latitude. Lookups are nearest-cell. Locations outside the raster and missing
+ * values return 0 (unsuitable).
+ *
+ * Use calculate(lon,lat) from stage classes to avoid boxing and array allocation.
+ *
+ * Lookups in resident tiles don't lock, so individuals stepped on several
+ * threads don't wait for each other; a lock is only taken to read a missing
+ * tile (NetCDF reads are not thread-safe). Eviction uses the clock
+ * approximation of LRU: a lookup marks its tile as referenced, and the
+ * eviction sweep evicts the first tile that has not been referenced since
+ * the sweep last passed it. A tile that can't be read is logged once and
+ * cached as missing values (HSI 0), so it is not re-read on every lookup.
+ *
+ * @author William Stockhausen
+ */
+@ServiceProviders(value={
+    @ServiceProvider(service=IBMFunctionInterface.class)}
+)
+
+public class HSMFunction_NetCDF_Tiled extends AbstractIBMFunction implements IBMKernelFunction {
+    public static final String DEFAULT_type = "HSM";
+    /** user-friendly function name */
+    public static final String DEFAULT_name = "HSM from NetCDF file (tiled in-memory cache)";
+    /** function description */
+    public static final String DEFAULT_descr = "Habitat suitability from a NetCDF raster using a tiled in-memory cache";
+    /** full description */
+    public static final String DEFAULT_fullDescr =
+        "\n\t**************************************************************************"+
+        "\n\t* This function returns the habitat suitability index (HSI) at a"+
+        "\n\t* (lon,lat) location from a raster in a NetCDF file. The raster is read"+
+        "\n\t* in square tiles on demand; the least-recently used tiles are evicted"+
+        "\n\t* when the cache exceeds the memory budget."+
+        "\n\t* "+
+        "\n\t* @author William Stockhausen"+
+        "\n\t* "+
+        "\n\t* Variables:"+
+        "\n\t*      pos - double[]{lon,lat}"+
+        "\n\t* Value:"+
+        "\n\t*      hsi - Double - habitat suitability index (0 outside the raster)"+
+        "\n\t* Parameters:"+
+        "\n\t*      file name       - String - path to the NetCDF file"+
+        "\n\t*      variable name   - String - name of the HSI variable"+
+        "\n\t*      lon name        - String - name of the longitude coordinate variable"+
+        "\n\t*      lat name        - String - name of the latitude coordinate variable"+
+        "\n\t*      tile size       - Double - tile size (cells per side)"+
+        "\n\t*      memory budget   - Double - max memory for cached tiles (MB)"+
+        "\n\t**************************************************************************";
+    /** number of settable parameters */
+    public static final int numParams = 6;
+    /** number of sub-functions */
+    public static final int numSubFuncs = 0;
+
+    public static final String PARAM_fileName  = "file name";
+    public static final String PARAM_varName   = "HSI variable name";
+    public static final String PARAM_lonName   = "longitude variable name";
+    public static final String PARAM_latName   = "latitude variable name";
+    public static final String PARAM_tileSize  = "tile size (cells per side)";
+    public static final String PARAM_memBudget = "memory budget for cached tiles (MB)";
+
+    private static final Logger logger = Logger.getLogger(HSMFunction_NetCDF_Tiled.class.getName());
+
+    /* parameter values */
+    private String fileName = "";
+    private String varName  = "hsi";
+    private String lonName  = "lon";
+    private String latName  = "lat";
+    private int    tileSize = 128;
+    private double memBudget = 64;
+
+    /** the open raster and its tile cache (null if not open) */
+    private volatile Raster raster = null;
+    /** lock for opening, reading tiles and closing */
+    private final Object lock = new Object();
+
+    /* cache metrics (hits are counted in per-thread stripes) */
+    private static final int STRIPES = 16;
+    private static final int PAD     = 8;//longs per stripe (one cache line)
+    private final AtomicLongArray hits = new AtomicLongArray(STRIPES*PAD);
+    private long misses    = 0;
+    private long evictions = 0;
+    private long failures  = 0;
+    private int  maxTiles  = 0;
+
+    public HSMFunction_NetCDF_Tiled(){
+        super(numParams,numSubFuncs,DEFAULT_type,DEFAULT_name,DEFAULT_descr,DEFAULT_fullDescr);
+        String key;
+        key = PARAM_fileName;  addParameter(key,String.class,"path to NetCDF file with HSI raster");
+        key = PARAM_varName;   addParameter(key,String.class,"name of HSI variable");
+        key = PARAM_lonName;   addParameter(key,String.class,"name of longitude coordinate variable");
+        key = PARAM_latName;   addParameter(key,String.class,"name of latitude coordinate variable");
+        key = PARAM_tileSize;  addParameter(key,Double.class,"tile size (cells per side)");
+        key = PARAM_memBudget; addParameter(key,Double.class,"memory budget for cached tiles (MB)");
+        super.setParameterValue(PARAM_varName,  varName);
+        super.setParameterValue(PARAM_lonName,  lonName);
+        super.setParameterValue(PARAM_latName,  latName);
+        super.setParameterValue(PARAM_tileSize, new Double(tileSize));
+        super.setParameterValue(PARAM_memBudget,new Double(memBudget));
+    }
+
+    @Override
+    public Object clone() {
+        HSMFunction_NetCDF_Tiled clone = new HSMFunction_NetCDF_Tiled();
+        clone.setFunctionType(getFunctionType());
+        clone.setFunctionName(getFunctionName());
+        clone.setDescription(getDescription());
+        clone.setFullDescription(getFullDescription());
+        for (String key: getParameterNames()) clone.setParameterValue(key,getParameter(key).getValue());
+        return clone;
+    }
+
+    @Override
+    public boolean setParameterValue(String param,Object value){
+        synchronized (lock) {
+            if (!super.setParameterValue(param, value)) return false;
+            switch (param) {
+                case PARAM_fileName:
+                    fileName = (String) value;
+                    break;
+                case PARAM_varName:
+                    varName = (String) value;
+                    break;
+                case PARAM_lonName:
+                    lonName = (String) value;
+                    break;
+                case PARAM_latName:
+                    latName = (String) value;
+                    break;
+                case PARAM_tileSize:
+                    tileSize = Math.max(8,((Double) value).intValue());
+                    break;
+                case PARAM_memBudget:
+                    memBudget = ((Double) value).doubleValue();
+                    break;
+            }
+            close();//force re-open with new parameter values
+            return true;
+        }
+    }
+
+    /**
+     * Calculates the HSI value at a location.
+     *
+     * @param o - double[]{lon,lat}
+     *
+     * @return Double - the HSI value
+     */
+    @Override
+    public Object calculate(Object o) {
+        double[] pos = (double[]) o;
+        return (Double) calculate(pos[0],pos[1]);
+    }
+
+    /**
+     * Calculates the HSI value at a location without boxing.
+     *
+     * @param lon - longitude (deg E)
+     * @param lat - latitude (deg N)
+     *
+     * @return the HSI value (0 outside the raster or where missing)
+     */
+    @Override
+    public double calculate(double lon, double lat){
+        Raster r = raster;
+        if (r==null) r = open();
+        if (r==null) return 0.0;
+        int j = (int) Math.round((lat-r.lat0)/r.dLat);
+        if ((j<0)||(j>=r.nLat)) return 0.0;
+        int i = (int) Math.round((lon-r.lon0)/r.dLon);
+        if ((i<0)||(i>=r.nLon)) {
+            //try wrapping longitude (e.g., -170 vs. 190)
+            double lonw = (lon<r.lon0) ? lon+360.0 : lon-360.0;
+            i = (int) Math.round((lonw-r.lon0)/r.dLon);
+            if ((i<0)||(i>=r.nLon)) return 0.0;
+        }
+        int tr = j/r.tileSize;
+        int tc = i/r.tileSize;
+        int key = tr*r.nTileCols+tc;
+        float[] tile = r.tiles.get(key);
+        if (tile!=null) {
+            if (r.referenced[key]==0) r.referenced[key] = 1;//benign race: approximate LRU
+            hits.incrementAndGet(((int) Thread.currentThread().getId()&(STRIPES-1))*PAD);
+        } else {
+            tile = loadTile(r,key,tr,tc);
+            if (tile==null) return 0.0;
+        }
+        float v = tile[(j-tr*r.tileSize)*r.tileSize+(i-tc*r.tileSize)];
+        if (Float.isNaN(v)||(v==r.fillValue)) return 0.0;
+        return v;
+    }
+
+    /**
+     * Gets the number of lookups satisfied from cached tiles.
+     * @return - number of cache hits
+     */
+    public long getHits(){
+        long n = 0;
+        for (int s=0;s<STRIPES;s++) n += hits.get(s*PAD);
+        return n;
+    }
+
+    /**
+     * Gets the number of lookups that required reading a tile from the file.
+     * @return - number of cache misses
+     */
+    public long getMisses(){
+        synchronized (lock) {return misses;}
+    }
+
+    /**
+     * Gets the number of tiles evicted from the cache.
+     * @return - number of evictions
+     */
+    public long getEvictions(){
+        synchronized (lock) {return evictions;}
+    }
+
+    /**
+     * Gets the fraction of lookups satisfied from cached tiles.
+     * @return - the hit rate (0-1), or NaN if no lookups have been made
+     */
+    public double getHitRate(){
+        long h = getHits();
+        long n = h+getMisses();
+        return (n>0) ? ((double) h)/n : Double.NaN;
+    }
+
+    /**
+     * Gets a one-line summary of the cache metrics.
+     * @return - the summary
+     */
+    public String getCacheSummary(){
+        synchronized (lock) {
+            Raster r = raster;
+            int n = (r==null) ? 0 : r.nResident;
+            return "HSI tile cache ("+fileName+"): hits="+getHits()+", misses="+misses+
+                   ", hit rate="+getHitRate()+", evictions="+evictions+
+                   ", unreadable tiles="+failures+", tiles cached="+n+"/"+maxTiles;
+        }
+    }
+
+    /**
+     * Closes the NetCDF file and clears the tile cache.
+     * The file is re-opened on the next lookup.
+     */
+    public void close(){
+        synchronized (lock) {
+            Raster r = raster;
+            if (r==null) return;
+            logger.info(getCacheSummary());
+            raster = null;
+            try {
+                r.nc.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING,"Error closing "+fileName,ex);
+            }
+        }
+    }
+
+    /**
+     * Opens the NetCDF file and reads the raster description and coordinates.
+     *
+     * @return - the open raster (null if it can't be opened)
+     */
+    private Raster open(){
+        synchronized (lock) {
+            if (raster!=null) return raster;
+            if ((fileName==null)||fileName.isEmpty()) return null;
+            NetcdfFile nc = null;
+            try {
+                nc = NetcdfFile.open(fileName);
+                Variable var  = nc.findVariable(varName);
+                Variable vLon = nc.findVariable(lonName);
+                Variable vLat = nc.findVariable(latName);
+                if ((var==null)||(vLon==null)||(vLat==null)) {
+                    logger.severe("Could not find HSI variables '"+varName+"','"+lonName+"','"+latName+"' in "+fileName);
+                    nc.close();
+                    return null;
+                }
+                Raster r = new Raster(nc,var,tileSize);
+                int[] shp = var.getShape();
+                r.nLat = shp[r.rank-2];
+                r.nLon = shp[r.rank-1];
+                Array aLon = vLon.read();
+                Array aLat = vLat.read();
+                r.lon0 = aLon.getDouble(0);
+                r.dLon = (r.nLon>1) ? (aLon.getDouble(r.nLon-1)-r.lon0)/(r.nLon-1) : 1.0;
+                r.lat0 = aLat.getDouble(0);
+                r.dLat = (r.nLat>1) ? (aLat.getDouble(r.nLat-1)-r.lat0)/(r.nLat-1) : 1.0;
+                Attribute fv = var.findAttribute("_FillValue");
+                if (fv!=null) r.fillValue = fv.getNumericValue().floatValue();
+                r.nTileCols = (r.nLon+tileSize-1)/tileSize;
+                long nTiles = ((long) r.nTileCols)*((r.nLat+tileSize-1)/tileSize);
+                if (nTiles>Integer.MAX_VALUE/2) {
+                    logger.severe("HSI raster "+fileName+" has too many tiles ("+nTiles+"); increase the tile size.");
+                    nc.close();
+                    return null;
+                }
+                long bytesPerTile = 4L*tileSize*tileSize;
+                maxTiles = (int) Math.max(1,Math.min(nTiles,(long)(memBudget*1024*1024)/bytesPerTile));
+                r.allocate((int) nTiles,maxTiles);
+                misses = 0; evictions = 0; failures = 0;
+                for (int s=0;s<STRIPES;s++) hits.set(s*PAD,0);
+                raster = r;
+                logger.info("Opened HSI raster "+fileName+" ("+r.nLat+" x "+r.nLon+"), "+
+                            "tile size = "+tileSize+", max tiles = "+maxTiles);
+                return r;
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE,"Error opening HSI file "+fileName,ex);
+                if (nc!=null) {
+                    try {nc.close();} catch (IOException ex1) {/* already failed */}
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Reads a missing tile into the cache (evicting a tile if the cache is
+     * full), unless another thread has read it in the meantime.
+     *
+     * @return - the tile (null if the raster was closed)
+     */
+    private float[] loadTile(Raster r, int key, int tr, int tc){
+        synchronized (lock) {
+            if (raster!=r) return null;//closed (or re-opened) meanwhile
+            float[] tile = r.tiles.get(key);
+            if (tile!=null) return tile;
+            misses++;
+            tile = readTile(r,tr,tc);
+            if (tile==null) {
+                //cache the failure: the tile reads as missing values from now on
+                failures++;
+                r.tiles.set(key,r.missingTile());
+                return r.missingTile();
+            }
+            if (r.nResident<r.slots.length) {
+                r.slots[r.nResident++] = key;
+            } else {
+                //clock sweep: evict the first tile not referenced since the last sweep
+                while (true) {
+                    int k = r.slots[r.hand];
+                    if (r.referenced[k]!=0) {
+                        r.referenced[k] = 0;
+                        r.hand = (r.hand+1)%r.slots.length;
+                    } else {
+                        r.tiles.set(k,null);
+                        evictions++;
+                        r.slots[r.hand] = key;
+                        r.hand = (r.hand+1)%r.slots.length;
+                        break;
+                    }
+                }
+            }
+            r.referenced[key] = 1;
+            r.tiles.set(key,tile);
+            return tile;
+        }
+    }
+
+    /**
+     * Reads a tile from the file (called with the lock held).
+     *
+     * @param tr - tile row index
+     * @param tc - tile column index
+     *
+     * @return - the tile values (row-major, tileSize x tileSize), or null on error
+     */
+    private float[] readTile(Raster r, int tr, int tc){
+        int ts = r.tileSize;
+        int j0 = tr*ts;
+        int i0 = tc*ts;
+        int nj = Math.min(ts,r.nLat-j0);
+        int ni = Math.min(ts,r.nLon-i0);
+        int[] origin = new int[r.rank];
+        int[] shape  = new int[r.rank];
+        for (int d=0;d<r.rank-2;d++) shape[d] = 1;
+        origin[r.rank-2] = j0; shape[r.rank-2] = nj;
+        origin[r.rank-1] = i0; shape[r.rank-1] = ni;
+        try {
+            Array a = r.var.read(origin,shape);
+            float[] tile = new float[ts*ts];
+            Arrays.fill(tile,Float.NaN);
+            IndexIterator it = a.getIndexIterator();
+            for (int j=0;j<nj;j++){
+                for (int i=0;i<ni;i++) tile[j*ts+i] = it.getFloatNext();
+            }
+            return tile;
+        } catch (IOException | InvalidRangeException ex) {
+            logger.log(Level.SEVERE,"Error reading HSI tile ("+tr+","+tc+") from "+fileName+
+                                    "; the tile is treated as missing values.",ex);
+            return null;
+        }
+    }
+
+    /**
+     * An open raster: its description, the resident tiles (indexed by tile
+     * number, null if not resident) and the clock eviction state. The
+     * description is fixed when the raster is opened; the tiles are published
+     * through the atomic array, so lookups need no lock.
+     */
+    private static final class Raster {
+        final NetcdfFile nc;
+        final Variable   var;
+        final int        rank;
+        final int        tileSize;
+        int    nLat, nLon;
+        double lon0, dLon, lat0, dLat;
+        float  fillValue = Float.NaN;
+        int    nTileCols;
+        /** resident tiles, by tile number */
+        AtomicReferenceArray<float[]> tiles;
+        /** referenced flags for the clock sweep, by tile number */
+        byte[] referenced;
+        /** tile numbers of the resident tiles (the clock) */
+        int[]  slots;
+        int    nResident = 0;
+        int    hand = 0;
+        /** shared tile of missing values (for tiles that can't be read) */
+        private float[] missing;
+
+        Raster(NetcdfFile nc, Variable var, int tileSize){
+            this.nc = nc;
+            this.var = var;
+            this.rank = var.getRank();
+            this.tileSize = tileSize;
+        }
+
+        void allocate(int nTiles, int maxTiles){
+            tiles = new AtomicReferenceArray<>(nTiles);
+            referenced = new byte[nTiles];
+            slots = new int[maxTiles];
+        }
+
+        float[] missingTile(){
+            if (missing==null) {
+                missing = new float[tileSize*tileSize];
+                Arrays.fill(missing,Float.NaN);
+            }
+            return missing;
+        }
+    }
+}
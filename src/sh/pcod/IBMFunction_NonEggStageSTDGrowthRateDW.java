@@ -26,7 +26,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_NonEggStageSTDGrowthRateDW extends AbstractIBMFunction implements IBMGrowthFunctionInterface {
+public class IBMFunction_NonEggStageSTDGrowthRateDW extends AbstractIBMFunction implements IBMGrowthFunctionInterface, IBMKernelFunction {
     public static final String DEFAULT_type = "Growth";
     /** user-friendly function name */
     public static final String DEFAULT_name = "Intrinsic growth rate (g/g/d) in dry weight for Pacific cod non-egg stages";
@@ -89,10 +89,15 @@ public class IBMFunction_NonEggStageSTDGrowthRateDW extends AbstractIBMFunction
     @Override
     public Object calculate(Object o) {
         Double[] vals = (Double[]) o;
-        double t = vals[0];
-        double m = vals[1];
+        return (Double) calculate(vals[0],vals[1]);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double t = x;
+        double m = y;
         double r = ((0.454 + 1.610*t - 0.069*t*t)*Math.exp(-6.725*m))/100;// original in %/d
-        return (Double) r;
+        return r;
     }
     
 }
@@ -26,7 +26,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_NonEggStageSTDGrowthRateSL extends AbstractIBMFunction implements IBMGrowthFunctionInterface {
+public class IBMFunction_NonEggStageSTDGrowthRateSL extends AbstractIBMFunction implements IBMGrowthFunctionInterface, IBMKernelFunction {
     public static final String DEFAULT_type = "Growth";
     /** user-friendly function name */
     public static final String DEFAULT_name = "STDG rate (mm/d) for standard length in Pacific cod non-egg stages";
@@ -89,10 +89,15 @@ public class IBMFunction_NonEggStageSTDGrowthRateSL extends AbstractIBMFunction
     @Override
     public Object calculate(Object o) {
         Double[] vals = (Double[]) o;
-        double t = vals[0];
-        double L = vals[1];
+        return (Double) calculate(vals[0],vals[1]);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double t = x;
+        double L = y;
         double r = (0.076 + 0.029*t - 0.00002*t*t)/(1-0.59/Math.exp(Math.pow(L,0.0758)));
-        return (Double) r;
+        return r;
     }
     
 }
@@ -0,0 +1,356 @@
+/*
+ * IBMFunction_UserDefined.java
+ *
+ * 20261019: created function.
+ *           2. The expression is compiled and validated on first use (or when a stage binds the function)
+ *                after a parameter change, not on every change; intermediate states are not logged.
+ *           3. Removed the array calculate (see RateStrategies.calculate).
+ */
+package sh.pcod;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+import org.openide.util.lookup.ServiceProvider;
+import org.openide.util.lookup.ServiceProviders;
+import sh.pcod.expr.CompiledExpression;
+import sh.pcod.expr.Expression;
+import sh.pcod.expr.ExpressionCompiler;
+import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
+import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
+import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
+import wts.models.DisMELS.framework.IBMFunctions.IBMMortalityFunctionInterface;
+
+/**
+ * IBM function defined by an arithmetic expression of (up to) two inputs,
+ * entered as a parameter. The expression is compiled to bytecode (see
+ * sh.pcod.expr.ExpressionCompiler), so it runs at the speed of a hand-written
+ * IBM function, and is validated against sample inputs. This is done when the
+ * function is first used or bound by a stage (RateStrategies) after its
+ * parameters change, so the parameters can be set in any order.
+ *
+ * The stages call the function with temperature as the first input and size
+ * (SL, DW, TL or WW, depending on the category) as the second, as for the
+ * built-in functions of the same category. For example, the YSL time to PNR is
+ * "34.67*exp(-0.126*T)" and the STDG rate in SL is
+ * "(a + b*T - c*T*T)/(1-0.59/exp(L^0.0758))" with constants "a=0.076; b=0.029; c=0.00002".
+ *
+ * Validation: the compiled expression is evaluated at each set of sample inputs
+ * and compared with the interpreted expression. The results must be finite and,
+ * if expected values are given, match them within the relative tolerance. If
+ * the expression is invalid, the error is logged and calculate(...) throws an
+ * IllegalStateException.
+ *
+ * @author William Stockhausen
+ */
+@ServiceProviders(value={
+    @ServiceProvider(service=IBMGrowthFunctionInterface.class),
+    @ServiceProvider(service=IBMMortalityFunctionInterface.class),
+    @ServiceProvider(service=IBMFunctionInterface.class)}
+)
+
+public class IBMFunction_UserDefined extends AbstractIBMFunction
+                                     implements IBMGrowthFunctionInterface, IBMMortalityFunctionInterface, IBMKernelFunction {
+    public static final String DEFAULT_type = "User-defined";
+    /** user-friendly function name */
+    public static final String DEFAULT_name = "user-defined function (compiled expression)";
+    /** function description */
+    public static final String DEFAULT_descr = "user-defined function of temperature and size, given as an expression";
+    /** full description */
+    public static final String DEFAULT_fullDescr =
+        "\n\t**************************************************************************"+
+        "\n\t* This function evaluates a user-defined arithmetic expression of"+
+        "\n\t* temperature and size, compiled to bytecode when the expression is set."+
+        "\n\t* "+
+        "\n\t* @author William Stockhausen"+
+        "\n\t* "+
+        "\n\t* Variables:"+
+        "\n\t*      t - Double value of temperature (deg C), or"+
+        "\n\t*      Double[]{t,L} - temperature and size (SL, DW, TL or WW)"+
+        "\n\t* Value:"+
+        "\n\t*      r - Double - value of the expression"+
+        "\n\t* Parameters:"+
+        "\n\t*      input names     - String - names of the inputs in the expression (default 'T,L')"+
+        "\n\t*      constants       - String - named constants, e.g. 'a=0.076; b=0.029'"+
+        "\n\t*      expression      - String - e.g. '(a + b*T)/(1-0.59/exp(L^0.0758))'"+
+        "\n\t*                        operators + - * / ^, functions exp log log10 sqrt abs"+
+        "\n\t*                        floor ceil sin cos tan tanh pow min max, and"+
+        "\n\t*                        conditionals 'T>11 ? 0 : ...' (< <= > >= == !=)"+
+        "\n\t*      validation inputs - String - sample inputs, e.g. '0,5; 5,10; 10,20'"+
+        "\n\t*      expected values   - String - optional expected values at the sample inputs"+
+        "\n\t*      validation tolerance - Double - relative tolerance for expected values"+
+        "\n\t**************************************************************************";
+    /** number of settable parameters */
+    public static final int numParams = 6;
+    /** number of sub-functions */
+    public static final int numSubFuncs = 0;
+
+    public static final String PARAM_inputs     = "input names";
+    public static final String PARAM_constants  = "constants";
+    public static final String PARAM_expression = "expression";
+    public static final String PARAM_samples    = "validation inputs";
+    public static final String PARAM_expected   = "expected values";
+    public static final String PARAM_tolerance  = "validation tolerance (relative)";
+
+    private static final Logger logger = Logger.getLogger(IBMFunction_UserDefined.class.getName());
+
+    /* parameter values */
+    private String inputs     = "T,L";
+    private String constants  = "";
+    private String expression = "0";
+    private String samples    = "0,10; 5,10; 10,10";
+    private String expected   = "";
+    private double tolerance  = 1.0e-6;
+
+    /** the compiled expression (null if invalid or not yet compiled) */
+    private volatile CompiledExpression kernel = null;
+    /** the validation error (null if valid or not yet validated) */
+    private volatile String error = null;
+    /** true if the parameters changed since the expression was compiled and validated */
+    private boolean changed = true;
+
+    public IBMFunction_UserDefined(){
+        super(numParams,numSubFuncs,DEFAULT_type,DEFAULT_name,DEFAULT_descr,DEFAULT_fullDescr);
+        String key;
+        key = PARAM_inputs;     addParameter(key,String.class,"names of the first (temperature) and second (size) inputs");
+        key = PARAM_constants;  addParameter(key,String.class,"named constants used in the expression (name=value; ...)");
+        key = PARAM_expression; addParameter(key,String.class,"expression");
+        key = PARAM_samples;    addParameter(key,String.class,"sample inputs for validation (x,y; x,y; ...)");
+        key = PARAM_expected;   addParameter(key,String.class,"expected values at the sample inputs (optional; v; v; ...)");
+        key = PARAM_tolerance;  addParameter(key,Double.class,"relative tolerance for the expected values");
+        super.setParameterValue(PARAM_inputs,    inputs);
+        super.setParameterValue(PARAM_constants, constants);
+        super.setParameterValue(PARAM_expression,expression);
+        super.setParameterValue(PARAM_samples,   samples);
+        super.setParameterValue(PARAM_expected,  expected);
+        super.setParameterValue(PARAM_tolerance, new Double(tolerance));
+    }
+
+    @Override
+    public Object clone() {
+        IBMFunction_UserDefined clone = new IBMFunction_UserDefined();
+        clone.setFunctionType(getFunctionType());
+        clone.setFunctionName(getFunctionName());
+        clone.setDescription(getDescription());
+        clone.setFullDescription(getFullDescription());
+        //copy the values (compiled and validated when the clone is first used)
+        clone.inputs     = inputs;
+        clone.constants  = constants;
+        clone.expression = expression;
+        clone.samples    = samples;
+        clone.expected   = expected;
+        clone.tolerance  = tolerance;
+        for (String key: getParameterNames()) clone.setSuperParameterValue(key,getParameter(key).getValue());
+        return clone;
+    }
+
+    private void setSuperParameterValue(String param, Object value){
+        super.setParameterValue(param,value);
+    }
+
+    /**
+     * Sets a parameter value. The expression is compiled and validated when
+     * the function is next used, so the parameters can be set in any order.
+     *
+     * @param param - the parameter name
+     * @param value - the value
+     *
+     * @return - true if the parameter was set (even if the expression is not valid)
+     */
+    @Override
+    public boolean setParameterValue(String param,Object value){
+        if (super.setParameterValue(param, value)){
+            switch (param) {
+                case PARAM_inputs:
+                    inputs = (String) value;
+                    break;
+                case PARAM_constants:
+                    constants = (String) value;
+                    break;
+                case PARAM_expression:
+                    expression = (String) value;
+                    break;
+                case PARAM_samples:
+                    samples = (String) value;
+                    break;
+                case PARAM_expected:
+                    expected = (String) value;
+                    break;
+                case PARAM_tolerance:
+                    tolerance = ((Double) value).doubleValue();
+                    break;
+            }
+            synchronized(this){
+                kernel  = null;
+                error   = null;
+                changed = true;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the expression compiled and passed validation.
+     *
+     * @return - true if valid
+     */
+    public boolean isValid(){
+        return validate();
+    }
+
+    /**
+     * Returns the reason the expression is not valid.
+     *
+     * @return - the error message (null if valid)
+     */
+    public String getError(){
+        validate();
+        return error;
+    }
+
+    /**
+     * Compiles and validates the expression if the parameters changed since
+     * it was last done.
+     *
+     * @return - true if valid
+     */
+    private synchronized boolean validate(){
+        if (changed) {
+            changed = false;
+            rebuild();
+        }
+        return kernel!=null;
+    }
+
+    /**
+     * Compiles and validates the expression.
+     *
+     * @return - true if valid
+     */
+    private boolean rebuild(){
+        kernel = null;
+        try {
+            String[] names = split(inputs,",");
+            if ((names.length<1)||(names.length>2)) throw new IllegalArgumentException("expected 1 or 2 input names, got '"+inputs+"'");
+            Map<String,Double> consts = new LinkedHashMap<>();
+            for (String c: split(constants,";")){
+                String[] kv = c.split("=");
+                if (kv.length!=2) throw new IllegalArgumentException("bad constant '"+c+"' (expected name=value)");
+                consts.put(kv[0].trim(),parse(kv[1]));
+            }
+            Expression e = Expression.parse(expression,names,consts);
+            CompiledExpression ce = ExpressionCompiler.compile(expression,names,consts);
+            String[] xy = split(samples,";");
+            String[] ev = split(expected,";");
+            if ((ev.length>0)&&(ev.length!=xy.length))
+                throw new IllegalArgumentException(xy.length+" sample inputs but "+ev.length+" expected values");
+            for (int i=0;i<xy.length;i++){
+                String[] v = split(xy[i],",");
+                if ((v.length<1)||(v.length>2)) throw new IllegalArgumentException("bad sample input '"+xy[i]+"'");
+                double x = parse(v[0]);
+                double y = (v.length>1) ? parse(v[1]) : 0.0;
+                double r = ce.calculate(x,y);
+                double ri = e.eval(x,y);
+                if (Double.isNaN(r)||Double.isInfinite(r))
+                    throw new IllegalArgumentException("value at ("+xy[i].trim()+") is "+r);
+                if (Math.abs(r-ri)>1.0e-12*Math.max(1.0,Math.abs(ri)))
+                    throw new IllegalStateException("compiled value "+r+" differs from interpreted value "+ri+" at ("+xy[i].trim()+")");
+                if (ev.length>0){
+                    double rx = parse(ev[i]);
+                    if (Math.abs(r-rx)>tolerance*Math.max(1.0,Math.abs(rx)))
+                        throw new IllegalArgumentException(String.format(Locale.US,"value at (%s) is %g, expected %g",xy[i].trim(),r,rx));
+                }
+            }
+            kernel = ce;
+            error  = null;
+        } catch (IllegalArgumentException|IllegalStateException ex){
+            error = ex.getMessage();
+        }
+        return kernel!=null;
+    }
+
+    /** splits a list, dropping empty elements */
+    private static String[] split(String s, String sep){
+        if (s==null) return new String[0];
+        String[] parts = s.split(sep);
+        int n = 0;
+        for (String p: parts) if (!p.trim().isEmpty()) parts[n++] = p.trim();
+        return java.util.Arrays.copyOf(parts,n);
+    }
+
+    private static double parse(String s){
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException ex){
+            throw new IllegalArgumentException("bad number '"+s.trim()+"'");
+        }
+    }
+
+    /**
+     * Returns the compiled expression. RateStrategies binds it directly, so
+     * the stage call sites see the generated class rather than this class.
+     *
+     * @return - the compiled expression
+     *
+     * @throws IllegalStateException if the expression is not valid
+     */
+    public IBMKernelFunction getKernel(){
+        return kernel();
+    }
+
+    private CompiledExpression kernel(){
+        CompiledExpression k = kernel;
+        if (k==null) {
+            synchronized(this){
+                boolean first = changed;
+                if (!validate()) {
+                    if (first) logger.severe("Invalid "+getFunctionName()+": "+error);
+                    throw new IllegalStateException("Invalid "+getFunctionName()+": "+error);
+                }
+                k = kernel;
+            }
+        }
+        return k;
+    }
+
+    /**
+     * Calculates the value of the expression.
+     *
+     * @param o - Double with the first input (temperature), or Double[] or
+     *            double[] with the first and second inputs (temperature, size)
+     *
+     * @return Double - the value
+     *
+     */
+    @Override
+    public Object calculate(Object o) {
+        double x, y = 0.0;
+        if (o instanceof Double){
+            x = (Double) o;
+        } else if (o instanceof Double[]){
+            Double[] v = (Double[]) o;
+            x = v[0];
+            if (v.length>1) y = v[1];
+        } else {
+            double[] v = (double[]) o;
+            x = v[0];
+            if (v.length>1) y = v[1];
+        }
+        return (Double) kernel().calculate(x,y);
+    }
+
+    /**
+     * Calculates the value of the expression using primitive inputs.
+     *
+     * @param x - the first input (temperature)
+     * @param y - the second input (size)
+     *
+     * @return - the value
+     */
+    @Override
+    public double calculate(double x, double y) {
+        return kernel().calculate(x,y);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * IBMKernelCheck.java
+ *
+ * 20261019: created class.
+ *           2. Added comparisons of user-defined (compiled expression) functions with the
+ *                built-in versions.
+ *           3. Functions are evaluated over arrays with RateStrategies.calculate.
+ */
+package sh.pcod;
+
+import java.util.Locale;
+import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
+
+/**
+ * Compares the primitive versions (IBMKernelFunction, over arrays with
+ * RateStrategies.calculate) of the Pacific cod IBM functions with
+ * calculate(Object), and the array versions of the abundance updates
+ * (AbundanceIntegrator) with the scalar versions, and times both. Also compares user-defined (compiled expression)
+ * versions of some of the functions (IBMFunction_UserDefined) with the
+ * built-in versions.
+ *
+ * Usage: java sh.pcod.IBMKernelCheck [n]
+ *
+ * @author William Stockhausen
+ */
+public class IBMKernelCheck {
+
+    /** functions of a single input (temperature or size) */
+    private static final IBMKernelFunction[] ONE_INPUT = new IBMKernelFunction[]{
+        new sh.pcod.BenthicJuvStage.IBMFunction_BenthicJuv_GrowthRateTL(),
+        new sh.pcod.BenthicJuvStage.IBMFunction_BenthicJuv_GrowthRateWW(),
+        new sh.pcod.EggStage.IBMFunction_EggStageDuration(),
+        new sh.pcod.EggStage.IBMFunction_EggStageGrowthRateDW(),
+        new sh.pcod.EggStage.IBMFunction_EggStageGrowthRateSL(),
+        new sh.pcod.EggStage.IBMFunction_EggStageSTDGrowthRateSL(),
+        new sh.pcod.EggStage.IBMFunction_HatchSuccess(),
+        new sh.pcod.EpijuvStage.IBMFunction_Epijuv_ConvertSLtoTL(),
+        new sh.pcod.EpijuvStage.IBMFunction_Epijuv_ConvertSLtoWW(),
+        new sh.pcod.EpijuvStage.IBMFunction_Epijuv_GrowthRateTL(),
+        new sh.pcod.EpijuvStage.IBMFunction_Epijuv_GrowthRateWW(),
+        new sh.pcod.FDLStage.IBMFunction_FDL_ConvertSLtoTL(),
+        new sh.pcod.FDLStage.IBMFunction_FDL_GrowthRateDW(),
+        new sh.pcod.FDLStage.IBMFunction_FDL_GrowthRateSL(),
+        new sh.pcod.FDLpfStage.IBMFunction_FDLpf_ConvertSLtoTL(),
+        new sh.pcod.FDLpfStage.IBMFunction_FDLpf_ConvertSLtoWW(),
+        new sh.pcod.FDLpfStage.IBMFunction_FDLpf_GrowthRateDW(),
+        new sh.pcod.FDLpfStage.IBMFunction_FDLpf_GrowthRateSL(),
+        new sh.pcod.YSLStage.IBMFunction_YSL_ConvertSLtoDW(),
+        new sh.pcod.YSLStage.IBMFunction_YSL_GrowthRateDW(),
+        new sh.pcod.YSLStage.IBMFunction_YSL_GrowthRateSL(),
+        new sh.pcod.YSLStage.IBMFunction_YSL_PNR(),
+        new sh.pcod.YSLStage.IBMFunction_YSL_YSA()
+    };
+
+    /** functions of temperature and size */
+    private static final IBMKernelFunction[] TWO_INPUTS = new IBMKernelFunction[]{
+        new sh.pcod.EggStage.IBMFunction_EggStageSTDGrowthRateDW(),
+        new sh.pcod.EpijuvStage.IBMFunction_Epijuv_VerticalSwimmingSpeed(),
+        new sh.pcod.FDLStage.IBMFunction_FDL_VerticalSwimmingSpeed(),
+        new sh.pcod.FDLpfStage.IBMFunction_FDLpf_VerticalSwimmingSpeed(),
+        new IBMFunction_NonEggStageSTDGrowthRateDW(),
+        new IBMFunction_NonEggStageSTDGrowthRateSL()
+    };
+
+    /** built-in functions and equivalent user-defined expressions (inputs T,L) */
+    private static final Object[][] USER_DEFINED = new Object[][]{
+        {new sh.pcod.YSLStage.IBMFunction_YSL_PNR(),       "34.67 * exp(-0.126 * T)"},
+        {new sh.pcod.EggStage.IBMFunction_HatchSuccess(),  "T>11.0 ? 0.0 : 0.453/(1.0+(pow((T-4.192)/2.125, 2.0)))"},
+        {new IBMFunction_NonEggStageSTDGrowthRateSL(),     "(0.076 + 0.029*T - 0.00002*T*T)/(1-0.59/exp(L^0.0758))"}
+    };
+
+    /**
+     * Runs the comparisons.
+     *
+     * @param args - optional number of values (default 100000)
+     */
+    public static void main(String[] args){
+        int n = (args.length>0) ? Integer.parseInt(args[0]) : 100000;
+        double[] t = new double[n], y = new double[n], res = new double[n];
+        for (int i=0;i<n;i++){
+            t[i] = 0.5+11.5*i/n;               //temperature (deg C)
+            y[i] = 2.0+48.0*((i*7919L)%n)/n;   //size
+        }
+        int nBad = 0;
+        for (IBMKernelFunction f: ONE_INPUT)  nBad += check(f,false,t,y,res,n);
+        for (IBMKernelFunction f: TWO_INPUTS) nBad += check(f,true,t,y,res,n);
+
+        //abundance updates
+        double[] num = new double[n], nt = new double[n], m = new double[n], s = new double[n], tot = new double[n];
+        for (int i=0;i<n;i++){
+            num[i] = 1.0e6; nt[i] = 10.0; m[i] = 0.01+0.2*i/n; s[i] = 0.5*((i*31L)%n)/n; tot[i] = m[i]+s[i];
+        }
+        double[] num0 = num.clone(), nt0 = nt.clone();
+        long t0 = System.nanoTime();
+        AbundanceIntegrator.advanceTransitioning(num,nt,m,s,3600.0,3,n);
+        AbundanceIntegrator.advanceNumber(num,tot,3600.0,3,n);
+        long t1 = System.nanoTime();
+        int nDiff = 0;
+        for (int i=0;i<n;i++){
+            double ntc = AbundanceIntegrator.advanceTransitioning(num0[i],nt0[i],m[i],s[i],3600.0,3);
+            double nc  = AbundanceIntegrator.advanceNumber(num0[i],tot[i],3600.0,3);
+            if ((ntc!=nt[i])||(nc!=num[i])) nDiff++;
+        }
+        long t2 = System.nanoTime();
+        System.out.println(String.format(Locale.US,"%-45s differences = %d, array = %.2f ms, scalar = %.2f ms",
+                                         "AbundanceIntegrator",nDiff,(t1-t0)/1.0e6,(t2-t1)/1.0e6));
+        nBad += (nDiff>0) ? 1 : 0;
+
+        //user-defined functions
+        for (Object[] ud: USER_DEFINED){
+            IBMKernelFunction f = (IBMKernelFunction) ud[0];
+            IBMFunction_UserDefined u = new IBMFunction_UserDefined();
+            u.setParameterValue(IBMFunction_UserDefined.PARAM_expression,ud[1]);
+            if (!u.isValid()) {
+                System.out.println(f.getClass().getSimpleName()+": invalid user-defined function: "+u.getError());
+                nBad++;
+                continue;
+            }
+            IBMKernelFunction uk = RateStrategies.of(u);//as bound by the stages
+            double[] res2 = new double[n];
+            long t3 = System.nanoTime();
+            double s1 = 0.0;
+            for (int i=0;i<n;i++) s1 += res[i] = f.calculate(t[i],y[i]);
+            long t4 = System.nanoTime();
+            double s2 = 0.0;
+            for (int i=0;i<n;i++) s2 += res2[i] = uk.calculate(t[i],y[i]);
+            long t5 = System.nanoTime();
+            nDiff = 0;
+            for (int i=0;i<n;i++) if (Math.abs(res[i]-res2[i])>1.0e-12*Math.max(1.0,Math.abs(res[i]))) nDiff++;
+            System.out.println(String.format(Locale.US,"%-45s differences = %d, built-in = %.2f ms, user-defined = %.2f ms",
+                                             "user-defined "+f.getClass().getSimpleName(),nDiff,(t4-t3)/1.0e6,(t5-t4)/1.0e6));
+            if (s1!=s2) nDiff++;
+            nBad += (nDiff>0) ? 1 : 0;
+        }
+        System.out.println((nBad==0) ? "all kernels match the scalar versions" : nBad+" kernel(s) differ from the scalar versions");
+    }
+
+    /**
+     * Compares the primitive and boxed versions of a function.
+     *
+     * @return - 1 if any results differ, 0 otherwise
+     */
+    private static int check(IBMKernelFunction f, boolean two, double[] t, double[] y, double[] res, int n){
+        IBMFunctionInterface fs = (IBMFunctionInterface) f;
+        long t0 = System.nanoTime();
+        RateStrategies.calculate(f,t,two ? y : null,res,n);
+        long t1 = System.nanoTime();
+        int nDiff = 0;
+        for (int i=0;i<n;i++){
+            Object o = two ? new Double[]{t[i],y[i]} : (Object) Double.valueOf(t[i]);
+            double r = (Double) fs.calculate(o);
+            if (!(r==res[i]||(Double.isNaN(r)&&Double.isNaN(res[i])))) nDiff++;
+        }
+        long t2 = System.nanoTime();
+        System.out.println(String.format(Locale.US,"%-45s differences = %d, array = %.2f ms, scalar = %.2f ms",
+                                         f.getClass().getSimpleName(),nDiff,(t1-t0)/1.0e6,(t2-t1)/1.0e6));
+        return (nDiff>0) ? 1 : 0;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * IBMKernelFunction.java
+ *
+ * 20261019: created interface.
+ * 20261019: added primitive scalar calculate(x,y) for bound update strategies.
+ * 20261019: removed the per-function array versions (see RateStrategies.calculate).
+ */
+package sh.pcod;
+
+/**
+ * Interface for IBM functions that also provide a primitive version of
+ * calculate(Object), used by the life stages as the update strategy bound in
+ * setParameters (see RateStrategies). It does not box the inputs and result.
+ * RateStrategies.calculate evaluates it for many individuals in a single call.
+ *
+ * Functions of a single input ignore y.
+ *
+ * Run IBMKernelCheck.main() to compare the primitive versions with
+ * calculate(Object).
+ *
+ * @author William Stockhausen
+ */
+public interface IBMKernelFunction {
+
+    /**
+     * Calculates the function for a single set of inputs.
+     *
+     * @param x - the first input (input [0] of calculate(Object))
+     * @param y - the second input (input [1] of calculate(Object); not used
+     *            for functions of a single input)
+     *
+     * @return - the result
+     */
+    public double calculate(double x, double y);
+}
@@ -0,0 +1,53 @@
+/*
+ * LightCycle.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod;
+
+import wts.models.utilities.DateTimeFunctions;
+
+/**
+ * Static utility methods related to the day/night cycle.
+ *
+ * Used by stages that keep bottom-attached individuals on a fast path: with
+ * the position fixed, the only input to the vertical movement functions that
+ * changes is the light level, so attachment status needs to be re-evaluated
+ * only when day turns into night (or vice versa).
+ *
+ * @author William Stockhausen
+ */
+public class LightCycle {
+
+    /** minutes in a day */
+    private static final double MIN_PER_DAY = 1440.0;
+
+    /**
+     * Computes the time (in seconds) until the next sunrise or sunset at the
+     * given location, less the given safety margin. If the sun does not rise
+     * or set on the current day (24-hr day or night), the time to the end of
+     * the current (UTC) day is returned.
+     *
+     * @param lon     - longitude (deg Greenwich)
+     * @param lat     - latitude (deg)
+     * @param yearDay - day-of-year (fractional part indicates time-of-day, UTC)
+     * @param margin  - safety margin (s) to account for the daily drift in sunrise/sunset times
+     *
+     * @return - time until next light change (s); may be <= 0
+     */
+    public static double computeTimeToNextLightChange(double lon, double lat, double yearDay, double margin){
+        double[] ss = DateTimeFunctions.computeSunriseSunset(lon,lat,yearDay);
+        double now = (yearDay-Math.floor(yearDay))*MIN_PER_DAY;//minutes UTC from midnight
+        double next = Double.POSITIVE_INFINITY;
+        for (int i=0;i<2;i++){
+            if (Double.isNaN(ss[i])) continue;
+            //sunrise/sunset are in UTC, so may fall on the previous or next UTC day
+            for (int k=-1;k<=2;k++){
+                double t = ss[i]+k*MIN_PER_DAY;
+                if ((t>now)&&(t<next)) next = t;
+            }
+        }
+        if (Double.isInfinite(next)) next = MIN_PER_DAY*(1+Math.floor(now/MIN_PER_DAY));
+        return (next-now)*60.0-margin;
+    }
+}
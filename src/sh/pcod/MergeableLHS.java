@@ -0,0 +1,74 @@
+/*
+ * MergeableLHS.java
+ *
+ * 20261019: created interface.
+ */
+package sh.pcod;
+
+import wts.models.DisMELS.framework.LifeStageInterface;
+
+/**
+ * Interface for life stages whose super-individuals can be merged
+ * (agglomerated) by SuperIndividualMerger.
+ *
+ * @author William Stockhausen
+ */
+public interface MergeableLHS extends LifeStageInterface {
+
+    /**
+     * Gets the number of individuals represented by the instance.
+     * @return - the number
+     */
+    public double getNumber();
+
+    /**
+     * Gets the id of the grid cell the instance is in.
+     * @return - the grid cell id
+     */
+    public String getGridCellID();
+
+    /**
+     * Gets the age in stage (d).
+     * @return - the age in stage
+     */
+    public double getAgeInStage();
+
+    /**
+     * Gets the size (standard length, mm) used to judge similarity.
+     * @return - the size
+     */
+    public double getSize();
+
+    /**
+     * Gets the developmental progress (0-1) used to judge similarity
+     * (e.g., egg stage progression).
+     * @return - the developmental progress
+     */
+    public double getDevelopment();
+
+    /**
+     * Gets the original (lineage) id.
+     * @return - the original id
+     */
+    public long getOrigID();
+
+    /**
+     * Tests whether the given instance could be merged into this one,
+     * apart from the similarity criteria applied by SuperIndividualMerger
+     * (e.g., both are alive and active super-individuals of the same stage).
+     *
+     * @param other - the other instance
+     * @return - true if the instances can be merged
+     */
+    public boolean canMergeWith(MergeableLHS other);
+
+    /**
+     * Merges the given instance into this one: numbers are summed and the
+     * state variables are abundance-weighted averages. This instance keeps
+     * its id, origID and position; the other instance is retired (number set
+     * to 0 and made inactive and not alive).
+     *
+     * @param other - the instance to merge into this one
+     */
+    public void mergeWith(MergeableLHS other);
+}
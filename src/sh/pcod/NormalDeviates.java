@@ -0,0 +1,188 @@
+/*
+ * NormalDeviates.java
+ *
+ * 20261019: created class.
+ *           2. ziggurat() and nextLong() are package-private so CounterRNG can feed
+ *                the ziggurat with counter-based uniforms.
+ */
+package sh.pcod;
+
+/**
+ * Fast generator for standard normal deviates, used for the horizontal
+ * random walk components of individual movement.
+ *
+ * Deviates are generated in blocks using the ziggurat method (Marsaglia and
+ * Tsang 2000, with the 128-layer modification of Doornik 2005) from a
+ * SplitMix64 uniform stream, and are handed out one at a time from the
+ * block without allocation or locking.
+ *
+ * Each thread has its own instance (see getInstance()), with a stream seeded
+ * from the base seed and the order in which threads first request deviates.
+ * Single-threaded runs are therefore reproducible for a given base seed.
+ *
+ * @author William Stockhausen
+ */
+public class NormalDeviates {
+
+    /** number of deviates generated per block */
+    public static final int BLOCK_SIZE = 256;
+
+    /** default base seed */
+    public static final long DEFAULT_SEED = 20261019L;
+
+    /* ziggurat constants (128 layers) */
+    private static final int    ZIG_C = 128;
+    private static final double ZIG_R = 3.442619855899;
+    private static final double ZIG_V = 9.91256303526217e-3;
+    /** layer boundaries */
+    private static final double[] zigX = new double[ZIG_C+1];
+    /** ratios of successive layer boundaries */
+    private static final double[] zigR = new double[ZIG_C];
+    static {
+        double f = Math.exp(-0.5*ZIG_R*ZIG_R);
+        zigX[0] = ZIG_V/f;
+        zigX[1] = ZIG_R;
+        zigX[ZIG_C] = 0.0;
+        for (int i=2;i<ZIG_C;i++){
+            zigX[i] = Math.sqrt(-2.0*Math.log(ZIG_V/zigX[i-1]+f));
+            f = Math.exp(-0.5*zigX[i]*zigX[i]);
+        }
+        for (int i=0;i<ZIG_C;i++) zigR[i] = zigX[i+1]/zigX[i];
+    }
+
+    /** 2^-53 */
+    private static final double TWO_M53 = 1.0/(1L<<53);
+
+    /** base seed for the per-thread streams */
+    private static volatile long baseSeed = DEFAULT_SEED;
+    /** number of per-thread streams created since the base seed was set */
+    private static int nStreams = 0;
+
+    /** per-thread instances */
+    private static final ThreadLocal<NormalDeviates> instances = new ThreadLocal<NormalDeviates>(){
+        @Override
+        protected NormalDeviates initialValue(){
+            return new NormalDeviates(nextStreamSeed());
+        }
+    };
+
+    /** SplitMix64 state */
+    private long state;
+    /** block of deviates */
+    private final double[] block = new double[BLOCK_SIZE];
+    /** index of next deviate in block */
+    private int next = BLOCK_SIZE;
+
+    /**
+     * Creates a new generator with the given seed.
+     *
+     * @param seed - the seed
+     */
+    public NormalDeviates(long seed){
+        state = seed;
+    }
+
+    /**
+     * Sets the base seed for the per-thread streams. Streams created after
+     * this call (e.g., on threads that have not yet drawn deviates) are seeded
+     * from it; call before a model run starts.
+     *
+     * @param seed - the base seed
+     */
+    public static synchronized void setSeed(long seed){
+        baseSeed = seed;
+        nStreams = 0;
+    }
+
+    /**
+     * Gets the generator for the calling thread.
+     *
+     * @return - the generator
+     */
+    public static NormalDeviates getInstance(){
+        return instances.get();
+    }
+
+    private static synchronized long nextStreamSeed(){
+        return mix(baseSeed+0x9E3779B97F4A7C15L*(++nStreams));
+    }
+
+    /**
+     * Gets the next standard normal deviate.
+     *
+     * @return - the deviate
+     */
+    public double next(){
+        if (next==BLOCK_SIZE) fill();
+        return block[next++];
+    }
+
+    /**
+     * Fills the given array with standard normal deviates.
+     *
+     * @param v - the array to fill
+     */
+    public void fill(double[] v){
+        for (int i=0;i<v.length;i++) v[i] = next();
+    }
+
+    /**
+     * Generates a new block of deviates.
+     */
+    private void fill(){
+        for (int i=0;i<BLOCK_SIZE;i++) block[i] = ziggurat();
+        next = 0;
+    }
+
+    /**
+     * Generates a standard normal deviate using the ziggurat method.
+     * (Used directly, without the block, by CounterRNG's streams.)
+     */
+    double ziggurat(){
+        for (;;){
+            long r = nextLong();
+            double u = 2.0*((r>>>11)*TWO_M53)-1.0;//top 53 bits
+            int i = (int)(r & 0x7F);              //low 7 bits
+            if (Math.abs(u)<zigR[i]) return u*zigX[i];
+            if (i==0) return tail(u<0);
+            double x  = u*zigX[i];
+            double f0 = Math.exp(-0.5*(zigX[i]*zigX[i]-x*x));
+            double f1 = Math.exp(-0.5*(zigX[i+1]*zigX[i+1]-x*x));
+            if (f1+nextUniform()*(f0-f1)<1.0) return x;
+        }
+    }
+
+    /**
+     * Generates a deviate from the tail (|x| > R) of the normal distribution.
+     */
+    private double tail(boolean negative){
+        double x, y;
+        do {
+            x = Math.log(nextUniform())/ZIG_R;
+            y = Math.log(nextUniform());
+        } while (-2.0*y<x*x);
+        return negative ? x-ZIG_R : ZIG_R-x;
+    }
+
+    /**
+     * Gets the next uniform deviate on (0,1).
+     */
+    private double nextUniform(){
+        return ((nextLong()>>>11)+0.5)*TWO_M53;
+    }
+
+    /**
+     * Gets the next value from the SplitMix64 stream. (Overridden by
+     * CounterRNG's streams to draw from Philox blocks.)
+     */
+    long nextLong(){
+        state += 0x9E3779B97F4A7C15L;
+        return mix(state);
+    }
+
+    private static long mix(long z){
+        z = (z^(z>>>30))*0xBF58476D1CE4E5B9L;
+        z = (z^(z>>>27))*0x94D049BB133111EBL;
+        return z^(z>>>31);
+    }
+}
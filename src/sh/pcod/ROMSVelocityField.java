@@ -0,0 +1,132 @@
+/*
+ * ROMSVelocityField.java
+ *
+ * 20261019: created class.
+ *           2. setOrigin re-uses one scratch position (no per-step allocation).
+ */
+package sh.pcod;
+
+import wts.roms.model.Interpolator3D;
+
+/**
+ * VelocityField implementation for the ROMS physical environment.
+ *
+ * The ocean velocities (u, v along the xi, eta grid directions and vertical w,
+ * all in m/s) are interpolated at the requested position and a constant
+ * individual (behavioral) velocity is added to them. The sum is converted to
+ * grid index units/s using grid metrics computed once at the integration
+ * origin (see setOrigin), since the metrics vary slowly over one time step.
+ *
+ * @author William Stockhausen
+ */
+public class ROMSVelocityField implements VelocityField {
+
+    /** name of field for velocity in the xi direction (m/s) */
+    public static String FIELD_U = "u";
+    /** name of field for velocity in the eta direction (m/s) */
+    public static String FIELD_V = "v";
+    /** name of field for vertical velocity (m/s) */
+    public static String FIELD_W = "w";
+
+    /** the interpolator */
+    private Interpolator3D i3d;
+    /** individual velocities (m/s) */
+    private double ui, vi, wi;
+    /** meters per index unit in I, J, K at the integration origin */
+    private final double[] metric = new double[]{1.0,1.0,1.0};
+    /** scratch position for the metric interpolations */
+    private final double[] q = new double[3];
+    /** maximum K */
+    private double maxK;
+
+    /**
+     * Creates a new velocity field for the given interpolator.
+     *
+     * @param i3d - the interpolator
+     */
+    public ROMSVelocityField(Interpolator3D i3d){
+        setInterpolator(i3d);
+    }
+
+    /**
+     * Sets the interpolator.
+     *
+     * @param i3d - the interpolator
+     */
+    public final void setInterpolator(Interpolator3D i3d){
+        this.i3d = i3d;
+        if (i3d!=null) maxK = i3d.getGrid().getN();
+    }
+
+    /**
+     * Sets the individual (behavioral) velocity components, in m/s, added
+     * to the ocean velocities.
+     *
+     * @param u - velocity in the xi direction (m/s)
+     * @param v - velocity in the eta direction (m/s)
+     * @param w - vertical velocity (m/s, positive upward)
+     */
+    public void setIndividualVelocity(double u, double v, double w){
+        ui = u; vi = v; wi = w;
+    }
+
+    /**
+     * Computes the grid metrics at the origin of an integration step.
+     *
+     * @param pos - position in grid coordinates {I,J,K}
+     */
+    public void setOrigin(double[] pos){
+        double I = pos[0], J = pos[1], K = pos[2];
+        metric[0] = distance(lat(I-0.5,J,K),lon(I-0.5,J,K),lat(I+0.5,J,K),lon(I+0.5,J,K));
+        metric[1] = distance(lat(I,J-0.5,K),lon(I,J-0.5,K),lat(I,J+0.5,K),lon(I,J+0.5,K));
+        double K0 = Math.max(0.0,K-0.5);
+        double K1 = Math.min(maxK,K0+1.0);
+        K0 = K1-1.0;
+        metric[2] = Math.abs(i3d.calcZfromK(I,J,K1)-i3d.calcZfromK(I,J,K0));
+        for (int d=0;d<3;d++) if (!(metric[d]>0)) metric[d] = 1.0;//guard against degenerate cells
+    }
+
+    /** latitude at {I,J,K} (using the scratch position) */
+    private double lat(double I, double J, double K){
+        q[0] = I; q[1] = J; q[2] = K;
+        return i3d.interpolateLat(q);
+    }
+
+    /** longitude at {I,J,K} (using the scratch position) */
+    private double lon(double I, double J, double K){
+        q[0] = I; q[1] = J; q[2] = K;
+        return i3d.interpolateLon(q);
+    }
+
+    @Override
+    public void evaluate(double[] pos, double[] dpdt) {
+        double u = i3d.interpolateValue(pos,FIELD_U,Interpolator3D.INTERP_VAL);
+        double v = i3d.interpolateValue(pos,FIELD_V,Interpolator3D.INTERP_VAL);
+        double w = i3d.interpolateValue(pos,FIELD_W,Interpolator3D.INTERP_VAL);
+        dpdt[0] = (u+ui)/metric[0];
+        dpdt[1] = (v+vi)/metric[1];
+        dpdt[2] = (w+wi)/metric[2];
+    }
+
+    @Override
+    public double getMetric(int dim) {
+        return metric[dim];
+    }
+
+    @Override
+    public double getMaxK() {
+        return maxK;
+    }
+
+    /**
+     * Great-circle distance (m) between two points.
+     */
+    private static double distance(double lat1, double lon1, double lat2, double lon2){
+        double p1 = Math.toRadians(lat1);
+        double p2 = Math.toRadians(lat2);
+        double dp = p2-p1;
+        double dl = Math.toRadians(lon2-lon1);
+        double a = Math.sin(0.5*dp)*Math.sin(0.5*dp)+Math.cos(p1)*Math.cos(p2)*Math.sin(0.5*dl)*Math.sin(0.5*dl);
+        return 2.0*6371000.0*Math.asin(Math.min(1.0,Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * RandomKeyedLHS.java
+ *
+ * 20261019: created interface.
+ */
+package sh.pcod;
+
+import wts.models.DisMELS.framework.LifeStageInterface;
+
+/**
+ * Interface for life stages that make counter-based random draws
+ * (CounterRNG). A batch run registers each individual it adds with
+ * CounterRNG.addIndividual and sets the returned key on it, so the key is
+ * resolved once per individual rather than on every draw.
+ *
+ * @author William Stockhausen
+ */
+public interface RandomKeyedLHS extends LifeStageInterface {
+
+    /**
+     * Sets the key for the individual's random draws.
+     *
+     * @param key - the key (see CounterRNG.addIndividual)
+     */
+    public void setRandomKey(long key);
+}
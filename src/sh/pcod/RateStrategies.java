@@ -0,0 +1,155 @@
+/*
+ * RateStrategies.java
+ *
+ * 20261019: created class.
+ *           2. User-defined functions are bound to their compiled expression.
+ *           3. Added calculate(f,x,y,res,n), the array version shared by all functions.
+ */
+package sh.pcod;
+
+import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
+
+/**
+ * Binds selected IBM functions to update strategies (IBMKernelFunction) for
+ * the life stage classes.
+ *
+ * The stage classes bind a strategy for each function category (growth,
+ * mortality, vertical velocity, HSI) once, in setParameters, and call
+ * strategy.calculate(x,y) in step/updateNum without checking the function
+ * type. Functions that implement IBMKernelFunction (the Pacific cod
+ * functions) are used directly, so the call is a primitive, non-boxing call
+ * on the selected function class. User-defined functions are bound to their
+ * compiled expression. The framework functions are wrapped in adapters that
+ * call calculate(Object) with the appropriate input.
+ *
+ * @author William Stockhausen
+ */
+public class RateStrategies {
+
+    /**
+     * Binds a function of x, or of x and y (the function's calculate(Object)
+     * takes a Double or a Double[]{x,y}).
+     *
+     * @param f - the function (may be null)
+     *
+     * @return - the strategy (null if f is null)
+     *
+     * @throws IllegalStateException if f is a user-defined function that is not valid
+     */
+    public static IBMKernelFunction of(IBMFunctionInterface f){
+        if (f==null) return null;
+        if (f instanceof IBMFunction_UserDefined) return ((IBMFunction_UserDefined) f).getKernel();
+        if (f instanceof IBMKernelFunction) return (IBMKernelFunction) f;
+        return new BoxedX(f);
+    }
+
+    /**
+     * Binds a function without inputs (calculate(null)), e.g. a constant
+     * mortality rate or HSI.
+     *
+     * @param f - the function (may be null)
+     *
+     * @return - the strategy (null if f is null)
+     */
+    public static IBMKernelFunction ofNoInputs(IBMFunctionInterface f){
+        if (f==null) return null;
+        return new NoInputs(f);
+    }
+
+    /**
+     * Binds a function of a position (calculate(double[]{x,y})), e.g. an HSM
+     * function of lon, lat.
+     *
+     * @param f - the function (may be null)
+     *
+     * @return - the strategy (null if f is null)
+     */
+    public static IBMKernelFunction ofPosition(IBMFunctionInterface f){
+        if (f==null) return null;
+        if (f instanceof IBMKernelFunction) return (IBMKernelFunction) f;
+        return new BoxedPosition(f);
+    }
+
+    /**
+     * Binds a function of the time step (calculate(double[]{x})), e.g. a
+     * constant movement rate.
+     *
+     * @param f - the function (may be null)
+     *
+     * @return - the strategy (null if f is null)
+     */
+    public static IBMKernelFunction ofTimeStep(IBMFunctionInterface f){
+        if (f==null) return null;
+        return new BoxedTimeStep(f);
+    }
+
+    /**
+     * Calculates a function for n sets of inputs with its scalar version, so
+     * the results are identical to calculate(x,y) for each element.
+     *
+     * @param f   - the function
+     * @param x   - values of the first input
+     * @param y   - values of the second input (null for functions of a single input)
+     * @param res - array for the results (may be x or y)
+     * @param n   - number of values
+     */
+    public static void calculate(IBMKernelFunction f, double[] x, double[] y, double[] res, int n){
+        if (y==null){
+            for (int i=0;i<n;i++) res[i] = f.calculate(x[i],0.0);
+        } else {
+            for (int i=0;i<n;i++) res[i] = f.calculate(x[i],y[i]);
+        }
+    }
+
+    /**
+     * Base class for the adapters.
+     */
+    private static abstract class Adapter implements IBMKernelFunction {
+        final IBMFunctionInterface f;
+
+        Adapter(IBMFunctionInterface f){
+            this.f = f;
+        }
+
+    }
+
+    /** calculate((Double) x) */
+    private static final class BoxedX extends Adapter {
+        BoxedX(IBMFunctionInterface f){ super(f); }
+
+        @Override
+        public double calculate(double x, double y){
+            return (Double) f.calculate(x);
+        }
+    }
+
+    /** calculate(null) */
+    private static final class NoInputs extends Adapter {
+        NoInputs(IBMFunctionInterface f){ super(f); }
+
+        @Override
+        public double calculate(double x, double y){
+            return (Double) f.calculate(null);
+        }
+    }
+
+    /** calculate(new double[]{x,y}) */
+    private static final class BoxedPosition extends Adapter {
+        BoxedPosition(IBMFunctionInterface f){ super(f); }
+
+        @Override
+        public double calculate(double x, double y){
+            return (Double) f.calculate(new double[]{x,y});
+        }
+    }
+
+    /** calculate(new double[]{x}) */
+    private static final class BoxedTimeStep extends Adapter {
+        BoxedTimeStep(IBMFunctionInterface f){ super(f); }
+
+        @Override
+        public double calculate(double x, double y){
+            return (Double) f.calculate(new double[]{x});
+        }
+    }
+}
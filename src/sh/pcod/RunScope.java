@@ -0,0 +1,57 @@
+/*
+ * RunScope.java
+ *
+ * 20261019: created class.
+ *           2. Also scopes OutputRegistry and CullingPolicy.
+ */
+package sh.pcod;
+
+/**
+ * Identifies the model run that the current thread is working on, for state
+ * that is kept in static registries but belongs to one run (the egg cohorts
+ * of EggCohortRegistry, the in-run outputs of OutputRegistry and the culling
+ * policies and accounting of CullingPolicy).
+ *
+ * A single model run (GUI or batch) never sets a scope, so all such state is
+ * shared as before. The ensemble runner steps several runs (members) in one
+ * process and enters each member's scope while working on it, so one
+ * member's registry entries are not seen by the others.
+ *
+ * @author William Stockhausen
+ */
+public class RunScope {
+
+    /** scope of the current thread ("" if none) */
+    private static final ThreadLocal<String> current = new ThreadLocal<String>(){
+        @Override
+        protected String initialValue(){
+            return "";
+        }
+    };
+
+    /**
+     * Gets the scope of the current thread.
+     *
+     * @return - the scope id ("" if no scope was entered)
+     */
+    public static String get(){
+        return current.get();
+    }
+
+    /**
+     * Enters a scope on the current thread. Call exit() when done (in a
+     * finally block).
+     *
+     * @param id - the scope id (e.g. the ensemble member name)
+     */
+    public static void enter(String id){
+        current.set(id);
+    }
+
+    /**
+     * Leaves the current scope.
+     */
+    public static void exit(){
+        current.remove();
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * StageProfiler.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Cumulative hot-path timings and counters for the life stage classes.
+ *
+ * Each stage class holds one profiler (see forStage(name)) and splits the time
+ * spent in step(dt) into phases by "laps":
+ * <pre>
+ *   long t = prof.mark();
+ *   ...interpolation...
+ *   t = prof.lap(StageProfiler.PHASE_INTERPOLATION,t);
+ *   ...IBM functions...
+ *   t = prof.lap(StageProfiler.PHASE_FUNCTIONS,t);
+ * </pre>
+ * Timings and counters are only collected while enabled is true. When it is
+ * false (the default), mark() and count(...) test a static field and lap(...)
+ * tests its argument, so the overhead is negligible.
+ *
+ * Totals are accumulated lock-free and can be written as a text summary at the
+ * end of a run (writeSummary) or viewed while the model runs through the
+ * platform MBean server (see registerMBean(); e.g., in JConsole or in the
+ * MBean browser of Java Mission Control).
+ *
+ * @author William Stockhausen
+ */
+public class StageProfiler {
+
+    /** phase: interpolation of environmental fields */
+    public static final int PHASE_INTERPOLATION = 0;
+    /** phase: IBM function evaluation (movement, growth, development, mortality) */
+    public static final int PHASE_FUNCTIONS     = 1;
+    /** phase: Lagrangian particle tracking and position update */
+    public static final int PHASE_TRACKING      = 2;
+    /** phase: synchronization of attributes with instance variables */
+    public static final int PHASE_ATTRIBUTES    = 3;
+    /** phase: encoding of report (output) lines */
+    public static final int PHASE_REPORT        = 4;
+    /** phase names */
+    public static final String[] PHASES = new String[]{"interpolation","IBM functions","tracking","attributes","report"};
+
+    /** counter: individuals stepped */
+    public static final int COUNT_STEPS          = 0;
+    /** counter: individuals created by stage transitions */
+    public static final int COUNT_TRANSITIONS    = 1;
+    /** counter: stage transitions of super-individuals (splits) */
+    public static final int COUNT_SPLITS         = 2;
+    /** counter: environmental interpolation calls */
+    public static final int COUNT_INTERPOLATIONS = 3;
+    /** counter names */
+    public static final String[] COUNTERS = new String[]{"steps","transitions","super-individual splits","interpolation calls"};
+
+    /** flag to collect timings and counters */
+    public static volatile boolean enabled = false;
+
+    /** profilers by stage name */
+    private static final Map<String,StageProfiler> profilers = new TreeMap<>();
+
+    private static final Logger logger = Logger.getLogger(StageProfiler.class.getName());
+
+    /** stage name */
+    private final String name;
+    /** cumulative time by phase (ns) */
+    private final AtomicLongArray times = new AtomicLongArray(PHASES.length);
+    /** counters */
+    private final AtomicLongArray counts = new AtomicLongArray(COUNTERS.length);
+
+    private StageProfiler(String name){
+        this.name = name;
+    }
+
+    /**
+     * Gets the profiler for a stage, creating it if necessary.
+     *
+     * @param name - the stage name (e.g., the stage class name)
+     *
+     * @return - the profiler
+     */
+    public static synchronized StageProfiler forStage(String name){
+        StageProfiler p = profilers.get(name);
+        if (p==null) {
+            p = new StageProfiler(name);
+            profilers.put(name,p);
+        }
+        return p;
+    }
+
+    /**
+     * Starts timing.
+     *
+     * @return - the current time (ns), or 0 if profiling is disabled
+     */
+    public long mark(){
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Adds the time since t0 to a phase and restarts timing.
+     *
+     * @param phase - the phase
+     * @param t0    - the time returned by mark() or the previous lap(...)
+     *
+     * @return - the current time (ns), or 0 if t0 is 0 (profiling disabled)
+     */
+    public long lap(int phase, long t0){
+        if (t0==0L) return 0L;
+        long t = System.nanoTime();
+        times.addAndGet(phase,t-t0);
+        return t;
+    }
+
+    /**
+     * Increments a counter.
+     *
+     * @param counter - the counter
+     */
+    public void count(int counter){
+        if (enabled) counts.incrementAndGet(counter);
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param counter - the counter
+     * @param n       - the amount to add
+     */
+    public void count(int counter, long n){
+        if (enabled) counts.addAndGet(counter,n);
+    }
+
+    /**
+     * Writes a text summary of the timings and counters for all stages.
+     *
+     * @param w - the writer
+     *
+     * @throws IOException
+     */
+    public static synchronized void writeSummary(Writer w) throws IOException {
+        for (StageProfiler p: profilers.values()){
+            long nSteps = p.counts.get(COUNT_STEPS);
+            long tot = 0;
+            for (int i=0;i<PHASES.length;i++) tot += p.times.get(i);
+            w.write(p.name+"\n");
+            for (int i=0;i<PHASES.length;i++){
+                long t = p.times.get(i);
+                w.write(String.format(Locale.US,"  %-24s %12.3f s  %6.1f%%  %10.3f us/step\n",PHASES[i],
+                        t*1.0e-9,(tot>0) ? 100.0*t/tot : 0.0,(nSteps>0) ? t*1.0e-3/nSteps : 0.0));
+            }
+            for (int i=0;i<COUNTERS.length;i++){
+                w.write(String.format(Locale.US,"  %-24s %12d\n",COUNTERS[i],p.counts.get(i)));
+            }
+        }
+        w.flush();
+    }
+
+    /**
+     * Writes a text summary of the timings and counters for all stages to a file.
+     *
+     * @param fn - the file name
+     *
+     * @throws IOException
+     */
+    public static void writeSummary(String fn) throws IOException {
+        try (FileWriter w = new FileWriter(fn)) {
+            writeSummary(w);
+        }
+    }
+
+    /**
+     * Gets a text summary of the timings and counters for all stages.
+     *
+     * @return - the summary
+     */
+    public static String getSummary(){
+        StringWriter w = new StringWriter();
+        try {
+            writeSummary(w);
+        } catch (IOException ex) {
+            //can't happen with a StringWriter
+        }
+        return w.toString();
+    }
+
+    /**
+     * Resets the timings and counters for all stages.
+     */
+    public static synchronized void reset(){
+        for (StageProfiler p: profilers.values()){
+            for (int i=0;i<PHASES.length;i++) p.times.set(i,0L);
+            for (int i=0;i<COUNTERS.length;i++) p.counts.set(i,0L);
+        }
+    }
+
+    /**
+     * Management interface for viewing and controlling profiling through JMX.
+     */
+    public static interface AdminMXBean {
+        public boolean isEnabled();
+        public void setEnabled(boolean b);
+        public String getSummary();
+        public void reset();
+    }
+
+    private static class Admin implements AdminMXBean {
+        @Override
+        public boolean isEnabled() {return enabled;}
+        @Override
+        public void setEnabled(boolean b) {enabled = b;}
+        @Override
+        public String getSummary() {return StageProfiler.getSummary();}
+        @Override
+        public void reset() {StageProfiler.reset();}
+    }
+
+    /**
+     * Registers the profiler with the platform MBean server (as
+     * "sh.pcod:type=StageProfiler"), if it is not already registered.
+     */
+    public static synchronized void registerMBean(){
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName("sh.pcod:type=StageProfiler");
+            if (!mbs.isRegistered(on)) mbs.registerMBean(new Admin(),on);
+        } catch (JMException ex) {
+            logger.info("Could not register StageProfiler MBean: "+ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * StageTracer.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+/**
+ * Sampled, low-overhead diagnostic tracing for the life stage classes.
+ *
+ * Trace records are kept in a fixed-size in-memory ring buffer (lock-free; the
+ * oldest records are overwritten) and are only written out on demand (dump)
+ * or, optionally, when an exception is recorded (see onException). Tracing is
+ * sampled by individual: only ids for which isTraced(id) is true are traced,
+ * so callers should test isTraced(id) before building a trace message, e.g.
+ * <pre>
+ *   if (StageTracer.isTraced(id)) StageTracer.trace(typeName,id,time,"initialize","depth = "+z);
+ * </pre>
+ * With tracing disabled (sampleEvery = 0, the default), the cost is a single
+ * test of a static field.
+ *
+ * @author William Stockhausen
+ */
+public class StageTracer {
+
+    /** default number of records kept in the ring buffer */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * A trace record.
+     */
+    public static class Record {
+        /** sequence number */
+        public final long seq;
+        /** stage type name */
+        public final String typeName;
+        /** individual id */
+        public final long id;
+        /** model time (s) */
+        public final double time;
+        /** event name */
+        public final String event;
+        /** message */
+        public final String msg;
+
+        Record(long seq, String typeName, long id, double time, String event, String msg){
+            this.seq      = seq;
+            this.typeName = typeName;
+            this.id       = id;
+            this.time     = time;
+            this.event    = event;
+            this.msg      = msg;
+        }
+
+        @Override
+        public String toString(){
+            return seq+","+typeName+","+id+","+time+","+event+","+msg;
+        }
+    }
+
+    /** trace 1 in sampleEvery individuals (by id); 0 disables tracing, 1 traces all */
+    private static volatile int sampleEvery = 0;
+    /** flag to dump the ring buffer to the log when an exception is recorded */
+    public static volatile boolean dumpOnException = true;
+
+    /** the ring buffer */
+    private static volatile AtomicReferenceArray<Record> buffer = new AtomicReferenceArray<>(DEFAULT_CAPACITY);
+    /** number of records written */
+    private static final AtomicLong nRecords = new AtomicLong(0);
+
+    private static final Logger logger = Logger.getLogger(StageTracer.class.getName());
+
+    /**
+     * Sets the sampling rate. Individuals are selected by a hash of their id,
+     * so the same individuals are traced in every stage.
+     *
+     * @param n - trace 1 in n individuals (0 to disable tracing, 1 to trace all)
+     */
+    public static void setSampleEvery(int n){
+        sampleEvery = Math.max(n,0);
+    }
+
+    /**
+     * Sets the capacity of the ring buffer. Existing records are discarded.
+     *
+     * @param capacity - the number of records to keep
+     */
+    public static synchronized void setCapacity(int capacity){
+        buffer = new AtomicReferenceArray<>(Math.max(capacity,1));
+        nRecords.set(0);
+    }
+
+    /**
+     * Tests whether an individual is traced.
+     *
+     * @param id - the individual id
+     *
+     * @return - true if the individual is traced
+     */
+    public static boolean isTraced(long id){
+        int n = sampleEvery;
+        if (n==0) return false;
+        if (n==1) return true;
+        return (mix(id)>>>1)%n==0;
+    }
+
+    /**
+     * Adds a trace record to the ring buffer. The record is added regardless
+     * of sampling, so callers should test isTraced(id) first.
+     *
+     * @param typeName - stage type name
+     * @param id       - individual id
+     * @param time     - model time (s)
+     * @param event    - event name
+     * @param msg      - message
+     */
+    public static void trace(String typeName, long id, double time, String event, String msg){
+        long seq = nRecords.getAndIncrement();
+        AtomicReferenceArray<Record> b = buffer;
+        b.set((int)(seq%b.length()),new Record(seq,typeName,id,time,event,msg));
+    }
+
+    /**
+     * Records an exception thrown while processing an individual (regardless
+     * of sampling) and, if dumpOnException is true, dumps the ring buffer to
+     * the log.
+     *
+     * @param typeName - stage type name
+     * @param id       - individual id
+     * @param time     - model time (s)
+     * @param ex       - the exception
+     */
+    public static void onException(String typeName, long id, double time, Throwable ex){
+        trace(typeName,id,time,"exception",ex.toString());
+        if (dumpOnException) dumpToLog();
+    }
+
+    /**
+     * Writes the records in the ring buffer (oldest first) as csv with columns
+     * seq, typeName, id, time, event, message.
+     *
+     * @param w - the writer
+     *
+     * @throws IOException
+     */
+    public static synchronized void dump(Writer w) throws IOException {
+        AtomicReferenceArray<Record> b = buffer;
+        long n = nRecords.get();
+        long start = Math.max(0,n-b.length());
+        w.write("seq,typeName,id,time,event,message\n");
+        for (long s=start;s<n;s++){
+            Record r = b.get((int)(s%b.length()));
+            if ((r!=null)&&(r.seq==s)) w.write(r.toString()+"\n");
+        }
+        w.flush();
+    }
+
+    /**
+     * Dumps the records in the ring buffer to the log.
+     */
+    public static void dumpToLog(){
+        StringWriter w = new StringWriter();
+        try {
+            dump(w);
+        } catch (IOException ex) {
+            //can't happen with a StringWriter
+        }
+        logger.info("StageTracer dump:\n"+w.toString());
+    }
+
+    /**
+     * Discards all records.
+     */
+    public static synchronized void clear(){
+        AtomicReferenceArray<Record> b = buffer;
+        for (int i=0;i<b.length();i++) b.set(i,null);
+        nRecords.set(0);
+    }
+
+    private static long mix(long z){
+        z += 0x9E3779B97F4A7C15L;
+        z = (z^(z>>>30))*0xBF58476D1CE4E5B9L;
+        z = (z^(z>>>27))*0x94D049BB133111EBL;
+        return z^(z>>>31);
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * SuperIndividualMerger.java
+ *
+ * 20261019: created class.
+ *           2. Merges are passed to a MergeListener instead of being kept in a log; the per-pass
+ *                summary is logged at FINE.
+ */
+package sh.pcod;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import wts.models.DisMELS.framework.LifeStageInterface;
+
+/**
+ * Agglomeration pass that merges super-individuals to bound the number of
+ * live individuals.
+ *
+ * Super-individuals of the same stage in the same grid cell are merged if
+ * they are similar in age in stage, size and developmental progress (within
+ * the set tolerances). Merging is abundance-weighted (see MergeableLHS.mergeWith)
+ * and the surviving instance keeps its id and origID; each merge is passed to
+ * the merge listener (e.g., the lineage index writer, LineageIndexWriter) so
+ * lineage (donor origID -> surviving origID) can be traced. No merge records
+ * are kept in memory.
+ *
+ * If a cap on the number of live individuals is set for a stage, the
+ * individuals with the smallest numbers are then merged into the most similar
+ * individual in their grid cell (regardless of tolerances) until the cap is
+ * met or no further merges within grid cells are possible.
+ *
+ * The pass should be run between model time steps, on the collection of all
+ * active individuals. Merged (retired) individuals are made inactive and not
+ * alive with a number of 0.
+ *
+ * @author William Stockhausen
+ */
+public class SuperIndividualMerger {
+
+    /**
+     * Listener for the merges made by the pass.
+     */
+    public interface MergeListener {
+        /**
+         * Called for each merge, after the donor has been merged into the target.
+         *
+         * @param r - the merge record
+         */
+        public void merged(MergeRecord r);
+    }
+
+    /**
+     * Record of a single merge.
+     */
+    public static class MergeRecord {
+        /** id of the retired individual */
+        public final long donorID;
+        /** original id of the retired individual */
+        public final long donorOrigID;
+        /** id of the surviving individual */
+        public final long targetID;
+        /** original id of the surviving individual */
+        public final long targetOrigID;
+        /** number of individuals transferred */
+        public final double number;
+
+        MergeRecord(MergeableLHS donor, MergeableLHS target, double number){
+            donorID      = donor.getID();
+            donorOrigID  = donor.getOrigID();
+            targetID     = target.getID();
+            targetOrigID = target.getOrigID();
+            this.number  = number;
+        }
+    }
+
+    /** tolerance for differences in age in stage (d) */
+    private double ageTol = 1.0;
+    /** tolerance for relative differences in size */
+    private double sizeTol = 0.05;
+    /** tolerance for differences in developmental progress */
+    private double devTol = 0.05;
+    /** caps on number of live individuals, by stage type name */
+    private final Map<String,Integer> caps = new HashMap<>();
+    /** listener for the merges (null for none) */
+    private MergeListener listener = null;
+    /** number of merges made */
+    private long nMerges = 0;
+
+    private static final Logger logger = Logger.getLogger(SuperIndividualMerger.class.getName());
+
+    /**
+     * Sets the similarity tolerances.
+     *
+     * @param ageTol  - tolerance for differences in age in stage (d)
+     * @param sizeTol - tolerance for relative differences in size
+     * @param devTol  - tolerance for differences in developmental progress
+     */
+    public void setTolerances(double ageTol, double sizeTol, double devTol){
+        this.ageTol  = ageTol;
+        this.sizeTol = sizeTol;
+        this.devTol  = devTol;
+    }
+
+    /**
+     * Sets the cap on the number of live individuals for a stage.
+     *
+     * @param typeName - the stage type name
+     * @param cap      - the cap (<=0 to remove the cap)
+     */
+    public void setMaxIndividuals(String typeName, int cap){
+        if (cap>0) caps.put(typeName,cap); else caps.remove(typeName);
+    }
+
+    /**
+     * Sets the listener for the merges.
+     *
+     * @param listener - the listener (null for none)
+     */
+    public void setMergeListener(MergeListener listener){
+        this.listener = listener;
+    }
+
+    /**
+     * Gets the number of merges made.
+     *
+     * @return - the number of merges
+     */
+    public long getMergeCount(){
+        return nMerges;
+    }
+
+    /**
+     * Runs the agglomeration pass.
+     *
+     * @param lhss - the active individuals
+     *
+     * @return - the number of individuals retired by merging
+     */
+    public int merge(Collection<? extends LifeStageInterface> lhss){
+        //group mergeable super-individuals by stage, then grid cell
+        Map<String,Map<String,List<MergeableLHS>>> byType = new LinkedHashMap<>();
+        for (LifeStageInterface lhs: lhss){
+            if (!(lhs instanceof MergeableLHS)) continue;
+            if (!(lhs.isSuperIndividual()&&lhs.isAlive()&&lhs.isActive())) continue;
+            MergeableLHS m = (MergeableLHS) lhs;
+            Map<String,List<MergeableLHS>> byCell = byType.get(m.getTypeName());
+            if (byCell==null) {
+                byCell = new LinkedHashMap<>();
+                byType.put(m.getTypeName(),byCell);
+            }
+            List<MergeableLHS> cell = byCell.get(m.getGridCellID());
+            if (cell==null) {
+                cell = new ArrayList<>();
+                byCell.put(m.getGridCellID(),cell);
+            }
+            cell.add(m);
+        }
+
+        int nRetired = 0;
+        for (String typeName: byType.keySet()){
+            Map<String,List<MergeableLHS>> byCell = byType.get(typeName);
+            int nLive = 0;
+            for (List<MergeableLHS> cell: byCell.values()) {
+                nLive += cell.size();
+                nLive -= mergeSimilar(cell);
+            }
+            Integer cap = caps.get(typeName);
+            if ((cap!=null)&&(nLive>cap)) nLive -= enforceCap(byCell,nLive-cap);
+            int n = 0;
+            for (List<MergeableLHS> cell: byCell.values()) n += cell.size();
+            nRetired += n-nLive;
+            if (logger.isLoggable(Level.FINE))
+                logger.fine("SuperIndividualMerger: "+typeName+": "+n+" -> "+nLive+" live individuals");
+        }
+        return nRetired;
+    }
+
+    /**
+     * Merges similar individuals within a grid cell.
+     *
+     * @return - the number of individuals retired
+     */
+    private int mergeSimilar(List<MergeableLHS> cell){
+        Collections.sort(cell,new Comparator<MergeableLHS>(){
+            @Override
+            public int compare(MergeableLHS a, MergeableLHS b) {
+                return Double.compare(a.getAgeInStage(),b.getAgeInStage());
+            }
+        });
+        int nRetired = 0;
+        for (int i=0;i<cell.size();i++){
+            MergeableLHS a = cell.get(i);
+            if (!a.isAlive()) continue;
+            for (int j=i+1;j<cell.size();j++){
+                MergeableLHS b = cell.get(j);
+                if (b.getAgeInStage()-a.getAgeInStage()>ageTol) break;
+                if (!b.isAlive()) continue;
+                if (isSimilar(a,b)&&a.canMergeWith(b)){
+                    doMerge(b,a);
+                    nRetired++;
+                }
+            }
+        }
+        return nRetired;
+    }
+
+    /**
+     * Merges the individuals with the smallest numbers into the most similar
+     * individual in the same grid cell until nExcess individuals are retired
+     * or no more merges are possible.
+     *
+     * @return - the number of individuals retired
+     */
+    private int enforceCap(Map<String,List<MergeableLHS>> byCell, int nExcess){
+        List<MergeableLHS> all = new ArrayList<>();
+        for (List<MergeableLHS> cell: byCell.values()) {
+            for (MergeableLHS m: cell) if (m.isAlive()) all.add(m);
+        }
+        Collections.sort(all,new Comparator<MergeableLHS>(){
+            @Override
+            public int compare(MergeableLHS a, MergeableLHS b) {
+                return Double.compare(a.getNumber(),b.getNumber());
+            }
+        });
+        int nRetired = 0;
+        for (MergeableLHS donor: all){
+            if (nRetired>=nExcess) break;
+            if (!donor.isAlive()) continue;
+            MergeableLHS target = null;
+            double dMin = Double.POSITIVE_INFINITY;
+            for (MergeableLHS m: byCell.get(donor.getGridCellID())){
+                if ((m==donor)||!m.isAlive()||!m.canMergeWith(donor)) continue;
+                double d = distance(m,donor);
+                if (d<dMin) {dMin = d; target = m;}
+            }
+            if (target!=null) {
+                doMerge(donor,target);
+                nRetired++;
+            }
+        }
+        return nRetired;
+    }
+
+    private void doMerge(MergeableLHS donor, MergeableLHS target){
+        double number = donor.getNumber();
+        target.mergeWith(donor);
+        nMerges++;
+        if (listener!=null) listener.merged(new MergeRecord(donor,target,number));
+    }
+
+    private boolean isSimilar(MergeableLHS a, MergeableLHS b){
+        if (Math.abs(a.getAgeInStage()-b.getAgeInStage())>ageTol) return false;
+        double sMax = Math.max(Math.abs(a.getSize()),Math.abs(b.getSize()));
+        if (Math.abs(a.getSize()-b.getSize())>sizeTol*sMax) return false;
+        return Math.abs(a.getDevelopment()-b.getDevelopment())<=devTol;
+    }
+
+    private double distance(MergeableLHS a, MergeableLHS b){
+        double sMax = Math.max(Math.abs(a.getSize()),Math.abs(b.getSize()));
+        double dS = (sMax>0) ? Math.abs(a.getSize()-b.getSize())/sMax : 0.0;
+        return Math.abs(a.getAgeInStage()-b.getAgeInStage())/Math.max(ageTol,1.0e-9)+
+               dS/Math.max(sizeTol,1.0e-9)+
+               Math.abs(a.getDevelopment()-b.getDevelopment())/Math.max(devTol,1.0e-9);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * VelocityField.java
+ *
+ * 20261019: created interface.
+ */
+package sh.pcod;
+
+/**
+ * Interface for velocity fields used by AdvectionIntegrator.
+ *
+ * Positions are in grid index coordinates {I,J,K} and velocities are
+ * returned as rates of change of the grid coordinates (index units/s).
+ *
+ * @author William Stockhausen
+ */
+public interface VelocityField {
+
+    /**
+     * Evaluates the velocity at a position.
+     *
+     * @param pos  - position in grid coordinates {I,J,K}
+     * @param dpdt - (output) rates of change of {I,J,K} (index units/s)
+     */
+    public void evaluate(double[] pos, double[] dpdt);
+
+    /**
+     * Gets the length (m) of one index unit in the given grid dimension
+     * near the current integration origin. Used to express integration
+     * error tolerances in meters.
+     *
+     * @param dim - 0 (I), 1 (J) or 2 (K)
+     *
+     * @return - meters per index unit
+     */
+    public double getMetric(int dim);
+
+    /**
+     * Gets the maximum value allowed for the vertical grid coordinate.
+     * Positions are clamped to [0,maxK] in K during integration.
+     *
+     * @return - the maximum K
+     */
+    public double getMaxK();
+}
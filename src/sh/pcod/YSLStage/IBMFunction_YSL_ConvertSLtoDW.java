@@ -9,6 +9,7 @@ import org.openide.util.lookup.ServiceProvider;
 import org.openide.util.lookup.ServiceProviders;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
+import sh.pcod.IBMKernelFunction;
 
 /**
  * IBM function to convert standard length (mm) to dry weight (mg) for YSL-stage
@@ -20,7 +21,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_YSL_ConvertSLtoDW extends AbstractIBMFunction {
+public class IBMFunction_YSL_ConvertSLtoDW extends AbstractIBMFunction implements IBMKernelFunction {
     public static final String DEFAULT_type = "Conversion";
     /** user-friendly function name */
     public static final String DEFAULT_name = "Convert standard length to dry weight";
@@ -78,9 +79,14 @@ public class IBMFunction_YSL_ConvertSLtoDW extends AbstractIBMFunction {
      */
     @Override
     public Object calculate(Object o) {
-        double lnSL = Math.log((Double) o);
+        return (Double) calculate((Double) o,0.0);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double lnSL = Math.log(x);
         double dw = 1000*Math.exp(-25.448732  +  7.039122*lnSL + Math.pow(0.3866485,2.0)/2);
-        return (Double) dw;
+        return dw;
     }
     
 }
@@ -10,6 +10,7 @@ import org.openide.util.lookup.ServiceProviders;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.models.DisMELS.framework.IBMFunctions.IBMMortalityFunctionInterface;
+import sh.pcod.IBMKernelFunction;
 
 /**
  * IBM function to calculate YSL time to point-of-no return (in days) using
@@ -23,7 +24,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMMortalityFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_YSL_PNR extends AbstractIBMFunction implements IBMMortalityFunctionInterface {
+public class IBMFunction_YSL_PNR extends AbstractIBMFunction implements IBMMortalityFunctionInterface, IBMKernelFunction {
     public static final String DEFAULT_type = "Mortality";
     /** user-friendly function name */
     public static final String DEFAULT_name = "time to point-of-no return in days for Pacific cod YSL";
@@ -82,9 +83,14 @@ public class IBMFunction_YSL_PNR extends AbstractIBMFunction implements IBMMorta
      */
     @Override
     public Object calculate(Object o) {
-        double t = (Double) o;
+        return (Double) calculate((Double) o,0.0);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double t = x;
         double PNR = 34.67 * Math.exp(-0.126 * t);
-        return (Double) PNR;
+        return PNR;
     }
     
 }
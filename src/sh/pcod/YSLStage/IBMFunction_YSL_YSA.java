@@ -10,6 +10,7 @@ import org.openide.util.lookup.ServiceProviders;
 import wts.models.DisMELS.framework.IBMFunctions.AbstractIBMFunction;
 import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
 import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
+import sh.pcod.IBMKernelFunction;
 
 /**
  * IBM function to calculate YSL time to yolk-sac absorption (in days) using
@@ -23,7 +24,7 @@ import wts.models.DisMELS.framework.IBMFunctions.IBMGrowthFunctionInterface;
     @ServiceProvider(service=IBMFunctionInterface.class)}
 )
 
-public class IBMFunction_YSL_YSA extends AbstractIBMFunction implements IBMGrowthFunctionInterface {
+public class IBMFunction_YSL_YSA extends AbstractIBMFunction implements IBMGrowthFunctionInterface, IBMKernelFunction {
     public static final String DEFAULT_type = "Growth";
     /** user-friendly function name */
     public static final String DEFAULT_name = "time to yolk-sac absorption (in days) for Pacific cod YSL";
@@ -82,9 +83,14 @@ public class IBMFunction_YSL_YSA extends AbstractIBMFunction implements IBMGrowt
      */
     @Override
     public Object calculate(Object o) {
-        double t = (Double) o;
+        return (Double) calculate((Double) o,0.0);
+    }
+
+    @Override
+    public double calculate(double x, double y) {
+        double t = x;
         double YSA = 14.7662 * Math.exp(-0.235 * t);
-        return (Double) YSA;
+        return YSA;
     }
     
 }
@@ -15,6 +15,37 @@
  * 20210217: 1. Added function to convert SL to DW for YSL and changed setAttributes(...) to use it
  *                to convert SL to DW at transition from egg stage to YSL (i.e., hatch). Egg-stage DW
  *                includes the yolk sac while the YSL DW does not.
+ * 20261019: 1. Added optional higher-order (RK4/RK45) advection via AdvectionIntegrator.
+ *           2. Added fast path for bottom-attached individuals that skips the movement
+ *              pipeline until the next sunrise/sunset (when detachment becomes possible).
+ *           3. Horizontal random walk now draws from the per-thread NormalDeviates
+ *                block generator and re-uses the result array instead of allocating one.
+ *           4. Random walk deviates and the first-feeding threshold (rndFeed) now come from
+ *                the counter-based CounterRNG keyed on id, step time and purpose. Removed unused
+ *                Math.random() call in step.
+ *           5. updateNum now uses the closed-form AbundanceIntegrator.
+ *           6. Implements MergeableLHS so super-individuals can be merged by SuperIndividualMerger.
+ *           7. Super-individuals with negligible abundance are culled per CullingPolicy
+ *                (checked at the end of updateNum).
+ *           8. First feeding (WTS approach) is now an event: the cumulative hazard is compared with
+ *                the threshold -ln(rndFeed), and prNotFed is only evaluated for output. The per-step
+ *                first-feeding log message (SH approach) is now only written in debug mode.
+ *           9. Position and bathymetric depth in initialize() are now only logged in debug mode;
+ *                added sampled diagnostic tracing (StageTracer) for initialization, first feeding,
+ *                stage transitions and exceptions.
+ *           10. Added hot-path timings and counters (StageProfiler).
+ *           11. Implements ObservableLHS; the state of live individuals is recorded at the end of each
+ *                step for the in-run output accumulators (OutputRegistry).
+ *           12. Added transition events for in-run connectivity output (OutputRegistry).
+ *           13. Added report events for the in-run lineage index (OutputRegistry).
+ *           14. Growth, mortality, vertical velocity, PNR and YSA functions are bound to
+ *                update strategies (RateStrategies) in setParameters, replacing the type codes.
+ *           15. User-defined (compiled expression) functions (IBMFunction_UserDefined) are bound
+ *                like the built-in functions of the same category.
+ *           16. Culling tests and records only number: numTrans is left to make the transition,
+ *                after which the individual is retired.
+ *           17. Random draws use the key set by the batch run (RandomKeyedLHS) instead of the id.
+ *           18. mergeWith sums the numbers at stage entry (for relative culling).
  */
 
 package sh.pcod.YSLStage;
@@ -24,9 +55,25 @@ import java.util.logging.Logger;
 import java.util.ArrayList;
 import java.util.List;
 import org.openide.util.lookup.ServiceProvider;
+import sh.pcod.AbundanceIntegrator;
 import sh.pcod.EggStage.EggStageAttributes;
+import sh.pcod.AdvectionIntegrator;
+import sh.pcod.CounterRNG;
+import sh.pcod.CullingPolicy;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateDW;
 import sh.pcod.IBMFunction_NonEggStageSTDGrowthRateSL;
+import sh.pcod.IBMFunction_UserDefined;
+import sh.pcod.IBMKernelFunction;
+import sh.pcod.LightCycle;
+import sh.pcod.MergeableLHS;
+import sh.pcod.NormalDeviates;
+import sh.pcod.RandomKeyedLHS;
+import sh.pcod.RateStrategies;
+import sh.pcod.StageTracer;
+import sh.pcod.StageProfiler;
+import sh.pcod.output.LHSObservation;
+import sh.pcod.output.ObservableLHS;
+import sh.pcod.output.OutputRegistry;
 import wts.models.DisMELS.IBMFunctions.Mortality.ConstantMortalityRate;
 import wts.models.DisMELS.IBMFunctions.Mortality.InversePowerLawMortalityRate;
 import wts.models.DisMELS.IBMFunctions.Movement.DielVerticalMigration_FixedDepthRanges;
@@ -45,7 +92,7 @@ import wts.roms.model.LagrangianParticle;
  * @author Sarah Hinckley
  */
 @ServiceProvider(service=LifeStageInterface.class)
-public class YSLStage extends AbstractLHS {
+public class YSLStage extends AbstractLHS implements MergeableLHS, ObservableLHS, RandomKeyedLHS {
     
     /** flag to use Sarah's approach to first feeding */
     public static boolean useFirstFeedingSH = true;//TODO: should be a parameter?
@@ -54,6 +101,10 @@ public class YSLStage extends AbstractLHS {
             //  Static fields new to this class
     /* flag to do debug operations */
     public static boolean debug = false;
+    /* flag to skip the movement pipeline for bottom-attached individuals until detachment is possible */
+    public static boolean useAttachedFastPath = true;
+    /* safety margin (s) before predicted sunrise/sunset at which attachment is re-evaluated */
+    public static double attachedCheckMargin = 1800.0;
     /* Class for attributes SH_NEW */
     public static final String attributesClass = 
             sh.pcod.YSLStage.YSLStageAttributes.class.getName();
@@ -94,6 +145,8 @@ public class YSLStage extends AbstractLHS {
     protected double  minStageSize;
     protected double  stageTransRate;
     protected boolean useRandomTransitions;
+    protected boolean useRKAdvection;
+    protected double  rkTolerance;
     
         //fields that reflect (new) attribute values
     /** flag indicating individual is attached to bottom */
@@ -126,18 +179,35 @@ public class YSLStage extends AbstractLHS {
             //other fields
     /** number of individuals transitioning to next stage */
     private double numTrans;  
+    /** number when the individual entered the stage (for culling relative to entry) */
+    private double numberAtEntry = Double.NaN;
+    /** true once number has been culled (the individual is retired after numTrans makes the transition) */
+    private boolean culled = false;
+    /** key for the counter-based random draws (CounterRNG; see getRandomKey) */
+    private long rngKey = 0L;
+    /** true if rngKey was set by a batch run (setRandomKey) */
+    private boolean hasRngKey = false;
     protected double durPNR; //time (days) to point-of-no return based on current temperature
     protected double durYSA; //time (days) to yolk sac absorption based on current temperature
     protected double ageYSA; //age at which yolk-sac absorption occurred
+    /** time (s) until which a bottom-attached individual stays attached (next possible detachment) */
+    private double timeAttachedUntil = Double.NEGATIVE_INFINITY;
+    /** vertical movement rate (m/s) when individual became attached */
+    private double wAttached = 0.0;
     
     //initialized values
-    protected final double rndFeed = Math.random(); //random value of cumulative probability at which feeding occurs
+    protected double  rndFeed      = Double.NaN;//random value of cumulative probability at which feeding occurs (see getRndFeed())
     protected double  prFeed       = 0.0;   //cumulative probability with time of first feeding (Sarah's approach)
     protected double  prNotFed     = 1.0;   //cumulative probability of NOT having fed
     protected double  indivCopWgt  = 1.0e-6;//typical weight for individual small copepod (kg)
     protected double  fCumHazFcn   = 0.0;   //cumulative hazard function for first feeding
+    private   double  cumHazFeed   = Double.NaN;//cumulative hazard at which first feeding occurs, -ln(rndFeed) (see getCumHazFeed())
+    private   boolean prNotFedIsStale = false;//flag indicating prNotFed has not been updated from fCumHazFcn (see refreshPrNotFed())
     protected boolean hasFed       = false; //feeding flag
     
+    /** horizontal movement components returned by calcUV (re-used to avoid allocation) */
+    private double[] uv = new double[2];
+
     /** IBM function selected for mortality */
     private IBMFunctionInterface fcnMortality = null; 
     /** IBM function selected for growth in SL */
@@ -158,15 +228,23 @@ public class YSLStage extends AbstractLHS {
     //the above is taken as a class-level (static) assignment because there is only 
     //one such function of choice and will be the same for all YSL.
     
-    private int typeMort  = 0;//integer indicating mortality function
-    private int typeGrSL  = 0;//integer indicating SL growth function
-    private int typeGrDW  = 0;//integer indicating DW growth function
+    /** strategy bound to the selected mortality function (std_len) */
+    private IBMKernelFunction stratMort = null;
+    /** strategy bound to the selected SL growth function (T, std_len) */
+    private IBMKernelFunction stratGrSL = null;
+    /** strategy bound to the selected DW growth function (T, dry_wgt) */
+    private IBMKernelFunction stratGrDW = null;
+    /** strategy bound to the selected vertical velocity function (dt) */
+    private IBMKernelFunction stratVV = null;
+    /** strategy bound to the selected PNR function (T) */
+    private IBMKernelFunction stratPNR = null;
+    /** strategy bound to the selected YSA function (T) */
+    private IBMKernelFunction stratYSA = null;
     private int typeVM    = 0;//integer indicating vertical movement function
-    private int typeVV    = 0;//integer indicating vertical velocity function
-    private int typePNR   = 0;//integer indicating PNR function
-    private int typeYSA   = 0;//integer indicating YSA function
     
     private static final Logger logger = Logger.getLogger(YSLStage.class.getName());
+    /** profiler for hot-path timings and counters */
+    private static final StageProfiler prof = StageProfiler.forStage("YSLStage");
     
     /**
      * Creates a new instance of YSLStage.  
@@ -273,6 +351,7 @@ public class YSLStage extends AbstractLHS {
      */
     @Override
     public YSLStageAttributes getAttributes() {
+        refreshPrNotFed();
         return atts;
     }
 
@@ -479,32 +558,33 @@ public class YSLStage extends AbstractLHS {
             fcnPNR  = params.getSelectedIBMFunctionForCategory(YSLStageParameters.FCAT_PNR);
             fcnYSA  = params.getSelectedIBMFunctionForCategory(YSLStageParameters.FCAT_YSA);
             
+            //bind the update strategies once, so step() and updateNum() 
+            //don't test the function types
+            stratMort = null; stratGrSL = null; stratGrDW = null; stratVV = null; typeVM = 0;
             if (fcnMortality instanceof ConstantMortalityRate)
-                typeMort = YSLStageParameters.FCN_Mortality_ConstantMortalityRate;
+                stratMort = RateStrategies.ofNoInputs(fcnMortality);
             else if (fcnMortality instanceof InversePowerLawMortalityRate)
-                typeMort = YSLStageParameters.FCN_Mortality_InversePowerLawMortalityRate;
+                stratMort = RateStrategies.of(fcnMortality);//using std_len as covariate
             
-            if (fcnGrSL instanceof IBMFunction_NonEggStageSTDGrowthRateSL) 
-                typeGrSL = YSLStageParameters.FCN_GrSL_NonEggStageSTDGrowthRate;
-            else if (fcnGrSL instanceof IBMFunction_YSL_GrowthRateSL)    
-                typeGrSL = YSLStageParameters.FCN_GrSL_YSL_GrowthRate;
+            if ((fcnGrSL instanceof IBMFunction_NonEggStageSTDGrowthRateSL)||
+                (fcnGrSL instanceof IBMFunction_YSL_GrowthRateSL)||
+                (fcnGrSL instanceof IBMFunction_UserDefined))
+                stratGrSL = RateStrategies.of(fcnGrSL);
             
-            if (fcnGrDW instanceof IBMFunction_NonEggStageSTDGrowthRateDW) 
-                typeGrDW = YSLStageParameters.FCN_GrDW_NonEggStageSTDGrowthRate;
-            else if (fcnGrDW instanceof IBMFunction_YSL_GrowthRateDW)    
-                typeGrDW = YSLStageParameters.FCN_GrDW_YSL_GrowthRate;
+            if ((fcnGrDW instanceof IBMFunction_NonEggStageSTDGrowthRateDW)||
+                (fcnGrDW instanceof IBMFunction_YSL_GrowthRateDW)||
+                (fcnGrDW instanceof IBMFunction_UserDefined))
+                stratGrDW = RateStrategies.of(fcnGrDW);
             
             if (fcnVM instanceof DielVerticalMigration_FixedDepthRanges)   
                 typeVM = YSLStageParameters.FCN_VM_DVM_FixedDepthRanges;
             
             if (fcnVV instanceof ConstantMovementRateFunction) 
-                typeVV = YSLStageParameters.FCN_VV_YSL_Constant;
-            
-            if (fcnPNR instanceof IBMFunction_YSL_PNR) 
-                typePNR = YSLStageParameters.FCN_PNR_YSL;
+                stratVV = RateStrategies.ofTimeStep(fcnVV);
             
-            if (fcnYSA instanceof IBMFunction_YSL_YSA) 
-                typeYSA = YSLStageParameters.FCN_YSA_YSL;
+            //only 1 alternative function each currently defined for PNR, YSA
+            stratPNR = RateStrategies.of(fcnPNR);
+            stratYSA = RateStrategies.of(fcnYSA);
         } else {
             //TODO: throw some error
         }
@@ -524,6 +604,10 @@ public class YSLStage extends AbstractLHS {
                 params.getValue(YSLStageParameters.PARAM_maxStageDuration,maxStageDuration);
         useRandomTransitions = 
                 params.getValue(YSLStageParameters.PARAM_useRandomTransitions,true);
+        useRKAdvection = 
+                params.getValue(YSLStageParameters.PARAM_useRKAdvection,useRKAdvection);
+        rkTolerance = 
+                params.getValue(YSLStageParameters.PARAM_rkTolerance,rkTolerance);
     }
     
     /**
@@ -542,6 +626,7 @@ public class YSLStage extends AbstractLHS {
             clone.lp      = (LagrangianParticle) lp.clone();
             clone.track   = (ArrayList<Coordinate>) track.clone();
             clone.trackLL = (ArrayList<Coordinate>) trackLL.clone();
+            clone.uv     = new double[2];
         } catch (CloneNotSupportedException ex) {
             ex.printStackTrace();
         }
@@ -572,6 +657,8 @@ public class YSLStage extends AbstractLHS {
 
     private List<LifeStageInterface> createNextLHS() {
         List<LifeStageInterface> nLHSs = null;
+        if (StageTracer.isTraced(id)) 
+            StageTracer.trace(typeName,id,time,"transition","numTrans = "+numTrans);
         try {
             //create LHS with "next" stage
             if (isSuperIndividual) {
@@ -587,6 +674,11 @@ public class YSLStage extends AbstractLHS {
                  */
                 nLHSs = LHS_Factory.createNextLHSsFromSuperIndividual(typeName,this,numTrans);
                 numTrans = 0.0;//reset numTrans to zero
+                if (culled) {
+                    //number was culled (see updateNum): nothing is left in this stage
+                    alive  = false;
+                    active = false;
+                }
             } else {
                 /** 
                  * Since this is a single individual making a transition, we should
@@ -606,14 +698,24 @@ public class YSLStage extends AbstractLHS {
         } catch (IllegalAccessException | InstantiationException ex) {
             ex.printStackTrace();
         }
+        if (nLHSs!=null) {
+            prof.count(StageProfiler.COUNT_TRANSITIONS,nLHSs.size());
+            if (isSuperIndividual) prof.count(StageProfiler.COUNT_SPLITS);
+            if (OutputRegistry.isActive()) OutputRegistry.recordTransition(this,nLHSs);
+        }
         return nLHSs;
     }
     
     @Override
     public String getReport() {
+        refreshPrNotFed();
+        long tProf = prof.mark();
         updateAttributes();//make sure attributes are up to date
         atts.setValue(atts.PROP_track, getTrackAsString(COORDINATE_TYPE_GEOGRAPHIC));//
-        return atts.getCSV();
+        String csv = atts.getCSV();
+        if (OutputRegistry.isActive()) OutputRegistry.recordReport(this,csv);
+        prof.lap(StageProfiler.PHASE_REPORT,tProf);
+        return csv;
     }
 
     @Override
@@ -641,7 +743,9 @@ public class YSLStage extends AbstractLHS {
         zPos       = atts.getValue(YSLStageAttributes.PROP_vertPos,zPos);
         time       = startTime;
         numTrans   = 0.0; //set numTrans to zero
-        logger.info(hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
+        if (debug) logger.info(hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
+        if (StageTracer.isTraced(id)) 
+            StageTracer.trace(typeName,id,time,"initialize","position = "+hType+cc+vType+cc+startTime+cc+xPos+cc+yPos+cc+zPos);
         if (i3d!=null) {
             double[] IJ = new double[] {xPos,yPos};
             if (hType==Types.HORIZ_XY) {
@@ -651,7 +755,9 @@ public class YSLStage extends AbstractLHS {
                 IJ = i3d.getGrid().computeIJfromLL(yPos,xPos);
             }
             double z = i3d.interpolateBathymetricDepth(IJ);
-            logger.info("Bathymetric depth = "+z);
+            if (debug) logger.info("Bathymetric depth = "+z);
+            if (StageTracer.isTraced(id)) 
+                StageTracer.trace(typeName,id,time,"initialize","bathymetric depth = "+z);
             double ssh = i3d.interpolateSSH(IJ);
 
             double K = 0;  //set K = 0 (at bottom) as default
@@ -689,54 +795,75 @@ public class YSLStage extends AbstractLHS {
     
     @Override
     public void step(double dt) throws ArrayIndexOutOfBoundsException {
+        prof.count(StageProfiler.COUNT_STEPS);
+        long tProf = prof.mark();
         //WTS_NEW 2012-07-26:{
         double[] pos = lp.getIJK();
+        //bottom-attached individuals stay put until the next sunrise/sunset, so
+        //the movement pipeline (and position-dependent updates) can be skipped
+        boolean fastPath = attached&&useAttachedFastPath&&(dt>0)&&(time<timeAttachedUntil);
         double T0 = i3d.interpolateTemperature(pos);
         
       //SH-Prey Stuff  
         copepods    = i3d.interpolateValue(pos,Cop,Interpolator3D.INTERP_VAL);
         euphausiids = i3d.interpolateValue(pos,Eup,Interpolator3D.INTERP_VAL);
         neocalanus  = i3d.interpolateValue(pos,NCa,Interpolator3D.INTERP_VAL);
+        tProf = prof.lap(StageProfiler.PHASE_INTERPOLATION,tProf);
                
-        double[] res = calcW(pos,dt);//calc w and attached indicator
-        double w     = Math.signum(dt)*res[0];
-        attached     = res[1]<0;
-        if (attached) pos[2] = 0;//set individual on bottom
-        double[] uv  = calcUV(pos,dt);//calculate orizontal movement components
-        if (attached){
-            lp.setIJK(pos[0], pos[1], pos[2]);
-        } else {
-            //}:WTS_NEW 2012-07-26
-            //do lagrangian particle tracking
-            lp.setU(uv[0],lp.getN());
-            lp.setV(uv[1],lp.getN());
-            lp.setW(w,    lp.getN());
-            //now do predictor step
-            lp.doPredictorStep();
-            //assume same daytime status, but recalc depth and revise W 
-            pos = lp.getPredictedIJK();
-            depth = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
-            if (debug) logger.info("Depth after predictor step = "+depth);
-            //w = calcW(dt,lp.getNP1())+r; //set swimming rate for predicted position
-            lp.setU(uv[0],lp.getNP1());
-            lp.setV(uv[1],lp.getNP1());
-            lp.setW(w,    lp.getNP1());
-            //now do corrector step
-            lp.doCorrectorStep();
-            pos = lp.getIJK();
-            if (debug) logger.info("Depth after corrector step = "+(-i3d.calcZfromK(pos[0],pos[1],pos[2])));
+        double w = wAttached;
+        if (!fastPath) {
+            double[] res = calcW(pos,dt);//calc w and attached indicator
+            w            = Math.signum(dt)*res[0];
+            attached     = res[1]<0;
+            if (attached) pos[2] = 0;//set individual on bottom
+            double[] uv  = calcUV(pos,dt);//calculate orizontal movement components
+            tProf = prof.lap(StageProfiler.PHASE_FUNCTIONS,tProf);
+            if (attached){
+                lp.setIJK(pos[0], pos[1], pos[2]);
+                wAttached = w;
+                timeAttachedUntil = Double.NEGATIVE_INFINITY;
+                if (useAttachedFastPath&&(dt>0)) {
+                    double yd = GlobalInfo.getInstance().getCalendar().getYearDay();
+                    timeAttachedUntil = time+LightCycle.computeTimeToNextLightChange(lon,lat,yd,attachedCheckMargin);
+                }
+            } else if (useRKAdvection) {
+                //do higher-order (RK4, or adaptive RK45 if rkTolerance>0) advection
+                pos = AdvectionIntegrator.advect(i3d,lp,uv[0],uv[1],w,dt,rkTolerance);
+            } else {
+                //}:WTS_NEW 2012-07-26
+                //do lagrangian particle tracking
+                lp.setU(uv[0],lp.getN());
+                lp.setV(uv[1],lp.getN());
+                lp.setW(w,    lp.getN());
+                //now do predictor step
+                lp.doPredictorStep();
+                //assume same daytime status, but recalc depth and revise W 
+                pos = lp.getPredictedIJK();
+                depth = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
+                if (debug) logger.info("Depth after predictor step = "+depth);
+                //w = calcW(dt,lp.getNP1())+r; //set swimming rate for predicted position
+                lp.setU(uv[0],lp.getNP1());
+                lp.setV(uv[1],lp.getNP1());
+                lp.setW(w,    lp.getNP1());
+                //now do corrector step
+                lp.doCorrectorStep();
+                pos = lp.getIJK();
+                if (debug) logger.info("Depth after corrector step = "+(-i3d.calcZfromK(pos[0],pos[1],pos[2])));
+            }
         }
+        tProf = prof.lap(StageProfiler.PHASE_TRACKING,tProf);
         
         time += dt;
         double dtday = dt/86400;//bio model timestep in days
         
         //get effective temperature as average temp at new and old locations
-        double T1 = i3d.interpolateTemperature(pos);
+        double T1 = fastPath ? T0 : i3d.interpolateTemperature(pos);
+        tProf = prof.lap(StageProfiler.PHASE_INTERPOLATION,tProf);
         double T = 0.5 * (T0 + T1);
         if(T<=0.0) T=0.01; 
 
         //Days to 100% mortality        
-        durPNR  = (Double) fcnPNR.calculate(T);//only 1 alternative function currently defined
+        durPNR  = stratPNR.calculate(T,0.0);//only 1 alternative function currently defined
         progPNR += dtday/durPNR;//integrated criterion for point-of-no return (progPNR=1)
         
         if (progPNR>=1.0){
@@ -744,21 +871,14 @@ public class YSLStage extends AbstractLHS {
             active=false;
         } else {
             //Days to YSA (when it is ready to feed)
-            durYSA  = (Double) fcnYSA.calculate(T);//only 1 alternative function currently defined        
+            durYSA  = stratYSA.calculate(T,0.0);//only 1 alternative function currently defined        
             if (progYSA<1.0) progYSA += dtday/durYSA;//integrated criterion for yolk-sac absorption (progYSA=1)
             if ((ageYSA<0)&&(progYSA>=1.0))
                 ageYSA = ageInStage; //Age at which feeding is possible
 
             //growth is same for feeding via ysa or active feeding 
-            if (typeGrSL==YSLStageParameters.FCN_GrSL_YSL_GrowthRate)
-                grSL = (Double) fcnGrSL.calculate(T);
-            else if (typeGrSL==YSLStageParameters.FCN_GrSL_NonEggStageSTDGrowthRate)
-                grSL = (Double) fcnGrSL.calculate(new Double[]{T,std_len});
-
-            if (typeGrDW==YSLStageParameters.FCN_GrDW_YSL_GrowthRate)
-                grDW = (Double) fcnGrDW.calculate(T);
-            else if (typeGrDW==YSLStageParameters.FCN_GrDW_NonEggStageSTDGrowthRate)
-                grDW = (Double) fcnGrDW.calculate(new Double[]{T,dry_wgt});
+            if (stratGrSL!=null) grSL = stratGrSL.calculate(T,std_len);
+            if (stratGrDW!=null) grDW = stratGrDW.calculate(T,dry_wgt);
 
             if (progYSA<1.0){
                 //yolk-sac absorption is incomplete
@@ -775,9 +895,10 @@ public class YSLStage extends AbstractLHS {
                     //(in which case durPNR-durYSA is a constant).
                     prFeed  += dtday/(durPNR-durYSA);
                     prNotFed = 1.0-prFeed;
-                    double b = Math.random();
-                    logger.info("Check on first feeding for id "+id+": "+rndFeed+" <= "+prFeed+"?");
-                    if (rndFeed<=prFeed) hasFed = true;//feeding occurs, will transition to FDL stage
+                    if (debug) logger.info("Check on first feeding for id "+id+": "+getRndFeed()+" <= "+prFeed+"?");
+                    if (StageTracer.isTraced(id)) 
+                        StageTracer.trace(typeName,id,time,"firstFeedingCheck",getRndFeed()+" <= "+prFeed+"?");
+                    if (getRndFeed()<=prFeed) hasFed = true;//feeding occurs, will transition to FDL stage
                     //growth occurs regardless of feeding (seems unrealistic)
                     std_len += grSL*dtday;
                     dry_wgt *= Math.exp(grDW * dtday);
@@ -787,8 +908,11 @@ public class YSLStage extends AbstractLHS {
                     double svr  = Math.PI*(std_len*std_len*(1.0e-6))*Math.abs(w);//search volume rate (m^3/s)
                     double fHF  = svr*(copepods/indivCopWgt);//instantaneous feeding hazard rate (1/s)
                     fCumHazFcn += fHF*dt;                   //cumulative hazard function for first feeding (note: dt, not dtday)
-                    prNotFed = Math.exp(-fCumHazFcn);
-                    if (rndFeed>prNotFed) {
+                    prNotFedIsStale = true;                 //prNotFed = exp(-fCumHazFcn) is only evaluated for output
+                    //first feeding occurs when rndFeed > exp(-fCumHazFcn), i.e. fCumHazFcn > -ln(rndFeed)
+                    if (fCumHazFcn>getCumHazFeed()) {
+                        if (StageTracer.isTraced(id)) 
+                            StageTracer.trace(typeName,id,time,"firstFeeding","cumulative hazard = "+fCumHazFcn);
                         //feeding occurs
                         hasFed = true;//will transition to FDL stage
                         std_len += grSL*dtday;
@@ -802,10 +926,17 @@ public class YSLStage extends AbstractLHS {
           
         updateNum(dt);
         updateAge(dt);
-        updatePosition(pos);
+        tProf = prof.lap(StageProfiler.PHASE_FUNCTIONS,tProf);
+        if (fastPath) {
+            updateTrack();//position is unchanged
+        } else {
+            updatePosition(pos);
+        }
+        tProf = prof.lap(StageProfiler.PHASE_TRACKING,tProf);
         interpolateEnvVars(pos);
+        tProf = prof.lap(StageProfiler.PHASE_INTERPOLATION,tProf);
         //check for exiting grid
-        if (i3d.isAtGridEdge(pos,tolGridEdge)){
+        if ((!fastPath)&&i3d.isAtGridEdge(pos,tolGridEdge)){
             alive=false;
             active=false;
         }
@@ -813,6 +944,46 @@ public class YSLStage extends AbstractLHS {
             logger.info(toString());
         }
         updateAttributes(); //update the attributes object w/ nmodified values
+        prof.lap(StageProfiler.PHASE_ATTRIBUTES,tProf);
+        if (OutputRegistry.isActive()) OutputRegistry.record(this);
+    }
+    
+    /**
+     * Gets the random value of cumulative probability at which first feeding
+     * occurs. This is drawn once per individual from the counter-based stream
+     * keyed on the individual's id, so it does not depend on the order in which
+     * individuals are created or stepped.
+     * 
+     * @return - the value
+     */
+    private double getRndFeed(){
+        if (Double.isNaN(rndFeed)) rndFeed = CounterRNG.uniform(getRandomKey(),0L,CounterRNG.PURPOSE_FIRST_FEEDING);
+        return rndFeed;
+    }
+    
+    /**
+     * Gets the cumulative hazard at which first feeding occurs (WTS approach),
+     * -ln(rndFeed). This is evaluated once per individual, so the per-step
+     * check for first feeding is a comparison with the running sum fCumHazFcn.
+     * 
+     * @return - the threshold
+     */
+    private double getCumHazFeed(){
+        if (Double.isNaN(cumHazFeed)) cumHazFeed = -Math.log(getRndFeed());
+        return cumHazFeed;
+    }
+    
+    /**
+     * Updates prNotFed (and the corresponding attribute) from the cumulative
+     * hazard for first feeding if it has changed since prNotFed was last
+     * evaluated. Called when attributes are requested for output.
+     */
+    private void refreshPrNotFed(){
+        if (prNotFedIsStale) {
+            prNotFed = Math.exp(-fCumHazFcn);
+            atts.setValue(YSLStageAttributes.PROP_prNotFed,prNotFed);
+            prNotFedIsStale = false;
+        }
     }
     
     /**
@@ -832,13 +1003,13 @@ public class YSLStage extends AbstractLHS {
         if (typeVM==YSLStageParameters.FCN_VM_DVM_FixedDepthRanges) {
             //fcnVM instanceof wts.models.DisMELS.IBMFunctions.Movement.DielVerticalMigration_FixedDepthRanges
             //calculate the vertical movement rate
-            if (typeVV==YSLStageParameters.FCN_VV_YSL_Constant) {
+            if (stratVV!=null) {
                 //fcnVV instanceof wts.models.DisMELS.IBMFunctions.SwimmingBehavior.ConstantMovementRateFunction
                 /**
                 * @param vars - double[]{dt}.
                 * @return     - movement rate as a Double 
                 */
-                w = (Double) fcnVV.calculate(new double[]{dt});
+                w = stratVV.calculate(dt,0.0);
             }
             /**
             * Compute time of local sunrise, sunset and solar noon (in minutes, UTC) 
@@ -864,6 +1035,7 @@ public class YSLStage extends AbstractLHS {
                 logger.info("NullPointerException for EggStage id: "+id);
                 logger.info("lon: "+lon+". lat: "+lat+". yearday: "+cal.getYearDay());
                 logger.info(ex.getMessage());
+                StageTracer.onException(typeName,id,time,ex);
             }
             /**
             * @param vars - the inputs variables as a double[] array with elements
@@ -891,17 +1063,28 @@ public class YSLStage extends AbstractLHS {
      */
     public double[] calcUV(double[] pos, double dt) {
         //calculate horizontal movement
-        double[] uv = {0.0,0.0};
+        uv[0] = 0.0; uv[1] = 0.0;//re-used to avoid allocation
         if (!attached){
             if ((horizRWP>0)&&(Math.abs(dt)>0)) {
                 double r = Math.sqrt(horizRWP/Math.abs(dt));
-                uv[0] += r*rng.computeNormalVariate(); //stochastic swimming rate
-                uv[1] += r*rng.computeNormalVariate(); //stochastic swimming rate
+                if (CounterRNG.useForRandomWalks) {
+                    //reproducible regardless of stepping order/threads
+                    CounterRNG.normalPair(getRandomKey(),time,CounterRNG.PURPOSE_RANDOM_WALK,uv);
+                    uv[0] *= r; //stochastic swimming rate
+                    uv[1] *= r; //stochastic swimming rate
+                } else {
+                    NormalDeviates nd = NormalDeviates.getInstance();
+                    uv[0] += r*nd.next(); //stochastic swimming rate
+                    uv[1] += r*nd.next(); //stochastic swimming rate
+                }
                 if (debug) System.out.print("uv: "+r+"; "+uv[0]+", "+uv[1]+"\n");
             }
         }
         //return the result
-        return new double[]{Math.signum(dt)*uv[0],Math.signum(dt)*uv[1]};
+        double sgn = Math.signum(dt);
+        uv[0] = sgn*uv[0];
+        uv[1] = sgn*uv[1];
+        return uv;
     }
     //WTS_NEW 2012-07-26:{
 
@@ -923,29 +1106,44 @@ public class YSLStage extends AbstractLHS {
      * @param dt - time step in seconds
      */
     private void updateNum(double dt) {
+        updateNum(dt,1);
+    }
+
+    /**
+     * Updates number and numTrans over nSteps identical time steps in a single
+     * (closed-form) evaluation, assuming rates are constant over the steps.
+     * 
+     * @param dt     - time step in seconds
+     * @param nSteps - number of time steps
+     */
+    private void updateNum(double dt, int nSteps) {
+        if (Double.isNaN(numberAtEntry)) numberAtEntry = number;
         //{WTS_NEW 2012-07-26:
         double mortalityRate = 0.0D;//in unis of [days]^-1
-        if (typeMort==YSLStageParameters.FCN_Mortality_ConstantMortalityRate){
-            //fcnMortality instanceof ConstantMortalityRate
-            mortalityRate = (Double)fcnMortality.calculate(null);
-        } else 
-        if (typeMort==YSLStageParameters.FCN_Mortality_InversePowerLawMortalityRate){
-            //fcnMortality instanceof InversePowerLawMortalityRate
-            mortalityRate = (Double)fcnMortality.calculate(std_len);//using std_len as covariate for mortality
-        }
+        if (stratMort!=null) mortalityRate = stratMort.calculate(std_len,0.0);//using std_len as covariate for mortality
         double totRate = mortalityRate;
         if ((ageInStage>=minStageDuration)) {
             totRate += stageTransRate;
             //apply mortality rate to previous number transitioning and
             //add in new transitioners
-            numTrans = numTrans*Math.exp(-dt*mortalityRate/86400)+
-                    (stageTransRate/totRate)*number*(1-Math.exp(-dt*totRate/86400));
+            numTrans = AbundanceIntegrator.advanceTransitioning(number,numTrans,mortalityRate,stageTransRate,dt,nSteps);
         }
-        number = number*Math.exp(-dt*totRate/86400);
+        number = AbundanceIntegrator.advanceNumber(number,totRate,dt,nSteps);
         //}: WTS_NEW 2012-07-26
+        if (isSuperIndividual&&!culled&&CullingPolicy.cull(typeName,gridCellID,number,numberAtEntry)){
+            //negligible abundance: number is recorded as culled; numTrans is left
+            //to make the transition, after which the individual is retired
+            number = 0.0;
+            culled = true;
+            if (!(numTrans>0)) {
+                alive  = false;
+                active = false;
+            }
+        }
     }
     
     private void updatePosition(double[] pos) {
+        prof.count(StageProfiler.COUNT_INTERPOLATIONS);
         bathym     =  i3d.interpolateBathymetricDepth(pos);
         depth      = -i3d.calcZfromK(pos[0],pos[1],pos[2]);
         lat        =  i3d.interpolateLat(pos);
@@ -955,6 +1153,7 @@ public class YSLStage extends AbstractLHS {
     }
     
     private void interpolateEnvVars(double[] pos) {
+        prof.count(StageProfiler.COUNT_INTERPOLATIONS);
         temperature = i3d.interpolateTemperature(pos);
         salinity    = i3d.interpolateSalinity(pos);
         if (i3d.getPhysicalEnvironment().getField("rho")!=null) 
@@ -1032,6 +1231,141 @@ public class YSLStage extends AbstractLHS {
     public boolean isSuperIndividual() {
         return isSuperIndividual;
     }
+
+    @Override
+    public double getNumber() {
+        return number;
+    }
+
+    @Override
+    public String getGridCellID() {
+        return gridCellID;
+    }
+
+    @Override
+    public double getAgeInStage() {
+        return ageInStage;
+    }
+
+    @Override
+    public double getSize() {
+        return std_len;
+    }
+
+    @Override
+    public double getDevelopment() {
+        return progYSA;
+    }
+
+    @Override
+    public long getOrigID() {
+        return atts.getValue(YSLStageAttributes.PROP_origID,id);
+    }
+
+    @Override
+    public boolean canMergeWith(MergeableLHS other) {
+        if ((other==this)||!(other instanceof YSLStage)) return false;
+        YSLStage o = (YSLStage) other;
+        return typeName.equals(o.typeName)&&isSuperIndividual&&o.isSuperIndividual
+                &&alive&&active&&o.alive&&o.active&&!culled&&!o.culled
+                &&(hasFed==o.hasFed)&&(attached==o.attached);
+    }
+
+    /**
+     * Gets the number when the individual entered the stage (the current
+     * number if it has not been updated in the stage yet).
+     */
+    private double getNumberAtEntry() {
+        return Double.isNaN(numberAtEntry) ? number : numberAtEntry;
+    }
+    
+    /**
+     * Merges another super-individual into this one (see MergeableLHS).
+     * State variables are averaged, weighted by number.
+     * 
+     * @param other - the instance to merge into this one
+     */
+    @Override
+    public void mergeWith(MergeableLHS other) {
+        YSLStage o = (YSLStage) other;
+        //entry numbers are summed so relative culling refers to the merged total
+        numberAtEntry = getNumberAtEntry()+o.getNumberAtEntry();
+        double n = number+o.number;
+        if (n>0) {
+            double f = o.number/n;//weight for other
+            age        += f*(o.age-age);
+            ageInStage += f*(o.ageInStage-ageInStage);
+            std_len    += f*(o.std_len-std_len);
+            dry_wgt    += f*(o.dry_wgt-dry_wgt);
+            progYSA    += f*(o.progYSA-progYSA);
+            progPNR    += f*(o.progPNR-progPNR);
+            prFeed     += f*(o.prFeed-prFeed);
+            refreshPrNotFed();
+            o.refreshPrNotFed();
+            prNotFed   += f*(o.prNotFed-prNotFed);
+            fCumHazFcn += f*(o.fCumHazFcn-fCumHazFcn);
+            if ((ageYSA>=0)&&(o.ageYSA>=0)) ageYSA += f*(o.ageYSA-ageYSA); else
+            if (o.ageYSA>=0) ageYSA = o.ageYSA;
+        }
+        number    = n;
+        numTrans += o.numTrans;
+        updateAttributes();
+        //retire the other instance
+        o.number   = 0.0;
+        o.numTrans = 0.0;
+        o.alive    = false;
+        o.active   = false;
+        o.updateAttributes();
+    }
+    
+    /**
+     * Sets the key for the individual's random draws (see RandomKeyedLHS).
+     * 
+     * @param key - the key
+     */
+    @Override
+    public void setRandomKey(long key) {
+        rngKey = key;
+        hasRngKey = true;
+    }
+    
+    /**
+     * Gets the key for the individual's random draws: the key set by a batch
+     * run or, without one, the key for its id (CounterRNG.getKey).
+     */
+    private long getRandomKey() {
+        return hasRngKey ? rngKey : CounterRNG.getKey(id);
+    }
+    
+    /**
+     * Fills in an observation with the current state of the individual
+     * (see ObservableLHS).
+     * 
+     * @param obs - the observation
+     */
+    @Override
+    public void observe(LHSObservation obs) {
+        obs.typeName    = typeName;
+        obs.id          = id;
+        obs.parentID    = atts.getValue(YSLStageAttributes.PROP_parentID,id);
+        obs.origID      = atts.getValue(YSLStageAttributes.PROP_origID,id);
+        obs.time        = time;
+        obs.lon         = lon;
+        obs.lat         = lat;
+        obs.depth       = depth;
+        obs.bathym      = bathym;
+        obs.gridCellID  = gridCellID;
+        obs.number      = number;
+        obs.age         = age;
+        obs.ageInStage  = ageInStage;
+        obs.attached    = attached;
+        obs.std_len     = std_len;
+        obs.dry_wgt     = dry_wgt;
+        obs.grSL        = grSL;
+        obs.grDW        = grDW;
+        obs.temperature = temperature;
+        obs.fed         = hasFed ? 1.0 : 0.0;
+    }
     
     /**
      * Updates attribute values defined for this abstract class. 
@@ -1062,6 +1396,7 @@ public class YSLStage extends AbstractLHS {
     protected void updateVariables() {
         super.updateVariables();
         attached    = atts.getValue(YSLStageAttributes.PROP_attached,attached);
+        timeAttachedUntil = Double.NEGATIVE_INFINITY;
         std_len     = atts.getValue(YSLStageAttributes.PROP_SL,std_len); 
         dry_wgt     = atts.getValue(YSLStageAttributes.PROP_DW,dry_wgt); 
         grSL        = atts.getValue(YSLStageAttributes.PROP_grSL,grSL); 
@@ -5,6 +5,7 @@
  *   Added "attached" as attribute due to changes in DisMELS framework
  * 20210208: 1. extends AbstractLarvalAttributes.
  * 20210209: 1. added PROPs for YSA, PNR, and PrNotFed.
+ * 20261019: 1. Error dialogs are shown via ErrorMessages (logged only when headless).
  *
  */
 
@@ -19,6 +20,7 @@ import java.util.Set;
 import java.util.logging.Logger;
 import org.openide.util.lookup.ServiceProvider;
 import sh.pcod.AbstractLarvalAttributes;
+import sh.pcod.ErrorMessages;
 import wts.models.DisMELS.framework.IBMAttributes.IBMAttribute;
 import wts.models.DisMELS.framework.IBMAttributes.IBMAttributeDouble;
 import static wts.models.DisMELS.framework.LifeStageAttributesInterface.PROP_typeName;
@@ -262,11 +264,7 @@ public class YSLStageAttributes extends AbstractLarvalAttributes {
                 String str = "Missing attribute value for "+aKeys[j]+".\n"+
                              "Prior values are ";
                 for (int i=0;i<(j);i++) str = str+strv[i]+" ";
-                javax.swing.JOptionPane.showMessageDialog(
-                        null,
-                        str,
-                        "Error setting attribute values:",
-                        javax.swing.JOptionPane.ERROR_MESSAGE);
+                ErrorMessages.showError("Error setting attribute values:",str);
                 throw ex;
         } catch (java.lang.NumberFormatException ex) {
             String[] aKeys = new String[keys.size()];
@@ -290,11 +288,7 @@ public class YSLStageAttributes extends AbstractLarvalAttributes {
             }  catch (java.lang.IndexOutOfBoundsException ex1) {
                 //do nothing
             }
-            javax.swing.JOptionPane.showMessageDialog(
-                    null,
-                    str,
-                    "Error setting attribute values:",
-                    javax.swing.JOptionPane.ERROR_MESSAGE);
+            ErrorMessages.showError("Error setting attribute values:",str);
             throw ex;
         }
     }
@@ -0,0 +1,111 @@
+/*
+ * BatchRunner.java
+ *
+ * 20261019: created class.
+ *           2. Command-line arguments are read by Scenario.fromArgs.
+ *           3. The run's in-run outputs are set up and closed by ModelRun.
+ *           4. Registers the in-run outputs of the scenario (ModelRun.openOutputs).
+ *           5. The environment is initialized from the Scenario.
+ */
+package sh.pcod.batch;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.logging.Logger;
+import sh.pcod.ErrorMessages;
+
+/**
+ * Headless command-line runner for a Pacific cod model scenario:
+ * <pre>
+ *   java -cp ... sh.pcod.batch.BatchRunner scenario.properties [name=value ...]
+ * </pre>
+ * Reads the scenario (see Scenario), sets up the physical environment (see
+ * ModelEnvironment), releases the individuals in the initial conditions file
+ * and steps them from the start to the end time through the egg to benthic
+ * juvenile stages, writing the report files to the output directory.
+ * Arguments of the form name=value override the scenario properties (e.g.
+ * output.dir=run07 for one of several runs in parallel batch jobs).
+ *
+ * The runner does not use the NetBeans platform or Swing: java.awt.headless
+ * is set, and errors that the GUI shows in dialogs are logged. The exit
+ * status is non-zero if the run fails.
+ *
+ * @author William Stockhausen
+ */
+public class BatchRunner {
+
+    private static final Logger logger = Logger.getLogger(BatchRunner.class.getName());
+
+    /** the scenario */
+    private final Scenario scenario;
+
+    /**
+     * Creates a runner for a scenario.
+     *
+     * @param scenario - the scenario
+     */
+    public BatchRunner(Scenario scenario){
+        this.scenario = scenario;
+    }
+
+    /**
+     * Sets the system properties for running without a display. Call
+     * before any AWT or Swing class is loaded.
+     */
+    public static void setHeadless(){
+        System.setProperty("java.awt.headless","true");
+        System.setProperty(ErrorMessages.PROP_HEADLESS,"true");
+    }
+
+    /**
+     * Runs the scenario.
+     *
+     * @throws IOException if a model or output file can't be read or written
+     */
+    public void run() throws IOException {
+        double t0 = scenario.getStartTime();
+        double t1 = scenario.getEndTime();
+        double dt = scenario.getTimeStep();
+        if (!(dt>0)) throw new IllegalArgumentException("Scenario property '"+Scenario.PROP_timeStep+"' must be positive.");
+
+        ModelEnvironment env = scenario.createEnvironment();
+        env.initialize(scenario);
+        ModelRun run = new ModelRun("",scenario.getProperties(),scenario.getOutputDir(),
+                                    scenario.getOutputPrefix(),scenario.getOutputInterval());
+        try {
+            run.openOutputs(scenario);
+            run.addInitialConditions(scenario.readInitialConditions());
+            long tStart = System.nanoTime();
+            long nSteps = (long) Math.ceil((t1-t0)/dt-1.0e-9);
+            for (long n=0;n<nSteps;n++){
+                double t = t0+n*dt;
+                env.advance(t,dt);
+                run.step(t,dt);
+                if ((run.getNumberAlive()==0)&&(run.getNumberPending()==0)) {
+                    logger.info("No individuals left at "+(t+dt)+".");
+                    break;
+                }
+            }
+            logger.info(String.format(Locale.US,"Run completed in %.1f s (%d individuals alive at end).",
+                                      1.0e-9*(System.nanoTime()-tStart),run.getNumberAlive()));
+        } finally {
+            run.close();
+            env.close();
+        }
+    }
+
+    public static void main(String[] args){
+        setHeadless();
+        if (args.length<1){
+            System.err.println("usage: BatchRunner scenario.properties [name=value ...]");
+            System.exit(2);
+        }
+        try {
+            new BatchRunner(Scenario.fromArgs(args)).run();
+        } catch (IOException | RuntimeException ex){
+            logger.severe("Run failed: "+ex);
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
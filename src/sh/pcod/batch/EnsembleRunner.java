@@ -0,0 +1,242 @@
+/*
+ * EnsembleRunner.java
+ *
+ * 20261019: created class.
+ *           2. Members have their own in-run outputs and culling accounting.
+ *           3. Documented the members' random draws.
+ *           4. Registers the in-run outputs of the scenario (ModelRun.openOutputs).
+ *           5. The environment is initialized from the Scenario.
+ */
+package sh.pcod.batch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Headless command-line runner for an ensemble of runs of one scenario that
+ * differ only in their parameters:
+ * <pre>
+ *   java -cp ... sh.pcod.batch.EnsembleRunner scenario.properties [name=value ...]
+ * </pre>
+ * In addition to the Scenario properties, the scenario gives
+ * <pre>
+ *   ensemble.members - csv file with one line per member: a header line "member,&lt;property&gt;,..."
+ *                      followed by the member name and its values for the properties
+ *                      (e.g. FDL.param.horizRWP or Egg.function.Mortality.rate)
+ *   ensemble.threads - number of threads stepping the members (default: number of processors)
+ * </pre>
+ * Each member is a ModelRun with the scenario properties overridden by its
+ * values, its own individuals (from the shared initial conditions), and its
+ * own report files in the sub-directory &lt;output.dir&gt;/&lt;member&gt;.
+ *
+ * The physical environment is read and interpolated once: in each time step
+ * it is advanced once, then all members are stepped through the same (read
+ * only) fields. The members' individuals are stepped in parallel and their
+ * reports written in parallel; the releases and stage transitions, which get
+ * new individual ids from the framework, are done for one member at a time in
+ * member order, so the results don't depend on the number of threads. The
+ * random draws of a member are keyed on its rng.seed and on run-local ids
+ * (see ModelRun), so they are the same as when the member is run alone;
+ * members with the same seed (the default) get common random numbers.
+ *
+ * Each member has its own in-run outputs (OutputRegistry accumulators and
+ * listeners), culling policies and culling accounting (see RunScope).
+ *
+ * @author William Stockhausen
+ */
+public class EnsembleRunner {
+
+    public static final String PROP_members = "ensemble.members";
+    public static final String PROP_threads = "ensemble.threads";
+
+    private static final Logger logger = Logger.getLogger(EnsembleRunner.class.getName());
+
+    /** the scenario */
+    private final Scenario scenario;
+
+    /**
+     * Creates a runner for a scenario.
+     *
+     * @param scenario - the scenario
+     */
+    public EnsembleRunner(Scenario scenario){
+        this.scenario = scenario;
+    }
+
+    /**
+     * Creates the members from the members file.
+     *
+     * @return - the members
+     *
+     * @throws IOException if the file can't be read
+     */
+    List<ModelRun> createMembers() throws IOException {
+        String name = scenario.getProperties().getProperty(PROP_members);
+        if (name==null) throw new IllegalArgumentException("Scenario property '"+PROP_members+"' is required.");
+        List<ModelRun> members = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        try (BufferedReader rdr = new BufferedReader(new FileReader(scenario.getFile(name)))) {
+            String line = rdr.readLine();
+            if (line==null) throw new IllegalArgumentException("Members file '"+name+"' is empty.");
+            String[] keys = line.split(",",-1);
+            for (int i=0;i<keys.length;i++) keys[i] = keys[i].trim();
+            int n = 1;
+            while ((line=rdr.readLine())!=null){
+                n++;
+                if (line.trim().isEmpty()) continue;
+                String[] vals = line.split(",",-1);
+                if (vals.length!=keys.length)
+                    throw new IllegalArgumentException("Members file line "+n+" has "+vals.length+
+                                                       " values, expected "+keys.length+".");
+                String member = vals[0].trim();
+                if (member.isEmpty()||!names.add(member))
+                    throw new IllegalArgumentException("Missing or duplicate member name in members file line "+n+".");
+                Properties props = new Properties(scenario.getProperties());
+                for (int i=1;i<keys.length;i++) {
+                    if (!vals[i].trim().isEmpty()) props.setProperty(keys[i],vals[i].trim());
+                }
+                members.add(new ModelRun(member,props,new File(scenario.getOutputDir(),member),
+                                         scenario.getOutputPrefix(),scenario.getOutputInterval()));
+            }
+        }
+        if (members.isEmpty()) throw new IllegalArgumentException("Members file '"+name+"' has no members.");
+        return members;
+    }
+
+    /**
+     * Runs the ensemble.
+     *
+     * @throws IOException if a model or output file can't be read or written
+     */
+    public void run() throws IOException {
+        double t0 = scenario.getStartTime();
+        double t1 = scenario.getEndTime();
+        final double dt = scenario.getTimeStep();
+        if (!(dt>0)) throw new IllegalArgumentException("Scenario property '"+Scenario.PROP_timeStep+"' must be positive.");
+        int nThreads = (int) scenario.getDouble(PROP_threads,Runtime.getRuntime().availableProcessors());
+
+        final List<ModelRun> members = createMembers();
+        List<String[]> ics = scenario.readInitialConditions();
+        ModelEnvironment env = scenario.createEnvironment();
+        env.initialize(scenario);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1,nThreads),new ThreadFactory(){
+            @Override
+            public Thread newThread(Runnable r){
+                Thread t = new Thread(r,"ensemble");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        logger.info("Running "+members.size()+" members on "+nThreads+" threads.");
+        try {
+            for (ModelRun m: members) {
+                m.openOutputs(scenario);
+                m.addInitialConditions(ics);
+            }
+            long tStart = System.nanoTime();
+            long nSteps = (long) Math.ceil((t1-t0)/dt-1.0e-9);
+            for (long n=0;n<nSteps;n++){
+                final double t = t0+n*dt;
+                env.advance(t,dt);
+                for (ModelRun m: members) m.release(t);
+                List<Callable<Void>> tasks = new ArrayList<>(members.size());
+                for (final ModelRun m: members){
+                    tasks.add(new Callable<Void>(){
+                        @Override
+                        public Void call(){
+                            m.stepIndividuals(t,dt);
+                            return null;
+                        }
+                    });
+                }
+                invokeAll(pool,tasks,members);
+                for (ModelRun m: members) m.addNewIndividuals(dt);
+                tasks.clear();
+                for (final ModelRun m: members){
+                    tasks.add(new Callable<Void>(){
+                        @Override
+                        public Void call() throws IOException {
+                            m.report(t,dt);
+                            return null;
+                        }
+                    });
+                }
+                invokeAll(pool,tasks,members);
+                boolean done = true;
+                for (ModelRun m: members) done &= (m.getNumberAlive()==0)&&(m.getNumberPending()==0);
+                if (done) {
+                    logger.info("No individuals left at "+(t+dt)+".");
+                    break;
+                }
+            }
+            logger.info(String.format(Locale.US,"Ensemble of %d members completed in %.1f s.",
+                                      members.size(),1.0e-9*(System.nanoTime()-tStart)));
+        } finally {
+            pool.shutdownNow();
+            for (ModelRun m: members) {
+                try {
+                    m.close();
+                } catch (IOException ex){
+                    logger.severe("Error closing output for member "+m.getName()+": "+ex.getMessage());
+                }
+            }
+            env.close();
+        }
+    }
+
+    /**
+     * Runs one task per member and waits for all of them, rethrowing the
+     * first failure (with the member name).
+     */
+    private static void invokeAll(ExecutorService pool, List<Callable<Void>> tasks, List<ModelRun> members) throws IOException {
+        List<Future<Void>> futures;
+        try {
+            futures = pool.invokeAll(tasks);
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ensemble run interrupted.");
+        }
+        for (int i=0;i<futures.size();i++){
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException ex){
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Ensemble run interrupted.");
+            } catch (ExecutionException ex){
+                Throwable c = ex.getCause();
+                if (c instanceof IOException) throw (IOException) c;
+                throw new IllegalStateException("Member "+members.get(i).getName()+" failed: "+c,c);
+            }
+        }
+    }
+
+    public static void main(String[] args){
+        BatchRunner.setHeadless();
+        if (args.length<1){
+            System.err.println("usage: EnsembleRunner scenario.properties [name=value ...]");
+            System.exit(2);
+        }
+        try {
+            new EnsembleRunner(Scenario.fromArgs(args)).run();
+        } catch (IOException | RuntimeException ex){
+            logger.severe("Run failed: "+ex);
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
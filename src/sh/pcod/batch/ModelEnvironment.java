@@ -0,0 +1,67 @@
+/*
+ * ModelEnvironment.java
+ *
+ * 20261019: created interface.
+ *           2. Documented the read-only contract for runs that share the environment.
+ *           3. initialize takes the Scenario (for relative file names); ROMSEnvironment implements it.
+ */
+package sh.pcod.batch;
+
+import java.io.IOException;
+
+/**
+ * Service interface for the physical model environment of a batch run.
+ *
+ * The life stage classes get their physical environment from the DisMELS
+ * framework (the interpolator AbstractLHS.i3d, the calendar from GlobalInfo)
+ * and create their parameters and next stages through LHS_Factory, which
+ * uses the life stage type definitions of the model. In the GUI these are
+ * set up by the framework's model controller; in a batch run they are set up
+ * by an implementation of this interface, which reads the same model files
+ * (ROMS grid and data files, life stage types, calendar). ROMSEnvironment is
+ * the implementation for ROMS model output.
+ *
+ * BatchRunner finds the implementation by the scenario property
+ * "environment.class" or, if that is not given, by
+ * Lookup.getDefault().lookup(ModelEnvironment.class) (register it with
+ * {@code @ServiceProvider(service=ModelEnvironment.class)}; the default lookup
+ * reads the registrations from META-INF/services without booting the
+ * platform).
+ *
+ * EnsembleRunner steps several runs through one environment: advance is
+ * called once per time step, and between calls the runs read the fields
+ * (through the interpolator) from several threads, so the fields must not be
+ * changed, or lazily loaded without synchronization, between advance calls.
+ *
+ * @author William Stockhausen
+ */
+public interface ModelEnvironment {
+
+    /**
+     * Sets up the environment for a run: the model grid, the interpolator,
+     * the calendar and the life stage type definitions used by LHS_Factory.
+     *
+     * @param scenario - the scenario (its properties and relative file names)
+     *
+     * @throws IOException if the model files can't be read
+     */
+    public void initialize(Scenario scenario) throws IOException;
+
+    /**
+     * Prepares the physical fields (and the calendar) for a model time step
+     * from time to time+dt. Called once per time step, before any individual
+     * is created or stepped. After the call, the fields are only read until
+     * the next call.
+     *
+     * @param time - the model time at the start of the step (s)
+     * @param dt   - the time step (s)
+     *
+     * @throws IOException if the physical fields can't be read
+     */
+    public void advance(double time, double dt) throws IOException;
+
+    /**
+     * Releases the resources used by the environment (open data files).
+     */
+    public void close();
+}
@@ -0,0 +1,674 @@
+/*
+ * ModelRun.java
+ *
+ * 20261019: created class.
+ *           2. Time step split into phases (release, stepIndividuals, addNewIndividuals,
+ *                report) for EnsembleRunner; work is done in the run's RunScope.
+ *           3. In-run outputs (OutputRegistry) and culling are set up and closed in the run's RunScope;
+ *                reports are written in it.
+ *           4. Random draws (CounterRNG) are keyed on the run seed (rng.seed) and run-local ids.
+ *           5. Added openOutputs, which registers the in-run outputs enabled by the scenario properties.
+ *           6. Merge passes over the super-individuals at merge.interval (SuperIndividualMerger).
+ *           7. Culling thresholds from the scenario (culling.<type>.*); culled abundance written at close
+ *                (output.culling).
+ *           8. Sets the key for the random draws on each individual it adds (RandomKeyedLHS).
+ *           9. close removes the run's egg cohorts (EggCohortRegistry).
+ */
+package sh.pcod.batch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Logger;
+import sh.pcod.CounterRNG;
+import sh.pcod.CullingPolicy;
+import sh.pcod.EggStage.EggCohortRegistry;
+import sh.pcod.RandomKeyedLHS;
+import sh.pcod.RunScope;
+import sh.pcod.SuperIndividualMerger;
+import sh.pcod.output.ConnectivityMatrix;
+import sh.pcod.output.DensityGrid;
+import sh.pcod.output.LineageIndexWriter;
+import sh.pcod.output.OutputRegistry;
+import sh.pcod.output.PopulationCensus;
+import sh.pcod.output.RegionMap;
+import sh.pcod.output.SizeAtAgeHistograms;
+import sh.pcod.output.TrajectoryWriter;
+import wts.models.DisMELS.framework.AbstractLHSParameters;
+import wts.models.DisMELS.framework.IBMFunctions.IBMFunctionInterface;
+import wts.models.DisMELS.framework.LHS_Factory;
+import wts.models.DisMELS.framework.LifeStageAttributesInterface;
+import wts.models.DisMELS.framework.LifeStageInterface;
+import wts.models.DisMELS.framework.LifeStageParametersInterface;
+
+/**
+ * The individuals of one batch model run, from their release (initial
+ * conditions) through the egg to benthic juvenile stages, and the run's
+ * report files.
+ *
+ * Each run has its own copy of the life stage parameters for each type (the
+ * type definition's parameters with the run's parameter properties applied,
+ * see Scenario), set on every individual the run creates, including the next
+ * stage individuals created at transitions. Runs are therefore independent of
+ * each other and of the type definitions.
+ *
+ * In each time step (step(t,dt)), individuals with start times at or before t
+ * are created and initialized, all live active individuals are stepped, and
+ * the next stage (metamorphosed) and spawned individuals are added to the run.
+ * At output times, the report of each individual is appended to the report
+ * file for its type (&lt;prefix&gt;&lt;type&gt;.csv). Individuals that died are
+ * dropped after they have been reported. If merge.interval is set, a merge
+ * pass over the run's super-individuals (SuperIndividualMerger) is made
+ * before the reports at those intervals. The in-run outputs enabled by the
+ * scenario (census, connectivity, histograms, density grids, lineage index,
+ * trajectories; see Scenario) are registered by openOutputs and written to
+ * the run's output directory. The culling thresholds of the scenario
+ * (culling.&lt;type&gt;.*) are set for the run, and its culled abundance is
+ * written at close if output.culling is set.
+ *
+ * The physical environment must be advanced to t before step(t,dt) is called.
+ * The run's work is done in its RunScope, so per-run registries (egg
+ * cohorts, in-run outputs (OutputRegistry), culling policies and accounting)
+ * are kept apart when several runs share a process. The run's random draws
+ * (CounterRNG) are keyed on its seed (rng.seed) and on run-local ids, so a
+ * run gets the same draws whether it runs alone or in an ensemble.
+ *
+ * @author William Stockhausen
+ */
+public class ModelRun {
+
+    /** name of the run (its RunScope id; "" for a single run) */
+    private final String name;
+    /** parameter properties for the run */
+    private final Properties props;
+    /** directory for the report files */
+    private final File outDir;
+    /** prefix for the report file names */
+    private final String prefix;
+
+    /** life stage parameters for the run, by type name */
+    private final Map<String,LifeStageParametersInterface> mapParams = new HashMap<>();
+    /** report files, by type name */
+    private final Map<String,BufferedWriter> mapWriters = new HashMap<>();
+    /** attributes of individuals not yet released, by start time */
+    private final List<LifeStageAttributesInterface> pending = new ArrayList<>();
+    /** live individuals */
+    private final List<LifeStageInterface> lhss = new ArrayList<>();
+    /** individuals stepped in the current time step (re-used) */
+    private final List<LifeStageInterface> stepped = new ArrayList<>();
+
+    /** lineage index writer (null if not enabled) */
+    private LineageIndexWriter lineage = null;
+    /** merger for the super-individuals (null if not enabled) */
+    private final SuperIndividualMerger merger;
+    /** interval (s) between merge passes */
+    private final double mergeInterval;
+    /** model time (s) of the next merge pass */
+    private double nextMergeTime = Double.NaN;
+
+    /** model time (s) of the next report */
+    private double nextOutputTime = Double.NaN;
+    /** interval (s) between reports */
+    private final double outputInterval;
+
+    private static final Logger logger = Logger.getLogger(ModelRun.class.getName());
+
+    /**
+     * Creates a run.
+     *
+     * @param name           - name of the run ("" for a single run; the member name in an ensemble)
+     * @param props          - parameter properties (see Scenario)
+     * @param outDir         - directory for the report files (created if necessary)
+     * @param prefix         - prefix for the report file names
+     * @param outputInterval - interval (s) between reports
+     */
+    public ModelRun(String name, Properties props, File outDir, String prefix, double outputInterval){
+        this.name   = name;
+        this.props  = props;
+        this.outDir = outDir;
+        this.prefix = prefix;
+        this.outputInterval = outputInterval;
+        mergeInterval = Scenario.getDouble(props,Scenario.PROP_mergeInterval,0.0);
+        merger = (mergeInterval>0) ? createMerger() : null;
+        RunScope.enter(name);
+        try {
+            OutputRegistry.setOutputInterval(outputInterval);
+            String seed = props.getProperty(Scenario.PROP_rngSeed);
+            try {
+                CounterRNG.setRunSeed((seed==null) ? CounterRNG.DEFAULT_SEED : Long.parseLong(seed.trim()));
+            } catch (NumberFormatException ex){
+                throw new IllegalArgumentException("Bad value for '"+Scenario.PROP_rngSeed+"': '"+seed+"'.");
+            }
+            setCullingPolicies();
+        } finally {
+            RunScope.exit();
+        }
+    }
+
+    /**
+     * Adds individuals to release at their start times.
+     *
+     * @param ics - attribute values (type name first) of each individual
+     */
+    public void addInitialConditions(List<String[]> ics){
+        int n = 0;
+        for (String[] strv: ics){
+            n++;
+            LifeStageAttributesInterface atts = LHS_Factory.createAttributes(strv);
+            if (atts==null)
+                throw new IllegalArgumentException("Unknown life stage type '"+strv[0]+"' in initial conditions line "+n+".");
+            pending.add(atts);
+        }
+        //latest start times last, so releases are taken from the end
+        Collections.sort(pending,new Comparator<LifeStageAttributesInterface>(){
+            @Override
+            public int compare(LifeStageAttributesInterface a, LifeStageAttributesInterface b){
+                return Double.compare(b.getValue(LifeStageAttributesInterface.PROP_startTime,0.0),
+                                      a.getValue(LifeStageAttributesInterface.PROP_startTime,0.0));
+            }
+        });
+    }
+
+    /**
+     * Registers the in-run outputs enabled by the run's properties (see
+     * Scenario) with OutputRegistry, in the run's RunScope. Call before the
+     * run starts; the outputs are closed by close().
+     *
+     * @param scenario - the scenario (to resolve input file names)
+     *
+     * @throws IOException if an output file can't be created or an input file read
+     * @throws IllegalArgumentException if an output property is not valid
+     */
+    public void openOutputs(Scenario scenario) throws IOException {
+        if (!outDir.isDirectory()&&!outDir.mkdirs()) throw new IOException("Can't create "+outDir);
+        RunScope.enter(name);
+        try {
+            RegionMap regions = null;
+            String fn = props.getProperty(Scenario.PROP_outRegions);
+            if (fn!=null) regions = RegionMap.read(scenario.getFile(fn).getPath());
+            fn = props.getProperty(Scenario.PROP_outCensus);
+            if (fn!=null) OutputRegistry.register(new PopulationCensus(getOutputFile(fn),regions));
+            fn = props.getProperty(Scenario.PROP_outConnectivity);
+            if (fn!=null) {
+                ConnectivityMatrix cm = new ConnectivityMatrix(getOutputFile(fn),regions,
+                                            props.getProperty(Scenario.PROP_outSettleType,"BenthicJuvenile").trim());
+                cm.setCheckpointInterval(Scenario.getDouble(props,Scenario.PROP_outCheckpoint,0.0));
+                OutputRegistry.register(cm);
+            }
+            fn = props.getProperty(Scenario.PROP_outSizeAtAge);
+            if (fn!=null) {
+                SizeAtAgeHistograms h = new SizeAtAgeHistograms(getOutputFile(fn));
+                for (int i=0;i<SizeAtAgeHistograms.NAMES.length;i++){
+                    String key = Scenario.PROP_outSizeAtAge+"."+SizeAtAgeHistograms.NAMES[i];
+                    String x = props.getProperty(key+".x");
+                    String y = props.getProperty(key+".y");
+                    if ((x!=null)||(y!=null)) {
+                        if ((x==null)||(y==null))
+                            throw new IllegalArgumentException("Both '"+key+".x' and '"+key+".y' are required.");
+                        h.setAxes(i,parseAxis(x,key+".x"),parseAxis(y,key+".y"));
+                    }
+                }
+                OutputRegistry.register(h);
+            }
+            fn = props.getProperty(Scenario.PROP_outDensity);
+            if (fn!=null) OutputRegistry.register(createDensityGrid(getOutputFile(fn)));
+            fn = props.getProperty(Scenario.PROP_outLineage);
+            if (fn!=null) {
+                lineage = new LineageIndexWriter(getOutputFile(fn));
+                OutputRegistry.register(lineage);
+                if (merger!=null) merger.setMergeListener(lineage);
+            }
+            fn = props.getProperty(Scenario.PROP_outTrajectories);
+            if (fn!=null) {
+                TrajectoryWriter tw = new TrajectoryWriter(getOutputFile(fn),
+                        props.getProperty(Scenario.PROP_outTimeUnits,"seconds since 1970-01-01 00:00:00").trim());
+                tw.setMaxBufferedObs((int) Scenario.getDouble(props,Scenario.PROP_outMaxBuffered,
+                                                              TrajectoryWriter.DEFAULT_MAX_BUFFERED_OBS));
+                OutputRegistry.register(tw);
+            }
+        } finally {
+            RunScope.exit();
+        }
+    }
+
+    /**
+     * Creates the merger with the tolerances and caps of the merge properties.
+     */
+    private SuperIndividualMerger createMerger(){
+        SuperIndividualMerger m = new SuperIndividualMerger();
+        m.setTolerances(Scenario.getDouble(props,Scenario.PROP_mergeAgeTol,1.0),
+                        Scenario.getDouble(props,Scenario.PROP_mergeSizeTol,0.05),
+                        Scenario.getDouble(props,Scenario.PROP_mergeDevTol,0.05));
+        for (String key: props.stringPropertyNames()){
+            if (key.startsWith(Scenario.PROP_mergeMaxIndivs))
+                m.setMaxIndividuals(key.substring(Scenario.PROP_mergeMaxIndivs.length()),
+                                    (int) Scenario.getDouble(props,key,0));
+        }
+        return m;
+    }
+
+    /**
+     * Sets the culling policies of the culling properties in the run's scope.
+     */
+    private void setCullingPolicies(){
+        Set<String> types = new HashSet<>();
+        for (String key: props.stringPropertyNames()){
+            if (!key.startsWith(Scenario.PROP_culling)) continue;
+            if (key.endsWith(Scenario.PROP_cullMinNumber))
+                types.add(key.substring(Scenario.PROP_culling.length(),
+                                        key.length()-Scenario.PROP_cullMinNumber.length()));
+            else if (key.endsWith(Scenario.PROP_cullMinFraction))
+                types.add(key.substring(Scenario.PROP_culling.length(),
+                                        key.length()-Scenario.PROP_cullMinFraction.length()));
+        }
+        for (String type: types){
+            String key = Scenario.PROP_culling+type;
+            CullingPolicy.setPolicy(type,Scenario.getDouble(props,key+Scenario.PROP_cullMinNumber,0.0),
+                                         Scenario.getDouble(props,key+Scenario.PROP_cullMinFraction,0.0));
+        }
+    }
+
+    /**
+     * Resolves an output file name against the run's output directory.
+     */
+    private String getOutputFile(String fn){
+        File f = new File(fn.trim());
+        return (f.isAbsolute() ? f : new File(outDir,fn.trim())).getPath();
+    }
+
+    /**
+     * Parses a histogram axis "min,width,n" or "min,width,n,log".
+     */
+    private static SizeAtAgeHistograms.Axis parseAxis(String v, String key){
+        String[] a = v.split(",");
+        try {
+            if ((a.length==3)||((a.length==4)&&a[3].trim().equals("log")))
+                return new SizeAtAgeHistograms.Axis(Double.parseDouble(a[0].trim()),Double.parseDouble(a[1].trim()),
+                                                    Integer.parseInt(a[2].trim()),a.length==4);
+        } catch (NumberFormatException ex){
+            //reported below
+        }
+        throw new IllegalArgumentException("Bad value for '"+key+"': '"+v+"' (expected min,width,n[,log]).");
+    }
+
+    /**
+     * Creates the density grid given by output.density.grid and output.density.vars.
+     */
+    private DensityGrid createDensityGrid(String fn) throws IOException {
+        int vars = 0;
+        String v = props.getProperty(Scenario.PROP_outDensityVars,"");
+        for (String var: v.split(",")){
+            var = var.trim();
+            if (var.isEmpty()) continue;
+            if (var.equals("temperature")) vars |= DensityGrid.VAR_TEMPERATURE; else
+            if (var.equals("SL")) vars |= DensityGrid.VAR_SL; else
+            if (var.equals("hsi")) vars |= DensityGrid.VAR_HSI; else
+            throw new IllegalArgumentException("Unknown variable '"+var+"' in '"+Scenario.PROP_outDensityVars+"'.");
+        }
+        String g = props.getProperty(Scenario.PROP_outDensityGrid);
+        if (g==null) throw new IllegalArgumentException("Scenario property '"+Scenario.PROP_outDensityGrid+"' is required.");
+        String[] a = g.split(",");
+        try {
+            if ((a.length==3)&&a[0].trim().equals("roms"))
+                return DensityGrid.forROMSGrid(fn,Integer.parseInt(a[1].trim()),Integer.parseInt(a[2].trim()),vars);
+            if ((a.length==7)&&a[0].trim().equals("lonlat"))
+                return DensityGrid.forLonLatGrid(fn,Double.parseDouble(a[1].trim()),Double.parseDouble(a[2].trim()),
+                                                 Double.parseDouble(a[3].trim()),Double.parseDouble(a[4].trim()),
+                                                 Integer.parseInt(a[5].trim()),Integer.parseInt(a[6].trim()),vars);
+        } catch (NumberFormatException ex){
+            //reported below
+        }
+        throw new IllegalArgumentException("Bad value for '"+Scenario.PROP_outDensityGrid+"': '"+g+"'.");
+    }
+
+    /**
+     * Gets the run's parameters for a life stage type, creating them from the
+     * type definition and the parameter properties on first use.
+     *
+     * @param typeName - the life stage type name
+     *
+     * @return - the parameters
+     *
+     * @throws IllegalArgumentException if a parameter property can't be applied
+     */
+    public LifeStageParametersInterface getParameters(String typeName){
+        LifeStageParametersInterface p = mapParams.get(typeName);
+        if (p==null){
+            p = copyParameters(typeName);
+            applyProperties(typeName,p);
+            mapParams.put(typeName,p);
+        }
+        return p;
+    }
+
+    /**
+     * Makes the run's copy of a type's parameters: a new instance of the
+     * parameters class with the values, function parameter values and
+     * function selections of the type definition's parameters.
+     */
+    private LifeStageParametersInterface copyParameters(String typeName){
+        LifeStageParametersInterface base = LHS_Factory.createParameters(typeName);
+        if (base==null) throw new IllegalArgumentException("Unknown life stage type '"+typeName+"'.");
+        LifeStageParametersInterface p;
+        try {
+            p = base.getClass().newInstance();
+        } catch (InstantiationException | IllegalAccessException ex){
+            throw new IllegalArgumentException("Can't create parameters for '"+typeName+"': "+ex);
+        }
+        p.setTypeName(typeName);
+        for (String key: base.getKeys()) p.setValue(key,base.getValue(key));
+        if ((base instanceof AbstractLHSParameters)&&(p instanceof AbstractLHSParameters)){
+            AbstractLHSParameters bp = (AbstractLHSParameters) base;
+            AbstractLHSParameters cp = (AbstractLHSParameters) p;
+            for (String cat: bp.getIBMFunctionCategories()){
+                IBMFunctionInterface sfi = bp.getSelectedIBMFunctionForCategory(cat);
+                for (String fKey: bp.getIBMFunctionKeysByCategory(cat)){
+                    IBMFunctionInterface tfi = bp.getIBMFunction(cat,fKey);
+                    IBMFunctionInterface cfi = cp.getIBMFunction(cat,fKey);
+                    for (String pKey: tfi.getParameterNames())
+                        cfi.setParameterValue(pKey,tfi.getParameter(pKey).getValue());
+                    if (sfi==tfi) cp.setSelectedIBMFunctionForCategory(cat,fKey);
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Applies the parameter properties for a type:
+     * &lt;type&gt;.param.&lt;key&gt;, &lt;type&gt;.function.&lt;category&gt; and
+     * &lt;type&gt;.function.&lt;category&gt;.&lt;parameter&gt;. Function parameters
+     * are set in the function's parameter order.
+     */
+    private void applyProperties(String typeName, LifeStageParametersInterface p){
+        Set<String> used = new HashSet<>();
+        String pfx = typeName+".param.";
+        for (String key: p.getKeys()){
+            String v = props.getProperty(pfx+key);
+            if (v==null) continue;
+            used.add(pfx+key);
+            p.setValue(key,convert(p.getValue(key),v,pfx+key));
+        }
+        String ffx = typeName+".function.";
+        if (p instanceof AbstractLHSParameters){
+            AbstractLHSParameters ap = (AbstractLHSParameters) p;
+            for (String cat: ap.getIBMFunctionCategories()){
+                String fName = props.getProperty(ffx+cat);
+                if (fName!=null){
+                    used.add(ffx+cat);
+                    fName = fName.trim();
+                    if (!ap.getIBMFunctionKeysByCategory(cat).contains(fName))
+                        throw new IllegalArgumentException("Unknown function '"+fName+"' for "+ffx+cat+".");
+                    ap.setSelectedIBMFunctionForCategory(cat,fName);
+                }
+                IBMFunctionInterface f = ap.getSelectedIBMFunctionForCategory(cat);
+                if (f==null) continue;
+                for (String pKey: f.getParameterNames()){
+                    String key = ffx+cat+"."+pKey;
+                    String v = props.getProperty(key);
+                    if (v==null) continue;
+                    used.add(key);
+                    f.setParameterValue(pKey,convert(f.getParameter(pKey).getValue(),v,key));
+                }
+            }
+        }
+        for (String key: props.stringPropertyNames()){
+            if ((key.startsWith(pfx)||key.startsWith(ffx))&&!used.contains(key))
+                throw new IllegalArgumentException("Unknown parameter or function property '"+key+"'.");
+        }
+    }
+
+    /**
+     * Converts a property value to the type of the current value.
+     */
+    static Object convert(Object current, String v, String key){
+        v = v.trim();
+        try {
+            if (current instanceof Double)  return Double.valueOf(v);
+            if (current instanceof Float)   return Float.valueOf(v);
+            if (current instanceof Integer) return Integer.valueOf(v);
+            if (current instanceof Long)    return Long.valueOf(v);
+            if (current instanceof Boolean) return Boolean.valueOf(v);
+        } catch (NumberFormatException ex){
+            throw new IllegalArgumentException("Bad value for '"+key+"': '"+v+"'.");
+        }
+        return v;
+    }
+
+    /**
+     * Advances the run by one model time step: release(t), stepIndividuals(t,dt),
+     * addNewIndividuals(dt) and report(t,dt).
+     *
+     * @param t  - model time (s) at the start of the step
+     * @param dt - time step (s)
+     *
+     * @throws IOException if the reports can't be written
+     */
+    public void step(double t, double dt) throws IOException {
+        release(t);
+        stepIndividuals(t,dt);
+        addNewIndividuals(dt);
+        report(t,dt);
+    }
+
+    /**
+     * Creates and initializes the individuals with start times at or before t.
+     * (First phase of a time step.)
+     *
+     * @param t - model time (s) at the start of the step
+     */
+    void release(double t){
+        if (Double.isNaN(nextOutputTime)) nextOutputTime = t;
+        if (Double.isNaN(nextMergeTime)) nextMergeTime = t+mergeInterval;
+        RunScope.enter(name);
+        try {
+            while (!pending.isEmpty()){
+                LifeStageAttributesInterface atts = pending.get(pending.size()-1);
+                if (atts.getValue(LifeStageAttributesInterface.PROP_startTime,0.0)>t) break;
+                pending.remove(pending.size()-1);
+                try {
+                    LifeStageInterface lhs = LHS_Factory.createLHS(atts.getTypeName()).createInstance(atts);
+                    lhs.setActive(lhs.isAlive());
+                    add(lhs,lhss);
+                } catch (InstantiationException | IllegalAccessException ex){
+                    throw new IllegalStateException("Can't create individual of type '"+atts.getTypeName()+"': "+ex);
+                }
+            }
+        } finally {
+            RunScope.exit();
+        }
+    }
+
+    /**
+     * Steps all live active individuals. (Second phase of a time step.) Only
+     * the run's own individuals are changed, so different runs may do this
+     * phase in parallel (EnsembleRunner).
+     *
+     * @param t  - model time (s) at the start of the step
+     * @param dt - time step (s)
+     */
+    void stepIndividuals(double t, double dt){
+        stepped.clear();
+        RunScope.enter(name);
+        try {
+            for (LifeStageInterface lhs: lhss){
+                if (lhs.isAlive()&&lhs.isActive()){
+                    try {
+                        lhs.step(dt);
+                    } catch (ArrayIndexOutOfBoundsException ex){
+                        //individual left the model grid
+                        logger.info("Individual "+lhs.getID()+" ("+lhs.getTypeName()+") left the model grid at "+t+".");
+                        lhs.setActive(false);
+                    }
+                    stepped.add(lhs);
+                }
+            }
+        } finally {
+            RunScope.exit();
+        }
+    }
+
+    /**
+     * Adds the next stage (metamorphosed) and spawned individuals of the
+     * stepped individuals to the run. (Third phase of a time step.) New
+     * individuals get their ids from the framework, so when runs share a
+     * process this phase (like release) is done for one run at a time, in a
+     * fixed order, to keep the ids in the reports reproducible. (The random
+     * draws are keyed on run-local ids, which don't depend on other runs.)
+     *
+     * @param dt - time step (s)
+     */
+    void addNewIndividuals(double dt){
+        RunScope.enter(name);
+        try {
+            for (LifeStageInterface lhs: stepped){
+                for (LifeStageInterface nlhs: lhs.getMetamorphosedIndividuals(dt)) add(nlhs,lhss);
+                List<LifeStageInterface> spawned = lhs.getSpawnedIndividuals();
+                if (spawned!=null) for (LifeStageInterface nlhs: spawned) add(nlhs,lhss);
+            }
+            stepped.clear();
+        } finally {
+            RunScope.exit();
+        }
+    }
+
+    /**
+     * Makes a merge pass if t+dt is a merge time, writes the reports if t+dt
+     * is an output time and drops individuals that died (or were merged).
+     * (Last phase of a time step; different runs may do it in parallel.)
+     *
+     * @param t  - model time (s) at the start of the step
+     * @param dt - time step (s)
+     *
+     * @throws IOException if the reports can't be written
+     */
+    void report(double t, double dt) throws IOException {
+        RunScope.enter(name);
+        try {
+            if ((merger!=null)&&(t+dt>=nextMergeTime)){
+                merger.merge(lhss);
+                while (nextMergeTime<=t+dt) nextMergeTime += mergeInterval;
+            }
+            if (t+dt>=nextOutputTime){
+                writeReports();
+                if (outputInterval>0) {
+                    while (nextOutputTime<=t+dt) nextOutputTime += outputInterval;
+                }
+            }
+            for (Iterator<LifeStageInterface> it=lhss.iterator();it.hasNext();){
+                LifeStageInterface lhs = it.next();
+                if (!lhs.isAlive()) {
+                    it.remove();
+                    CounterRNG.removeIndividual(lhs.getID());
+                }
+            }
+        } finally {
+            RunScope.exit();
+        }
+    }
+
+    /**
+     * Sets the run's parameters on a new individual, registers it for its
+     * run-local id (CounterRNG), sets the key for its random draws and adds
+     * it to a list.
+     */
+    private void add(LifeStageInterface lhs, List<LifeStageInterface> list){
+        lhs.setParameters(getParameters(lhs.getTypeName()));
+        long key = CounterRNG.addIndividual(lhs.getID());
+        if (lhs instanceof RandomKeyedLHS) ((RandomKeyedLHS) lhs).setRandomKey(key);
+        list.add(lhs);
+    }
+
+    /**
+     * Appends the report of each individual to the report file for its type.
+     *
+     * @throws IOException if a report can't be written
+     */
+    public void writeReports() throws IOException {
+        for (LifeStageInterface lhs: lhss){
+            BufferedWriter w = mapWriters.get(lhs.getTypeName());
+            if (w==null){
+                if (!outDir.isDirectory()&&!outDir.mkdirs()) throw new IOException("Can't create "+outDir);
+                File f = new File(outDir,prefix+lhs.getTypeName()+".csv");
+                if (lineage!=null) lineage.setOutputFile(lhs.getTypeName(),f.getPath());
+                w = new BufferedWriter(new FileWriter(f));
+                w.write(lhs.getReportHeader());
+                w.newLine();
+                mapWriters.put(lhs.getTypeName(),w);
+            }
+            w.write(lhs.getReport());
+            w.newLine();
+        }
+    }
+
+    /**
+     * @return - the name of the run
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * @return - the number of live individuals
+     */
+    public int getNumberAlive(){
+        return lhss.size();
+    }
+
+    /**
+     * @return - the number of individuals not yet released
+     */
+    public int getNumberPending(){
+        return pending.size();
+    }
+
+    /**
+     * Closes the report files and the run's in-run outputs (OutputRegistry),
+     * writes the culled abundance (if output.culling is set) and removes the
+     * run's culling policies and accounting, its random seed and its egg
+     * cohorts.
+     *
+     * @throws IOException if a file can't be closed
+     */
+    public void close() throws IOException {
+        IOException err = null;
+        RunScope.enter(name);
+        try {
+            OutputRegistry.close();
+            String fn = props.getProperty(Scenario.PROP_outCulling);
+            if (fn!=null) {
+                try (Writer w = new BufferedWriter(new FileWriter(getOutputFile(fn)))){
+                    CullingPolicy.writeCSV(w);
+                } catch (IOException ex){
+                    err = ex;
+                }
+            }
+            CullingPolicy.clear();
+            CounterRNG.clearRun();
+            EggCohortRegistry.clear();
+        } finally {
+            RunScope.exit();
+        }
+        for (BufferedWriter w: mapWriters.values()){
+            try {
+                w.close();
+            } catch (IOException ex){
+                err = ex;
+            }
+        }
+        mapWriters.clear();
+        if (err!=null) throw err;
+    }
+}
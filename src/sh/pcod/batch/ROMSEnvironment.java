@@ -0,0 +1,206 @@
+/*
+ * ROMSEnvironment.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod.batch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import org.openide.util.lookup.ServiceProvider;
+import ucar.ma2.Array;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import wts.models.DisMELS.framework.AbstractLHS;
+import wts.models.DisMELS.framework.GlobalInfo;
+import wts.models.DisMELS.framework.LHS_Types;
+import wts.models.utilities.CalendarIF;
+import wts.roms.model.Interpolator3D;
+import wts.roms.model.ModelGrid3D;
+import wts.roms.model.NetcdfReader;
+import wts.roms.model.PhysicalEnvironment;
+
+/**
+ * ModelEnvironment for ROMS model output, built on the framework classes
+ * the GUI's model controller uses: the ROMS grid (ModelGrid3D), the physical
+ * fields of one ROMS time record (PhysicalEnvironment) and the interpolator
+ * (Interpolator3D, set on AbstractLHS), the model calendar (GlobalInfo) and
+ * the life stage type definitions (LHS_Types, used by LHS_Factory).
+ *
+ * Scenario properties:
+ * <pre>
+ *   roms.grid           - ROMS grid file
+ *   roms.files          - ROMS output files, comma-separated, in time order
+ *   roms.timeVariable   - name of the time variable in the files (default "ocean_time")
+ *   lhs.types           - life stage type definitions (xml) file
+ *   calendar.timeOffset - offset (s) of model time for the calendar (default 0)
+ * </pre>
+ * Model time is the time of the ROMS files (s). At each time step, the
+ * fields are those of the last ROMS record at or before the start of the
+ * step (the first record before the first). The records of all files are
+ * indexed at initialization; the fields are read in advance only, when the
+ * record changes, so runs sharing the environment (EnsembleRunner) only read
+ * them between advance calls.
+ *
+ * The environment is registered as a ModelEnvironment service, so BatchRunner
+ * and EnsembleRunner use it if environment.class is not given.
+ *
+ * @author William Stockhausen
+ */
+@ServiceProvider(service=ModelEnvironment.class)
+public class ROMSEnvironment implements ModelEnvironment {
+
+    public static final String PROP_grid       = "roms.grid";
+    public static final String PROP_files      = "roms.files";
+    public static final String PROP_timeVar    = "roms.timeVariable";
+    public static final String PROP_lhsTypes   = "lhs.types";
+    public static final String PROP_timeOffset = "calendar.timeOffset";
+
+    private static final Logger logger = Logger.getLogger(ROMSEnvironment.class.getName());
+
+    /** the ROMS output files */
+    private final List<String> files = new ArrayList<>();
+    /** file index of each ROMS record */
+    private int[] recFile;
+    /** index of each ROMS record in its file */
+    private int[] recIndex;
+    /** time (s) of each ROMS record */
+    private double[] recTime;
+
+    /** the ROMS grid */
+    private ModelGrid3D grid;
+    /** the interpolator */
+    private Interpolator3D i3d;
+    /** the model calendar */
+    private CalendarIF cal;
+    /** reader for the current file (null if none open) */
+    private NetcdfReader reader = null;
+    /** index of the file open in reader */
+    private int currFile = -1;
+    /** index of the current record (-1 before the first advance) */
+    private int currRec = -1;
+
+    /**
+     * Reads the grid and the life stage types, indexes the ROMS records and
+     * sets up the calendar.
+     *
+     * @param scenario - the scenario
+     *
+     * @throws IOException if a model file can't be read
+     */
+    @Override
+    public void initialize(Scenario scenario) throws IOException {
+        String fn = getRequired(scenario,PROP_lhsTypes);
+        LHS_Types.getInstance().readXMLFile(scenario.getFile(fn).getPath());
+        grid = new ModelGrid3D(scenario.getFile(getRequired(scenario,PROP_grid)).getPath());
+
+        for (String f: getRequired(scenario,PROP_files).split(",")){
+            if (!f.trim().isEmpty()) files.add(scenario.getFile(f).getPath());
+        }
+        String timeVar = scenario.getProperties().getProperty(PROP_timeVar,"ocean_time").trim();
+        List<double[]> recs = new ArrayList<>();
+        for (int f=0;f<files.size();f++){
+            NetcdfFile nc = NetcdfFile.open(files.get(f));
+            try {
+                Variable v = nc.findVariable(timeVar);
+                if (v==null) throw new IOException("No variable '"+timeVar+"' in "+files.get(f)+".");
+                Array a = v.read();
+                for (int r=0;r<a.getSize();r++) recs.add(new double[]{f,r,a.getDouble(r)});
+            } finally {
+                nc.close();
+            }
+        }
+        if (recs.isEmpty()) throw new IOException("No ROMS records in "+PROP_files+".");
+        recFile  = new int[recs.size()];
+        recIndex = new int[recs.size()];
+        recTime  = new double[recs.size()];
+        for (int r=0;r<recs.size();r++){
+            recFile[r]  = (int) recs.get(r)[0];
+            recIndex[r] = (int) recs.get(r)[1];
+            recTime[r]  = recs.get(r)[2];
+            if ((r>0)&&!(recTime[r]>recTime[r-1]))
+                throw new IOException("ROMS records are not in time order at "+files.get(recFile[r])+
+                                      ", record "+recIndex[r]+".");
+        }
+
+        cal = GlobalInfo.getInstance().getCalendar();
+        cal.setTimeOffset((long) Scenario.getDouble(scenario.getProperties(),PROP_timeOffset,0.0));
+        logger.info("ROMS environment: "+recTime.length+" records in "+files.size()+" files, times "+
+                    recTime[0]+" to "+recTime[recTime.length-1]+" s.");
+    }
+
+    /**
+     * Loads the fields of the last record at or before time (if they are
+     * not already loaded) and sets the calendar to time.
+     *
+     * @param time - the model time at the start of the step (s)
+     * @param dt   - the time step (s)
+     *
+     * @throws IOException if the fields can't be read
+     */
+    @Override
+    public void advance(double time, double dt) throws IOException {
+        int r = 0;
+        while ((r+1<recTime.length)&&(recTime[r+1]<=time)) r++;
+        if (r!=currRec) {
+            if (recFile[r]!=currFile){
+                if (reader!=null) reader.close();
+                reader   = new NetcdfReader(files.get(recFile[r]));
+                currFile = recFile[r];
+            }
+            PhysicalEnvironment pe = new PhysicalEnvironment(recIndex[r],reader,grid);
+            if (i3d==null) {
+                i3d = new Interpolator3D(pe);
+                AbstractLHS.setInterpolator(i3d);
+            } else {
+                i3d.setPhysicalEnvironment(pe);
+            }
+            currRec = r;
+            logger.fine("ROMS record "+recIndex[r]+" of "+files.get(currFile)+" (time "+recTime[r]+" s).");
+        }
+        cal.setTime((long) time);
+    }
+
+    /**
+     * Gets the number of ROMS records.
+     *
+     * @return - the number of records
+     */
+    public int getNumberOfRecords(){
+        return (recTime==null) ? 0 : recTime.length;
+    }
+
+    /**
+     * Gets the index of the current ROMS record (over all files).
+     *
+     * @return - the index (-1 before the first advance)
+     */
+    public int getCurrentRecord(){
+        return currRec;
+    }
+
+    /**
+     * Closes the open ROMS file.
+     */
+    @Override
+    public void close(){
+        if (reader!=null) {
+            try {
+                reader.close();
+            } catch (IOException ex){
+                logger.warning("Can't close "+files.get(currFile)+": "+ex);
+            }
+        }
+        reader   = null;
+        currFile = -1;
+        currRec  = -1;
+    }
+
+    private static String getRequired(Scenario scenario, String key){
+        String v = scenario.getProperties().getProperty(key);
+        if (v==null) throw new IllegalArgumentException("Scenario property '"+key+"' is required.");
+        return v.trim();
+    }
+}
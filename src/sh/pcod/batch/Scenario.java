@@ -0,0 +1,312 @@
+/*
+ * Scenario.java
+ *
+ * 20261019: created class.
+ *           2. Added fromArgs (shared by BatchRunner and EnsembleRunner).
+ *           3. Added rng.seed.
+ *           4. Added the in-run output properties (output.census etc.).
+ *           5. Added the merge properties (merge.interval etc.).
+ *           6. Added the culling properties (culling.<type>.minNumber etc., output.culling).
+ *           7. The environment (e.g., ROMSEnvironment) defines its own properties.
+ */
+package sh.pcod.batch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.openide.util.Lookup;
+
+/**
+ * Batch run scenario, read from a properties file:
+ * <pre>
+ *   environment.class        - ModelEnvironment implementation (optional, see ModelEnvironment)
+ *   start.time               - model time at the start of the run (s)
+ *   end.time                 - model time at the end of the run (s)
+ *   time.step                - model time step (s)
+ *   output.interval          - interval between reports (s; default 86400)
+ *   output.dir               - directory for the output files (default ".")
+ *   output.prefix            - prefix for the report file names (default "Results.")
+ *   initial.conditions       - csv file of initial attributes (one individual per line, type name first)
+ *   initial.conditions.header - true if the first line of the file is a header (default true)
+ *   rng.seed                 - seed for the counter-based random draws (CounterRNG; default
+ *                              CounterRNG.DEFAULT_SEED); runs with the same seed get the same draws
+ *
+ *   output.regions           - csv file of regions (RegionMap) for the census and connectivity
+ *                              outputs (optional; default: all positions in one region)
+ *   output.census            - csv file for the population census (PopulationCensus; optional)
+ *   output.connectivity      - csv file for the connectivity matrix (ConnectivityMatrix; optional;
+ *                              by region if output.regions is given, otherwise by grid cell)
+ *   output.connectivity.settleType - settlement stage type name (default "BenthicJuvenile")
+ *   output.connectivity.checkpoint - checkpoint interval (s; default 0 for none)
+ *   output.sizeAtAge         - csv file for the size-at-age histograms (SizeAtAgeHistograms; optional)
+ *   output.sizeAtAge.&lt;histogram&gt;.x, .y - axis of a histogram (age_SL, age_DW, T_grSL or T_grDW)
+ *                              as "min,width,n" or "min,width,n,log" (optional)
+ *   output.density           - binary file for the density grids (DensityGrid; optional)
+ *   output.density.grid      - "roms,nX,nY" or "lonlat,lonMin,latMin,dLon,dLat,nX,nY"
+ *                              (required with output.density)
+ *   output.density.vars      - optional variables: comma-separated temperature, SL, hsi
+ *   output.lineage           - lineage index file for the report files (LineageIndexWriter; optional)
+ *   output.trajectories      - NetCDF file for the trajectories (TrajectoryWriter; optional)
+ *   output.trajectories.timeUnits - CF units of model time
+ *                              (default "seconds since 1970-01-01 00:00:00")
+ *   output.trajectories.maxBufferedObs - observations buffered when writing the file
+ *
+ *   merge.interval           - model time (s) between merge passes over the super-individuals
+ *                              (SuperIndividualMerger; default 0 for none); merges are recorded
+ *                              in the lineage index, if enabled
+ *   merge.ageTol, merge.sizeTol, merge.devTol - similarity tolerances (default 1 d, 0.05, 0.05)
+ *   merge.maxIndividuals.&lt;type&gt; - cap on the number of live individuals of a type (optional)
+ *
+ *   culling.&lt;type&gt;.minNumber   - cull super-individuals of a type whose number falls below this
+ *                              (CullingPolicy; default 0 for none)
+ *   culling.&lt;type&gt;.minFraction - cull super-individuals of a type whose number falls below this
+ *                              fraction of their number at stage entry (default 0 for none)
+ *   output.culling           - csv file for the culled abundance by type and grid cell, written
+ *                              at the end of the run (optional)
+ *
+ *   &lt;type&gt;.param.&lt;key&gt;                     - value of a life stage parameter
+ *   &lt;type&gt;.function.&lt;category&gt;              - name of the function selected for a category
+ *   &lt;type&gt;.function.&lt;category&gt;.&lt;parameter&gt;  - value of a parameter of the selected function
+ * </pre>
+ * where &lt;type&gt; is a life stage type name (as in the initial conditions
+ * and the life stage type definitions). Parameters not given keep the values
+ * from the type definitions. Relative file names are resolved against the
+ * directory of the scenario file; the output file names of the in-run
+ * outputs are relative to the output directory (of each ensemble member).
+ *
+ * The scenario is also passed to the ModelEnvironment, which may define
+ * its own properties (e.g., roms.grid and roms.files for the model files of
+ * ROMSEnvironment, the registered environment).
+ *
+ * @author William Stockhausen
+ */
+public class Scenario {
+
+    public static final String PROP_environment = "environment.class";
+    public static final String PROP_startTime   = "start.time";
+    public static final String PROP_endTime     = "end.time";
+    public static final String PROP_timeStep    = "time.step";
+    public static final String PROP_outInterval = "output.interval";
+    public static final String PROP_outDir      = "output.dir";
+    public static final String PROP_outPrefix   = "output.prefix";
+    public static final String PROP_initConds   = "initial.conditions";
+    public static final String PROP_initHeader  = "initial.conditions.header";
+    public static final String PROP_rngSeed     = "rng.seed";
+
+    public static final String PROP_outRegions       = "output.regions";
+    public static final String PROP_outCensus        = "output.census";
+    public static final String PROP_outConnectivity  = "output.connectivity";
+    public static final String PROP_outSettleType    = "output.connectivity.settleType";
+    public static final String PROP_outCheckpoint    = "output.connectivity.checkpoint";
+    public static final String PROP_outSizeAtAge     = "output.sizeAtAge";
+    public static final String PROP_outDensity       = "output.density";
+    public static final String PROP_outDensityGrid   = "output.density.grid";
+    public static final String PROP_outDensityVars   = "output.density.vars";
+    public static final String PROP_outLineage       = "output.lineage";
+    public static final String PROP_outTrajectories  = "output.trajectories";
+    public static final String PROP_outTimeUnits     = "output.trajectories.timeUnits";
+    public static final String PROP_outMaxBuffered   = "output.trajectories.maxBufferedObs";
+
+    public static final String PROP_mergeInterval    = "merge.interval";
+    public static final String PROP_mergeAgeTol      = "merge.ageTol";
+    public static final String PROP_mergeSizeTol     = "merge.sizeTol";
+    public static final String PROP_mergeDevTol      = "merge.devTol";
+    public static final String PROP_mergeMaxIndivs   = "merge.maxIndividuals.";
+
+    public static final String PROP_culling          = "culling.";
+    public static final String PROP_cullMinNumber    = ".minNumber";
+    public static final String PROP_cullMinFraction  = ".minFraction";
+    public static final String PROP_outCulling       = "output.culling";
+
+    /** the scenario properties */
+    private final Properties props;
+    /** directory for relative file names */
+    private final File baseDir;
+
+    /**
+     * Creates a scenario from properties.
+     *
+     * @param props   - the properties
+     * @param baseDir - directory for relative file names (null for the working directory)
+     */
+    public Scenario(Properties props, File baseDir){
+        this.props   = props;
+        this.baseDir = baseDir;
+    }
+
+    /**
+     * Reads a scenario from a properties file.
+     *
+     * @param file - the file
+     *
+     * @return - the scenario
+     *
+     * @throws IOException if the file can't be read
+     */
+    public static Scenario load(File file) throws IOException {
+        Properties p = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            p.load(in);
+        }
+        return new Scenario(p,file.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Reads a scenario from command-line arguments: the properties file,
+     * followed by name=value arguments that override its properties.
+     *
+     * @param args - the arguments
+     *
+     * @return - the scenario
+     *
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if an argument is not of the form name=value
+     */
+    public static Scenario fromArgs(String[] args) throws IOException {
+        Scenario scenario = load(new File(args[0]));
+        for (int i=1;i<args.length;i++){
+            int k = args[i].indexOf('=');
+            if (k<=0) throw new IllegalArgumentException("Bad argument '"+args[i]+"' (expected name=value).");
+            scenario.props.setProperty(args[i].substring(0,k).trim(),args[i].substring(k+1));
+        }
+        return scenario;
+    }
+
+    /**
+     * @return - the scenario properties
+     */
+    public Properties getProperties(){
+        return props;
+    }
+
+    public double getStartTime(){
+        return getDouble(PROP_startTime,Double.NaN);
+    }
+
+    public double getEndTime(){
+        return getDouble(PROP_endTime,Double.NaN);
+    }
+
+    public double getTimeStep(){
+        return getDouble(PROP_timeStep,Double.NaN);
+    }
+
+    public double getOutputInterval(){
+        return getDouble(PROP_outInterval,86400.0);
+    }
+
+    public File getOutputDir(){
+        return getFile(props.getProperty(PROP_outDir,"."));
+    }
+
+    public String getOutputPrefix(){
+        return props.getProperty(PROP_outPrefix,"Results.");
+    }
+
+    /**
+     * Gets a numeric property.
+     *
+     * @param key - the property name
+     * @param def - the value if the property is not given (NaN if required)
+     *
+     * @return - the value
+     *
+     * @throws IllegalArgumentException if the property is required but not given, or not a number
+     */
+    public double getDouble(String key, double def){
+        return getDouble(props,key,def);
+    }
+
+    /**
+     * Gets a numeric property from a set of properties (e.g., those of an
+     * ensemble member).
+     *
+     * @param props - the properties
+     * @param key   - the property name
+     * @param def   - the value if the property is not given (NaN if required)
+     *
+     * @return - the value
+     *
+     * @throws IllegalArgumentException if the property is required but not given, or not a number
+     */
+    public static double getDouble(Properties props, String key, double def){
+        String s = props.getProperty(key);
+        if (s==null) {
+            if (Double.isNaN(def)) throw new IllegalArgumentException("Scenario property '"+key+"' is required.");
+            return def;
+        }
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException ex){
+            throw new IllegalArgumentException("Scenario property '"+key+"' is not a number: '"+s+"'.");
+        }
+    }
+
+    /**
+     * Resolves a file name against the directory of the scenario file.
+     *
+     * @param name - the file name
+     *
+     * @return - the file
+     */
+    public File getFile(String name){
+        File f = new File(name.trim());
+        if (f.isAbsolute()||(baseDir==null)) return f;
+        return new File(baseDir,name.trim());
+    }
+
+    /**
+     * Creates the model environment given by the environment.class property
+     * or, if not given, found by the default lookup.
+     *
+     * @return - the (uninitialized) environment
+     *
+     * @throws IllegalArgumentException if no environment is available
+     */
+    public ModelEnvironment createEnvironment(){
+        String cls = props.getProperty(PROP_environment);
+        if (cls!=null){
+            try {
+                return (ModelEnvironment) Class.forName(cls.trim()).newInstance();
+            } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | ClassCastException ex){
+                throw new IllegalArgumentException("Can't create model environment '"+cls+"': "+ex);
+            }
+        }
+        ModelEnvironment env = Lookup.getDefault().lookup(ModelEnvironment.class);
+        if (env==null)
+            throw new IllegalArgumentException("No model environment: set '"+PROP_environment+
+                                               "' or register a ModelEnvironment service.");
+        return env;
+    }
+
+    /**
+     * Reads the initial conditions file.
+     *
+     * @return - the attribute values (type name first) of each individual
+     *
+     * @throws IOException if the file can't be read
+     */
+    public List<String[]> readInitialConditions() throws IOException {
+        String name = props.getProperty(PROP_initConds);
+        if (name==null) throw new IllegalArgumentException("Scenario property '"+PROP_initConds+"' is required.");
+        boolean header = Boolean.parseBoolean(props.getProperty(PROP_initHeader,"true").trim());
+        List<String[]> ics = new ArrayList<>();
+        try (BufferedReader rdr = new BufferedReader(new FileReader(getFile(name)))) {
+            String line;
+            if (header) rdr.readLine();
+            while ((line=rdr.readLine())!=null){
+                if (line.trim().isEmpty()) continue;
+                String[] strv = line.split(",",-1);
+                for (int i=0;i<strv.length;i++) strv[i] = strv[i].trim();
+                ics.add(strv);
+            }
+        }
+        return ics;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * CompiledExpression.java
+ *
+ * 20261019: created class.
+ *           2. Removed the array calculate (see RateStrategies.calculate).
+ */
+package sh.pcod.expr;
+
+import sh.pcod.IBMKernelFunction;
+
+/**
+ * Base class for the classes generated by ExpressionCompiler. Subclasses
+ * implement calculate(x,y) with the compiled expression.
+ *
+ * @author William Stockhausen
+ */
+public abstract class CompiledExpression implements IBMKernelFunction {
+
+    /** the expression text (as given to the compiler) */
+    private String text;
+
+    /** for the generated subclasses */
+    public CompiledExpression(){}
+
+    void setText(String text){
+        this.text = text;
+    }
+
+    @Override
+    public abstract double calculate(double x, double y);
+
+    @Override
+    public String toString(){
+        return text;
+    }
+}
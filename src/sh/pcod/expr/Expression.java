@@ -0,0 +1,345 @@
+/*
+ * Expression.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod.expr;
+
+import java.util.Map;
+
+/**
+ * Arithmetic expression of (up to) two inputs, parsed into a tree that can be
+ * evaluated directly (eval) or compiled to bytecode (ExpressionCompiler).
+ *
+ * Syntax:
+ * <pre>
+ *   numbers       1, 0.5, 1.5e-3
+ *   inputs        the names given to parse() for the first and second inputs
+ *   constants     names in the constants map given to parse()
+ *   operators     + - * / ^ (power, right-associative), unary -
+ *   functions     exp, log, log10, sqrt, abs, floor, ceil, sin, cos, tan, tanh,
+ *                 pow(a,b), min(a,b), max(a,b)
+ *   conditional   a op b ? c : d   (op is one of &lt; &lt;= &gt; &gt;= == !=)
+ * </pre>
+ * For example, the Laurel et al. (2008) YSL time to PNR is "34.67*exp(-0.126*T)"
+ * and the Egg stage hatch success is "T&gt;11 ? 0 : 0.453/(1+((T-4.192)/2.125)^2)".
+ *
+ * @author William Stockhausen
+ */
+public class Expression {
+
+    /* node types */
+    static final int CONST = 0;
+    static final int INPUT = 1;
+    static final int NEG   = 2;
+    static final int ADD   = 3;
+    static final int SUB   = 4;
+    static final int MUL   = 5;
+    static final int DIV   = 6;
+    static final int POW   = 7;
+    static final int CALL1 = 8;
+    static final int CALL2 = 9;
+    static final int COND  = 10;
+
+    /* comparison operators for COND nodes */
+    static final int LT = 0;
+    static final int LE = 1;
+    static final int GT = 2;
+    static final int GE = 3;
+    static final int EQ = 4;
+    static final int NE = 5;
+    private static final String[] OPS = new String[]{"<","<=",">",">=","==","!="};
+
+    /** names of the supported functions of one argument (java.lang.Math methods) */
+    static final String[] FUNCS1 = new String[]{"exp","log","log10","sqrt","abs","floor","ceil","sin","cos","tan","tanh"};
+    /** names of the supported functions of two arguments (java.lang.Math methods) */
+    static final String[] FUNCS2 = new String[]{"pow","min","max"};
+
+    final int type;
+    /** value (CONST), input index (INPUT), function index (CALL1, CALL2) or comparison (COND) */
+    final double value;
+    final int index;
+    /** operands (children) */
+    final Expression a, b, c, d;
+
+    private Expression(int type, double value, int index, Expression a, Expression b, Expression c, Expression d){
+        this.type  = type;
+        this.value = value;
+        this.index = index;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+    }
+
+    /**
+     * Parses an expression.
+     *
+     * @param text      - the expression
+     * @param inputs    - the names of the first and second inputs (the second may be null)
+     * @param constants - values of named constants (may be null)
+     *
+     * @return - the parsed expression
+     *
+     * @throws IllegalArgumentException if the expression can't be parsed
+     */
+    public static Expression parse(String text, String[] inputs, Map<String,Double> constants){
+        Parser p = new Parser(text,inputs,constants);
+        Expression e = p.cond();
+        p.skip();
+        if (p.pos<text.length()) throw p.error("unexpected '"+text.charAt(p.pos)+"'");
+        return e;
+    }
+
+    /**
+     * Evaluates the expression (the interpreted version of the compiled
+     * expression).
+     *
+     * @param x - the first input
+     * @param y - the second input
+     *
+     * @return - the value
+     */
+    public double eval(double x, double y){
+        switch (type){
+            case CONST: return value;
+            case INPUT: return (index==0) ? x : y;
+            case NEG:   return -a.eval(x,y);
+            case ADD:   return a.eval(x,y)+b.eval(x,y);
+            case SUB:   return a.eval(x,y)-b.eval(x,y);
+            case MUL:   return a.eval(x,y)*b.eval(x,y);
+            case DIV:   return a.eval(x,y)/b.eval(x,y);
+            case POW:   return Math.pow(a.eval(x,y),b.eval(x,y));
+            case CALL1: return call1(index,a.eval(x,y));
+            case CALL2: return call2(index,a.eval(x,y),b.eval(x,y));
+            case COND:  return compare(index,a.eval(x,y),b.eval(x,y)) ? c.eval(x,y) : d.eval(x,y);
+        }
+        throw new IllegalStateException("unknown node type "+type);
+    }
+
+    /**
+     * Returns true if the expression uses the given input.
+     *
+     * @param i - the input index (0 or 1)
+     *
+     * @return - true if the input is used
+     */
+    public boolean usesInput(int i){
+        if ((type==INPUT)&&(index==i)) return true;
+        return ((a!=null)&&a.usesInput(i))||((b!=null)&&b.usesInput(i))||
+               ((c!=null)&&c.usesInput(i))||((d!=null)&&d.usesInput(i));
+    }
+
+    @Override
+    public String toString(){
+        switch (type){
+            case CONST: return Double.toString(value);
+            case INPUT: return (index==0) ? "x" : "y";
+            case NEG:   return "(-"+a+")";
+            case ADD:   return "("+a+"+"+b+")";
+            case SUB:   return "("+a+"-"+b+")";
+            case MUL:   return "("+a+"*"+b+")";
+            case DIV:   return "("+a+"/"+b+")";
+            case POW:   return "("+a+"^"+b+")";
+            case CALL1: return FUNCS1[index]+"("+a+")";
+            case CALL2: return FUNCS2[index]+"("+a+","+b+")";
+            case COND:  return "("+a+OPS[index]+b+"?"+c+":"+d+")";
+        }
+        return "?";
+    }
+
+    private static double call1(int f, double v){
+        switch (f){
+            case 0:  return Math.exp(v);
+            case 1:  return Math.log(v);
+            case 2:  return Math.log10(v);
+            case 3:  return Math.sqrt(v);
+            case 4:  return Math.abs(v);
+            case 5:  return Math.floor(v);
+            case 6:  return Math.ceil(v);
+            case 7:  return Math.sin(v);
+            case 8:  return Math.cos(v);
+            case 9:  return Math.tan(v);
+            default: return Math.tanh(v);
+        }
+    }
+
+    private static double call2(int f, double u, double v){
+        switch (f){
+            case 0:  return Math.pow(u,v);
+            case 1:  return Math.min(u,v);
+            default: return Math.max(u,v);
+        }
+    }
+
+    private static boolean compare(int op, double u, double v){
+        switch (op){
+            case LT: return u<v;
+            case LE: return u<=v;
+            case GT: return u>v;
+            case GE: return u>=v;
+            case EQ: return u==v;
+            default: return u!=v;
+        }
+    }
+
+    /**
+     * Recursive-descent parser.
+     */
+    private static class Parser {
+        final String s;
+        final String[] inputs;
+        final Map<String,Double> constants;
+        int pos = 0;
+
+        Parser(String s, String[] inputs, Map<String,Double> constants){
+            this.s = s;
+            this.inputs = inputs;
+            this.constants = constants;
+        }
+
+        IllegalArgumentException error(String msg){
+            return new IllegalArgumentException("Error in expression \""+s+"\" at position "+(pos+1)+": "+msg);
+        }
+
+        void skip(){
+            while ((pos<s.length())&&Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        boolean eat(String tok){
+            skip();
+            if (s.startsWith(tok,pos)) {
+                pos += tok.length();
+                return true;
+            }
+            return false;
+        }
+
+        void expect(String tok){
+            if (!eat(tok)) throw error("expected '"+tok+"'");
+        }
+
+        /** cond := sum [op sum '?' cond ':' cond] */
+        Expression cond(){
+            Expression l = sum();
+            int op = -1;
+            for (int k=OPS.length-1;k>=0;k--){//two-character operators first
+                if ((OPS[k].length()==2)&&eat(OPS[k])) {op = k; break;}
+            }
+            if (op<0){
+                for (int k=0;k<OPS.length;k++){
+                    if ((OPS[k].length()==1)&&eat(OPS[k])) {op = k; break;}
+                }
+            }
+            if (op<0) return l;
+            Expression r = sum();
+            expect("?");
+            Expression t = cond();
+            expect(":");
+            Expression f = cond();
+            return new Expression(COND,0,op,l,r,t,f);
+        }
+
+        /** sum := product (('+'|'-') product)* */
+        Expression sum(){
+            Expression e = product();
+            while (true){
+                if (eat("+")) e = new Expression(ADD,0,0,e,product(),null,null); else
+                if (eat("-")) e = new Expression(SUB,0,0,e,product(),null,null); else
+                return e;
+            }
+        }
+
+        /** product := unary (('*'|'/') unary)* */
+        Expression product(){
+            Expression e = unary();
+            while (true){
+                if (eat("*")) e = new Expression(MUL,0,0,e,unary(),null,null); else
+                if (eat("/")) e = new Expression(DIV,0,0,e,unary(),null,null); else
+                return e;
+            }
+        }
+
+        /** unary := '-' unary | '+' unary | power */
+        Expression unary(){
+            if (eat("-")) return new Expression(NEG,0,0,unary(),null,null,null);
+            if (eat("+")) return unary();
+            return power();
+        }
+
+        /** power := primary ['^' unary] */
+        Expression power(){
+            Expression e = primary();
+            if (eat("^")) return new Expression(POW,0,0,e,unary(),null,null);
+            return e;
+        }
+
+        /** primary := number | name | name '(' args ')' | '(' cond ')' */
+        Expression primary(){
+            skip();
+            if (pos>=s.length()) throw error("unexpected end of expression");
+            char ch = s.charAt(pos);
+            if (eat("(")){
+                Expression e = cond();
+                expect(")");
+                return e;
+            }
+            if (Character.isDigit(ch)||(ch=='.')) return number();
+            if (Character.isLetter(ch)||(ch=='_')){
+                int p0 = pos;
+                while ((pos<s.length())&&(Character.isLetterOrDigit(s.charAt(pos))||(s.charAt(pos)=='_'))) pos++;
+                String name = s.substring(p0,pos);
+                if (eat("(")) return call(name,p0);
+                for (int i=0;i<inputs.length;i++){
+                    if (name.equals(inputs[i])) return new Expression(INPUT,0,i,null,null,null,null);
+                }
+                if ((constants!=null)&&constants.containsKey(name))
+                    return new Expression(CONST,constants.get(name),0,null,null,null,null);
+                pos = p0;
+                throw error("unknown name '"+name+"'");
+            }
+            throw error("unexpected '"+ch+"'");
+        }
+
+        Expression call(String name, int p0){
+            for (int f=0;f<FUNCS1.length;f++){
+                if (FUNCS1[f].equals(name)){
+                    Expression e = cond();
+                    expect(")");
+                    return new Expression(CALL1,0,f,e,null,null,null);
+                }
+            }
+            for (int f=0;f<FUNCS2.length;f++){
+                if (FUNCS2[f].equals(name)){
+                    Expression e1 = cond();
+                    expect(",");
+                    Expression e2 = cond();
+                    expect(")");
+                    return new Expression(CALL2,0,f,e1,e2,null,null);
+                }
+            }
+            pos = p0;
+            throw error("unknown function '"+name+"'");
+        }
+
+        Expression number(){
+            int p0 = pos;
+            while ((pos<s.length())&&(Character.isDigit(s.charAt(pos))||(s.charAt(pos)=='.'))) pos++;
+            if ((pos<s.length())&&((s.charAt(pos)=='e')||(s.charAt(pos)=='E'))){
+                int p1 = pos++;
+                if ((pos<s.length())&&((s.charAt(pos)=='+')||(s.charAt(pos)=='-'))) pos++;
+                if ((pos>=s.length())||!Character.isDigit(s.charAt(pos))) {
+                    pos = p1;//not an exponent
+                } else {
+                    while ((pos<s.length())&&Character.isDigit(s.charAt(pos))) pos++;
+                }
+            }
+            try {
+                return new Expression(CONST,Double.parseDouble(s.substring(p0,pos)),0,null,null,null,null);
+            } catch (NumberFormatException ex){
+                pos = p0;
+                throw error("bad number");
+            }
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * ExpressionCompiler.java
+ *
+ * 20261019: created class.
+ *           2. The cache is bounded (least recently used, MAX_CACHED) and filled under a lock, so an
+ *                expression is compiled once.
+ */
+package sh.pcod.expr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Compiles an Expression to a class (a subclass of CompiledExpression) whose
+ * calculate(x,y) method evaluates the expression directly in bytecode, so the
+ * JIT compiles it like a hand-written IBM function: no tree walking, boxing or
+ * array allocation.
+ *
+ * Each class is defined in its own class loader, so it can be unloaded when no
+ * longer used. Compiled instances are stateless and are shared between callers
+ * compiling the same expression (with the same inputs and constants) through a
+ * cache of the most recently used MAX_CACHED expressions; an expression dropped
+ * from the cache is unloaded once no function uses it. If a class can't be
+ * defined (e.g., under a security manager), the interpreted expression is
+ * returned instead.
+ *
+ * @author William Stockhausen
+ */
+public class ExpressionCompiler {
+
+    /* opcodes */
+    private static final int ALOAD_0       = 0x2a;
+    private static final int DCONST_0      = 0x0e;
+    private static final int DCONST_1      = 0x0f;
+    private static final int LDC2_W        = 0x14;
+    private static final int DLOAD_1       = 0x27;
+    private static final int DLOAD_3       = 0x29;
+    private static final int DADD          = 0x63;
+    private static final int DSUB          = 0x67;
+    private static final int DMUL          = 0x6b;
+    private static final int DDIV          = 0x6f;
+    private static final int DNEG          = 0x77;
+    private static final int DCMPL         = 0x97;
+    private static final int DCMPG         = 0x98;
+    private static final int IFEQ          = 0x99;
+    private static final int IFNE          = 0x9a;
+    private static final int IFLT          = 0x9b;
+    private static final int IFGE          = 0x9c;
+    private static final int IFGT          = 0x9d;
+    private static final int IFLE          = 0x9e;
+    private static final int GOTO          = 0xa7;
+    private static final int DRETURN       = 0xaf;
+    private static final int RETURN        = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC  = 0xb8;
+
+    /** base class of the generated classes (internal name) */
+    private static final String BASE = CompiledExpression.class.getName().replace('.','/');
+    /** package of the generated classes */
+    private static final String PKG  = CompiledExpression.class.getPackage().getName();
+
+    private static final Logger logger = Logger.getLogger(ExpressionCompiler.class.getName());
+
+    /** maximum number of compiled expressions kept in the cache */
+    public static final int MAX_CACHED = 256;
+
+    /** compiled expressions, by expression text, input names and constants (least recently used first) */
+    private static final Map<String,CompiledExpression> cache = new LinkedHashMap<String,CompiledExpression>(16,0.75f,true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,CompiledExpression> eldest){
+            return size()>MAX_CACHED;
+        }
+    };
+    /** counter for class names */
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Parses and compiles an expression.
+     *
+     * @param text      - the expression
+     * @param inputs    - the names of the first and second inputs
+     * @param constants - values of named constants (may be null)
+     *
+     * @return - the compiled expression
+     *
+     * @throws IllegalArgumentException if the expression can't be parsed
+     */
+    public static CompiledExpression compile(String text, String[] inputs, Map<String,Double> constants){
+        String key = text+"|"+java.util.Arrays.toString(inputs)+"|"+((constants!=null) ? constants.toString() : "");
+        synchronized(cache){
+            //compiled under the lock, so an expression is compiled only once
+            CompiledExpression ce = cache.get(key);
+            if (ce==null){
+                ce = compile(Expression.parse(text,inputs,constants),text);
+                cache.put(key,ce);
+            }
+            return ce;
+        }
+    }
+
+    /**
+     * Compiles a parsed expression.
+     *
+     * @param e    - the expression
+     * @param text - the expression text (returned by toString())
+     *
+     * @return - the compiled expression (or the interpreted expression, if the
+     *           generated class can't be defined)
+     */
+    public static CompiledExpression compile(Expression e, String text){
+        CompiledExpression ce;
+        String name = PKG+".GeneratedExpression"+counter.incrementAndGet();
+        try {
+            byte[] b = generate(e,name.replace('.','/'));
+            Class<?> c = new Loader(ExpressionCompiler.class.getClassLoader()).define(name,b);
+            ce = (CompiledExpression) c.newInstance();
+        } catch (IOException|ReflectiveOperationException|LinkageError|SecurityException|IllegalStateException ex){
+            logger.warning("Could not compile expression \""+text+"\" ("+ex+"). Using the interpreted expression.");
+            ce = new Interpreted(e);
+        }
+        ce.setText(text);
+        return ce;
+    }
+
+    /**
+     * The interpreted expression, used if the generated class can't be defined.
+     */
+    static final class Interpreted extends CompiledExpression {
+        final Expression e;
+
+        Interpreted(Expression e){
+            this.e = e;
+        }
+
+        @Override
+        public double calculate(double x, double y){
+            return e.eval(x,y);
+        }
+    }
+
+    /**
+     * Class loader for a generated class.
+     */
+    private static final class Loader extends ClassLoader {
+        Loader(ClassLoader parent){
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] b){
+            return defineClass(name,b,0,b.length);
+        }
+    }
+
+    /**
+     * Generates the class file. The class is written in the (version 49) format
+     * that doesn't require stack map frames, so forward branches for the
+     * conditional expressions can be patched in place.
+     *
+     * @param e    - the expression
+     * @param name - the internal class name
+     *
+     * @return - the class file
+     *
+     * @throws IOException
+     */
+    static byte[] generate(Expression e, String name) throws IOException {
+        Pool pool = new Pool();
+        int thisClass = pool.cls(name);
+        int superClass = pool.cls(BASE);
+        int superInit = pool.method(superClass,"<init>","()V");
+        int codeName  = pool.utf8("Code");
+        int initName  = pool.utf8("<init>");
+        int initDesc  = pool.utf8("()V");
+        int calcName  = pool.utf8("calculate");
+        int calcDesc  = pool.utf8("(DD)D");
+
+        Code init = new Code();
+        init.u1(ALOAD_0);
+        init.u1(INVOKESPECIAL); init.u2(superInit);
+        init.u1(RETURN);
+
+        Code calc = new Code();
+        emit(e,calc,pool);
+        calc.u1(DRETURN);
+        if (calc.size()>65535) throw new IllegalStateException("expression is too long");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);         //minor version
+        out.writeShort(49);        //major version
+        pool.write(out);
+        out.writeShort(0x0031);    //public final super
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0);         //interfaces
+        out.writeShort(0);         //fields
+        out.writeShort(2);         //methods
+        writeMethod(out,0x0001,initName,initDesc,codeName,init,1,1);
+        writeMethod(out,0x0001,calcName,calcDesc,codeName,calc,maxStack(e),5);
+        out.writeShort(0);         //attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int access, int name, int desc, int codeName,
+                                    Code code, int maxStack, int maxLocals) throws IOException {
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(desc);
+        out.writeShort(1);//attributes
+        out.writeShort(codeName);
+        out.writeInt(12+code.size());
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.size());
+        out.write(code.buf,0,code.size());
+        out.writeShort(0);//exception table
+        out.writeShort(0);//attributes
+    }
+
+    /**
+     * Emits the code for a node, leaving its value on the operand stack.
+     * The inputs x and y are local variables 1-2 and 3-4.
+     */
+    private static void emit(Expression e, Code c, Pool pool){
+        switch (e.type){
+            case Expression.CONST:
+                if (Double.doubleToRawLongBits(e.value)==0L) c.u1(DCONST_0); else
+                if (e.value==1.0) c.u1(DCONST_1); else
+                {c.u1(LDC2_W); c.u2(pool.dbl(e.value));}
+                break;
+            case Expression.INPUT:
+                c.u1((e.index==0) ? DLOAD_1 : DLOAD_3);
+                break;
+            case Expression.NEG:
+                emit(e.a,c,pool);
+                c.u1(DNEG);
+                break;
+            case Expression.ADD: emit(e.a,c,pool); emit(e.b,c,pool); c.u1(DADD); break;
+            case Expression.SUB: emit(e.a,c,pool); emit(e.b,c,pool); c.u1(DSUB); break;
+            case Expression.MUL: emit(e.a,c,pool); emit(e.b,c,pool); c.u1(DMUL); break;
+            case Expression.DIV: emit(e.a,c,pool); emit(e.b,c,pool); c.u1(DDIV); break;
+            case Expression.POW:
+                emit(e.a,c,pool);
+                emit(e.b,c,pool);
+                c.u1(INVOKESTATIC); c.u2(pool.math("pow","(DD)D"));
+                break;
+            case Expression.CALL1:
+                emit(e.a,c,pool);
+                c.u1(INVOKESTATIC); c.u2(pool.math(Expression.FUNCS1[e.index],"(D)D"));
+                break;
+            case Expression.CALL2:
+                emit(e.a,c,pool);
+                emit(e.b,c,pool);
+                c.u1(INVOKESTATIC); c.u2(pool.math(Expression.FUNCS2[e.index],"(DD)D"));
+                break;
+            case Expression.COND:
+                emit(e.a,c,pool);
+                emit(e.b,c,pool);
+                //compare as javac does, so NaN operands make the condition false
+                int branch;
+                switch (e.index){
+                    case Expression.LT: c.u1(DCMPG); branch = IFGE; break;
+                    case Expression.LE: c.u1(DCMPG); branch = IFGT; break;
+                    case Expression.GT: c.u1(DCMPL); branch = IFLE; break;
+                    case Expression.GE: c.u1(DCMPL); branch = IFLT; break;
+                    case Expression.EQ: c.u1(DCMPL); branch = IFNE; break;
+                    default:            c.u1(DCMPL); branch = IFEQ; break;
+                }
+                int toElse = c.size();
+                c.u1(branch); c.u2(0);
+                emit(e.c,c,pool);
+                int toEnd = c.size();
+                c.u1(GOTO); c.u2(0);
+                c.patch(toElse,c.size()-toElse);
+                emit(e.d,c,pool);
+                c.patch(toEnd,c.size()-toEnd);
+                break;
+            default:
+                throw new IllegalStateException("unknown node type "+e.type);
+        }
+    }
+
+    /** maximum operand stack depth (in slots) needed to evaluate a node */
+    private static int maxStack(Expression e){
+        switch (e.type){
+            case Expression.CONST:
+            case Expression.INPUT:
+                return 2;
+            case Expression.NEG:
+            case Expression.CALL1:
+                return maxStack(e.a);
+            case Expression.COND:
+                return Math.max(Math.max(maxStack(e.a),2+maxStack(e.b)),Math.max(maxStack(e.c),maxStack(e.d)));
+            default:
+                return Math.max(maxStack(e.a),2+maxStack(e.b));
+        }
+    }
+
+    /**
+     * Growable code buffer.
+     */
+    private static final class Code {
+        byte[] buf = new byte[64];
+        int n = 0;
+
+        void u1(int v){
+            if (n==buf.length) buf = java.util.Arrays.copyOf(buf,2*n);
+            buf[n++] = (byte) v;
+        }
+
+        void u2(int v){
+            u1(v>>8);
+            u1(v);
+        }
+
+        /** sets the 16-bit branch offset of the instruction at pc */
+        void patch(int pc, int offset){
+            if (offset>Short.MAX_VALUE) throw new IllegalStateException("expression is too long");
+            buf[pc+1] = (byte)(offset>>8);
+            buf[pc+2] = (byte) offset;
+        }
+
+        int size(){
+            return n;
+        }
+    }
+
+    /**
+     * Constant pool.
+     */
+    private static final class Pool {
+        final List<byte[]> entries = new ArrayList<>();
+        final Map<String,Integer> index = new HashMap<>();
+        /** next index (doubles take two) */
+        int next = 1;
+
+        private int add(String key, byte[] entry, int size){
+            Integer i = index.get(key);
+            if (i!=null) return i;
+            int k = next;
+            entries.add(entry);
+            index.put(key,k);
+            next += size;
+            return k;
+        }
+
+        int utf8(String s){
+            ByteArrayOutputStream b = new ByteArrayOutputStream();
+            try (DataOutputStream d = new DataOutputStream(b)) {
+                d.writeByte(1);
+                d.writeUTF(s);
+            } catch (IOException ex){
+                throw new IllegalStateException(ex);
+            }
+            return add("U"+s,b.toByteArray(),1);
+        }
+
+        int cls(String internalName){
+            int u = utf8(internalName);
+            return add("C"+internalName,new byte[]{7,(byte)(u>>8),(byte)u},1);
+        }
+
+        int dbl(double v){
+            long bits = Double.doubleToRawLongBits(v);
+            byte[] b = new byte[9];
+            b[0] = 6;
+            for (int i=0;i<8;i++) b[1+i] = (byte)(bits>>>(56-8*i));
+            return add("D"+bits,b,2);
+        }
+
+        int method(int cls, String name, String desc){
+            int nm = utf8(name), ds = utf8(desc);
+            int nt = add("N"+name+desc,new byte[]{12,(byte)(nm>>8),(byte)nm,(byte)(ds>>8),(byte)ds},1);
+            return add("M"+cls+"."+name+desc,new byte[]{10,(byte)(cls>>8),(byte)cls,(byte)(nt>>8),(byte)nt},1);
+        }
+
+        int math(String name, String desc){
+            return method(cls("java/lang/Math"),name,desc);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeShort(next);
+            for (byte[] e: entries) out.write(e);
+        }
+    }
+}
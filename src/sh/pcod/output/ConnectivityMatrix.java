@@ -0,0 +1,210 @@
+/*
+ * ConnectivityMatrix.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod.output;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * In-run connectivity accumulator: sums the abundance (number) of individuals
+ * settling (transitioning to the settlement stage) by release location and
+ * settlement location, as a sparse matrix.
+ *
+ * Locations are regions (if a RegionMap is given) or ROMS grid cells
+ * (gridCellID). The release location of each individual is recorded by origID
+ * when it is released; settlers are attributed to the release location of
+ * their origID (UNKNOWN if the release was not recorded). Super-individuals
+ * merged with others keep the origID of the surviving record, so merged
+ * individuals are attributed to its release location.
+ *
+ * The matrix is written as csv with one row per non-zero element
+ * <pre>
+ *   source, destination, settled abundance, number of settlement events,
+ *   released abundance (source), fraction settled
+ * </pre>
+ * and one row with destination NONE for each source without settlers. It is
+ * written at the end of a run and, optionally, to file.checkpoint at regular
+ * model time intervals.
+ *
+ * Usage:
+ * <pre>
+ *   OutputRegistry.register(new ConnectivityMatrix("conn.csv",RegionMap.read("regions.csv"),"BenthicJuvenile"));
+ *   ...run...
+ *   OutputRegistry.close();
+ * </pre>
+ *
+ * @author William Stockhausen
+ */
+public class ConnectivityMatrix implements LifeStageEventListener {
+
+    /** location for settlers whose release was not recorded */
+    public static final String UNKNOWN = "unknown";
+    /** destination for sources without settlers */
+    public static final String NONE = "none";
+
+    /** output file name */
+    private final String fn;
+    /** regions (null to use grid cells) */
+    private final RegionMap regions;
+    /** type name of the settlement stage */
+    private final String settleTypeName;
+    /** checkpoint interval (s; 0 for none) */
+    private double checkpointInterval = 0.0;
+    /** model time (s) of the next checkpoint */
+    private double nextCheckpoint = Double.NaN;
+
+    private static final Logger logger = Logger.getLogger(ConnectivityMatrix.class.getName());
+
+    /** canonical location keys (shared by the maps below) */
+    private final Map<String,String> keys = new HashMap<>();
+    /** release location by origID */
+    private final Map<Long,String> releases = new HashMap<>();
+    /** released abundance by source */
+    private final Map<String,double[]> released = new TreeMap<>();
+    /** settled abundance and number of events by source, then destination */
+    private final Map<String,Map<String,double[]>> matrix = new TreeMap<>();
+
+    /**
+     * Creates a connectivity accumulator.
+     *
+     * @param fn             - the output file name
+     * @param regions        - the regions (null to use grid cells)
+     * @param settleTypeName - type name of the settlement stage
+     */
+    public ConnectivityMatrix(String fn, RegionMap regions, String settleTypeName){
+        this.fn             = fn;
+        this.regions        = regions;
+        this.settleTypeName = settleTypeName;
+    }
+
+    /**
+     * Sets the checkpoint interval. Call before a run starts.
+     *
+     * @param seconds - the checkpoint interval (model time, s; 0 for none)
+     */
+    public synchronized void setCheckpointInterval(double seconds){
+        checkpointInterval = Math.max(seconds,0.0);
+        nextCheckpoint = Double.NaN;
+    }
+
+    @Override
+    public synchronized void released(LHSObservation obs) {
+        String src = getKey(obs);
+        releases.put(obs.origID,src);
+        double[] r = released.get(src);
+        if (r==null) {
+            r = new double[1];
+            released.put(src,r);
+        }
+        r[0] += obs.number;
+        checkpoint(obs.time);
+    }
+
+    @Override
+    public synchronized void transitioned(LHSObservation from, String toTypeName, double number) {
+        checkpoint(from.time);
+        if (!settleTypeName.equals(toTypeName)) return;
+        String src = releases.get(from.origID);
+        if (src==null) src = UNKNOWN;
+        String dst = getKey(from);
+        Map<String,double[]> row = matrix.get(src);
+        if (row==null) {
+            row = new TreeMap<>();
+            matrix.put(src,row);
+        }
+        double[] v = row.get(dst);
+        if (v==null) {
+            v = new double[2];
+            row.put(dst,v);
+        }
+        v[0] += number;
+        v[1] += 1;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        write(new File(fn));
+    }
+
+    /**
+     * Writes the matrix to file.checkpoint if a checkpoint is due.
+     *
+     * @param time - current model time (s)
+     */
+    private void checkpoint(double time){
+        if (checkpointInterval<=0) return;
+        if (Double.isNaN(nextCheckpoint)) nextCheckpoint = time+checkpointInterval;
+        if (time<nextCheckpoint) return;
+        while (nextCheckpoint<=time) nextCheckpoint += checkpointInterval;
+        File f   = new File(fn+".checkpoint");
+        File tmp = new File(fn+".checkpoint.tmp");
+        try {
+            write(tmp);
+            if (f.exists()) f.delete();
+            if (!tmp.renameTo(f)) throw new IOException("could not rename "+tmp);
+        } catch (IOException ex) {
+            logger.severe("Error writing connectivity checkpoint at time "+time+": "+ex.getMessage());
+        }
+    }
+
+    /**
+     * Writes the matrix.
+     *
+     * @param f - the output file
+     *
+     * @throws IOException
+     */
+    private void write(File f) throws IOException {
+        try (Writer w = new BufferedWriter(new FileWriter(f))) {
+            w.write("source,destination,settled,nSettlements,released,fracSettled\n");
+            StringBuilder b = new StringBuilder();
+            for (String src: released.keySet()) {
+                double rel = released.get(src)[0];
+                Map<String,double[]> row = matrix.get(src);
+                if (row==null) {
+                    b.setLength(0);
+                    b.append(src).append(",").append(NONE).append(",0.0,0,").append(rel).append(",0.0\n");
+                    w.write(b.toString());
+                    continue;
+                }
+                writeRow(w,b,src,row,rel);
+            }
+            if (matrix.containsKey(UNKNOWN)&&!released.containsKey(UNKNOWN))
+                writeRow(w,b,UNKNOWN,matrix.get(UNKNOWN),Double.NaN);
+        }
+    }
+
+    private void writeRow(Writer w, StringBuilder b, String src, Map<String,double[]> row, double rel) throws IOException {
+        for (String dst: row.keySet()) {
+            double[] v = row.get(dst);
+            b.setLength(0);
+            b.append(src).append(",").append(dst).append(",").append(v[0]).append(",").append((long)v[1]);
+            b.append(",").append(rel).append(",").append((rel>0) ? v[0]/rel : Double.NaN).append("\n");
+            w.write(b.toString());
+        }
+    }
+
+    /**
+     * Gets the (canonical) location key for an observation.
+     */
+    private String getKey(LHSObservation obs){
+        String k = (regions!=null) ? regions.getRegion(obs.lon,obs.lat) : obs.gridCellID;
+        if (k==null) k = UNKNOWN;
+        String c = keys.get(k);
+        if (c==null) {
+            keys.put(k,k);
+            c = k;
+        }
+        return c;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * DensityGrid.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod.output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-run spatial density accumulator: rasterizes the abundance (sum of number)
+ * of each stage, and optionally the abundance-weighted mean temperature, SL and
+ * hsi, onto either the ROMS grid (using the individual's grid cell) or a
+ * regular lon/lat grid. Observations are added to the grid as they are
+ * recorded (see OutputRegistry); each snapshot is written as one layer per
+ * stage to a compact binary file.
+ *
+ * File format (big-endian, java.io.DataOutput):
+ * <pre>
+ *   header: "DMDG", version (int), grid type (int; 0=ROMS, 1=lon/lat),
+ *           nX (int), nY (int), lonMin, latMin, dLon, dLat (doubles; NaN for ROMS),
+ *           number of variables (int), variable names (UTF)
+ *   layer:  time (double), typeName (UTF), number of non-empty cells (int),
+ *           then for each non-empty cell: index (int; j*nX+i),
+ *           values of the variables (floats; abundance first)
+ * </pre>
+ * Layers follow each other until the end of the file. Use main(args) to
+ * convert a file to csv.
+ *
+ * Usage:
+ * <pre>
+ *   OutputRegistry.register(DensityGrid.forROMSGrid("density.bin",L,M,DensityGrid.VAR_TEMPERATURE|DensityGrid.VAR_SL));
+ *   ...run...
+ *   OutputRegistry.close();
+ * </pre>
+ *
+ * @author William Stockhausen
+ */
+public class DensityGrid implements IndividualAccumulator {
+
+    /** flag to include mean temperature */
+    public static final int VAR_TEMPERATURE = 1;
+    /** flag to include mean standard length */
+    public static final int VAR_SL = 2;
+    /** flag to include mean hsi */
+    public static final int VAR_HSI = 4;
+
+    /** grid type for the ROMS grid */
+    public static final int GRID_ROMS = 0;
+    /** grid type for a regular lon/lat grid */
+    public static final int GRID_LONLAT = 1;
+
+    private static final String MAGIC = "DMDG";
+    private static final int VERSION = 1;
+    private static final String[] OPT_NAMES = new String[]{"temperature","SL","hsi"};
+
+    /**
+     * Accumulated values for a single stage.
+     */
+    private static class Layer {
+        final double[] abundance;
+        /** weighted sums and sums of weights for the optional variables */
+        final double[][] sumWX;
+        final double[][] sumW;
+        boolean empty = true;
+
+        Layer(int nCells, int nOpt){
+            abundance = new double[nCells];
+            sumWX = new double[nOpt][nCells];
+            sumW  = new double[nOpt][nCells];
+        }
+
+        void reset(){
+            Arrays.fill(abundance,0.0);
+            for (double[] v: sumWX) Arrays.fill(v,0.0);
+            for (double[] v: sumW)  Arrays.fill(v,0.0);
+            empty = true;
+        }
+    }
+
+    private final int gridType;
+    private final int nX;
+    private final int nY;
+    private final double lonMin, latMin, dLon, dLat;
+    /** indices of the optional variables (into OPT_NAMES) */
+    private final int[] opts;
+    private final DataOutputStream out;
+    /** layers by stage */
+    private final Map<String,Layer> layers = new TreeMap<>();
+
+    /**
+     * Creates a density grid on the ROMS grid. Individuals are assigned to
+     * cells by their grid cell (rounded I,J).
+     *
+     * @param fn   - output file name
+     * @param nX   - number of grid cells in the I direction
+     * @param nY   - number of grid cells in the J direction
+     * @param vars - optional variables (sum of VAR_ flags)
+     *
+     * @return - the accumulator
+     *
+     * @throws IOException
+     */
+    public static DensityGrid forROMSGrid(String fn, int nX, int nY, int vars) throws IOException {
+        return new DensityGrid(fn,GRID_ROMS,nX,nY,Double.NaN,Double.NaN,Double.NaN,Double.NaN,vars);
+    }
+
+    /**
+     * Creates a density grid on a regular lon/lat grid. Individuals outside
+     * the grid are ignored.
+     *
+     * @param fn     - output file name
+     * @param lonMin - western edge of the grid (deg)
+     * @param latMin - southern edge of the grid (deg)
+     * @param dLon   - cell width (deg)
+     * @param dLat   - cell height (deg)
+     * @param nX     - number of cells in longitude
+     * @param nY     - number of cells in latitude
+     * @param vars   - optional variables (sum of VAR_ flags)
+     *
+     * @return - the accumulator
+     *
+     * @throws IOException
+     */
+    public static DensityGrid forLonLatGrid(String fn, double lonMin, double latMin, double dLon, double dLat,
+                                            int nX, int nY, int vars) throws IOException {
+        return new DensityGrid(fn,GRID_LONLAT,nX,nY,lonMin,latMin,dLon,dLat,vars);
+    }
+
+    private DensityGrid(String fn, int gridType, int nX, int nY,
+                        double lonMin, double latMin, double dLon, double dLat, int vars) throws IOException {
+        this.gridType = gridType;
+        this.nX = nX;
+        this.nY = nY;
+        this.lonMin = lonMin;
+        this.latMin = latMin;
+        this.dLon = dLon;
+        this.dLat = dLat;
+        int n = 0;
+        for (int i=0;i<OPT_NAMES.length;i++) if ((vars&(1<<i))!=0) n++;
+        opts = new int[n];
+        n = 0;
+        for (int i=0;i<OPT_NAMES.length;i++) if ((vars&(1<<i))!=0) opts[n++] = i;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fn)));
+        out.writeBytes(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(gridType);
+        out.writeInt(nX);
+        out.writeInt(nY);
+        out.writeDouble(lonMin);
+        out.writeDouble(latMin);
+        out.writeDouble(dLon);
+        out.writeDouble(dLat);
+        out.writeInt(1+opts.length);
+        out.writeUTF("abundance");
+        for (int k: opts) out.writeUTF(OPT_NAMES[k]);
+    }
+
+    @Override
+    public synchronized void add(LHSObservation obs) {
+        int c = getCell(obs);
+        if (c<0) return;
+        Layer l = layers.get(obs.typeName);
+        if (l==null) {
+            l = new Layer(nX*nY,opts.length);
+            layers.put(obs.typeName,l);
+        }
+        double w = obs.number;
+        l.abundance[c] += w;
+        l.empty = false;
+        for (int k=0;k<opts.length;k++){
+            double x = getValue(obs,opts[k]);
+            if (!Double.isNaN(x)){
+                l.sumWX[k][c] += w*x;
+                l.sumW[k][c]  += w;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void endSnapshot(double time) throws IOException {
+        for (String typeName: layers.keySet()){
+            Layer l = layers.get(typeName);
+            if (l.empty) continue;
+            int n = 0;
+            for (double a: l.abundance) if (a>0) n++;
+            out.writeDouble(time);
+            out.writeUTF(typeName);
+            out.writeInt(n);
+            for (int c=0;c<l.abundance.length;c++){
+                if (l.abundance[c]<=0) continue;
+                out.writeInt(c);
+                out.writeFloat((float)l.abundance[c]);
+                for (int k=0;k<opts.length;k++)
+                    out.writeFloat((l.sumW[k][c]>0) ? (float)(l.sumWX[k][c]/l.sumW[k][c]) : Float.NaN);
+            }
+            l.reset();
+        }
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Gets the grid cell index (j*nX+i) for an observation.
+     *
+     * @return - the index, or -1 if the individual is outside the grid
+     */
+    private int getCell(LHSObservation obs){
+        int i, j;
+        if (gridType==GRID_ROMS){
+            String s = obs.gridCellID;
+            if (s==null) return -1;
+            int p = s.indexOf('_');
+            if (p<0) return -1;
+            try {
+                i = Integer.parseInt(s.substring(0,p));
+                j = Integer.parseInt(s.substring(p+1));
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        } else {
+            if (Double.isNaN(obs.lon)||Double.isNaN(obs.lat)) return -1;
+            i = (int)Math.floor((obs.lon-lonMin)/dLon);
+            j = (int)Math.floor((obs.lat-latMin)/dLat);
+        }
+        if ((i<0)||(i>=nX)||(j<0)||(j>=nY)) return -1;
+        return j*nX+i;
+    }
+
+    private static double getValue(LHSObservation obs, int k){
+        switch (k) {
+            case 0: return obs.temperature;
+            case 1: return obs.std_len;
+            default: return obs.hsi;
+        }
+    }
+
+    /**
+     * Converts a density grid file to csv with columns
+     * time, typeName, i, j, lon, lat (cell centers; NaN for the ROMS grid), variables.
+     *
+     * @param args - input file name, output csv file name
+     *
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length<2) {
+            System.out.println("Usage: DensityGrid densityFile csvFile");
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])));
+             Writer w = new BufferedWriter(new FileWriter(args[1]))) {
+            byte[] m = new byte[4];
+            in.readFully(m);
+            if (!MAGIC.equals(new String(m,"US-ASCII"))) throw new IOException(args[0]+" is not a density grid file");
+            in.readInt();//version
+            int type = in.readInt();
+            int nx = in.readInt();
+            in.readInt();//nY
+            double lon0 = in.readDouble(), lat0 = in.readDouble(), dlon = in.readDouble(), dlat = in.readDouble();
+            int nv = in.readInt();
+            StringBuilder b = new StringBuilder("time,typeName,i,j,lon,lat");
+            for (int v=0;v<nv;v++) b.append(",").append(in.readUTF());
+            w.write(b.append("\n").toString());
+            while (true) {
+                double time;
+                try {
+                    time = in.readDouble();
+                } catch (EOFException ex) {
+                    break;
+                }
+                String typeName = in.readUTF();
+                int n = in.readInt();
+                for (int r=0;r<n;r++){
+                    int c = in.readInt();
+                    int i = c%nx, j = c/nx;
+                    b.setLength(0);
+                    b.append(time).append(",").append(typeName).append(",").append(i).append(",").append(j);
+                    b.append(",").append((type==GRID_LONLAT) ? lon0+(i+0.5)*dlon : Double.NaN);
+                    b.append(",").append((type==GRID_LONLAT) ? lat0+(j+0.5)*dlat : Double.NaN);
+                    for (int v=0;v<nv;v++) b.append(",").append(in.readFloat());
+                    w.write(b.append("\n").toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * IndividualAccumulator.java
+ *
+ * 20261019: created interface.
+ */
+package sh.pcod.output;
+
+import java.io.IOException;
+
+/**
+ * Interface for in-run output accumulators that aggregate observations of all
+ * live individuals at each output time (snapshot; see OutputRegistry).
+ *
+ * @author William Stockhausen
+ */
+public interface IndividualAccumulator {
+
+    /**
+     * Adds an observation to the current snapshot. May be called concurrently
+     * from several threads.
+     *
+     * @param obs - the observation (re-used by the caller; copy values to keep them)
+     */
+    public void add(LHSObservation obs);
+
+    /**
+     * Ends the current snapshot (e.g., writes it out and resets).
+     *
+     * @param time - model time (s) of the snapshot
+     *
+     * @throws IOException
+     */
+    public void endSnapshot(double time) throws IOException;
+
+    /**
+     * Finishes output at the end of a run.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException;
+}
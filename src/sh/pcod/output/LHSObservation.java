@@ -0,0 +1,82 @@
+/*
+ * LHSObservation.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod.output;
+
+/**
+ * Snapshot of the state of an individual, filled in by the life stage classes
+ * (see ObservableLHS.observe) and passed to the in-run output accumulators.
+ *
+ * Instances are re-used (one per thread, see OutputRegistry), so accumulators
+ * must copy any values they keep. Variables that are not defined for a stage
+ * are NaN.
+ *
+ * @author William Stockhausen
+ */
+public class LHSObservation {
+    /** stage type name */
+    public String typeName;
+    /** individual id */
+    public long id;
+    /** parent id */
+    public long parentID;
+    /** original id */
+    public long origID;
+    /** model time (s) */
+    public double time;
+    /** longitude (deg) */
+    public double lon;
+    /** latitude (deg) */
+    public double lat;
+    /** depth (m) */
+    public double depth;
+    /** bathymetric depth (m) */
+    public double bathym;
+    /** grid cell id */
+    public String gridCellID;
+    /** number of individuals represented */
+    public double number;
+    /** age (d) */
+    public double age;
+    /** age in stage (d) */
+    public double ageInStage;
+    /** flag indicating the individual is attached to the bottom */
+    public boolean attached;
+    /** 1 if the individual has fed, 0 if not, NaN if not applicable to the stage */
+    public double fed;
+    /** standard length (mm) */
+    public double std_len;
+    /** dry weight (mg) */
+    public double dry_wgt;
+    /** total length (mm) */
+    public double tot_len;
+    /** wet weight (mg) */
+    public double wet_wgt;
+    /** growth rate for SL (mm/d) */
+    public double grSL;
+    /** growth rate for DW (1/d) */
+    public double grDW;
+    /** in situ temperature (deg C) */
+    public double temperature;
+    /** habitat suitability index */
+    public double hsi;
+
+    /**
+     * Resets the stage-specific variables to NaN (or false). Called before
+     * an individual fills in the observation.
+     */
+    public void clear(){
+        attached = false;
+        fed      = Double.NaN;
+        std_len  = Double.NaN;
+        dry_wgt  = Double.NaN;
+        tot_len  = Double.NaN;
+        wet_wgt  = Double.NaN;
+        grSL     = Double.NaN;
+        grDW     = Double.NaN;
+        temperature = Double.NaN;
+        hsi      = Double.NaN;
+    }
+}
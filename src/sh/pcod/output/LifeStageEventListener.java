@@ -0,0 +1,42 @@
+/*
+ * LifeStageEventListener.java
+ *
+ * 20261019: created interface.
+ */
+package sh.pcod.output;
+
+import java.io.IOException;
+
+/**
+ * Interface for in-run output listeners that track life history events
+ * (releases and stage transitions) rather than snapshots (see OutputRegistry).
+ *
+ * @author William Stockhausen
+ */
+public interface LifeStageEventListener {
+
+    /**
+     * Called when an individual is released (initialized at its start position).
+     * May be called concurrently from several threads.
+     *
+     * @param obs - observation of the released individual (re-used by the caller)
+     */
+    public void released(LHSObservation obs);
+
+    /**
+     * Called when (part of) an individual transitions to a new life stage.
+     * May be called concurrently from several threads.
+     *
+     * @param from       - observation of the individual at transition (re-used by the caller)
+     * @param toTypeName - type name of the new life stage
+     * @param number     - number of individuals making the transition
+     */
+    public void transitioned(LHSObservation from, String toTypeName, double number);
+
+    /**
+     * Finishes output at the end of a run.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException;
+}
@@ -0,0 +1,476 @@
+/*
+ * LineageIndex.java
+ *
+ * 20261019: created class.
+ * 20261019: added merge entries (version 2) and getMergeTarget.
+ */
+package sh.pcod.output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * On-disk lineage index over the model output files: maps each individual's id
+ * to its parentID and origID and to the byte ranges of its reports in each
+ * stage's output (csv) file. The index is written during a run by
+ * LineageIndexWriter, or rebuilt from the output files by rebuild().
+ *
+ * File format (big-endian, java.io.DataOutput): "DMLI", version (int), then
+ * entries until the end of the file:
+ * <pre>
+ *   stage:  tag 0 (byte), stage index (int), typeName (UTF)
+ *   report: tag 1 (byte), id, parentID, origID (longs), stage index (int),
+ *           byte offset (long), length in bytes without line separator (int)
+ *   merge:  tag 2 (byte), donor id, donor origID, surviving id, surviving origID (longs),
+ *           number transferred (double)
+ * </pre>
+ * Merge entries (version 2) record super-individuals merged by
+ * SuperIndividualMerger; they are only written during a run (rebuild() can't
+ * recover them from the output files).
+ *
+ * Command line:
+ * <pre>
+ *   LineageIndex ancestors   indexFile id [typeName=csvFile ...]
+ *   LineageIndex descendants indexFile id [typeName=csvFile ...]
+ *   LineageIndex rebuild     indexFile typeName=csvFile ...
+ * </pre>
+ * If csv files are given, the reports of each individual are printed, too.
+ *
+ * @author William Stockhausen
+ */
+public class LineageIndex {
+
+    private static final String MAGIC = "DMLI";
+    private static final int VERSION = 2;
+    private static final byte TAG_STAGE  = 0;
+    private static final byte TAG_REPORT = 1;
+    private static final byte TAG_MERGE  = 2;
+
+    /**
+     * Location of a report in a stage's output file.
+     */
+    public static class Report {
+        /** stage type name */
+        public final String typeName;
+        /** byte offset in the output file */
+        public final long offset;
+        /** length (bytes, without line separator) */
+        public final int length;
+
+        Report(String typeName, long offset, int length){
+            this.typeName = typeName;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Index entry for a single id.
+     */
+    private static class Node {
+        long parentID;
+        long origID;
+        int n = 0;
+        int[] stages = new int[4];
+        long[] offsets = new long[4];
+        int[] lengths = new int[4];
+
+        void add(int stage, long offset, int length){
+            if (n==offsets.length){
+                stages  = Arrays.copyOf(stages,2*n);
+                offsets = Arrays.copyOf(offsets,2*n);
+                lengths = Arrays.copyOf(lengths,2*n);
+            }
+            stages[n] = stage;
+            offsets[n] = offset;
+            lengths[n++] = length;
+        }
+    }
+
+    /** stage type names by stage index */
+    private final Map<Integer,String> stageNames = new HashMap<>();
+    /** entries by id */
+    private final Map<Long,Node> nodes = new HashMap<>();
+    /** id of the surviving individual, by id of a merged (retired) individual */
+    private final Map<Long,Long> mergedInto = new HashMap<>();
+    /** children by id (built on demand) */
+    private Map<Long,List<Long>> children = null;
+
+    private LineageIndex(){
+    }
+
+    /**
+     * Reads an index file.
+     *
+     * @param fn - the index file name
+     *
+     * @return - the index
+     *
+     * @throws IOException
+     */
+    public static LineageIndex read(String fn) throws IOException {
+        LineageIndex idx = new LineageIndex();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fn),1<<16))) {
+            byte[] m = new byte[4];
+            in.readFully(m);
+            if (!MAGIC.equals(new String(m,"US-ASCII"))) throw new IOException(fn+" is not a lineage index file");
+            in.readInt();//version
+            while (true) {
+                int tag = in.read();
+                if (tag<0) break;
+                try {
+                    if (tag==TAG_STAGE) {
+                        int s = in.readInt();
+                        idx.stageNames.put(s,in.readUTF());
+                    } else if (tag==TAG_REPORT) {
+                        long id = in.readLong();
+                        Node nd = idx.nodes.get(id);
+                        if (nd==null) {
+                            nd = new Node();
+                            idx.nodes.put(id,nd);
+                        }
+                        nd.parentID = in.readLong();
+                        nd.origID   = in.readLong();
+                        nd.add(in.readInt(),in.readLong(),in.readInt());
+                    } else if (tag==TAG_MERGE) {
+                        long donorID = in.readLong();
+                        in.readLong();//donor origID
+                        long targetID = in.readLong();
+                        in.readLong();//target origID
+                        in.readDouble();//number
+                        idx.mergedInto.put(donorID,targetID);
+                    } else {
+                        throw new IOException("Bad entry in lineage index "+fn);
+                    }
+                } catch (EOFException ex) {
+                    break;//truncated last entry (e.g., run did not finish)
+                }
+            }
+        }
+        return idx;
+    }
+
+    /**
+     * Tests whether an id is in the index.
+     *
+     * @param id - the id
+     *
+     * @return - true if the id is in the index
+     */
+    public boolean contains(long id){
+        return nodes.containsKey(id);
+    }
+
+    /**
+     * Gets the parentID of an id.
+     *
+     * @param id - the id
+     *
+     * @return - the parentID (-1 if id is not in the index)
+     */
+    public long getParentID(long id){
+        Node nd = nodes.get(id);
+        return (nd!=null) ? nd.parentID : -1;
+    }
+
+    /**
+     * Gets the origID of an id.
+     *
+     * @param id - the id
+     *
+     * @return - the origID (-1 if id is not in the index)
+     */
+    public long getOrigID(long id){
+        Node nd = nodes.get(id);
+        return (nd!=null) ? nd.origID : -1;
+    }
+
+    /**
+     * Gets the id of the individual a super-individual was merged into.
+     *
+     * @param id - the id
+     *
+     * @return - the id of the surviving individual (-1 if id was not merged)
+     */
+    public long getMergeTarget(long id){
+        Long t = mergedInto.get(id);
+        return (t!=null) ? t : -1;
+    }
+
+    /**
+     * Gets the ancestry of an id: the id, its parent, the parent's parent, etc.,
+     * up to the root (an id that is its own parent or is not in the index).
+     *
+     * @param id - the id
+     *
+     * @return - the ids, starting with id
+     */
+    public List<Long> getAncestors(long id){
+        List<Long> res = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        Long cur = id;
+        while (seen.add(cur)) {
+            res.add(cur);
+            Node nd = nodes.get(cur);
+            if ((nd==null)||(nd.parentID==cur)) break;
+            cur = nd.parentID;
+        }
+        return res;
+    }
+
+    /**
+     * Gets all descendants of an id (breadth-first, excluding the id).
+     *
+     * @param id - the id
+     *
+     * @return - the ids of the descendants
+     */
+    public List<Long> getDescendants(long id){
+        if (children==null) {
+            children = new HashMap<>();
+            for (Map.Entry<Long,Node> e: nodes.entrySet()){
+                long p = e.getValue().parentID;
+                if (p==e.getKey()) continue;
+                List<Long> c = children.get(p);
+                if (c==null) {
+                    c = new ArrayList<>(2);
+                    children.put(p,c);
+                }
+                c.add(e.getKey());
+            }
+        }
+        List<Long> res = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        seen.add(id);
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        queue.add(id);
+        while (!queue.isEmpty()) {
+            List<Long> c = children.get(queue.poll());
+            if (c==null) continue;
+            for (Long k: c) {
+                if (seen.add(k)) {
+                    res.add(k);
+                    queue.add(k);
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Gets the locations of the reports of an id.
+     *
+     * @param id - the id
+     *
+     * @return - the report locations (in output order)
+     */
+    public List<Report> getReports(long id){
+        List<Report> res = new ArrayList<>();
+        Node nd = nodes.get(id);
+        if (nd!=null) {
+            for (int i=0;i<nd.n;i++) res.add(new Report(stageNames.get(nd.stages[i]),nd.offsets[i],nd.lengths[i]));
+        }
+        return res;
+    }
+
+    /**
+     * Reads a report from its output file.
+     *
+     * @param f - the output file (opened for reading)
+     * @param r - the report location
+     *
+     * @return - the report
+     *
+     * @throws IOException
+     */
+    public static String readReport(RandomAccessFile f, Report r) throws IOException {
+        byte[] b = new byte[r.length];
+        f.seek(r.offset);
+        f.readFully(b);
+        return new String(b,"UTF-8");
+    }
+
+    /**
+     * Rebuilds an index file by scanning the output files.
+     *
+     * @param fn    - the index file name
+     * @param files - the output (csv) file names by stage type name
+     *
+     * @throws IOException
+     */
+    public static void rebuild(String fn, Map<String,String> files) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fn),1<<16))) {
+            writeHeader(out);
+            int s = 0;
+            for (Map.Entry<String,String> e: files.entrySet()){
+                writeStage(out,s,e.getKey());
+                scan(out,s++,e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Writes index entries for the reports in an output file.
+     */
+    private static void scan(DataOutputStream out, int stage, String csv) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(csv),1<<16)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(1024);
+            long offset = 0;
+            long start  = 0;
+            int[] cols = null;
+            int c;
+            while (true) {
+                c = in.read();
+                if ((c<0)||(c=='\n')) {
+                    byte[] b = line.toByteArray();
+                    int len = b.length;
+                    if ((len>0)&&(b[len-1]=='\r')) len--;
+                    String s = new String(b,0,len,"UTF-8");
+                    if (cols==null) {
+                        cols = getIDColumns(s,csv);
+                    } else if (len>0) {
+                        String[] v = s.split(",",cols[3]+2);
+                        writeRecord(out,parseID(v[cols[0]]),parseID(v[cols[1]]),parseID(v[cols[2]]),stage,start,len);
+                    }
+                    if (c<0) break;
+                    line.reset();
+                    start = offset+1;
+                } else {
+                    line.write(c);
+                }
+                offset++;
+            }
+        }
+    }
+
+    /**
+     * Gets the columns of id, parentID and origID (and the largest of them) from a header.
+     */
+    private static int[] getIDColumns(String header, String csv) throws IOException {
+        int[] cols = new int[]{-1,-1,-1,0};
+        String[] h = header.split(",");
+        for (int i=0;i<h.length;i++){
+            String k = h[i].replace(" ","").replace("\"","").toLowerCase();
+            if (k.equals("id")) cols[0] = i; else
+            if (k.equals("parentid")) cols[1] = i; else
+            if (k.equals("origid")||k.equals("originalid")) cols[2] = i;
+        }
+        for (int i=0;i<3;i++) {
+            if (cols[i]<0) throw new IOException("Missing id, parentID or origID column in "+csv);
+            cols[3] = Math.max(cols[3],cols[i]);
+        }
+        return cols;
+    }
+
+    private static long parseID(String s){
+        s = s.trim();
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException ex) {
+            return (long) Double.parseDouble(s);
+        }
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeBytes(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    static void writeStage(DataOutputStream out, int stage, String typeName) throws IOException {
+        out.writeByte(TAG_STAGE);
+        out.writeInt(stage);
+        out.writeUTF(typeName);
+    }
+
+    static void writeMerge(DataOutputStream out, long donorID, long donorOrigID,
+                           long targetID, long targetOrigID, double number) throws IOException {
+        out.writeByte(TAG_MERGE);
+        out.writeLong(donorID);
+        out.writeLong(donorOrigID);
+        out.writeLong(targetID);
+        out.writeLong(targetOrigID);
+        out.writeDouble(number);
+    }
+
+    static void writeRecord(DataOutputStream out, long id, long parentID, long origID,
+                            int stage, long offset, int length) throws IOException {
+        out.writeByte(TAG_REPORT);
+        out.writeLong(id);
+        out.writeLong(parentID);
+        out.writeLong(origID);
+        out.writeInt(stage);
+        out.writeLong(offset);
+        out.writeInt(length);
+    }
+
+    /**
+     * Command line query utility (see class description).
+     *
+     * @param args - command, index file, id or output files
+     *
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length<3) {
+            System.out.println("Usage: LineageIndex ancestors|descendants indexFile id [typeName=csvFile ...]");
+            System.out.println("       LineageIndex rebuild indexFile typeName=csvFile ...");
+            return;
+        }
+        String cmd = args[0];
+        Map<String,String> files = new LinkedHashMap<>();
+        for (int i=(cmd.equals("rebuild") ? 2 : 3);i<args.length;i++){
+            int p = args[i].indexOf('=');
+            if (p>0) files.put(args[i].substring(0,p),args[i].substring(p+1));
+        }
+        if (cmd.equals("rebuild")) {
+            rebuild(args[1],files);
+            return;
+        }
+        long t0 = System.currentTimeMillis();
+        LineageIndex idx = read(args[1]);
+        long t1 = System.currentTimeMillis();
+        long id = Long.parseLong(args[2]);
+        List<Long> ids = cmd.equals("descendants") ? idx.getDescendants(id) : idx.getAncestors(id);
+        long t2 = System.currentTimeMillis();
+        Map<String,RandomAccessFile> rafs = new HashMap<>();
+        try {
+            for (Long k: ids) {
+                long m = idx.getMergeTarget(k);
+                System.out.println(k+" parentID="+idx.getParentID(k)+" origID="+idx.getOrigID(k)+
+                                   ((m>=0) ? " mergedInto="+m : ""));
+                if (files.isEmpty()) continue;
+                for (Report r: idx.getReports(k)) {
+                    String fn = files.get(r.typeName);
+                    if (fn==null) continue;
+                    RandomAccessFile f = rafs.get(fn);
+                    if (f==null) {
+                        f = new RandomAccessFile(fn,"r");
+                        rafs.put(fn,f);
+                    }
+                    System.out.println("    "+r.typeName+": "+readReport(f,r));
+                }
+            }
+        } finally {
+            for (RandomAccessFile f: rafs.values()) f.close();
+        }
+        System.out.println("index read in "+(t1-t0)+" ms, query in "+(t2-t1)+" ms");
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * LineageIndexWriter.java
+ *
+ * 20261019: created class.
+ * 20261019: byte offsets are kept by output file (see setOutputFile).
+ * 20261019: records merges of super-individuals (SuperIndividualMerger.MergeListener).
+ */
+package sh.pcod.output;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import sh.pcod.SuperIndividualMerger;
+
+/**
+ * Builds the on-disk lineage index (see LineageIndex) during a run from the
+ * reports created for the model output files.
+ *
+ * The byte offset of each report in its output file is computed by assuming
+ * that each output file gets the report header followed by every report
+ * created by getReport() for the stage types written to it, each followed by
+ * a line separator (System.lineSeparator() by default; see setLineSeparator),
+ * in the order the reports are created. Offsets are kept by output file: by
+ * default each stage type has its own file; setOutputFile gives the file a
+ * stage type is written to (e.g. the report files of a batch run, or types
+ * that share a file). If the output files are written differently, rebuild
+ * the index from the files after the run (LineageIndex.rebuild).
+ *
+ * As the merge listener of a SuperIndividualMerger, the writer also records
+ * the merges of super-individuals in the index.
+ *
+ * Usage:
+ * <pre>
+ *   OutputRegistry.register(new LineageIndexWriter("lineage.idx"));
+ *   ...run...
+ *   OutputRegistry.close();
+ * </pre>
+ *
+ * @author William Stockhausen
+ */
+public class LineageIndexWriter implements ReportListener, SuperIndividualMerger.MergeListener {
+
+    /** charset of the output files */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final Logger logger = Logger.getLogger(LineageIndexWriter.class.getName());
+
+    private final DataOutputStream out;
+    /** stage index, by stage type */
+    private final Map<String,Integer> stages = new HashMap<>();
+    /** output file, by stage type (the type name if not set) */
+    private final Map<String,String> files = new HashMap<>();
+    /** next byte offset, by output file */
+    private final Map<String,long[]> offsets = new HashMap<>();
+    /** length of the line separator (bytes) */
+    private int sepLength = System.lineSeparator().length();
+
+    /**
+     * Creates a writer for an index file.
+     *
+     * @param fn - the index file name
+     *
+     * @throws IOException
+     */
+    public LineageIndexWriter(String fn) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fn),1<<16));
+        LineageIndex.writeHeader(out);
+    }
+
+    /**
+     * Sets the line separator used in the output files. Call before a run starts.
+     *
+     * @param sep - the line separator
+     */
+    public synchronized void setLineSeparator(String sep){
+        sepLength = sep.length();
+    }
+
+    /**
+     * Sets the output file a stage type's reports are written to. Call before
+     * a run starts.
+     *
+     * @param typeName - the stage type name
+     * @param fn       - the output file name
+     */
+    public synchronized void setOutputFile(String typeName, String fn){
+        files.put(typeName,fn);
+    }
+
+    @Override
+    public synchronized void reported(ObservableLHS lhs, LHSObservation obs, String csv) {
+        Integer stage = stages.get(obs.typeName);
+        try {
+            if (stage==null) {
+                stage = stages.size();
+                stages.put(obs.typeName,stage);
+                LineageIndex.writeStage(out,stage,obs.typeName);
+            }
+            String fn = files.get(obs.typeName);
+            if (fn==null) fn = obs.typeName;
+            long[] offset = offsets.get(fn);
+            if (offset==null) {
+                offset = new long[]{lhs.getReportHeader().getBytes(CHARSET).length+sepLength};
+                offsets.put(fn,offset);
+            }
+            int len = csv.getBytes(CHARSET).length;
+            LineageIndex.writeRecord(out,obs.id,obs.parentID,obs.origID,stage,offset[0],len);
+            offset[0] += len+sepLength;
+        } catch (IOException ex) {
+            logger.severe("Error writing lineage index for id "+obs.id+": "+ex.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void merged(SuperIndividualMerger.MergeRecord r) {
+        try {
+            LineageIndex.writeMerge(out,r.donorID,r.donorOrigID,r.targetID,r.targetOrigID,r.number);
+        } catch (IOException ex) {
+            logger.severe("Error writing lineage index for merge of id "+r.donorID+": "+ex.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * ObservableLHS.java
+ *
+ * 20261019: created interface.
+ */
+package sh.pcod.output;
+
+import wts.models.DisMELS.framework.LifeStageInterface;
+
+/**
+ * Interface for life stages whose state can be observed by the in-run output
+ * accumulators (see OutputRegistry).
+ *
+ * @author William Stockhausen
+ */
+public interface ObservableLHS extends LifeStageInterface {
+
+    /**
+     * Fills in an observation with the current state of the individual.
+     * Stage-specific variables not defined for the stage are left as set by
+     * LHSObservation.clear().
+     *
+     * @param obs - the observation to fill in
+     */
+    public void observe(LHSObservation obs);
+}
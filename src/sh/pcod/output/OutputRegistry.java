@@ -0,0 +1,362 @@
+/*
+ * OutputRegistry.java
+ *
+ * 20261019: created class.
+ * 20261019: added life history event listeners (releases and transitions).
+ * 20261019: added report listeners.
+ * 20261019: registries are kept per run scope (RunScope); observations are added under a
+ *           read lock, so a snapshot can't end while they are being added.
+ */
+package sh.pcod.output;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import sh.pcod.RunScope;
+import wts.models.DisMELS.framework.LifeStageAttributesInterface;
+import wts.models.DisMELS.framework.LifeStageInterface;
+
+/**
+ * Registry for the in-run output accumulators.
+ *
+ * The life stage classes call record(this) at the end of each step (if
+ * isActive() is true). The observation is passed to the registered
+ * accumulators if the individual's model time is an output time: the first
+ * time reached at or after each multiple of the output interval (counted from
+ * the first recorded time). Because all individuals are advanced to the same
+ * model time in a model time step, each snapshot contains every live
+ * individual once. A snapshot ends (IndividualAccumulator.endSnapshot) when
+ * the first individual reaches a later time, or when close() is called.
+ *
+ * Life history event listeners are notified when individuals are released
+ * (recordRelease, called by the spawning stage's initialize()) and when
+ * individuals transition to a new stage (recordTransition, called by the life
+ * stage classes when the next stage instances are created).
+ *
+ * Report listeners are notified when an individual creates a report for the
+ * model output files (recordReport, called by the life stage classes in
+ * getReport()).
+ *
+ * Accumulators and listeners are registered before a run starts and closed
+ * (written out) by calling close() at the end of the run.
+ *
+ * There is one registry per run scope (see RunScope): the static methods act
+ * on the registry of the calling thread's scope, so the accumulators,
+ * listeners and snapshot times of the members of an ensemble are kept apart.
+ * A single run (GUI or batch) uses the default scope.
+ *
+ * @author William Stockhausen
+ */
+public class OutputRegistry {
+
+    /** registries by run scope */
+    private static final ConcurrentMap<String,OutputRegistry> registries = new ConcurrentHashMap<>();
+    /** number of registries with accumulators or listeners registered */
+    private static volatile int nActive = 0;
+
+    /** flag indicating accumulators or listeners are registered */
+    private volatile boolean active = false;
+    /** output interval (s; 0 to take a snapshot every time step) */
+    private volatile double interval = 86400.0;
+    /** model time (s) at which the next snapshot starts (guarded by lock) */
+    private double nextOutputTime = Double.NaN;
+    /** model time (s) of the current snapshot (NaN if no snapshot is open; guarded by lock) */
+    private double snapshotTime = Double.NaN;
+    /** observations are added under the read lock, snapshots started and ended under the write lock */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** registered accumulators */
+    private final List<IndividualAccumulator> accumulators = new CopyOnWriteArrayList<>();
+    /** registered life history event listeners */
+    private final List<LifeStageEventListener> listeners = new CopyOnWriteArrayList<>();
+    /** registered report listeners */
+    private final List<ReportListener> reportListeners = new CopyOnWriteArrayList<>();
+    /** per-thread observations (re-used) */
+    private static final ThreadLocal<LHSObservation> observations = new ThreadLocal<LHSObservation>(){
+        @Override
+        protected LHSObservation initialValue(){
+            return new LHSObservation();
+        }
+    };
+
+    private static final Logger logger = Logger.getLogger(OutputRegistry.class.getName());
+
+    private OutputRegistry(){
+    }
+
+    /**
+     * Gets the registry of the current run scope, creating it if necessary.
+     */
+    private static OutputRegistry getRegistry(){
+        String scope = RunScope.get();
+        OutputRegistry r = registries.get(scope);
+        if (r==null) {
+            r = new OutputRegistry();
+            OutputRegistry o = registries.putIfAbsent(scope,r);
+            if (o!=null) r = o;
+        }
+        return r;
+    }
+
+    /**
+     * Gets the registry of the current run scope if it has accumulators or
+     * listeners registered.
+     *
+     * @return - the registry, or null
+     */
+    private static OutputRegistry getActive(){
+        if (nActive==0) return null;
+        OutputRegistry r = registries.get(RunScope.get());
+        return ((r!=null)&&r.active) ? r : null;
+    }
+
+    /**
+     * Tests whether any accumulators or listeners are registered (in the
+     * current run scope).
+     *
+     * @return - true if accumulators or listeners are registered
+     */
+    public static boolean isActive(){
+        return getActive()!=null;
+    }
+
+    /**
+     * Sets the output interval. Call before a run starts.
+     *
+     * @param seconds - the output interval (s; 0 to take a snapshot every time step)
+     */
+    public static void setOutputInterval(double seconds){
+        getRegistry().interval = Math.max(seconds,0.0);
+    }
+
+    /**
+     * Registers an accumulator.
+     *
+     * @param acc - the accumulator
+     */
+    public static void register(IndividualAccumulator acc){
+        OutputRegistry r = getRegistry();
+        r.accumulators.add(acc);
+        r.activate();
+    }
+
+    /**
+     * Registers a life history event listener.
+     *
+     * @param listener - the listener
+     */
+    public static void register(LifeStageEventListener listener){
+        OutputRegistry r = getRegistry();
+        r.listeners.add(listener);
+        r.activate();
+    }
+
+    /**
+     * Registers a report listener.
+     *
+     * @param listener - the listener
+     */
+    public static void register(ReportListener listener){
+        OutputRegistry r = getRegistry();
+        r.reportListeners.add(listener);
+        r.activate();
+    }
+
+    private void activate(){
+        synchronized(registries){
+            if (!active) nActive++;
+            active = true;
+        }
+    }
+
+    /**
+     * Records the creation of a report (called by the life stage classes in
+     * getReport()).
+     *
+     * @param lhs - the individual
+     * @param csv - the report
+     */
+    public static void recordReport(ObservableLHS lhs, String csv){
+        OutputRegistry r = getActive();
+        if ((r==null)||r.reportListeners.isEmpty()) return;
+        LHSObservation obs = observations.get();
+        obs.clear();
+        lhs.observe(obs);
+        for (ReportListener l: r.reportListeners) l.reported(lhs,obs,csv);
+    }
+
+    /**
+     * Records the release of an individual (called by the spawning stage at
+     * the end of initialize()).
+     *
+     * @param lhs - the released individual
+     */
+    public static void recordRelease(ObservableLHS lhs){
+        OutputRegistry r = getActive();
+        if ((r==null)||r.listeners.isEmpty()) return;
+        LHSObservation obs = observations.get();
+        obs.clear();
+        lhs.observe(obs);
+        for (LifeStageEventListener l: r.listeners) l.released(obs);
+    }
+
+    /**
+     * Records a transition to the next life stage (called by the life stage
+     * classes after the next stage instances have been created).
+     *
+     * @param from - the transitioning individual
+     * @param to   - the new life stage instances
+     */
+    public static void recordTransition(ObservableLHS from, List<LifeStageInterface> to){
+        OutputRegistry r = getActive();
+        if ((r==null)||r.listeners.isEmpty()||(to==null)) return;
+        LHSObservation obs = observations.get();
+        obs.clear();
+        from.observe(obs);
+        for (LifeStageInterface lhs: to){
+            double n = lhs.getAttributes().getValue(LifeStageAttributesInterface.PROP_number,0.0);
+            for (LifeStageEventListener l: r.listeners) l.transitioned(obs,lhs.getTypeName(),n);
+        }
+    }
+
+    /**
+     * Records the current state of a live individual (called by the life
+     * stage classes at the end of step(dt)).
+     *
+     * @param lhs - the individual
+     */
+    public static void record(ObservableLHS lhs){
+        OutputRegistry r = getActive();
+        if ((r==null)||r.accumulators.isEmpty()) return;
+        if (!(lhs.isAlive()&&lhs.isActive())) return;
+        LHSObservation obs = observations.get();
+        obs.clear();
+        lhs.observe(obs);
+        r.add(obs);
+    }
+
+    /**
+     * Adds an observation to the snapshot at its time, starting the snapshot
+     * (and ending the current one) if necessary. Observations for the current
+     * snapshot are added concurrently (read lock); a snapshot is started or
+     * ended with no observation being added (write lock).
+     */
+    private void add(LHSObservation obs){
+        double t = obs.time;
+        lock.readLock().lock();
+        try {
+            if (t==snapshotTime) {
+                for (IndividualAccumulator acc: accumulators) acc.add(obs);
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        boolean add = false;
+        try {
+            if (t==snapshotTime) {
+                add = true;
+            } else if (t<nextOutputTime) {
+                //not an output time
+                endSnapshot();
+            } else {
+                startSnapshot(t);
+                add = true;
+            }
+            //downgrade, so the snapshot can't end before the observation is added
+            if (add) lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!add) return;
+        try {
+            for (IndividualAccumulator acc: accumulators) acc.add(obs);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Starts a snapshot at time t (not before the next output time), ending
+     * the current one. Call with the write lock held.
+     */
+    private void startSnapshot(double t){
+        if (Double.isNaN(nextOutputTime)) nextOutputTime = t;
+        endSnapshot();
+        snapshotTime = t;
+        if (interval>0) {
+            while (nextOutputTime<=t) nextOutputTime += interval;
+        } else {
+            nextOutputTime = Math.nextUp(t);
+        }
+    }
+
+    /**
+     * Ends the current snapshot, if any. Call with the write lock held.
+     */
+    private void endSnapshot(){
+        double t = snapshotTime;
+        if (Double.isNaN(t)) return;
+        snapshotTime = Double.NaN;
+        for (IndividualAccumulator acc: accumulators) {
+            try {
+                acc.endSnapshot(t);
+            } catch (IOException ex) {
+                logger.severe("Error writing output at time "+t+": "+ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ends the current snapshot and closes all accumulators and listeners (of
+     * the current run scope). Call at the end of a run. The accumulators and
+     * listeners are removed from the registry.
+     */
+    public static void close(){
+        OutputRegistry r = registries.remove(RunScope.get());
+        if (r!=null) r.closeAll();
+    }
+
+    private void closeAll(){
+        lock.writeLock().lock();
+        try {
+            endSnapshot();
+            for (IndividualAccumulator acc: accumulators) {
+                try {
+                    acc.close();
+                } catch (IOException ex) {
+                    logger.severe("Error closing output: "+ex.getMessage());
+                }
+            }
+            for (LifeStageEventListener l: listeners) {
+                try {
+                    l.close();
+                } catch (IOException ex) {
+                    logger.severe("Error closing output: "+ex.getMessage());
+                }
+            }
+            for (ReportListener l: reportListeners) {
+                try {
+                    l.close();
+                } catch (IOException ex) {
+                    logger.severe("Error closing output: "+ex.getMessage());
+                }
+            }
+            accumulators.clear();
+            listeners.clear();
+            reportListeners.clear();
+            nextOutputTime = Double.NaN;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        synchronized(registries){
+            if (active) nActive--;
+            active = false;
+        }
+    }
+}
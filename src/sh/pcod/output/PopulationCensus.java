@@ -0,0 +1,157 @@
+/*
+ * PopulationCensus.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod.output;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-run population census: aggregates all live individuals at each output
+ * time by stage and region, and writes one csv row per stage and region with
+ * <pre>
+ *   time, typeName, region, number of individuals, abundance,
+ *   fraction attached, fraction fed,
+ *   mean, sd, q05, q50, q95 for each of SL, DW, TL, WW, temperature, depth and hsi
+ * </pre>
+ * Abundance is the sum of number over individuals; fractions, means and
+ * standard deviations are weighted by number. The fraction fed only includes
+ * stages for which feeding is defined.
+ *
+ * Usage:
+ * <pre>
+ *   OutputRegistry.register(new PopulationCensus("census.csv",RegionMap.read("regions.csv")));
+ *   ...run...
+ *   OutputRegistry.close();
+ * </pre>
+ *
+ * @author William Stockhausen
+ */
+public class PopulationCensus implements IndividualAccumulator {
+
+    /** names of the summarized variables */
+    public static final String[] VARS = new String[]{"SL","DW","TL","WW","temperature","depth","hsi"};
+
+    /**
+     * Census for a single stage and region.
+     */
+    private static class Cell {
+        long n = 0;
+        double abundance = 0.0;
+        double attached  = 0.0;
+        double fed       = 0.0;
+        double fedKnown  = 0.0;
+        final StreamingStats[] stats = new StreamingStats[VARS.length];
+
+        Cell(){
+            for (int i=0;i<VARS.length;i++) stats[i] = new StreamingStats();
+        }
+
+        void add(LHSObservation o){
+            double w = o.number;
+            n++;
+            abundance += w;
+            if (o.attached) attached += w;
+            if (!Double.isNaN(o.fed)) {
+                fedKnown += w;
+                fed      += w*o.fed;
+            }
+            stats[0].add(o.std_len,w);
+            stats[1].add(o.dry_wgt,w);
+            stats[2].add(o.tot_len,w);
+            stats[3].add(o.wet_wgt,w);
+            stats[4].add(o.temperature,w);
+            stats[5].add(o.depth,w);
+            stats[6].add(o.hsi,w);
+        }
+    }
+
+    /** regions */
+    private final RegionMap regions;
+    /** output */
+    private final Writer writer;
+    /** current census by stage, then region */
+    private final Map<String,Map<String,Cell>> cells = new TreeMap<>();
+
+    /**
+     * Creates a census writing to a file.
+     *
+     * @param fn      - the output file name
+     * @param regions - the regions (null for none)
+     *
+     * @throws IOException
+     */
+    public PopulationCensus(String fn, RegionMap regions) throws IOException {
+        this(new BufferedWriter(new FileWriter(fn)),regions);
+    }
+
+    /**
+     * Creates a census writing to a writer.
+     *
+     * @param writer  - the writer (closed by close())
+     * @param regions - the regions (null for none)
+     *
+     * @throws IOException
+     */
+    public PopulationCensus(Writer writer, RegionMap regions) throws IOException {
+        this.writer  = writer;
+        this.regions = (regions!=null) ? regions : new RegionMap();
+        StringBuilder b = new StringBuilder("time,typeName,region,nIndividuals,abundance,fracAttached,fracFed");
+        for (String v: VARS) {
+            b.append(",").append(v).append("_mean");
+            b.append(",").append(v).append("_sd");
+            for (double p: StreamingStats.PROBS) b.append(",").append(v).append("_q").append(Math.round(100*p));
+        }
+        writer.write(b.append("\n").toString());
+    }
+
+    @Override
+    public synchronized void add(LHSObservation obs) {
+        Map<String,Cell> byRegion = cells.get(obs.typeName);
+        if (byRegion==null) {
+            byRegion = new TreeMap<>();
+            cells.put(obs.typeName,byRegion);
+        }
+        String region = regions.getRegion(obs.lon,obs.lat);
+        Cell c = byRegion.get(region);
+        if (c==null) {
+            c = new Cell();
+            byRegion.put(region,c);
+        }
+        c.add(obs);
+    }
+
+    @Override
+    public synchronized void endSnapshot(double time) throws IOException {
+        StringBuilder b = new StringBuilder();
+        for (String typeName: cells.keySet()){
+            Map<String,Cell> byRegion = cells.get(typeName);
+            for (String region: byRegion.keySet()){
+                Cell c = byRegion.get(region);
+                b.setLength(0);
+                b.append(time).append(",").append(typeName).append(",").append(region);
+                b.append(",").append(c.n).append(",").append(c.abundance);
+                b.append(",").append((c.abundance>0) ? c.attached/c.abundance : Double.NaN);
+                b.append(",").append((c.fedKnown>0) ? c.fed/c.fedKnown : Double.NaN);
+                for (StreamingStats s: c.stats){
+                    b.append(",").append(s.getMean()).append(",").append(s.getSD());
+                    for (int i=0;i<StreamingStats.PROBS.length;i++) b.append(",").append(s.getQuantile(i));
+                }
+                writer.write(b.append("\n").toString());
+            }
+        }
+        writer.flush();
+        cells.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
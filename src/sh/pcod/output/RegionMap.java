@@ -0,0 +1,118 @@
+/*
+ * RegionMap.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod.output;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps positions to named regions (lon/lat boxes) for the in-run output
+ * accumulators.
+ *
+ * Regions are checked in the order they were added; the first region that
+ * contains a position is returned. Positions outside all regions are assigned
+ * to OTHER. A map without regions assigns every position to ALL.
+ *
+ * @author William Stockhausen
+ */
+public class RegionMap {
+
+    /** region name for all positions (map without regions) */
+    public static final String ALL = "all";
+    /** region name for positions outside all regions */
+    public static final String OTHER = "other";
+
+    /** region names */
+    private final List<String> names = new ArrayList<>();
+    /** region boxes (lonMin, latMin, lonMax, latMax) */
+    private final List<double[]> boxes = new ArrayList<>();
+
+    /**
+     * Creates a map without regions.
+     */
+    public RegionMap(){
+    }
+
+    /**
+     * Reads regions from a csv file with lines
+     * <pre>
+     *   name,lonMin,latMin,lonMax,latMax
+     * </pre>
+     * Blank lines and lines starting with '#' are skipped.
+     *
+     * @param fn - the file name
+     *
+     * @return - the map
+     *
+     * @throws IOException
+     */
+    public static RegionMap read(String fn) throws IOException {
+        RegionMap map = new RegionMap();
+        try (BufferedReader r = new BufferedReader(new FileReader(fn))) {
+            String line;
+            int n = 0;
+            while ((line = r.readLine())!=null){
+                n++;
+                line = line.trim();
+                if (line.isEmpty()||line.startsWith("#")) continue;
+                String[] s = line.split(",");
+                if (s.length<5) throw new IOException("RegionMap: too few values on line "+n+" of "+fn);
+                try {
+                    map.addRegion(s[0].trim(),Double.parseDouble(s[1].trim()),Double.parseDouble(s[2].trim()),
+                                              Double.parseDouble(s[3].trim()),Double.parseDouble(s[4].trim()));
+                } catch (NumberFormatException ex) {
+                    throw new IOException("RegionMap: bad number on line "+n+" of "+fn);
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Adds a region.
+     *
+     * @param name   - region name
+     * @param lonMin - western boundary (deg)
+     * @param latMin - southern boundary (deg)
+     * @param lonMax - eastern boundary (deg)
+     * @param latMax - northern boundary (deg)
+     */
+    public void addRegion(String name, double lonMin, double latMin, double lonMax, double latMax){
+        names.add(name);
+        boxes.add(new double[]{lonMin,latMin,lonMax,latMax});
+    }
+
+    /**
+     * Gets the names of the regions (including OTHER, or ALL if there are no regions).
+     *
+     * @return - the region names
+     */
+    public List<String> getRegionNames(){
+        List<String> res = new ArrayList<>(names);
+        res.add(names.isEmpty() ? ALL : OTHER);
+        return res;
+    }
+
+    /**
+     * Gets the region containing a position.
+     *
+     * @param lon - longitude (deg)
+     * @param lat - latitude (deg)
+     *
+     * @return - the region name
+     */
+    public String getRegion(double lon, double lat){
+        if (names.isEmpty()) return ALL;
+        for (int i=0;i<boxes.size();i++){
+            double[] b = boxes.get(i);
+            if ((lon>=b[0])&&(lat>=b[1])&&(lon<=b[2])&&(lat<=b[3])) return names.get(i);
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * ReportListener.java
+ *
+ * 20261019: created interface.
+ */
+package sh.pcod.output;
+
+import java.io.IOException;
+
+/**
+ * Interface for in-run output listeners that are notified when a life stage
+ * creates a report (csv line) for the model output files (see OutputRegistry).
+ *
+ * @author William Stockhausen
+ */
+public interface ReportListener {
+
+    /**
+     * Called when an individual creates a report. May be called concurrently
+     * from several threads.
+     *
+     * @param lhs - the individual
+     * @param obs - observation of the individual (re-used by the caller)
+     * @param csv - the report
+     */
+    public void reported(ObservableLHS lhs, LHSObservation obs, String csv);
+
+    /**
+     * Finishes output at the end of a run.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException;
+}
@@ -0,0 +1,221 @@
+/*
+ * SizeAtAgeHistograms.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod.output;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-run growth diagnostics: abundance-weighted two-dimensional histograms,
+ * by stage, of
+ * <pre>
+ *   AGE_SL  - age (d) x standard length (mm)
+ *   AGE_DW  - age (d) x dry weight (mg; log10 bins)
+ *   T_GRSL  - temperature (deg C) x SL growth rate (mm/d)
+ *   T_GRDW  - temperature (deg C) x DW growth rate (1/d)
+ * </pre>
+ * Each thread adds observations to its own primitive arrays (no shared locks
+ * while stepping); the per-thread arrays are merged and written at the end of
+ * each snapshot. Values outside an axis are assigned to its first or last bin;
+ * NaN values are ignored.
+ *
+ * The histograms are written as csv with one row per non-empty bin:
+ * <pre>
+ *   time, typeName, histogram, x (lower bin edge), y (lower bin edge), abundance
+ * </pre>
+ *
+ * @author William Stockhausen
+ */
+public class SizeAtAgeHistograms implements IndividualAccumulator {
+
+    /** histogram of age x SL */
+    public static final int AGE_SL = 0;
+    /** histogram of age x DW */
+    public static final int AGE_DW = 1;
+    /** histogram of temperature x SL growth rate */
+    public static final int T_GRSL = 2;
+    /** histogram of temperature x DW growth rate */
+    public static final int T_GRDW = 3;
+    /** histogram names */
+    public static final String[] NAMES = new String[]{"age_SL","age_DW","T_grSL","T_grDW"};
+
+    /**
+     * Equal-width histogram axis (on a log10 scale, if requested).
+     */
+    public static class Axis {
+        final double min;
+        final double width;
+        final int n;
+        final boolean log;
+
+        /**
+         * Creates an axis.
+         *
+         * @param min   - lower edge of the first bin (log10 of it, if log)
+         * @param width - bin width (on the log10 scale, if log)
+         * @param n     - number of bins
+         * @param log   - flag to bin log10(value)
+         */
+        public Axis(double min, double width, int n, boolean log){
+            this.min = min;
+            this.width = width;
+            this.n = n;
+            this.log = log;
+        }
+
+        int bin(double x){
+            if (log) x = (x>0) ? Math.log10(x) : Double.NEGATIVE_INFINITY;
+            int i = (int)Math.floor((x-min)/width);
+            return (i<0) ? 0 : ((i>=n) ? n-1 : i);
+        }
+
+        double lower(int i){
+            double x = min+i*width;
+            return log ? Math.pow(10.0,x) : x;
+        }
+    }
+
+    /**
+     * Histograms of one thread, by stage.
+     */
+    private static class Tables {
+        final Map<String,double[][]> byStage = new HashMap<>();
+    }
+
+    /** x axes by histogram */
+    private final Axis[] xAxes = new Axis[]{new Axis(0,1,365,false), new Axis(0,1,365,false),
+                                            new Axis(-2,0.5,40,false),new Axis(-2,0.5,40,false)};
+    /** y axes by histogram */
+    private final Axis[] yAxes = new Axis[]{new Axis(0,1,200,false), new Axis(-3,0.05,140,true),
+                                            new Axis(-0.2,0.01,80,false),new Axis(-0.2,0.01,80,false)};
+
+    /** the tables of all threads */
+    private final List<Tables> allTables = new CopyOnWriteArrayList<>();
+    /** the tables of the current thread */
+    private final ThreadLocal<Tables> tables = new ThreadLocal<Tables>(){
+        @Override
+        protected Tables initialValue(){
+            Tables t = new Tables();
+            allTables.add(t);
+            return t;
+        }
+    };
+    /** output */
+    private final Writer writer;
+
+    /**
+     * Creates the histograms, writing to a file.
+     *
+     * @param fn - the output file name
+     *
+     * @throws IOException
+     */
+    public SizeAtAgeHistograms(String fn) throws IOException {
+        this(new BufferedWriter(new FileWriter(fn)));
+    }
+
+    /**
+     * Creates the histograms, writing to a writer.
+     *
+     * @param writer - the writer (closed by close())
+     *
+     * @throws IOException
+     */
+    public SizeAtAgeHistograms(Writer writer) throws IOException {
+        this.writer = writer;
+        writer.write("time,typeName,histogram,x,y,abundance\n");
+    }
+
+    /**
+     * Sets the axes of a histogram. Call before a run starts.
+     *
+     * @param h - the histogram (AGE_SL, AGE_DW, T_GRSL or T_GRDW)
+     * @param x - the x axis
+     * @param y - the y axis
+     */
+    public void setAxes(int h, Axis x, Axis y){
+        xAxes[h] = x;
+        yAxes[h] = y;
+    }
+
+    @Override
+    public void add(LHSObservation obs) {
+        Tables t = tables.get();
+        synchronized(t) {
+            double[][] h = t.byStage.get(obs.typeName);
+            if (h==null) {
+                h = new double[NAMES.length][];
+                for (int k=0;k<NAMES.length;k++) h[k] = new double[xAxes[k].n*yAxes[k].n];
+                t.byStage.put(obs.typeName,h);
+            }
+            double w = obs.number;
+            add(h,AGE_SL,obs.age,obs.std_len,w);
+            add(h,AGE_DW,obs.age,obs.dry_wgt,w);
+            add(h,T_GRSL,obs.temperature,obs.grSL,w);
+            add(h,T_GRDW,obs.temperature,obs.grDW,w);
+        }
+    }
+
+    private void add(double[][] h, int k, double x, double y, double w){
+        if (Double.isNaN(x)||Double.isNaN(y)) return;
+        h[k][xAxes[k].bin(x)*yAxes[k].n+yAxes[k].bin(y)] += w;
+    }
+
+    @Override
+    public synchronized void endSnapshot(double time) throws IOException {
+        //merge the per-thread tables
+        Map<String,double[][]> merged = new TreeMap<>();
+        for (Tables t: allTables){
+            synchronized(t) {
+                for (Map.Entry<String,double[][]> e: t.byStage.entrySet()){
+                    double[][] m = merged.get(e.getKey());
+                    if (m==null) {
+                        m = new double[NAMES.length][];
+                        for (int k=0;k<NAMES.length;k++) m[k] = new double[xAxes[k].n*yAxes[k].n];
+                        merged.put(e.getKey(),m);
+                    }
+                    double[][] h = e.getValue();
+                    for (int k=0;k<NAMES.length;k++){
+                        double[] hk = h[k], mk = m[k];
+                        for (int i=0;i<hk.length;i++) {
+                            mk[i] += hk[i];
+                            hk[i] = 0.0;
+                        }
+                    }
+                }
+            }
+        }
+        //write the non-empty bins
+        StringBuilder b = new StringBuilder();
+        for (String typeName: merged.keySet()){
+            double[][] m = merged.get(typeName);
+            for (int k=0;k<NAMES.length;k++){
+                int ny = yAxes[k].n;
+                for (int i=0;i<m[k].length;i++){
+                    if (m[k][i]==0.0) continue;
+                    b.setLength(0);
+                    b.append(time).append(",").append(typeName).append(",").append(NAMES[k]);
+                    b.append(",").append(xAxes[k].lower(i/ny)).append(",").append(yAxes[k].lower(i%ny));
+                    b.append(",").append(m[k][i]).append("\n");
+                    writer.write(b.toString());
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * StreamingStats.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod.output;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass summary statistics for a variable: weighted mean and standard
+ * deviation (West 1979) and approximate quantiles (P-square algorithm, Jain
+ * and Chlamtac 1985), using constant memory.
+ *
+ * The mean and standard deviation are weighted (e.g., by the number of
+ * individuals a super-individual represents); the quantiles are over the
+ * observations (individuals). NaN values are ignored.
+ *
+ * @author William Stockhausen
+ */
+public class StreamingStats {
+
+    /** probabilities of the estimated quantiles */
+    public static final double[] PROBS = new double[]{0.05,0.5,0.95};
+
+    /** number of observations */
+    private long n = 0;
+    /** sum of weights */
+    private double sumW = 0.0;
+    /** weighted mean */
+    private double mean = 0.0;
+    /** weighted sum of squared deviations */
+    private double m2 = 0.0;
+    /** quantile estimators */
+    private final P2Quantile[] quantiles = new P2Quantile[PROBS.length];
+
+    /**
+     * Creates a new instance.
+     */
+    public StreamingStats(){
+        for (int i=0;i<PROBS.length;i++) quantiles[i] = new P2Quantile(PROBS[i]);
+    }
+
+    /**
+     * Adds an observation.
+     *
+     * @param x - the value
+     * @param w - the weight (>=0)
+     */
+    public void add(double x, double w){
+        if (Double.isNaN(x)) return;
+        n++;
+        if (w>0){
+            double sw = sumW+w;
+            double d  = x-mean;
+            double r  = d*w/sw;
+            mean += r;
+            m2   += sumW*d*r;
+            sumW  = sw;
+        }
+        for (P2Quantile q: quantiles) q.add(x);
+    }
+
+    /**
+     * Gets the number of (non-NaN) observations.
+     *
+     * @return - the number of observations
+     */
+    public long getCount(){
+        return n;
+    }
+
+    /**
+     * Gets the weighted mean.
+     *
+     * @return - the mean (NaN if there are no observations with positive weight)
+     */
+    public double getMean(){
+        return (sumW>0) ? mean : Double.NaN;
+    }
+
+    /**
+     * Gets the weighted standard deviation.
+     *
+     * @return - the standard deviation (NaN if there are no observations with positive weight)
+     */
+    public double getSD(){
+        return (sumW>0) ? Math.sqrt(Math.max(m2/sumW,0.0)) : Double.NaN;
+    }
+
+    /**
+     * Gets an estimated quantile.
+     *
+     * @param i - index into PROBS
+     *
+     * @return - the quantile (NaN if there are no observations)
+     */
+    public double getQuantile(int i){
+        return quantiles[i].get();
+    }
+
+    /**
+     * P-square estimator for a single quantile.
+     */
+    private static class P2Quantile {
+        private final double p;
+        /** marker heights */
+        private final double[] q  = new double[5];
+        /** marker positions */
+        private final double[] np = new double[5];
+        /** desired marker positions */
+        private final double[] dp = new double[5];
+        /** increments in desired marker positions */
+        private final double[] dd;
+        private int count = 0;
+
+        P2Quantile(double p){
+            this.p = p;
+            dd = new double[]{0.0,p/2,p,(1+p)/2,1.0};
+        }
+
+        void add(double x){
+            if (count<5){
+                q[count++] = x;
+                if (count==5){
+                    Arrays.sort(q);
+                    for (int i=0;i<5;i++) np[i] = i;
+                    dp[0] = 0; dp[1] = 2*p; dp[2] = 4*p; dp[3] = 2+2*p; dp[4] = 4;
+                }
+                return;
+            }
+            count++;
+            int k;
+            if (x<q[0]) {
+                q[0] = x; k = 0;
+            } else if (x>=q[4]) {
+                q[4] = x; k = 3;
+            } else {
+                k = 0;
+                while (x>=q[k+1]) k++;
+            }
+            for (int i=k+1;i<5;i++) np[i] += 1;
+            for (int i=0;i<5;i++) dp[i] += dd[i];
+            for (int i=1;i<4;i++){
+                double d = dp[i]-np[i];
+                if (((d>=1)&&(np[i+1]-np[i]>1))||((d<=-1)&&(np[i-1]-np[i]<-1))){
+                    int s = (d>0) ? 1 : -1;
+                    double qp = q[i]+s/(np[i+1]-np[i-1])*
+                                ((np[i]-np[i-1]+s)*(q[i+1]-q[i])/(np[i+1]-np[i])+
+                                 (np[i+1]-np[i]-s)*(q[i]-q[i-1])/(np[i]-np[i-1]));
+                    if ((q[i-1]<qp)&&(qp<q[i+1])) {
+                        q[i] = qp;
+                    } else {
+                        q[i] = q[i]+s*(q[i+s]-q[i])/(np[i+s]-np[i]);
+                    }
+                    np[i] += s;
+                }
+            }
+        }
+
+        double get(){
+            if (count==0) return Double.NaN;
+            if (count<5){
+                double[] v = Arrays.copyOf(q,count);
+                Arrays.sort(v);
+                return v[(int)Math.min(count-1,Math.round(p*(count-1)))];
+            }
+            return q[2];
+        }
+    }
+}
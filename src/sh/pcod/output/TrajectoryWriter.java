@@ -0,0 +1,346 @@
+/*
+ * TrajectoryWriter.java
+ *
+ * 20261019: created class.
+ */
+package sh.pcod.output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+
+/**
+ * Writes individual trajectories (position and selected attributes at each
+ * output time; see OutputRegistry) to a NetCDF file in the CF discrete
+ * sampling geometry layout for trajectories as a contiguous ragged array
+ * (CF 1.6, section H.4.3): the observations of each trajectory (id) are stored
+ * contiguously along the obs dimension, with the number of observations per
+ * trajectory in rowSize.
+ *
+ * Because the contiguous layout requires the number of observations of each
+ * trajectory, observations are streamed to a temporary binary file during the
+ * run. At close(), trajectories are grouped into batches of at most
+ * maxBufferedObs observations, the temporary file is split by batch, and each
+ * batch is written to the NetCDF (version 3) file as one contiguous block.
+ * Memory use is thus bounded by the per-trajectory bookkeeping and one batch.
+ *
+ * Variables:
+ * <pre>
+ *   trajectory(trajectory) - id (cf_role = trajectory_id)
+ *   parentID, origID(trajectory), rowSize(trajectory)
+ *   time, lon, lat, depth, temperature, SL, number, stage(obs)
+ * </pre>
+ * Ids are stored as doubles (exact up to 2^53) because NetCDF 3 has no 64-bit
+ * integers. Stage is an index into the stage_names attribute.
+ *
+ * @author William Stockhausen
+ */
+public class TrajectoryWriter implements IndividualAccumulator {
+
+    /** default maximum number of observations buffered when writing the NetCDF file */
+    public static final int DEFAULT_MAX_BUFFERED_OBS = 1<<20;
+    /** size (bytes) of an observation record in the temporary file */
+    private static final int REC_SIZE = 46;
+
+    private static final Logger logger = Logger.getLogger(TrajectoryWriter.class.getName());
+
+    /**
+     * Bookkeeping for a single trajectory.
+     */
+    private static class Traj {
+        final long id;
+        final long parentID;
+        final long origID;
+        int count = 0;
+        long start;
+        int batch;
+        int filled;
+
+        Traj(long id, long parentID, long origID){
+            this.id = id;
+            this.parentID = parentID;
+            this.origID = origID;
+        }
+    }
+
+    /** output file name */
+    private final String fn;
+    /** units of model time (e.g., "seconds since 1970-01-01 00:00:00") */
+    private final String timeUnits;
+    /** maximum number of observations per batch */
+    private int maxBufferedObs = DEFAULT_MAX_BUFFERED_OBS;
+
+    /** temporary observation file */
+    private final File tmp;
+    private final DataOutputStream tmpOut;
+    /** trajectories by id */
+    private final Map<Long,Traj> trajs = new HashMap<>();
+    /** trajectories in order of first observation */
+    private final List<Traj> order = new ArrayList<>();
+    /** stage indices by type name */
+    private final Map<String,Integer> stages = new HashMap<>();
+    private final List<String> stageNames = new ArrayList<>();
+    private long nObs = 0;
+    /** flag indicating writing to the temporary file failed */
+    private boolean failed = false;
+
+    /**
+     * Creates a trajectory writer.
+     *
+     * @param fn        - the NetCDF output file name
+     * @param timeUnits - CF units of model time (e.g., "seconds since 1970-01-01 00:00:00")
+     *
+     * @throws IOException
+     */
+    public TrajectoryWriter(String fn, String timeUnits) throws IOException {
+        this.fn = fn;
+        this.timeUnits = timeUnits;
+        tmp = new File(fn+".obs.tmp");
+        tmpOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp),1<<16));
+    }
+
+    /**
+     * Sets the maximum number of observations buffered in memory when writing
+     * the NetCDF file. Call before close().
+     *
+     * @param n - the maximum number of observations
+     */
+    public synchronized void setMaxBufferedObs(int n){
+        maxBufferedObs = Math.max(n,1);
+    }
+
+    @Override
+    public synchronized void add(LHSObservation obs) {
+        if (failed) return;
+        Traj t = trajs.get(obs.id);
+        if (t==null) {
+            t = new Traj(obs.id,obs.parentID,obs.origID);
+            trajs.put(obs.id,t);
+            order.add(t);
+        }
+        Integer s = stages.get(obs.typeName);
+        if (s==null) {
+            s = stageNames.size();
+            stages.put(obs.typeName,s);
+            stageNames.add(obs.typeName);
+        }
+        try {
+            tmpOut.writeLong(obs.id);
+            tmpOut.writeDouble(obs.time);
+            tmpOut.writeFloat((float)obs.lon);
+            tmpOut.writeFloat((float)obs.lat);
+            tmpOut.writeFloat((float)obs.depth);
+            tmpOut.writeFloat((float)obs.temperature);
+            tmpOut.writeFloat((float)obs.std_len);
+            tmpOut.writeDouble(obs.number);
+            tmpOut.writeShort(s);
+        } catch (IOException ex) {
+            logger.severe("Error writing trajectory observations to "+tmp+": "+ex.getMessage());
+            failed = true;
+            return;
+        }
+        t.count++;
+        nObs++;
+    }
+
+    @Override
+    public synchronized void endSnapshot(double time) throws IOException {
+        tmpOut.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        tmpOut.close();
+        if (failed) {
+            tmp.delete();
+            throw new IOException("Trajectory observations were not written: "+fn+" was not created");
+        }
+        if (nObs==0) {
+            tmp.delete();
+            logger.info("No trajectory observations: "+fn+" was not created");
+            return;
+        }
+        if (nObs>Integer.MAX_VALUE) throw new IOException("Too many trajectory observations for NetCDF 3: "+nObs);
+        //assign contiguous ranges and batches
+        List<long[]> batches = new ArrayList<>();//start, size
+        long start = 0;
+        long[] batch = null;
+        for (Traj t: order){
+            if ((batch==null)||((batch[1]>0)&&(batch[1]+t.count>maxBufferedObs))) {
+                batch = new long[]{start,0};
+                batches.add(batch);
+            }
+            t.start = start;
+            t.batch = batches.size()-1;
+            batch[1] += t.count;
+            start += t.count;
+        }
+        //split the observations by batch
+        File[] parts = new File[batches.size()];
+        if (parts.length==1) {
+            parts[0] = tmp;
+        } else if (parts.length>1) {
+            DataOutputStream[] outs = new DataOutputStream[parts.length];
+            try {
+                for (int b=0;b<parts.length;b++) {
+                    parts[b] = new File(fn+".obs"+b+".tmp");
+                    outs[b] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(parts[b]),1<<14));
+                }
+                try (DataInputStream in = openTmp(tmp)) {
+                    byte[] rec = new byte[REC_SIZE];
+                    ByteBuffer buf = ByteBuffer.wrap(rec);
+                    while (readRecord(in,rec)) {
+                        outs[trajs.get(buf.getLong(0)).batch].write(rec);
+                    }
+                }
+            } finally {
+                for (DataOutputStream o: outs) if (o!=null) o.close();
+            }
+            tmp.delete();
+        }
+        try {
+            writeNetCDF(batches,parts);
+        } catch (InvalidRangeException ex) {
+            throw new IOException("Error writing "+fn+": "+ex.getMessage(),ex);
+        } finally {
+            for (File f: parts) f.delete();
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Writes the NetCDF file.
+     */
+    private void writeNetCDF(List<long[]> batches, File[] parts) throws IOException, InvalidRangeException {
+        NetcdfFileWriter w = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3,fn);
+        try {
+            int nT = order.size();
+            w.addDimension(null,"trajectory",nT);
+            w.addDimension(null,"obs",(int)nObs);
+            StringBuilder names = new StringBuilder();
+            for (String s: stageNames) names.append((names.length()>0) ? "," : "").append(s);
+            w.addGroupAttribute(null,new Attribute("Conventions","CF-1.6"));
+            w.addGroupAttribute(null,new Attribute("featureType","trajectory"));
+
+            Variable vTraj = addVar(w,"trajectory",DataType.DOUBLE,"trajectory","individual id",null,null);
+            w.addVariableAttribute(vTraj,new Attribute("cf_role","trajectory_id"));
+            Variable vPar  = addVar(w,"parentID",DataType.DOUBLE,"trajectory","id of parent individual",null,null);
+            Variable vOrig = addVar(w,"origID",DataType.DOUBLE,"trajectory","id of original individual",null,null);
+            Variable vRow  = addVar(w,"rowSize",DataType.INT,"trajectory","number of observations for this trajectory",null,null);
+            w.addVariableAttribute(vRow,new Attribute("sample_dimension","obs"));
+            Variable vTime = addVar(w,"time",DataType.DOUBLE,"obs","time","time",timeUnits);
+            Variable vLon  = addVar(w,"lon",DataType.FLOAT,"obs","longitude","longitude","degrees_east");
+            Variable vLat  = addVar(w,"lat",DataType.FLOAT,"obs","latitude","latitude","degrees_north");
+            Variable vZ    = addVar(w,"depth",DataType.FLOAT,"obs","depth","depth","m");
+            w.addVariableAttribute(vZ,new Attribute("positive","down"));
+            Variable vT    = addVar(w,"temperature",DataType.FLOAT,"obs","temperature","sea_water_temperature","degC");
+            Variable vSL   = addVar(w,"SL",DataType.FLOAT,"obs","standard length",null,"mm");
+            Variable vN    = addVar(w,"number",DataType.DOUBLE,"obs","number of individuals represented",null,"1");
+            Variable vStg  = addVar(w,"stage",DataType.SHORT,"obs","life stage (index into stage_names)",null,null);
+            w.addVariableAttribute(vStg,new Attribute("stage_names",names.toString()));
+            for (Variable v: new Variable[]{vLon,vLat,vZ,vT,vSL,vN,vStg})
+                w.addVariableAttribute(v,new Attribute("coordinates","time lat lon depth"));
+            w.create();
+
+            //trajectory variables
+            double[] id = new double[nT], par = new double[nT], orig = new double[nT];
+            int[] rows = new int[nT];
+            for (int i=0;i<nT;i++){
+                Traj t = order.get(i);
+                id[i] = t.id; par[i] = t.parentID; orig[i] = t.origID; rows[i] = t.count;
+            }
+            int[] tShape = new int[]{nT};
+            int[] origin0 = new int[]{0};
+            w.write(vTraj,origin0,Array.factory(DataType.DOUBLE,tShape,id));
+            w.write(vPar, origin0,Array.factory(DataType.DOUBLE,tShape,par));
+            w.write(vOrig,origin0,Array.factory(DataType.DOUBLE,tShape,orig));
+            w.write(vRow, origin0,Array.factory(DataType.INT,tShape,rows));
+
+            //observations, one batch at a time
+            for (int b=0;b<batches.size();b++){
+                int b0 = (int)batches.get(b)[0];
+                int n  = (int)batches.get(b)[1];
+                double[] time = new double[n], num = new double[n];
+                float[] lon = new float[n], lat = new float[n], z = new float[n], tmpr = new float[n], sl = new float[n];
+                short[] stg = new short[n];
+                try (DataInputStream in = openTmp(parts[b])) {
+                    while (true) {
+                        long k;
+                        try {
+                            k = in.readLong();
+                        } catch (EOFException ex) {
+                            break;
+                        }
+                        Traj t = trajs.get(k);
+                        int i = (int)(t.start-b0)+t.filled++;
+                        time[i] = in.readDouble();
+                        lon[i]  = in.readFloat();
+                        lat[i]  = in.readFloat();
+                        z[i]    = in.readFloat();
+                        tmpr[i] = in.readFloat();
+                        sl[i]   = in.readFloat();
+                        num[i]  = in.readDouble();
+                        stg[i]  = in.readShort();
+                    }
+                }
+                int[] shape  = new int[]{n};
+                int[] origin = new int[]{b0};
+                w.write(vTime,origin,Array.factory(DataType.DOUBLE,shape,time));
+                w.write(vLon, origin,Array.factory(DataType.FLOAT,shape,lon));
+                w.write(vLat, origin,Array.factory(DataType.FLOAT,shape,lat));
+                w.write(vZ,   origin,Array.factory(DataType.FLOAT,shape,z));
+                w.write(vT,   origin,Array.factory(DataType.FLOAT,shape,tmpr));
+                w.write(vSL,  origin,Array.factory(DataType.FLOAT,shape,sl));
+                w.write(vN,   origin,Array.factory(DataType.DOUBLE,shape,num));
+                w.write(vStg, origin,Array.factory(DataType.SHORT,shape,stg));
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    private static Variable addVar(NetcdfFileWriter w, String name, DataType type, String dim,
+                                   String longName, String stdName, String units){
+        Variable v = w.addVariable(null,name,type,dim);
+        w.addVariableAttribute(v,new Attribute("long_name",longName));
+        if (stdName!=null) w.addVariableAttribute(v,new Attribute("standard_name",stdName));
+        if (units!=null)   w.addVariableAttribute(v,new Attribute("units",units));
+        return v;
+    }
+
+    private static DataInputStream openTmp(File f) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(f),1<<16));
+    }
+
+    /**
+     * Reads a raw observation record.
+     *
+     * @return - false at the end of the file
+     */
+    private static boolean readRecord(DataInputStream in, byte[] rec) throws IOException {
+        try {
+            in.readFully(rec);
+            return true;
+        } catch (EOFException ex) {
+            return false;
+        }
+    }
+}